@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.rinde.opt.localsearch.Insertions;
+import com.github.rinde.opt.localsearch.RouteEvaluator;
+import com.github.rinde.rinsim.central.Central;
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.central.Solvers;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.experiment.Experiment;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06Parser;
+import com.github.rinde.rinsim.util.StochasticSuppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Benchmarks route evaluation by {@link ParcelRouteEvaluator} with and without
+ * {@link EvaluationContext} on the offline version of the Gendreau
+ * <code>req_rapide_1_240_24</code> scenario, the state and schedule are those
+ * of the first solve of {@link CheapestInsertionHeuristic}. Run with the GC
+ * profiler (<code>-prof gc</code>) to see the allocation rate.
+ * <p>
+ * The objective function is used through the generic
+ * {@link ParcelRouteEvaluator}, as is the case for every objective function
+ * other than {@link Gendreau06ObjectiveFunction}. Solvers that use the
+ * Gendreau objective evaluate routes with {@link Gendreau06RouteEvaluator}
+ * (see {@link ParcelRouteEvaluator#create(ObjectiveFunction)}), which never
+ * constructs a single vehicle state. That evaluator is included as a
+ * reference.
+ * @author Rinde van Lon
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationContextBenchmark {
+  static final String SCENARIO =
+    "files/scenarios/gendreau06/req_rapide_1_240_24";
+  static final ObjectiveFunction OBJ_FUNC =
+    Gendreau06ObjectiveFunction.instance();
+
+  @Param({"PER_CANDIDATE_STATE", "EVALUATION_CONTEXT",
+    "GENDREAU06_ROUTE_EVALUATOR"})
+  EvaluatorType evaluatorType;
+
+  GlobalStateObject state;
+  ImmutableList<ImmutableList<Parcel>> schedule;
+  RouteEvaluator<GlobalStateObject, Parcel> evaluator;
+  // the schedule without parcel, and the costs of its routes
+  Parcel parcel;
+  ImmutableList<ImmutableList<Parcel>> reducedSchedule;
+  ImmutableList<Double> reducedCosts;
+
+  /**
+   * Solves the scenario and selects the parcel that is reinserted.
+   */
+  @Setup
+  public void setUp() {
+    final RecordingSolver recorder = new RecordingSolver();
+    Experiment.builder()
+      .addConfiguration(
+        Central.solverConfiguration(StochasticSuppliers.constant(recorder)))
+      .addScenarios(Gendreau06Parser.parser()
+        .addFile(new File(SCENARIO))
+        .offline()
+        .parse())
+      .perform();
+    state = recorder.state;
+    schedule = recorder.schedule;
+    evaluator = evaluatorType.evaluator();
+
+    // the first parcel of the longest route
+    int longest = 0;
+    for (int i = 1; i < schedule.size(); i++) {
+      if (schedule.get(i).size() > schedule.get(longest).size()) {
+        longest = i;
+      }
+    }
+    parcel = schedule.get(longest).get(0);
+    reducedSchedule = Lns.remove(schedule, ImmutableSet.of(parcel));
+    reducedCosts = CheapestInsertionHeuristic.decomposedCost(state,
+      reducedSchedule, evaluator);
+  }
+
+  /**
+   * Evaluates every route of the schedule once.
+   * @return The costs of the routes.
+   */
+  @Benchmark
+  public ImmutableList<Double> decomposedCost() {
+    return CheapestInsertionHeuristic.decomposedCost(state, schedule,
+      evaluator);
+  }
+
+  /**
+   * Evaluates all insertions of a parcel in all routes.
+   * @param bh Consumes the cheapest insertion of each vehicle.
+   * @throws InterruptedException Should not happen.
+   */
+  @Benchmark
+  public void cheapestInsertion(Blackhole bh) throws InterruptedException {
+    for (int i = 0; i < reducedSchedule.size(); i++) {
+      bh.consume(CheapestInsertionHeuristic.cheapestInsertion(state, i,
+        reducedSchedule.get(i), reducedCosts.get(i), null, evaluator, parcel,
+        Insertions.insertionIndexCursor(2, 0, 0)));
+    }
+  }
+
+  enum EvaluatorType {
+    /**
+     * Constructs a single vehicle state for every evaluated route, the
+     * behavior of {@link ParcelRouteEvaluator} before the introduction of
+     * {@link EvaluationContext}.
+     */
+    PER_CANDIDATE_STATE {
+      @Override
+      RouteEvaluator<GlobalStateObject, Parcel> evaluator() {
+        return new RouteEvaluator<GlobalStateObject, Parcel>() {
+          @Override
+          public double computeCost(GlobalStateObject context,
+              int routeIndex, ImmutableList<Parcel> newRoute) {
+            return OBJ_FUNC.computeCost(Solvers.computeStats(
+              context.withSingleVehicle(routeIndex),
+              ImmutableList.of(newRoute)));
+          }
+        };
+      }
+    },
+
+    /**
+     * {@link ParcelRouteEvaluator}, which shares the single vehicle states
+     * via the {@link EvaluationContext} of the state.
+     */
+    EVALUATION_CONTEXT {
+      @Override
+      RouteEvaluator<GlobalStateObject, Parcel> evaluator() {
+        return new ParcelRouteEvaluator(OBJ_FUNC);
+      }
+    },
+
+    /**
+     * The evaluator that solvers use for the Gendreau objective, it does not
+     * use an {@link EvaluationContext}.
+     */
+    GENDREAU06_ROUTE_EVALUATOR {
+      @Override
+      RouteEvaluator<GlobalStateObject, Parcel> evaluator() {
+        return ParcelRouteEvaluator.create(OBJ_FUNC);
+      }
+    };
+
+    abstract RouteEvaluator<GlobalStateObject, Parcel> evaluator();
+  }
+
+  // records the state and schedule of the first solve
+  static class RecordingSolver implements Solver {
+    final Solver delegate;
+    @Nullable
+    GlobalStateObject state;
+    @Nullable
+    ImmutableList<ImmutableList<Parcel>> schedule;
+
+    RecordingSolver() {
+      delegate = new CheapestInsertionHeuristic(OBJ_FUNC);
+    }
+
+    @Override
+    public ImmutableList<ImmutableList<Parcel>> solve(GlobalStateObject s)
+        throws InterruptedException {
+      final ImmutableList<ImmutableList<Parcel>> result = delegate.solve(s);
+      if (state == null) {
+        state = s;
+        schedule = result;
+      }
+      return result;
+    }
+  }
+}
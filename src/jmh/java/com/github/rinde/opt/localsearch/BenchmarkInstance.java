@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.google.common.collect.ImmutableList;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/**
+ * Synthetic pickup-and-delivery like instance that is used by the benchmarks.
+ * Every item has a location and a due time and occurs exactly twice in one
+ * row of the schedule.
+ * @author Rinde van Lon
+ */
+final class BenchmarkInstance {
+  static final double DEPOT = .5;
+  static final double SPEED = 1d;
+  static final double TARDINESS_WEIGHT = 10d;
+
+  final double[] xs;
+  final double[] ys;
+  final double[] dueTimes;
+  final ImmutableList<ImmutableList<Integer>> schedule;
+  final IntList startIndices;
+
+  private BenchmarkInstance(double[] x, double[] y, double[] due,
+      ImmutableList<ImmutableList<Integer>> s, IntList indices) {
+    xs = x;
+    ys = y;
+    dueTimes = due;
+    schedule = s;
+    startIndices = indices;
+  }
+
+  /**
+   * Creates a new random instance.
+   * @param numRows The number of rows of the schedule.
+   * @param routeLength The length of each route, must be even.
+   * @param seed The seed of the random number generator.
+   * @return A new instance.
+   */
+  static BenchmarkInstance create(int numRows, int routeLength, long seed) {
+    final RandomGenerator rng = new MersenneTwister(seed);
+    final int numItems = numRows * routeLength / 2;
+    final double[] x = new double[numItems];
+    final double[] y = new double[numItems];
+    final double[] due = new double[numItems];
+    final List<List<Integer>> rows = new ArrayList<>();
+    for (int i = 0; i < numRows; i++) {
+      rows.add(new ArrayList<Integer>());
+    }
+    for (int i = 0; i < numItems; i++) {
+      x[i] = rng.nextDouble();
+      y[i] = rng.nextDouble();
+      due[i] = rng.nextDouble() * routeLength / 2d;
+      final List<Integer> row = rows.get(i % numRows);
+      row.add(rng.nextInt(row.size() + 1), i);
+      row.add(rng.nextInt(row.size() + 1), i);
+    }
+    final ImmutableList.Builder<ImmutableList<Integer>> builder =
+      ImmutableList.builder();
+    for (final List<Integer> row : rows) {
+      builder.add(ImmutableList.copyOf(row));
+    }
+    return new BenchmarkInstance(x, y, due, builder.build(),
+      new IntArrayList(new int[numRows]));
+  }
+
+  /**
+   * The evaluators that are used by the benchmarks.
+   */
+  enum EvaluatorType {
+    /**
+     * Evaluator that is as cheap as possible, measures the overhead of the
+     * local search procedures.
+     */
+    TRIVIAL {
+      @Override
+      RouteEvaluator<BenchmarkInstance, Integer> evaluator() {
+        return new RouteEvaluator<BenchmarkInstance, Integer>() {
+          @Override
+          public double computeCost(BenchmarkInstance context, int routeIndex,
+              ImmutableList<Integer> newRoute) {
+            double cost = 0;
+            for (int i = 0; i < newRoute.size(); i++) {
+              cost += i * newRoute.get(i);
+            }
+            return cost;
+          }
+        };
+      }
+    },
+
+    /**
+     * Evaluator that computes the travel distance from the depot and the
+     * weighted tardiness of a route, similar to the evaluators that are used
+     * for real problems.
+     */
+    DISTANCE {
+      @Override
+      RouteEvaluator<BenchmarkInstance, Integer> evaluator() {
+        return new RouteEvaluator<BenchmarkInstance, Integer>() {
+          @Override
+          public double computeCost(BenchmarkInstance context, int routeIndex,
+              ImmutableList<Integer> newRoute) {
+            double x = DEPOT;
+            double y = DEPOT;
+            double time = 0;
+            double distance = 0;
+            double tardiness = 0;
+            for (int i = 0; i < newRoute.size(); i++) {
+              final int item = newRoute.get(i);
+              final double dist = Math.hypot(context.xs[item] - x,
+                context.ys[item] - y);
+              distance += dist;
+              time += dist / SPEED;
+              tardiness += Math.max(0, time - context.dueTimes[item]);
+              x = context.xs[item];
+              y = context.ys[item];
+            }
+            distance += Math.hypot(DEPOT - x, DEPOT - y);
+            return distance + TARDINESS_WEIGHT * tardiness;
+          }
+        };
+      }
+    };
+
+    abstract RouteEvaluator<BenchmarkInstance, Integer> evaluator();
+  }
+}
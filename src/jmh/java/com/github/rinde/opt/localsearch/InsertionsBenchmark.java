@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.rinde.opt.localsearch.Insertions.InsertionIndexCursor;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Benchmarks the enumeration of all insertions of an item in a route.
+ * @author Rinde van Lon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsertionsBenchmark {
+  @Param({"10", "20", "40"})
+  int routeLength;
+
+  @Param({"1", "2"})
+  int numInsertions;
+
+  ImmutableList<Integer> route;
+
+  /**
+   * Creates the route.
+   */
+  @Setup
+  public void setUp() {
+    final ImmutableList.Builder<Integer> builder = ImmutableList.builder();
+    for (int i = 0; i < routeLength; i++) {
+      builder.add(i);
+    }
+    route = builder.build();
+  }
+
+  /**
+   * Constructs every route that is the result of an insertion.
+   * @param bh Consumes the routes.
+   */
+  @Benchmark
+  public void insertionsIterator(Blackhole bh) {
+    final Iterator<ImmutableList<Integer>> it =
+      Insertions.insertionsIterator(route, -1, 0, numInsertions);
+    while (it.hasNext()) {
+      bh.consume(it.next());
+    }
+  }
+
+  /**
+   * Enumerates the insertion indices without constructing the routes.
+   * @param bh Consumes the indices.
+   */
+  @Benchmark
+  public void insertionIndexCursor(Blackhole bh) {
+    final InsertionIndexCursor cursor =
+      Insertions.insertionIndexCursor(numInsertions, routeLength, 0);
+    while (cursor.advance()) {
+      bh.consume(cursor.get(0));
+    }
+  }
+}
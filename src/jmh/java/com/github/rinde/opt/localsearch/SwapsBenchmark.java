@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.rinde.opt.localsearch.BenchmarkInstance.EvaluatorType;
+import com.github.rinde.opt.localsearch.Swaps.Swap;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Benchmarks the swap neighborhood and the 2-opt procedures of {@link Swaps}
+ * on synthetic schedules. Run with the GC profiler (<code>-prof gc</code>) to
+ * see the allocation rate.
+ * @author Rinde van Lon
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SwapsBenchmark {
+  static final long SEED = 123L;
+
+  @Param({"5", "10"})
+  int rows;
+
+  @Param({"10", "20"})
+  int routeLength;
+
+  @Param({"TRIVIAL", "DISTANCE"})
+  EvaluatorType evaluatorType;
+
+  BenchmarkInstance instance;
+  RouteEvaluator<BenchmarkInstance, Integer> evaluator;
+  Schedule<BenchmarkInstance, Integer> schedule;
+  List<Swap<Integer>> swaps;
+  RouteCostCache<Integer> disabledCache;
+  int swapIndex;
+
+  /**
+   * Creates the schedule and enumerates its swap neighborhood.
+   */
+  @Setup
+  public void setUp() {
+    instance = BenchmarkInstance.create(rows, routeLength, SEED);
+    evaluator = evaluatorType.evaluator();
+    schedule = Schedule.create(instance, instance.schedule,
+      instance.startIndices, evaluator);
+    swaps = Lists.newArrayList(Swaps.swapIterator(schedule));
+    // every evaluation should compute the cost of the route(s)
+    disabledCache = RouteCostCache.create(0);
+    swapIndex = 0;
+  }
+
+  /**
+   * Evaluates a single swap, successive invocations cycle through the entire
+   * neighborhood.
+   * @return The result of the swap.
+   */
+  @Benchmark
+  public Optional<Schedule<BenchmarkInstance, Integer>> swap() {
+    final Swap<Integer> swap = swaps.get(swapIndex);
+    swapIndex = (swapIndex + 1) % swaps.size();
+    return Swaps.swap(schedule, swap, 0d, disabledCache);
+  }
+
+  /**
+   * Enumerates the entire swap neighborhood without evaluating the swaps.
+   * @param bh Consumes the swaps.
+   */
+  @Benchmark
+  public void swapIterator(Blackhole bh) {
+    final Iterator<Swap<Integer>> it = Swaps.swapIterator(schedule);
+    while (it.hasNext()) {
+      bh.consume(it.next());
+    }
+  }
+
+  /**
+   * A complete breadth-first 2-opt search.
+   * @return The improved schedule.
+   * @throws InterruptedException Should not happen.
+   */
+  @Benchmark
+  public ImmutableList<ImmutableList<Integer>> bfsOpt2()
+      throws InterruptedException {
+    return Swaps.bfsOpt2(instance.schedule, instance.startIndices, instance,
+      evaluator, Optional.<ProgressListener<Integer>>absent());
+  }
+
+  /**
+   * A complete depth-first 2-opt search, every invocation uses the same seed.
+   * @return The improved schedule.
+   * @throws InterruptedException Should not happen.
+   */
+  @Benchmark
+  public ImmutableList<ImmutableList<Integer>> dfsOpt2()
+      throws InterruptedException {
+    return Swaps.dfsOpt2(instance.schedule, instance.startIndices, instance,
+      evaluator, new MersenneTwister(SEED),
+      Optional.<ProgressListener<Integer>>absent());
+  }
+}
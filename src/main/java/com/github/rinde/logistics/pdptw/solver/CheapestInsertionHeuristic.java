@@ -18,28 +18,55 @@ package com.github.rinde.logistics.pdptw.solver;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Verify.verifyNotNull;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import javax.annotation.Nullable;
+
+import com.github.rinde.opt.localsearch.IncrementalRouteEvaluator;
 import com.github.rinde.opt.localsearch.Insertions;
+import com.github.rinde.opt.localsearch.Insertions.InsertionIndexCursor;
+import com.github.rinde.opt.localsearch.PreparedRoute;
+import com.github.rinde.opt.localsearch.RouteEvaluator;
 import com.github.rinde.rinsim.central.GlobalStateObject;
 import com.github.rinde.rinsim.central.GlobalStateObject.VehicleStateObject;
 import com.github.rinde.rinsim.central.GlobalStateObjects;
 import com.github.rinde.rinsim.central.Solver;
-import com.github.rinde.rinsim.central.Solvers;
 import com.github.rinde.rinsim.core.model.pdp.Parcel;
 import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
 import com.github.rinde.rinsim.util.StochasticSupplier;
 import com.github.rinde.rinsim.util.StochasticSuppliers;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableSet;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
 
 /**
- * An implementation of a cheapest insertion heuristic.
+ * An implementation of a cheapest insertion heuristic. Optionally, the
+ * cheapest insertion in each vehicle is computed in parallel, the result is
+ * exactly the same as the result of the sequential version. All instances with
+ * the same parallelism share a single {@link ForkJoinPool}.
+ * <p>
+ * By default the parcels are inserted in iteration order of
+ * {@link GlobalStateObjects#unassignedParcels(GlobalStateObject)}. The
+ * <i>best-first</i> variant (see {@link #bestFirstSupplier(ObjectiveFunction)})
+ * instead inserts the parcel with the overall cheapest insertion first, it
+ * keeps a table with the cheapest insertion of every (parcel, vehicle) pair
+ * and after each insertion only the column of the modified vehicle is
+ * recomputed.
  * @author Rinde van Lon
  */
 public class CheapestInsertionHeuristic implements Solver {
 
   private final ObjectiveFunction objectiveFunction;
+  private final Optional<ForkJoinPool> pool;
+  private final boolean bestFirst;
 
   /**
    * Creates a new instance.
@@ -47,13 +74,44 @@ public class CheapestInsertionHeuristic implements Solver {
    *          schedule.
    */
   public CheapestInsertionHeuristic(ObjectiveFunction objFunc) {
+    this(objFunc, 1);
+  }
+
+  /**
+   * Creates a new instance that computes the cheapest insertion of the
+   * vehicles in parallel.
+   * @param objFunc The objective function used to calculate the cost of a
+   *          schedule.
+   * @param parallelism The number of threads, must be positive. If
+   *          <code>1</code> the vehicles are evaluated sequentially.
+   */
+  public CheapestInsertionHeuristic(ObjectiveFunction objFunc,
+      int parallelism) {
+    this(objFunc, parallelism, false);
+  }
+
+  CheapestInsertionHeuristic(ObjectiveFunction objFunc, int parallelism,
+      boolean bestFirstOrder) {
+    checkArgument(parallelism > 0,
+      "Parallelism must be a positive number, found %s.", parallelism);
     objectiveFunction = objFunc;
+    pool = parallelism > 1
+      ? Optional.of(ForkJoinPools.get(parallelism))
+      : Optional.<ForkJoinPool>absent();
+    bestFirst = bestFirstOrder;
   }
 
   @Override
   public ImmutableList<ImmutableList<Parcel>> solve(GlobalStateObject state)
       throws InterruptedException {
-    return decomposed(state, objectiveFunction);
+    final RouteEvaluator<GlobalStateObject, Parcel> evaluator =
+      ParcelRouteEvaluator.create(objectiveFunction);
+    if (bestFirst) {
+      return insertBestFirst(state, createSchedule(state),
+        GlobalStateObjects.unassignedParcels(state), evaluator, pool);
+    }
+    return insert(state, createSchedule(state),
+      GlobalStateObjects.unassignedParcels(state), evaluator, pool);
   }
 
   /**
@@ -87,11 +145,10 @@ public class CheapestInsertionHeuristic implements Solver {
 
   static ImmutableList<Double> decomposedCost(GlobalStateObject state,
       ImmutableList<ImmutableList<Parcel>> schedule,
-      ObjectiveFunction objFunc) {
+      RouteEvaluator<GlobalStateObject, Parcel> evaluator) {
     final ImmutableList.Builder<Double> builder = ImmutableList.builder();
     for (int i = 0; i < schedule.size(); i++) {
-      builder.add(objFunc.computeCost(Solvers.computeStats(
-        state.withSingleVehicle(i), ImmutableList.of(schedule.get(i)))));
+      builder.add(evaluator.computeCost(state, i, schedule.get(i)));
     }
     return builder.build();
   }
@@ -99,49 +156,366 @@ public class CheapestInsertionHeuristic implements Solver {
   static ImmutableList<ImmutableList<Parcel>> decomposed(
       GlobalStateObject state, ObjectiveFunction objFunc)
           throws InterruptedException {
-    ImmutableList<ImmutableList<Parcel>> schedule = createSchedule(state);
-    ImmutableList<Double> costs = decomposedCost(state, schedule, objFunc);
-    final ImmutableSet<Parcel> newParcels =
-      GlobalStateObjects.unassignedParcels(state);
+    return decomposed(state, ParcelRouteEvaluator.create(objFunc));
+  }
+
+  /**
+   * Cheapest insertion using the specified evaluator. If the evaluator is an
+   * {@link IncrementalRouteEvaluator} the insertion costs are computed using
+   * {@link PreparedRoute}s, which avoids evaluating every candidate route from
+   * scratch.
+   * @param state The state that specifies the problem to be solved.
+   * @param evaluator The evaluator that computes the cost of a route.
+   * @return A list of routes, one for every vehicle in the GlobalStateObject.
+   * @throws InterruptedException When the computation is interrupted.
+   */
+  static ImmutableList<ImmutableList<Parcel>> decomposed(
+      GlobalStateObject state,
+      RouteEvaluator<GlobalStateObject, Parcel> evaluator)
+          throws InterruptedException {
+    return insert(state, createSchedule(state),
+      GlobalStateObjects.unassignedParcels(state), evaluator);
+  }
+
+  /**
+   * Inserts the specified parcels one by one (in iteration order) at their
+   * cheapest position in the specified schedule. The pickup and delivery of
+   * each parcel are inserted in the same route, the first position of a route
+   * is not changed when the vehicle has a destination.
+   * @param state The state that specifies the problem to be solved.
+   * @param initialSchedule The schedule in which the parcels are inserted, it
+   *          should not contain any of the parcels.
+   * @param parcels The parcels to insert.
+   * @param evaluator The evaluator that computes the cost of a route.
+   * @return A list of routes, one for every vehicle in the GlobalStateObject.
+   * @throws InterruptedException When the computation is interrupted.
+   */
+  static ImmutableList<ImmutableList<Parcel>> insert(GlobalStateObject state,
+      ImmutableList<ImmutableList<Parcel>> initialSchedule,
+      Iterable<Parcel> parcels,
+      RouteEvaluator<GlobalStateObject, Parcel> evaluator)
+          throws InterruptedException {
+    return insert(state, initialSchedule, parcels, evaluator,
+      Optional.<ForkJoinPool>absent());
+  }
+
+  /**
+   * Variant of {@link #insert(GlobalStateObject, ImmutableList, Iterable, RouteEvaluator)}
+   * that optionally computes the cheapest insertion of each vehicle in
+   * parallel. The per-vehicle results are reduced in vehicle order and ties
+   * are resolved in favor of the first vehicle, exactly as in the sequential
+   * version, the result is therefore independent of the parallelism.
+   * @param state The state that specifies the problem to be solved.
+   * @param initialSchedule The schedule in which the parcels are inserted, it
+   *          should not contain any of the parcels.
+   * @param parcels The parcels to insert.
+   * @param evaluator The evaluator that computes the cost of a route, must be
+   *          thread-safe if a pool is used.
+   * @param pool The pool in which the vehicles are evaluated, if absent the
+   *          vehicles are evaluated sequentially.
+   * @return A list of routes, one for every vehicle in the GlobalStateObject.
+   * @throws InterruptedException When the computation is interrupted.
+   */
+  @SuppressWarnings("unchecked")
+  static ImmutableList<ImmutableList<Parcel>> insert(GlobalStateObject state,
+      ImmutableList<ImmutableList<Parcel>> initialSchedule,
+      Iterable<Parcel> parcels,
+      RouteEvaluator<GlobalStateObject, Parcel> evaluator,
+      Optional<ForkJoinPool> pool)
+          throws InterruptedException {
+    ImmutableList<ImmutableList<Parcel>> schedule = initialSchedule;
+    ImmutableList<Double> costs = decomposedCost(state, schedule, evaluator);
+    final List<PreparedRoute<Parcel>> preparedRoutes =
+      prepare(state, schedule, evaluator);
+    final InsertionIndexCursor cursor =
+      Insertions.insertionIndexCursor(2, 0, 0);
     // all new parcels need to be inserted in the plan
-    for (final Parcel p : newParcels) {
-      double cheapestInsertion = Double.POSITIVE_INFINITY;
-      ImmutableList<Parcel> cheapestRoute = null;
-      double cheapestRouteCost = 0;
-      int cheapestRouteIndex = -1;
-
-      for (int i = 0; i < state.getVehicles().size(); i++) {
-        final int startIndex = state.getVehicles().get(i).getDestination()
-          .isPresent() ? 1 : 0;
-
-        final Iterator<ImmutableList<Parcel>> insertions = Insertions
-          .insertionsIterator(schedule.get(i), p, startIndex, 2);
-
-        while (insertions.hasNext()) {
-          if (Thread.interrupted()) {
-            throw new InterruptedException();
-          }
-
-          final ImmutableList<Parcel> r = insertions.next();
-          final double absCost = objFunc.computeCost(Solvers
-            .computeStats(state.withSingleVehicle(i), ImmutableList.of(r)));
-
-          final double insertionCost = absCost - costs.get(i);
-          if (insertionCost < cheapestInsertion) {
-            cheapestInsertion = insertionCost;
-            cheapestRoute = r;
-            cheapestRouteIndex = i;
-            cheapestRouteCost = absCost;
-          }
+    for (final Parcel p : parcels) {
+      final List<VehicleInsertion> insertions;
+      if (pool.isPresent()) {
+        insertions = cheapestInsertions(state, schedule, costs,
+          preparedRoutes, evaluator, p, pool.get());
+      } else {
+        insertions = new ArrayList<>();
+        for (int i = 0; i < schedule.size(); i++) {
+          insertions.add(cheapestInsertion(state, i, schedule.get(i),
+            costs.get(i), preparedRoutes.isEmpty() ? null
+              : preparedRoutes.get(i), evaluator, p, cursor));
         }
       }
-      schedule = modifySchedule(schedule, verifyNotNull(cheapestRoute),
-        cheapestRouteIndex);
-      costs = modifyCosts(costs, cheapestRouteCost, cheapestRouteIndex);
+
+      final VehicleInsertion cheapest = verifyNotNull(cheapest(insertions));
+      final int cheapestRouteIndex = cheapest.vehicleIndex;
+      final ImmutableList<Parcel> cheapestRoute = Insertions.insert(
+        schedule.get(cheapestRouteIndex), verifyNotNull(cheapest.indices), p);
+      schedule = modifySchedule(schedule, cheapestRoute, cheapestRouteIndex);
+      costs = modifyCosts(costs, cheapest.routeCost, cheapestRouteIndex);
+      if (!preparedRoutes.isEmpty()) {
+        preparedRoutes.set(cheapestRouteIndex,
+          ((IncrementalRouteEvaluator<GlobalStateObject, Parcel>) evaluator)
+            .prepare(state, cheapestRouteIndex, cheapestRoute));
+      }
     }
     return schedule;
   }
 
+  /**
+   * Best-first variant of
+   * {@link #insert(GlobalStateObject, ImmutableList, Iterable, RouteEvaluator, Optional)}
+   * : in each step the parcel with the overall cheapest insertion is inserted.
+   * The cheapest insertion of every (parcel, vehicle) pair is kept in a table,
+   * since the cost of a route only depends on the route itself only the
+   * column of the vehicle that was modified needs to be recomputed after an
+   * insertion. Ties are resolved in favor of the first parcel (in iteration
+   * order) and the first vehicle.
+   * @param state The state that specifies the problem to be solved.
+   * @param initialSchedule The schedule in which the parcels are inserted, it
+   *          should not contain any of the parcels.
+   * @param parcels The parcels to insert.
+   * @param evaluator The evaluator that computes the cost of a route, must be
+   *          thread-safe if a pool is used.
+   * @param pool The pool in which the table is computed, if absent the table
+   *          is computed sequentially.
+   * @return A list of routes, one for every vehicle in the GlobalStateObject.
+   * @throws InterruptedException When the computation is interrupted.
+   */
+  @SuppressWarnings("unchecked")
+  static ImmutableList<ImmutableList<Parcel>> insertBestFirst(
+      GlobalStateObject state,
+      ImmutableList<ImmutableList<Parcel>> initialSchedule,
+      Iterable<Parcel> parcels,
+      RouteEvaluator<GlobalStateObject, Parcel> evaluator,
+      Optional<ForkJoinPool> pool)
+          throws InterruptedException {
+    ImmutableList<ImmutableList<Parcel>> schedule = initialSchedule;
+    ImmutableList<Double> costs = decomposedCost(state, schedule, evaluator);
+    final List<PreparedRoute<Parcel>> preparedRoutes =
+      prepare(state, schedule, evaluator);
+
+    // table.get(j).get(i) is the cheapest insertion of parcel j in vehicle i
+    final List<Parcel> remaining = new ArrayList<>();
+    final List<List<VehicleInsertion>> table = new ArrayList<>();
+    final InsertionIndexCursor cursor =
+      Insertions.insertionIndexCursor(2, 0, 0);
+    for (final Parcel p : parcels) {
+      remaining.add(p);
+      if (pool.isPresent()) {
+        table.add(cheapestInsertions(state, schedule, costs, preparedRoutes,
+          evaluator, p, pool.get()));
+      } else {
+        final List<VehicleInsertion> row = new ArrayList<>();
+        for (int i = 0; i < schedule.size(); i++) {
+          row.add(cheapestInsertion(state, i, schedule.get(i), costs.get(i),
+            preparedRoutes.isEmpty() ? null : preparedRoutes.get(i),
+            evaluator, p, cursor));
+        }
+        table.add(row);
+      }
+    }
+
+    while (!remaining.isEmpty()) {
+      int cheapestParcel = -1;
+      VehicleInsertion cheapest = null;
+      for (int j = 0; j < remaining.size(); j++) {
+        final VehicleInsertion insertion = cheapest(table.get(j));
+        if (insertion != null && (cheapest == null
+          || insertion.insertionCost < cheapest.insertionCost)) {
+          cheapest = insertion;
+          cheapestParcel = j;
+        }
+      }
+      verifyNotNull(cheapest, "No feasible insertion for %s.", remaining);
+      final Parcel p = remaining.remove(cheapestParcel);
+      table.remove(cheapestParcel);
+
+      final int cheapestRouteIndex = cheapest.vehicleIndex;
+      final ImmutableList<Parcel> cheapestRoute = Insertions.insert(
+        schedule.get(cheapestRouteIndex), verifyNotNull(cheapest.indices), p);
+      schedule = modifySchedule(schedule, cheapestRoute, cheapestRouteIndex);
+      costs = modifyCosts(costs, cheapest.routeCost, cheapestRouteIndex);
+      if (!preparedRoutes.isEmpty()) {
+        preparedRoutes.set(cheapestRouteIndex,
+          ((IncrementalRouteEvaluator<GlobalStateObject, Parcel>) evaluator)
+            .prepare(state, cheapestRouteIndex, cheapestRoute));
+      }
+
+      // only the column of the modified vehicle has changed
+      final List<VehicleInsertion> column = cheapestInsertions(state,
+        cheapestRouteIndex, cheapestRoute, costs.get(cheapestRouteIndex),
+        preparedRoutes.isEmpty() ? null
+          : preparedRoutes.get(cheapestRouteIndex),
+        evaluator, remaining, pool, cursor);
+      for (int j = 0; j < remaining.size(); j++) {
+        table.get(j).set(cheapestRouteIndex, column.get(j));
+      }
+    }
+    return schedule;
+  }
+
+  // the first cheapest feasible insertion in vehicle order, or null if there
+  // is no feasible insertion
+  @Nullable
+  static VehicleInsertion cheapest(List<VehicleInsertion> insertions) {
+    VehicleInsertion cheapest = null;
+    for (final VehicleInsertion insertion : insertions) {
+      if (insertion.indices != null && (cheapest == null
+        || insertion.insertionCost < cheapest.insertionCost)) {
+        cheapest = insertion;
+      }
+    }
+    return cheapest;
+  }
+
+  /**
+   * Computes the cheapest insertion of the parcel in a single route. Ties are
+   * resolved in favor of the first insertion (in cursor order).
+   * @param state The state.
+   * @param vehicleIndex The index of the vehicle.
+   * @param route The route of the vehicle.
+   * @param routeCost The cost of the route.
+   * @param preparedRoute The prepared route or <code>null</code> if the
+   *          evaluator is not incremental.
+   * @param evaluator The evaluator.
+   * @param p The parcel to insert.
+   * @param cursor The cursor that is used to enumerate the insertions.
+   * @return The cheapest insertion, the indices are <code>null</code> if there
+   *         is no insertion with a cost lower than infinity.
+   * @throws InterruptedException When the computation is interrupted.
+   */
+  static VehicleInsertion cheapestInsertion(GlobalStateObject state,
+      int vehicleIndex, ImmutableList<Parcel> route, double routeCost,
+      @Nullable PreparedRoute<Parcel> preparedRoute,
+      RouteEvaluator<GlobalStateObject, Parcel> evaluator, Parcel p,
+      InsertionIndexCursor cursor) throws InterruptedException {
+    final int startIndex = state.getVehicles().get(vehicleIndex)
+      .getDestination().isPresent() ? 1 : 0;
+
+    final VehicleInsertion cheapest = new VehicleInsertion(vehicleIndex);
+    cursor.reset(route.size(), startIndex);
+    while (cursor.advance()) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+
+      final IntList indices = cursor.indices();
+      final double absCost;
+      if (preparedRoute == null) {
+        absCost = evaluator.computeCost(state, vehicleIndex,
+          Insertions.insert(route, indices, p));
+      } else {
+        absCost = preparedRoute.insertionCost(p, indices);
+      }
+
+      final double insertionCost = absCost - routeCost;
+      if (insertionCost < cheapest.insertionCost) {
+        cheapest.insertionCost = insertionCost;
+        cheapest.indices = new IntArrayList(indices);
+        cheapest.routeCost = absCost;
+      }
+    }
+    return cheapest;
+  }
+
+  // computes the cheapest insertion of every vehicle in the pool, the result
+  // is in vehicle order
+  static List<VehicleInsertion> cheapestInsertions(
+      final GlobalStateObject state,
+      final ImmutableList<ImmutableList<Parcel>> schedule,
+      final ImmutableList<Double> costs,
+      final List<PreparedRoute<Parcel>> preparedRoutes,
+      final RouteEvaluator<GlobalStateObject, Parcel> evaluator,
+      final Parcel p,
+      ForkJoinPool pool) throws InterruptedException {
+    final List<Callable<VehicleInsertion>> tasks = new ArrayList<>();
+    for (int i = 0; i < schedule.size(); i++) {
+      final int vehicleIndex = i;
+      tasks.add(new Callable<VehicleInsertion>() {
+        @Override
+        public VehicleInsertion call() throws InterruptedException {
+          return cheapestInsertion(state, vehicleIndex,
+            schedule.get(vehicleIndex), costs.get(vehicleIndex),
+            preparedRoutes.isEmpty() ? null
+              : preparedRoutes.get(vehicleIndex),
+            evaluator, p, Insertions.insertionIndexCursor(2, 0, 0));
+        }
+      });
+    }
+    final List<VehicleInsertion> insertions = new ArrayList<>();
+    try {
+      for (final Future<VehicleInsertion> future : pool.invokeAll(tasks)) {
+        insertions.add(future.get());
+      }
+    } catch (final ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    return insertions;
+  }
+
+  // computes the cheapest insertion of every parcel in a single vehicle, the
+  // result is in parcel order
+  static List<VehicleInsertion> cheapestInsertions(
+      final GlobalStateObject state,
+      final int vehicleIndex,
+      final ImmutableList<Parcel> route,
+      final double routeCost,
+      @Nullable final PreparedRoute<Parcel> preparedRoute,
+      final RouteEvaluator<GlobalStateObject, Parcel> evaluator,
+      List<Parcel> parcels,
+      Optional<ForkJoinPool> pool,
+      InsertionIndexCursor cursor) throws InterruptedException {
+    final List<VehicleInsertion> insertions = new ArrayList<>();
+    if (!pool.isPresent()) {
+      for (final Parcel p : parcels) {
+        insertions.add(cheapestInsertion(state, vehicleIndex, route,
+          routeCost, preparedRoute, evaluator, p, cursor));
+      }
+      return insertions;
+    }
+    final List<Callable<VehicleInsertion>> tasks = new ArrayList<>();
+    for (final Parcel p : parcels) {
+      tasks.add(new Callable<VehicleInsertion>() {
+        @Override
+        public VehicleInsertion call() throws InterruptedException {
+          return cheapestInsertion(state, vehicleIndex, route, routeCost,
+            preparedRoute, evaluator, p,
+            Insertions.insertionIndexCursor(2, 0, 0));
+        }
+      });
+    }
+    try {
+      for (final Future<VehicleInsertion> future : pool.get()
+        .invokeAll(tasks)) {
+        insertions.add(future.get());
+      }
+    } catch (final ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    return insertions;
+  }
+
+  // prepares all routes if the evaluator is incremental, returns an empty list
+  // otherwise
+  @SuppressWarnings("unchecked")
+  static List<PreparedRoute<Parcel>> prepare(GlobalStateObject state,
+      ImmutableList<ImmutableList<Parcel>> schedule,
+      RouteEvaluator<GlobalStateObject, Parcel> evaluator) {
+    final List<PreparedRoute<Parcel>> preparedRoutes = new ArrayList<>();
+    if (evaluator instanceof IncrementalRouteEvaluator) {
+      final IncrementalRouteEvaluator<GlobalStateObject, Parcel> eval =
+        (IncrementalRouteEvaluator<GlobalStateObject, Parcel>) evaluator;
+      for (int i = 0; i < schedule.size(); i++) {
+        preparedRoutes.add(eval.prepare(state, i, schedule.get(i)));
+      }
+    }
+    return preparedRoutes;
+  }
+
   static ImmutableList<Double> modifyCosts(ImmutableList<Double> costs,
       double newCost, int index) {
     return ImmutableList.<Double>builder().addAll(costs.subList(0, index))
@@ -197,4 +571,93 @@ public class CheapestInsertionHeuristic implements Solver {
     };
   }
 
+  /**
+   * @param objFunc The objective function used to calculate the cost of a
+   *          schedule.
+   * @param parallelism The number of threads that is used to evaluate the
+   *          vehicles, must be positive. The result is independent of the
+   *          parallelism.
+   * @return A {@link StochasticSupplier} that supplies
+   *         {@link CheapestInsertionHeuristic} instances.
+   */
+  public static StochasticSupplier<Solver> supplier(
+      final ObjectiveFunction objFunc, final int parallelism) {
+    checkArgument(parallelism > 0,
+      "Parallelism must be a positive number, found %s.", parallelism);
+    if (parallelism == 1) {
+      return supplier(objFunc);
+    }
+    return new StochasticSuppliers.AbstractStochasticSupplier<Solver>() {
+      private static final long serialVersionUID = -5040487939286178307L;
+
+      @Override
+      public Solver get(long seed) {
+        return new CheapestInsertionHeuristic(objFunc, parallelism);
+      }
+
+      @Override
+      public String toString() {
+        return "CIH(" + objFunc + ",parallelism=" + parallelism + ")";
+      }
+    };
+  }
+
+  /**
+   * @param objFunc The objective function used to calculate the cost of a
+   *          schedule.
+   * @return A {@link StochasticSupplier} that supplies <i>best-first</i>
+   *         {@link CheapestInsertionHeuristic} instances, these insert the
+   *         parcel with the overall cheapest insertion first.
+   */
+  public static StochasticSupplier<Solver> bestFirstSupplier(
+      ObjectiveFunction objFunc) {
+    return bestFirstSupplier(objFunc, 1);
+  }
+
+  /**
+   * @param objFunc The objective function used to calculate the cost of a
+   *          schedule.
+   * @param parallelism The number of threads that is used to compute the
+   *          insertion costs, must be positive. The result is independent of
+   *          the parallelism.
+   * @return A {@link StochasticSupplier} that supplies <i>best-first</i>
+   *         {@link CheapestInsertionHeuristic} instances, these insert the
+   *         parcel with the overall cheapest insertion first.
+   */
+  public static StochasticSupplier<Solver> bestFirstSupplier(
+      final ObjectiveFunction objFunc, final int parallelism) {
+    checkArgument(parallelism > 0,
+      "Parallelism must be a positive number, found %s.", parallelism);
+    return new StochasticSuppliers.AbstractStochasticSupplier<Solver>() {
+      private static final long serialVersionUID = 3281305613720953180L;
+
+      @Override
+      public Solver get(long seed) {
+        return new CheapestInsertionHeuristic(objFunc, parallelism, true);
+      }
+
+      @Override
+      public String toString() {
+        return "CIHBestFirst(" + objFunc
+          + (parallelism > 1 ? ",parallelism=" + parallelism : "") + ")";
+      }
+    };
+  }
+
+  /**
+   * The cheapest insertion of a parcel in a single vehicle.
+   */
+  static final class VehicleInsertion {
+    final int vehicleIndex;
+    double insertionCost;
+    @Nullable
+    IntList indices;
+    double routeCost;
+
+    VehicleInsertion(int index) {
+      vehicleIndex = index;
+      insertionCost = Double.POSITIVE_INFINITY;
+    }
+  }
+
 }
@@ -0,0 +1,753 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Verify.verifyNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.github.rinde.logistics.pdptw.solver.CheapestInsertionHeuristic.VehicleInsertion;
+import com.github.rinde.logistics.pdptw.solver.Opt2.AbstractOpt2Solver;
+import com.github.rinde.opt.localsearch.IncrementalRouteEvaluator;
+import com.github.rinde.opt.localsearch.Insertions;
+import com.github.rinde.opt.localsearch.Insertions.InsertionIndexCursor;
+import com.github.rinde.opt.localsearch.PreparedRoute;
+import com.github.rinde.opt.localsearch.ProgressListener;
+import com.github.rinde.opt.localsearch.RouteEvaluator;
+import com.github.rinde.opt.localsearch.Swaps;
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.GlobalStateObject.VehicleStateObject;
+import com.github.rinde.rinsim.central.GlobalStateObjects;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.central.rt.RealtimeSolver;
+import com.github.rinde.rinsim.central.rt.RtStAdapters;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.geom.Point;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.github.rinde.rinsim.util.StochasticSuppliers;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+
+/**
+ * Geographic decomposition for large fleets: the vehicles are divided into
+ * clusters using the sweep algorithm, each cluster is solved independently (and
+ * in parallel) by a {@link ClusterSolver}, after which a boundary repair pass
+ * moves parcels between the routes of neighboring clusters.
+ * <p>
+ * The sweep sorts the vehicles by the angle of their position around the
+ * centroid of the depots (the position of a vehicle is its location, or the
+ * centroid of the parcels in its route when it is at the center) and cuts the
+ * sorted vehicles into clusters of (nearly) equal size. Idle vehicles at the
+ * center are spread evenly over all angles. Unassigned parcels are assigned
+ * to the cluster with the nearest mean angle, parcels that are in the route of
+ * a vehicle stay in that route. A cluster is solved against the complete
+ * state, the cluster solver only changes the routes of the vehicles of the
+ * cluster and only inserts the parcels of the cluster. The repair pass
+ * relocates parcels that are not yet picked up from one cluster to a vehicle
+ * of a neighboring cluster (in sweep order) when this decreases the cost
+ * according to the objective function.
+ * @author Rinde van Lon
+ */
+public final class DecompositionSolver {
+  /**
+   * The default maximum number of vehicles in a cluster.
+   */
+  public static final int DEFAULT_CLUSTER_SIZE = 10;
+
+  static final double EPSILON = 1e-9;
+
+  private DecompositionSolver() {}
+
+  /**
+   * @return A new builder with the default options, a delegate and an
+   *         objective function are required.
+   */
+  public static Builder builder() {
+    return Builder.create(null, null, DEFAULT_CLUSTER_SIZE, 0, true);
+  }
+
+  /**
+   * Cluster solver that inserts the parcels of the cluster one by one (in
+   * iteration order) at their cheapest position in the routes of the vehicles
+   * of the cluster. A decomposition with a single cluster gives the same
+   * result as {@link CheapestInsertionHeuristic}.
+   * @return A supplier of cheapest insertion cluster solvers.
+   */
+  public static StochasticSupplier<ClusterSolver> cheapestInsertion() {
+    return new StochasticSuppliers.AbstractStochasticSupplier<ClusterSolver>() {
+      private static final long serialVersionUID = -2307945312848211402L;
+
+      @Override
+      public ClusterSolver get(long seed) {
+        return new ClusterInsertion();
+      }
+
+      @Override
+      public String toString() {
+        return "CIH";
+      }
+    };
+  }
+
+  /**
+   * Cluster solver that improves the result of {@link #cheapestInsertion()}
+   * using breadth-first 2-opt, only the routes of the vehicles of the cluster
+   * are considered.
+   * @return A supplier of 2-opt cluster solvers.
+   */
+  public static StochasticSupplier<ClusterSolver> opt2() {
+    return new StochasticSuppliers.AbstractStochasticSupplier<ClusterSolver>() {
+      private static final long serialVersionUID = 6409914393125834715L;
+
+      @Override
+      public ClusterSolver get(long seed) {
+        return new ClusterOpt2();
+      }
+
+      @Override
+      public String toString() {
+        return "CIH-bfsOpt2";
+      }
+    };
+  }
+
+  /**
+   * Solves a single cluster of a {@link DecompositionSolver}. The cluster is
+   * solved against the complete state, an implementation may only change the
+   * routes of the vehicles of the cluster. Implementations do not need to be
+   * thread-safe, every cluster gets its own instance.
+   * @author Rinde van Lon
+   */
+  public interface ClusterSolver {
+    /**
+     * Computes the routes of the vehicles of a cluster.
+     * @param state The complete state.
+     * @param evaluator The evaluator that computes the cost of a route, it is
+     *          shared by all clusters.
+     * @param vehicles The indices of the vehicles of the cluster in the
+     *          complete state.
+     * @param parcels The unassigned parcels of the cluster, every parcel must
+     *          be inserted in the route of one of the vehicles.
+     * @return A list of routes, one for every vehicle of the cluster (in the
+     *         order of <code>vehicles</code>).
+     * @throws InterruptedException When the computation is interrupted.
+     */
+    ImmutableList<ImmutableList<Parcel>> solve(GlobalStateObject state,
+        RouteEvaluator<GlobalStateObject, Parcel> evaluator, IntList vehicles,
+        Set<Parcel> parcels) throws InterruptedException;
+  }
+
+  /**
+   * Builder for decomposition solvers.
+   * @author Rinde van Lon
+   */
+  @AutoValue
+  public abstract static class Builder {
+
+    Builder() {}
+
+    @Nullable
+    abstract StochasticSupplier<ClusterSolver> solverSup();
+
+    @Nullable
+    abstract ObjectiveFunction objFunc();
+
+    abstract int clusterSize();
+
+    abstract int threads();
+
+    abstract boolean boundaryRepair();
+
+    /**
+     * Sets the solver that solves the clusters, for example
+     * {@link DecompositionSolver#cheapestInsertion()} or
+     * {@link DecompositionSolver#opt2()}. Every cluster gets its own instance.
+     * @param solverSupplier The supplier of the cluster solver.
+     * @return A new builder instance with the delegate set.
+     */
+    @CheckReturnValue
+    public Builder withDelegate(
+        StochasticSupplier<? extends ClusterSolver> solverSupplier) {
+      return create(solverSupplier, objFunc(), clusterSize(), threads(),
+        boundaryRepair());
+    }
+
+    /**
+     * @param of The objective function that is used by the cluster solvers
+     *          and by the boundary repair.
+     * @return A new builder instance with the objective function set.
+     */
+    @CheckReturnValue
+    public Builder withObjectiveFunction(ObjectiveFunction of) {
+      return create(solverSup(), of, clusterSize(), threads(),
+        boundaryRepair());
+    }
+
+    /**
+     * Sets the maximum number of vehicles in a cluster, the number of clusters
+     * is the number of vehicles divided by the cluster size (rounded up). A
+     * fleet that is not larger than the cluster size is solved by the delegate
+     * as a whole. The default is {@link DecompositionSolver#DEFAULT_CLUSTER_SIZE}.
+     * @param numVehicles The maximum number of vehicles, must be positive.
+     * @return A new builder instance with the cluster size set.
+     */
+    @CheckReturnValue
+    public Builder withClusterSize(int numVehicles) {
+      checkArgument(numVehicles > 0,
+        "Cluster size must be positive, found %s.", numVehicles);
+      return create(solverSup(), objFunc(), numVehicles, threads(),
+        boundaryRepair());
+    }
+
+    /**
+     * Sets the number of threads on which the clusters are solved. By default
+     * the number of available processors is used.
+     * @param numThreads The number of threads, must be positive.
+     * @return A new builder instance with the number of threads set.
+     */
+    @CheckReturnValue
+    public Builder withThreads(int numThreads) {
+      checkArgument(numThreads > 0,
+        "Number of threads must be positive, found %s.", numThreads);
+      return create(solverSup(), objFunc(), clusterSize(), numThreads,
+        boundaryRepair());
+    }
+
+    /**
+     * Disables the boundary repair pass, the schedule is the concatenation of
+     * the schedules of the clusters.
+     * @return A new builder instance without boundary repair.
+     */
+    @CheckReturnValue
+    public Builder withoutBoundaryRepair() {
+      return create(solverSup(), objFunc(), clusterSize(), threads(), false);
+    }
+
+    /**
+     * @return A supplier of decomposition solvers, the seed of the supplier
+     *         determines the seeds of the delegates. The result is
+     *         deterministic if the delegate is deterministic.
+     */
+    @CheckReturnValue
+    public StochasticSupplier<Solver> buildSolverSupplier() {
+      final StochasticSupplier<ClusterSolver> delegate = solverSup();
+      checkArgument(delegate != null, "A delegate solver must be defined.");
+      final ObjectiveFunction objFunc = objFunc();
+      checkArgument(objFunc != null,
+        "An objective function must be defined.");
+      final int size = clusterSize();
+      final int numThreads = threads() > 0 ? threads()
+        : Runtime.getRuntime().availableProcessors();
+      final boolean repair = boundaryRepair();
+      return new StochasticSupplier<Solver>() {
+        @Override
+        public Solver get(long seed) {
+          return new Decomposition(seed, delegate, objFunc, size, numThreads,
+            repair);
+        }
+
+        @Override
+        public String toString() {
+          return Joiner.on("").join(DecompositionSolver.class.getSimpleName(),
+            "(", delegate, ")");
+        }
+      };
+    }
+
+    /**
+     * @return A supplier of real-time decomposition solvers, the solver is
+     *         executed on the executor of the scheduler and is cancelled
+     *         (including all clusters) when the problem changes.
+     */
+    @CheckReturnValue
+    public StochasticSupplier<RealtimeSolver> buildRealtimeSolverSupplier() {
+      return RtStAdapters.toRealtime(buildSolverSupplier());
+    }
+
+    @SuppressWarnings("unchecked")
+    static Builder create(
+        @Nullable StochasticSupplier<? extends ClusterSolver> solverSup,
+        @Nullable ObjectiveFunction objFunc,
+        int clusterSize,
+        int threads,
+        boolean boundaryRepair) {
+      return new AutoValue_DecompositionSolver_Builder(
+        (StochasticSupplier<ClusterSolver>) solverSup, objFunc, clusterSize,
+        threads, boundaryRepair);
+    }
+  }
+
+  static class Decomposition implements Solver {
+    final RandomGenerator rng;
+    final StochasticSupplier<ClusterSolver> delegate;
+    final List<ClusterSolver> solvers;
+    final RouteEvaluator<GlobalStateObject, Parcel> evaluator;
+    final int clusterSize;
+    final boolean boundaryRepair;
+    final int threads;
+    final ThreadFactory threadFactory;
+
+    Decomposition(long seed, StochasticSupplier<ClusterSolver> deleg,
+        ObjectiveFunction objFunc, int size, int numThreads, boolean repair) {
+      rng = new MersenneTwister(seed);
+      delegate = deleg;
+      solvers = new ArrayList<>();
+      evaluator = ParcelRouteEvaluator.create(objFunc);
+      clusterSize = size;
+      boundaryRepair = repair;
+      threads = numThreads;
+      threadFactory = new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("decomposition-%d")
+        .build();
+    }
+
+    @Override
+    public ImmutableList<ImmutableList<Parcel>> solve(
+        final GlobalStateObject state) throws InterruptedException {
+      final int numVehicles = state.getVehicles().size();
+      final int numClusters = (numVehicles + clusterSize - 1) / clusterSize;
+      if (numClusters <= 1) {
+        final IntList all = new IntArrayList();
+        for (int v = 0; v < numVehicles; v++) {
+          all.add(v);
+        }
+        return solver(0).solve(state, evaluator, all,
+          ImmutableSet.copyOf(GlobalStateObjects.unassignedParcels(state)));
+      }
+      final Clusters clusters = Clusters.sweep(state, numClusters);
+      final ImmutableList<Set<Parcel>> parcels = clusters.parcels(state);
+
+      final List<Callable<ImmutableList<ImmutableList<Parcel>>>> tasks =
+        new ArrayList<>();
+      for (int c = 0; c < numClusters; c++) {
+        final ClusterSolver solver = solver(c);
+        final IntList vehicles = clusters.vehicles.get(c);
+        final Set<Parcel> clusterParcels = parcels.get(c);
+        tasks.add(new Callable<ImmutableList<ImmutableList<Parcel>>>() {
+          @Override
+          public ImmutableList<ImmutableList<Parcel>> call()
+              throws InterruptedException {
+            return solver.solve(state, evaluator, vehicles, clusterParcels);
+          }
+        });
+      }
+
+      final List<ImmutableList<Parcel>> schedule =
+        new ArrayList<>(Collections.<ImmutableList<Parcel>>nCopies(
+          numVehicles, ImmutableList.<Parcel>of()));
+      // the pool only lives for the duration of this call, this way no threads
+      // are leaked when the solver is discarded
+      final ExecutorService executor = Executors
+        .newFixedThreadPool(Math.min(threads, numClusters), threadFactory);
+      final List<Future<ImmutableList<ImmutableList<Parcel>>>> futures;
+      try {
+        // when interrupted, invokeAll cancels the unfinished clusters
+        futures = executor.invokeAll(tasks);
+      } finally {
+        executor.shutdownNow();
+      }
+      for (int c = 0; c < numClusters; c++) {
+        final ImmutableList<ImmutableList<Parcel>> routes;
+        try {
+          routes = futures.get(c).get();
+        } catch (final ExecutionException e) {
+          throw Throwables.propagate(e.getCause());
+        }
+        final IntList vehicles = clusters.vehicles.get(c);
+        for (int i = 0; i < vehicles.size(); i++) {
+          schedule.set(vehicles.getInt(i), routes.get(i));
+        }
+      }
+      if (!boundaryRepair) {
+        return ImmutableList.copyOf(schedule);
+      }
+      return repair(state, schedule, clusters);
+    }
+
+    // relocates parcels between the vehicles of neighboring clusters
+    ImmutableList<ImmutableList<Parcel>> repair(GlobalStateObject state,
+        List<ImmutableList<Parcel>> schedule, Clusters clusters)
+            throws InterruptedException {
+      final double[] costs = new double[schedule.size()];
+      for (int i = 0; i < schedule.size(); i++) {
+        costs[i] = evaluator.computeCost(state, i, schedule.get(i));
+      }
+      final IntList startIndices = AbstractOpt2Solver.indices(state);
+      final int numClusters = clusters.vehicles.size();
+      // with two clusters there is only one boundary
+      final int numBoundaries = numClusters == 2 ? 1 : numClusters;
+      for (int c = 0; c < numBoundaries; c++) {
+        final IntList vehicles = new IntArrayList(clusters.vehicles.get(c));
+        vehicles.addAll(clusters.vehicles.get((c + 1) % numClusters));
+
+        final ImmutableList<ImmutableList<Parcel>> current =
+          ImmutableList.copyOf(schedule);
+        final Object2IntMap<Parcel> rows = Lns.rows(current);
+        final List<Parcel> candidates = new ArrayList<>();
+        for (final Parcel p : Lns.removableParcels(current, startIndices)) {
+          if (vehicles.contains(rows.getInt(p))) {
+            candidates.add(p);
+          }
+        }
+        for (final Parcel p : candidates) {
+          relocate(state, schedule, costs, vehicles, rows, p);
+        }
+      }
+      return ImmutableList.copyOf(schedule);
+    }
+
+    void relocate(GlobalStateObject state, List<ImmutableList<Parcel>> schedule,
+        double[] costs, IntList vehicles, Object2IntMap<Parcel> rows, Parcel p)
+            throws InterruptedException {
+      final int row = rows.getInt(p);
+      final ImmutableList<Parcel> without =
+        Insertions.removeAll(schedule.get(row), ImmutableSet.of(p));
+      final double withoutCost = evaluator.computeCost(state, row, without);
+      final double savings = costs[row] - withoutCost;
+
+      VehicleInsertion best = null;
+      for (int i = 0; i < vehicles.size(); i++) {
+        final int v = vehicles.getInt(i);
+        if (v == row) {
+          continue;
+        }
+        final VehicleInsertion insertion =
+          CheapestInsertionHeuristic.cheapestInsertion(state, v,
+            schedule.get(v), costs[v], null, evaluator, p,
+            Insertions.insertionIndexCursor(2, 0, 0));
+        if (insertion.indices != null && (best == null
+          || insertion.insertionCost < best.insertionCost)) {
+          best = insertion;
+        }
+      }
+      if (best != null && best.indices != null
+        && best.insertionCost < savings - EPSILON) {
+        final int v = best.vehicleIndex;
+        schedule.set(v, Insertions.insert(schedule.get(v), best.indices, p));
+        costs[v] = best.routeCost;
+        schedule.set(row, without);
+        costs[row] = withoutCost;
+        rows.put(p, v);
+      }
+    }
+
+    ClusterSolver solver(int cluster) {
+      while (solvers.size() <= cluster) {
+        solvers.add(delegate.get(rng.nextLong()));
+      }
+      return solvers.get(cluster);
+    }
+
+    @Override
+    public String toString() {
+      return DecompositionSolver.class.getSimpleName() + "(" + delegate + ")";
+    }
+  }
+
+  static class ClusterInsertion implements ClusterSolver {
+    @SuppressWarnings("unchecked")
+    @Override
+    public ImmutableList<ImmutableList<Parcel>> solve(GlobalStateObject state,
+        RouteEvaluator<GlobalStateObject, Parcel> evaluator, IntList vehicles,
+        Set<Parcel> parcels) throws InterruptedException {
+      final List<ImmutableList<Parcel>> routes = new ArrayList<>();
+      final double[] costs = new double[vehicles.size()];
+      final List<PreparedRoute<Parcel>> preparedRoutes = new ArrayList<>();
+      for (int i = 0; i < vehicles.size(); i++) {
+        final int v = vehicles.getInt(i);
+        final VehicleStateObject vso = state.getVehicles().get(v);
+        routes.add(vso.getRoute().isPresent()
+          ? vso.getRoute().get()
+          : ImmutableList.<Parcel>of());
+        costs[i] = evaluator.computeCost(state, v, routes.get(i));
+        if (evaluator instanceof IncrementalRouteEvaluator) {
+          preparedRoutes.add(
+            ((IncrementalRouteEvaluator<GlobalStateObject, Parcel>) evaluator)
+              .prepare(state, v, routes.get(i)));
+        }
+      }
+
+      final InsertionIndexCursor cursor =
+        Insertions.insertionIndexCursor(2, 0, 0);
+      for (final Parcel p : parcels) {
+        final List<VehicleInsertion> insertions = new ArrayList<>();
+        for (int i = 0; i < vehicles.size(); i++) {
+          insertions.add(CheapestInsertionHeuristic.cheapestInsertion(state,
+            vehicles.getInt(i), routes.get(i), costs[i],
+            preparedRoutes.isEmpty() ? null : preparedRoutes.get(i),
+            evaluator, p, cursor));
+        }
+        final VehicleInsertion cheapest =
+          verifyNotNull(CheapestInsertionHeuristic.cheapest(insertions));
+        final int i = vehicles.indexOf(cheapest.vehicleIndex);
+        routes.set(i, Insertions.insert(routes.get(i),
+          verifyNotNull(cheapest.indices), p));
+        costs[i] = cheapest.routeCost;
+        if (!preparedRoutes.isEmpty()) {
+          preparedRoutes.set(i,
+            ((IncrementalRouteEvaluator<GlobalStateObject, Parcel>) evaluator)
+              .prepare(state, cheapest.vehicleIndex, routes.get(i)));
+        }
+      }
+      return ImmutableList.copyOf(routes);
+    }
+  }
+
+  static class ClusterOpt2 implements ClusterSolver {
+    final ClusterSolver delegate;
+
+    ClusterOpt2() {
+      delegate = new ClusterInsertion();
+    }
+
+    @Override
+    public ImmutableList<ImmutableList<Parcel>> solve(GlobalStateObject state,
+        RouteEvaluator<GlobalStateObject, Parcel> evaluator, IntList vehicles,
+        Set<Parcel> parcels) throws InterruptedException {
+      final ImmutableList<ImmutableList<Parcel>> routes =
+        delegate.solve(state, evaluator, vehicles, parcels);
+      final IntList indices = AbstractOpt2Solver.indices(state);
+      final IntList startIndices = new IntArrayList();
+      for (int i = 0; i < vehicles.size(); i++) {
+        startIndices.add(indices.getInt(vehicles.getInt(i)));
+      }
+      return Swaps.bfsOpt2(routes, startIndices, state,
+        new ClusterEvaluator(evaluator, vehicles),
+        Optional.<ProgressListener<Parcel>>absent());
+    }
+  }
+
+  // evaluates the routes of a cluster, route i is the route of the i-th
+  // vehicle of the cluster
+  static class ClusterEvaluator
+      implements RouteEvaluator<GlobalStateObject, Parcel> {
+    final RouteEvaluator<GlobalStateObject, Parcel> delegate;
+    final IntList vehicles;
+
+    ClusterEvaluator(RouteEvaluator<GlobalStateObject, Parcel> deleg,
+        IntList vs) {
+      delegate = deleg;
+      vehicles = vs;
+    }
+
+    @Override
+    public double computeCost(GlobalStateObject context, int routeIndex,
+        ImmutableList<Parcel> newRoute) {
+      return delegate.computeCost(context, vehicles.getInt(routeIndex),
+        newRoute);
+    }
+  }
+
+  /**
+   * A partition of the vehicles and the parcels of a state into clusters.
+   */
+  static final class Clusters {
+    // the vehicle indices of each cluster, in sweep order
+    final ImmutableList<IntList> vehicles;
+    // the mean angle of each cluster
+    final double[] angles;
+
+    Clusters(ImmutableList<IntList> vs, double[] as) {
+      vehicles = vs;
+      angles = as;
+    }
+
+    /**
+     * Assigns the unassigned parcels of the state to the clusters, a parcel is
+     * assigned to the cluster with the nearest mean angle. The parcels that
+     * are in a route stay in that route and are not assigned to any cluster.
+     * @param state The complete state.
+     * @return The parcels of each cluster, in iteration order of
+     *         {@link GlobalStateObjects#unassignedParcels(GlobalStateObject)}.
+     */
+    ImmutableList<Set<Parcel>> parcels(GlobalStateObject state) {
+      final Point center = center(state);
+      final List<Set<Parcel>> parcels = new ArrayList<>();
+      for (int c = 0; c < angles.length; c++) {
+        parcels.add(new LinkedHashSet<Parcel>());
+      }
+      for (final Parcel p : GlobalStateObjects.unassignedParcels(state)) {
+        parcels.get(nearest(angle(center, p.getPickupLocation()))).add(p);
+      }
+      return ImmutableList.copyOf(parcels);
+    }
+
+    // the cluster with the nearest mean angle
+    int nearest(double angle) {
+      int best = 0;
+      double bestDiff = Double.POSITIVE_INFINITY;
+      for (int c = 0; c < angles.length; c++) {
+        final double diff = angleDifference(angle, angles[c]);
+        if (diff < bestDiff) {
+          best = c;
+          bestDiff = diff;
+        }
+      }
+      return best;
+    }
+
+    /**
+     * Divides the vehicles of the state into clusters using the sweep
+     * algorithm.
+     * @param state The state.
+     * @param numClusters The number of clusters, must be in
+     *          <code>[1, number of vehicles]</code>.
+     * @return The clusters.
+     */
+    static Clusters sweep(GlobalStateObject state, int numClusters) {
+      final int numVehicles = state.getVehicles().size();
+      checkArgument(numClusters > 0 && numClusters <= numVehicles,
+        "Expected 0 < number of clusters <= %s, found %s.", numVehicles,
+        numClusters);
+      final Point center = center(state);
+
+      final double[] vehicleAngles = new double[numVehicles];
+      final IntList idle = new IntArrayList();
+      for (int v = 0; v < numVehicles; v++) {
+        final Point pos = position(state.getVehicles().get(v), center);
+        if (pos == null) {
+          idle.add(v);
+        } else {
+          vehicleAngles[v] = angle(center, pos);
+        }
+      }
+      // idle vehicles are spread evenly over all angles
+      for (int i = 0; i < idle.size(); i++) {
+        vehicleAngles[idle.getInt(i)] =
+          -Math.PI + 2 * Math.PI * (i + .5) / idle.size();
+      }
+
+      final Integer[] order = new Integer[numVehicles];
+      for (int v = 0; v < numVehicles; v++) {
+        order[v] = v;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer o1, Integer o2) {
+          final int cmp = Double.compare(vehicleAngles[o1], vehicleAngles[o2]);
+          return cmp == 0 ? o1.compareTo(o2) : cmp;
+        }
+      });
+
+      final List<IntList> clusters = new ArrayList<>();
+      for (int c = 0; c < numClusters; c++) {
+        clusters.add(new IntArrayList());
+      }
+      for (int i = 0; i < numVehicles; i++) {
+        final int c = (int) ((long) i * numClusters / numVehicles);
+        clusters.get(c).add(order[i].intValue());
+      }
+
+      final double[] clusterAngles = new double[numClusters];
+      for (int c = 0; c < numClusters; c++) {
+        double x = 0;
+        double y = 0;
+        for (final int v : clusters.get(c)) {
+          x += Math.cos(vehicleAngles[v]);
+          y += Math.sin(vehicleAngles[v]);
+        }
+        clusterAngles[c] = Math.atan2(y, x);
+      }
+      return new Clusters(ImmutableList.copyOf(clusters), clusterAngles);
+    }
+
+    // the centroid of the depots
+    static Point center(GlobalStateObject state) {
+      double x = 0;
+      double y = 0;
+      for (final VehicleStateObject vso : state.getVehicles()) {
+        x += vso.getDto().getStartPosition().x;
+        y += vso.getDto().getStartPosition().y;
+      }
+      final int n = state.getVehicles().size();
+      return new Point(x / n, y / n);
+    }
+
+    // the location of the vehicle, or the centroid of its committed parcels
+    // if the vehicle is at the center, or null if the vehicle is idle
+    @Nullable
+    static Point position(VehicleStateObject vso, Point center) {
+      if (Point.distance(vso.getLocation(), center) > EPSILON) {
+        return vso.getLocation();
+      }
+      final Set<Parcel> committed = committedParcels(vso);
+      if (committed.isEmpty()) {
+        return null;
+      }
+      double x = 0;
+      double y = 0;
+      for (final Parcel p : committed) {
+        x += p.getPickupLocation().x + p.getDeliveryLocation().x;
+        y += p.getPickupLocation().y + p.getDeliveryLocation().y;
+      }
+      final Point pos =
+        new Point(x / (2 * committed.size()), y / (2 * committed.size()));
+      return Point.distance(pos, center) > EPSILON ? pos : null;
+    }
+
+    // the parcels in the cargo and the route of the vehicle
+    static Set<Parcel> committedParcels(VehicleStateObject vso) {
+      final Set<Parcel> parcels = new LinkedHashSet<>(vso.getContents());
+      if (vso.getRoute().isPresent()) {
+        parcels.addAll(vso.getRoute().get());
+      }
+      if (vso.getDestination().isPresent()) {
+        parcels.add(vso.getDestination().get());
+      }
+      return parcels;
+    }
+
+    static double angle(Point center, Point p) {
+      return Math.atan2(p.y - center.y, p.x - center.x);
+    }
+
+    // absolute difference between two angles, in [0, pi]
+    static double angleDifference(double a1, double a2) {
+      final double diff = Math.abs(a1 - a2) % (2 * Math.PI);
+      return diff > Math.PI ? 2 * Math.PI - diff : diff;
+    }
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nullable;
+
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.GlobalStateObject.VehicleStateObject;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.geom.Point;
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Matrix of the distances between all relevant locations of a
+ * {@link GlobalStateObject}: the vehicle positions, the depots and the pickup
+ * and delivery locations of all parcels. Every location is assigned an
+ * <code>int</code> index such that solvers can look up distances by index
+ * instead of recomputing {@link Point#distance(Point, Point)} for the same
+ * pair of locations over and over again. Distances are stored (instead of
+ * travel times) because the travel time depends on the speed of the vehicle
+ * and on the time unit and rounding that a solver uses.
+ * <p>
+ * Small matrices are computed at once in a single <code>double[]</code>, for
+ * large instances (more than {@link #DEFAULT_MAX_DENSE_SIZE} locations) rows
+ * are computed lazily when they are first needed. Instances are immutable (the
+ * lazily computed rows are published safely) and thus thread-safe.
+ * @author Rinde van Lon
+ */
+public final class DistanceMatrix {
+  /**
+   * The maximum number of locations for which the complete matrix is computed
+   * at once.
+   */
+  public static final int DEFAULT_MAX_DENSE_SIZE = 1024;
+
+  // weak keys are compared by identity, an entry is removed when its state is
+  // no longer used (the matrix must therefore not refer to its state)
+  private static final LoadingCache<GlobalStateObject, DistanceMatrix> CACHE =
+    CacheBuilder.newBuilder()
+      .weakKeys()
+      .build(new CacheLoader<GlobalStateObject, DistanceMatrix>() {
+        @Override
+        public DistanceMatrix load(GlobalStateObject state) {
+          return create(state, DEFAULT_MAX_DENSE_SIZE);
+        }
+      });
+
+  private final Point[] locations;
+  private final Object2IntMap<Point> indices;
+  @Nullable
+  private final double[] dense;
+  @Nullable
+  private final AtomicReferenceArray<double[]> rows;
+
+  DistanceMatrix(Object2IntMap<Point> ind, int maxDenseSize) {
+    indices = ind;
+    locations = new Point[ind.size()];
+    for (final Object2IntMap.Entry<Point> entry : ind.object2IntEntrySet()) {
+      locations[entry.getIntValue()] = entry.getKey();
+    }
+    final int n = locations.length;
+    if (n <= maxDenseSize) {
+      dense = new double[n * n];
+      for (int i = 0; i < n; i++) {
+        for (int j = i + 1; j < n; j++) {
+          final double dist = Point.distance(locations[i], locations[j]);
+          dense[i * n + j] = dist;
+          dense[j * n + i] = dist;
+        }
+      }
+      rows = null;
+    } else {
+      dense = null;
+      rows = new AtomicReferenceArray<>(n);
+    }
+  }
+
+  /**
+   * @return The number of locations in this matrix.
+   */
+  public int size() {
+    return locations.length;
+  }
+
+  /**
+   * @param location The location to look up.
+   * @return The index of the location or <code>-1</code> if the location is
+   *         not in this matrix.
+   */
+  public int indexOf(Point location) {
+    return indices.getInt(location);
+  }
+
+  /**
+   * @param index The index of a location.
+   * @return The location with the specified index.
+   */
+  public Point location(int index) {
+    return locations[index];
+  }
+
+  /**
+   * Looks up the distance between two locations.
+   * @param from The index of the origin.
+   * @param to The index of the destination.
+   * @return The distance, equal to {@link Point#distance(Point, Point)}.
+   */
+  public double distance(int from, int to) {
+    if (dense != null) {
+      return dense[from * locations.length + to];
+    }
+    return row(from)[to];
+  }
+
+  /**
+   * Looks up the distance between two locations, if one of the locations is
+   * not in this matrix the distance is computed.
+   * @param from The origin.
+   * @param to The destination.
+   * @return The distance, equal to {@link Point#distance(Point, Point)}.
+   */
+  public double distance(Point from, Point to) {
+    final int i = indexOf(from);
+    final int j = indexOf(to);
+    if (i < 0 || j < 0) {
+      return Point.distance(from, to);
+    }
+    return distance(i, j);
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(DistanceMatrix.class)
+      .add("size", size())
+      .add("dense", dense != null)
+      .toString();
+  }
+
+  private double[] row(int from) {
+    final AtomicReferenceArray<double[]> rs = rows;
+    assert rs != null;
+    final double[] row = rs.get(from);
+    if (row != null) {
+      return row;
+    }
+    final double[] newRow = new double[locations.length];
+    for (int j = 0; j < locations.length; j++) {
+      newRow[j] = Point.distance(locations[from], locations[j]);
+    }
+    // in case of a race both rows are equal, it doesn't matter which one wins
+    rs.compareAndSet(from, null, newRow);
+    return rs.get(from);
+  }
+
+  /**
+   * Returns the distance matrix of the specified state. The matrix is shared
+   * as long as the state instance is in use, when all solvers working on the
+   * same state use this method the matrix is computed only once per state.
+   * Solvers that work on different states at the same time do not evict each
+   * other's matrices.
+   * @param state The state.
+   * @return The distance matrix of all locations in the state.
+   */
+  public static DistanceMatrix of(GlobalStateObject state) {
+    return CACHE.getUnchecked(state);
+  }
+
+  /**
+   * Creates a new distance matrix of the specified state.
+   * @param state The state.
+   * @param maxDenseSize The maximum number of locations for which the complete
+   *          matrix is computed at once, larger matrices are computed lazily.
+   * @return A new distance matrix of all locations in the state.
+   */
+  public static DistanceMatrix create(GlobalStateObject state,
+      int maxDenseSize) {
+    checkArgument(maxDenseSize >= 0,
+      "maxDenseSize must be non-negative, found %s.", maxDenseSize);
+    final Object2IntMap<Point> indices = new Object2IntOpenHashMap<>();
+    indices.defaultReturnValue(-1);
+    for (final VehicleStateObject vso : state.getVehicles()) {
+      add(indices, vso.getLocation());
+      add(indices, vso.getDto().getStartPosition());
+    }
+    for (final Parcel p : state.getAvailableParcels()) {
+      add(indices, p);
+    }
+    for (final VehicleStateObject vso : state.getVehicles()) {
+      for (final Parcel p : vso.getContents()) {
+        add(indices, p);
+      }
+      if (vso.getRoute().isPresent()) {
+        for (final Parcel p : vso.getRoute().get()) {
+          add(indices, p);
+        }
+      }
+    }
+    return new DistanceMatrix(indices, maxDenseSize);
+  }
+
+  static void add(Object2IntMap<Point> indices, Parcel p) {
+    add(indices, p.getPickupLocation());
+    add(indices, p.getDeliveryLocation());
+  }
+
+  static void add(Object2IntMap<Point> indices, Point location) {
+    if (!indices.containsKey(location)) {
+      indices.put(location, indices.size());
+    }
+  }
+}
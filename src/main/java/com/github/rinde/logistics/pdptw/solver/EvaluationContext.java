@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.github.rinde.rinsim.central.GlobalStateObject;
+
+/**
+ * Per-vehicle evaluation context of a {@link GlobalStateObject}. Evaluating a
+ * route with
+ * {@link com.github.rinde.rinsim.central.Solvers#computeStats(GlobalStateObject, com.google.common.collect.ImmutableList)}
+ * requires a state that contains only the vehicle of the route, constructing
+ * it with {@link GlobalStateObject#withSingleVehicle(int)} allocates a new
+ * state and vehicle list for every candidate route. This context constructs
+ * the single vehicle state of each vehicle at most once (on first use) after
+ * which it is shared by all evaluations of routes of that vehicle. A context
+ * should be created once per solve, see
+ * {@link ParcelRouteEvaluator#context(GlobalStateObject)}. Instances are
+ * thread-safe.
+ * @author Rinde van Lon
+ */
+final class EvaluationContext {
+  private final GlobalStateObject state;
+  private final AtomicReferenceArray<GlobalStateObject> singleVehicleStates;
+
+  EvaluationContext(GlobalStateObject s) {
+    state = s;
+    singleVehicleStates = new AtomicReferenceArray<>(s.getVehicles().size());
+  }
+
+  /**
+   * @return The state of this context.
+   */
+  GlobalStateObject state() {
+    return state;
+  }
+
+  /**
+   * Returns the state with only the specified vehicle, equal to
+   * <code>state().withSingleVehicle(vehicleIndex)</code>.
+   * @param vehicleIndex The index of the vehicle.
+   * @return The (shared) single vehicle state.
+   */
+  GlobalStateObject singleVehicleState(int vehicleIndex) {
+    final GlobalStateObject s = singleVehicleStates.get(vehicleIndex);
+    if (s != null) {
+      return s;
+    }
+    // in case of a race both states are equal, it doesn't matter which wins
+    singleVehicleStates.compareAndSet(vehicleIndex, null,
+      state.withSingleVehicle(vehicleIndex));
+    return singleVehicleStates.get(vehicleIndex);
+  }
+}
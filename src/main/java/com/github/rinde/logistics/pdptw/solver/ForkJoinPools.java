@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Provides {@link ForkJoinPool}s that are shared by all solvers in this
+ * package. Creating a pool per solver (or per solve) leaks threads, instead
+ * there is at most one pool per parallelism level for the lifetime of the VM.
+ * The worker threads of these pools are daemon threads and are terminated when
+ * they are idle, hence the pools never need to be shut down.
+ * @author Rinde van Lon
+ */
+final class ForkJoinPools {
+  private static final ConcurrentMap<Integer, ForkJoinPool> POOLS =
+    new ConcurrentHashMap<>();
+
+  private ForkJoinPools() {}
+
+  /**
+   * Returns the shared pool with the specified parallelism, the pool is created
+   * on first use.
+   * @param parallelism The parallelism level, must be positive.
+   * @return The shared pool.
+   */
+  static ForkJoinPool get(int parallelism) {
+    checkArgument(parallelism > 0, "Parallelism must be positive, found %s.",
+      parallelism);
+    final ForkJoinPool pool = POOLS.get(parallelism);
+    if (pool != null) {
+      return pool;
+    }
+    final ForkJoinPool newPool = new ForkJoinPool(parallelism);
+    final ForkJoinPool previous = POOLS.putIfAbsent(parallelism, newPool);
+    if (previous == null) {
+      return newPool;
+    }
+    newPool.shutdown();
+    return previous;
+  }
+}
@@ -0,0 +1,637 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+import javax.measure.quantity.Duration;
+import javax.measure.quantity.Length;
+import javax.measure.quantity.Velocity;
+import javax.measure.unit.NonSI;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+
+import com.github.rinde.opt.localsearch.IncrementalRouteEvaluator;
+import com.github.rinde.opt.localsearch.Insertions;
+import com.github.rinde.opt.localsearch.PreparedRoute;
+import com.github.rinde.opt.localsearch.RouteEvaluator;
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.GlobalStateObject.VehicleStateObject;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.math.DoubleMath;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Specialized {@link RouteEvaluator} for the
+ * {@link Gendreau06ObjectiveFunction}. Instead of constructing a
+ * {@link GlobalStateObject} and a complete statistics object for every route
+ * (as {@link ParcelRouteEvaluator} does), the state is flattened once into
+ * primitive arrays (location indices, time windows, service durations, vehicle
+ * speeds and end times) and the travel time, tardiness and overtime of a
+ * route are computed directly from these arrays. Distances are looked up in
+ * the {@link DistanceMatrix} of the state. The computation follows
+ * {@link com.github.rinde.rinsim.central.Solvers#computeStats(GlobalStateObject, com.google.common.collect.ImmutableList)}
+ * and the costs are equal within floating-point tolerance.
+ * <p>
+ * The flattened form of the most recently used state is cached, the cache is
+ * refreshed whenever the evaluator is called with a different state instance.
+ * States that do not use the Gendreau06 units (milliseconds, kilometers and
+ * kilometers per hour) and routes containing unknown parcels are evaluated by
+ * the regular {@link ParcelRouteEvaluator}. Instances are thread-safe.
+ * <p>
+ * Routes are prepared for incremental evaluation by precomputing the arrival
+ * and departure times, the prefix sums of distance, tardiness and waiting time
+ * and the forward time slack of each position. The cost of an insertion or
+ * removal is computed by evaluating the route from the first modified
+ * position, using the prefix data, until the delay (or speed up) caused by the
+ * modification is absorbed by the slack of the remaining positions, after
+ * which the cost of the remaining positions follows from the suffix data.
+ * @author Rinde van Lon
+ */
+final class Gendreau06RouteEvaluator
+    implements IncrementalRouteEvaluator<GlobalStateObject, Parcel> {
+  static final Unit<Duration> TIME_UNIT = SI.MILLI(SI.SECOND);
+  static final Unit<Velocity> SPEED_UNIT = NonSI.KILOMETERS_PER_HOUR;
+  static final Unit<Length> DISTANCE_UNIT = SI.KILOMETER;
+  static final double MS_PER_HOUR = 3600000d;
+  static final double MS_PER_MINUTE = 60000d;
+  static final double MINUTES_PER_HOUR = 60d;
+  // upper bound of the time slack of a position, prevents overflow
+  static final long MAX_SLACK = Long.MAX_VALUE / 4;
+
+  private final Gendreau06ObjectiveFunction objectiveFunction;
+  private final ParcelRouteEvaluator fallback;
+  @Nullable
+  private volatile FlatState lastState;
+
+  Gendreau06RouteEvaluator(Gendreau06ObjectiveFunction objFunc) {
+    objectiveFunction = objFunc;
+    fallback = new ParcelRouteEvaluator(objFunc);
+  }
+
+  @Override
+  public double computeCost(GlobalStateObject context, int routeIndex,
+      ImmutableList<Parcel> newRoute) {
+    final FlatState s = flatten(context);
+    if (!s.supported) {
+      return fallback.computeCost(context, routeIndex, newRoute);
+    }
+    final int v = routeIndex;
+    final Visits visits = s.visits.get().start();
+    long time = s.startTime;
+    int location = s.vehicleLocation[v];
+    double distance = 0d;
+    long tardiness = 0L;
+    for (int j = 0; j < newRoute.size(); j++) {
+      final int i = s.parcelIndices.getInt(newRoute.get(j));
+      if (i < 0) {
+        return fallback.computeCost(context, routeIndex, newRoute);
+      }
+      final boolean delivery = visits.visit(i) || s.carrier[i] == v;
+      final int next =
+        delivery ? s.deliveryLocation[i] : s.pickupLocation[i];
+      final long end = delivery ? s.deliveryEnd[i] : s.pickupEnd[i];
+      if (j == 0 && s.remainingServiceTime[v] > 0) {
+        // the vehicle is servicing its destination
+        time += s.remainingServiceTime[v];
+      } else {
+        final double dist = s.distances.distance(location, next);
+        distance += dist;
+        time += travelTime(dist, s.vehicleSpeed[v]);
+        time = Math.max(time,
+          delivery ? s.deliveryBegin[i] : s.pickupBegin[i]);
+        time += delivery ? s.deliveryDuration[i] : s.pickupDuration[i];
+      }
+      tardiness += Math.max(0L, time - end);
+      location = next;
+    }
+    // back to the depot
+    final double dist =
+      s.distances.distance(location, s.depotLocation[v]);
+    distance += dist;
+    time += travelTime(dist, s.vehicleSpeed[v]);
+    final long overTime = Math.max(0L, time - s.vehicleEnd[v]);
+    return cost(distance, tardiness, overTime);
+  }
+
+  @Override
+  public PreparedRoute<Parcel> prepare(GlobalStateObject context,
+      int routeIndex, ImmutableList<Parcel> route) {
+    final FlatState s = flatten(context);
+    if (s.supported) {
+      final Prepared prepared = Prepared.create(this, context, s, routeIndex,
+        route);
+      if (prepared != null) {
+        return prepared;
+      }
+    }
+    return new Unprepared(this, context, routeIndex, route);
+  }
+
+  double cost(double distance, long tardiness, long overTime) {
+    return distance / objectiveFunction.getVehicleSpeed() * MINUTES_PER_HOUR
+      + tardiness / MS_PER_MINUTE + overTime / MS_PER_MINUTE;
+  }
+
+  FlatState flatten(GlobalStateObject state) {
+    final FlatState s = lastState;
+    if (s != null && s.state == state) {
+      return s;
+    }
+    final FlatState newState = new FlatState(state);
+    lastState = newState;
+    return newState;
+  }
+
+  // travel time in ms, distance in km and speed in km/h
+  static long travelTime(double distance, double speed) {
+    return DoubleMath.roundToLong(distance / speed * MS_PER_HOUR,
+      RoundingMode.CEILING);
+  }
+
+  @Override
+  public String toString() {
+    return Gendreau06RouteEvaluator.class.getSimpleName() + "("
+      + objectiveFunction + ")";
+  }
+
+  /**
+   * A route that is prepared for incremental evaluation, all time related
+   * arrays are indexed by position in the route.
+   */
+  static final class Prepared implements PreparedRoute<Parcel> {
+    final Gendreau06RouteEvaluator evaluator;
+    final GlobalStateObject context;
+    final FlatState state;
+    final int vehicle;
+    final ImmutableList<Parcel> route;
+    final int[] parcels;
+    // indexed by parcel index, true if the parcel occurs in the route
+    final boolean[] contained;
+    final boolean[] delivery;
+    final int[] locations;
+    // arrival before waiting and departure after service
+    final long[] arrival;
+    final long[] departure;
+    // prefix sums over positions [0, j]
+    final double[] distancePrefix;
+    final long[] tardinessPrefix;
+    final long[] waitingPrefix;
+    // distance of the legs to positions [j, n) and back to the depot
+    final double[] distanceSuffix;
+    // minimum over positions i >= j of waitingPrefix[i] + slack of i, where
+    // the slack is the time that i can be delayed without becoming tardy
+    final long[] slackSuffix;
+    final long tardiness;
+    final long endTime;
+    final double cost;
+
+    private Prepared(Gendreau06RouteEvaluator eval, GlobalStateObject ctx,
+        FlatState s, int v, ImmutableList<Parcel> r, int[] ps) {
+      evaluator = eval;
+      context = ctx;
+      state = s;
+      vehicle = v;
+      route = r;
+      parcels = ps;
+      final int n = ps.length;
+      contained = new boolean[s.carrier.length];
+      delivery = new boolean[n];
+      locations = new int[n];
+      arrival = new long[n];
+      departure = new long[n];
+      distancePrefix = new double[n];
+      tardinessPrefix = new long[n];
+      waitingPrefix = new long[n];
+      distanceSuffix = new double[n + 1];
+      slackSuffix = new long[n + 1];
+      final double[] legs = new double[n];
+      final long[] slack = new long[n];
+
+      // follows computeCost(..) exactly
+      long time = s.startTime;
+      int location = s.vehicleLocation[v];
+      double distance = 0d;
+      long tard = 0L;
+      long waiting = 0L;
+      for (int j = 0; j < n; j++) {
+        final int i = ps[j];
+        delivery[j] = s.carrier[i] == v || contained[i];
+        contained[i] = true;
+        locations[j] =
+          delivery[j] ? s.deliveryLocation[i] : s.pickupLocation[i];
+        if (j == 0 && s.remainingServiceTime[v] > 0) {
+          // the vehicle is servicing its destination
+          time += s.remainingServiceTime[v];
+          arrival[j] = time;
+        } else {
+          legs[j] = s.distances.distance(location, locations[j]);
+          distance += legs[j];
+          time += travelTime(legs[j], s.vehicleSpeed[v]);
+          arrival[j] = time;
+          final long begin =
+            delivery[j] ? s.deliveryBegin[i] : s.pickupBegin[i];
+          waiting += Math.max(0L, begin - time);
+          time = Math.max(time, begin);
+          time += delivery[j] ? s.deliveryDuration[i] : s.pickupDuration[i];
+        }
+        final long end = delivery[j] ? s.deliveryEnd[i] : s.pickupEnd[i];
+        tard += Math.max(0L, time - end);
+        departure[j] = time;
+        distancePrefix[j] = distance;
+        tardinessPrefix[j] = tard;
+        waitingPrefix[j] = waiting;
+        slack[j] = waiting + Math.min(MAX_SLACK, Math.max(0L, end - time));
+        location = locations[j];
+      }
+      final double depotLeg =
+        s.distances.distance(location, s.depotLocation[v]);
+      distance += depotLeg;
+      time += travelTime(depotLeg, s.vehicleSpeed[v]);
+      tardiness = tard;
+      endTime = time;
+      cost = eval.cost(distance, tard, Math.max(0L, time - s.vehicleEnd[v]));
+
+      distanceSuffix[n] = depotLeg;
+      slackSuffix[n] = Long.MAX_VALUE;
+      for (int j = n - 1; j >= 0; j--) {
+        distanceSuffix[j] = legs[j] + distanceSuffix[j + 1];
+        slackSuffix[j] = Math.min(slack[j], slackSuffix[j + 1]);
+      }
+    }
+
+    @Override
+    public ImmutableList<Parcel> route() {
+      return route;
+    }
+
+    @Override
+    public double cost() {
+      return cost;
+    }
+
+    @Override
+    public double insertionCost(Parcel item, IntList insertionIndices) {
+      final int p = state.parcelIndices.getInt(item);
+      final int first = insertionIndices.getInt(0);
+      if (p < 0 || contained[p]
+        || first == 0 && state.remainingServiceTime[vehicle] > 0) {
+        // the classification of the visits may change, or the first visit
+        // is the destination that is being serviced
+        return evaluator.computeCost(context, vehicle,
+          Insertions.insert(route, insertionIndices, item));
+      }
+      final Walk walk = new Walk(first);
+      int j = first;
+      for (int k = 0; k < insertionIndices.size(); k++) {
+        for (; j < insertionIndices.getInt(k); j++) {
+          walk.visit(j);
+        }
+        walk.visit(p, state.carrier[p] == vehicle || k > 0);
+      }
+      return walk.finish(j);
+    }
+
+    @Override
+    public double removalCost(Parcel item) {
+      final int p = state.parcelIndices.getInt(item);
+      if (p < 0 || !contained[p]) {
+        return cost;
+      }
+      int first = -1;
+      int last = -1;
+      for (int j = 0; j < parcels.length; j++) {
+        if (parcels[j] == p) {
+          first = first < 0 ? j : first;
+          last = j;
+        }
+      }
+      if (first == 0 && state.remainingServiceTime[vehicle] > 0) {
+        return evaluator.computeCost(context, vehicle,
+          Insertions.removeAll(route, ImmutableSet.of(item)));
+      }
+      final Walk walk = new Walk(first);
+      for (int j = first + 1; j < last; j++) {
+        if (parcels[j] != p) {
+          walk.visit(j);
+        }
+      }
+      return walk.finish(last + 1);
+    }
+
+    // the waiting time at the positions before j
+    long waitingBefore(int j) {
+      return j == 0 ? 0L : waitingPrefix[j - 1];
+    }
+
+    @Nullable
+    static Prepared create(Gendreau06RouteEvaluator eval,
+        GlobalStateObject context, FlatState s, int vehicle,
+        ImmutableList<Parcel> route) {
+      final int[] ps = new int[route.size()];
+      for (int j = 0; j < ps.length; j++) {
+        ps[j] = s.parcelIndices.getInt(route.get(j));
+        if (ps[j] < 0) {
+          return null;
+        }
+      }
+      return new Prepared(eval, context, s, vehicle, route, ps);
+    }
+
+    /**
+     * A walk along a modified route, starts with the unmodified prefix.
+     */
+    final class Walk {
+      long time;
+      int location;
+      double distance;
+      long tard;
+
+      Walk(int from) {
+        if (from == 0) {
+          time = state.startTime;
+          location = state.vehicleLocation[vehicle];
+        } else {
+          time = departure[from - 1];
+          location = locations[from - 1];
+          distance = distancePrefix[from - 1];
+          tard = tardinessPrefix[from - 1];
+        }
+      }
+
+      // visits the parcel at position j of the original route
+      void visit(int j) {
+        travel(locations[j]);
+        service(parcels[j], delivery[j]);
+      }
+
+      void visit(int p, boolean isDelivery) {
+        travel(isDelivery ? state.deliveryLocation[p]
+          : state.pickupLocation[p]);
+        service(p, isDelivery);
+      }
+
+      void travel(int next) {
+        final double dist = state.distances.distance(location, next);
+        distance += dist;
+        time += travelTime(dist, state.vehicleSpeed[vehicle]);
+        location = next;
+      }
+
+      void service(int p, boolean isDelivery) {
+        time = Math.max(time,
+          isDelivery ? state.deliveryBegin[p] : state.pickupBegin[p]);
+        time += isDelivery ? state.deliveryDuration[p]
+          : state.pickupDuration[p];
+        tard += Math.max(0L, time
+          - (isDelivery ? state.deliveryEnd[p] : state.pickupEnd[p]));
+      }
+
+      // visits the unmodified positions [from, n) and returns the cost
+      double finish(int from) {
+        final int n = parcels.length;
+        for (int j = from; j < n; j++) {
+          travel(locations[j]);
+          final long delay = time - arrival[j];
+          if (delay >= 0
+            && delay <= slackSuffix[j] - waitingBefore(j)) {
+            // no tardiness is added to the remaining positions
+            final long endDelay = Math.max(0L,
+              delay - (waitingPrefix[n - 1] - waitingBefore(j)));
+            return suffixCost(j, tardiness - tardinessBefore(j), endDelay);
+          }
+          service(parcels[j], delivery[j]);
+          if (time == departure[j]) {
+            // a speed up is absorbed by waiting
+            return suffixCost(j, tardiness - tardinessPrefix[j], 0L);
+          }
+        }
+        travel(state.depotLocation[vehicle]);
+        return evaluator.cost(distance, tard,
+          Math.max(0L, time - state.vehicleEnd[vehicle]));
+      }
+
+      // the cost when the walk has arrived at position j of the original
+      // route and the remaining legs are as in the original route
+      double suffixCost(int j, long suffixTardiness, long endDelay) {
+        return evaluator.cost(distance + distanceSuffix[j + 1],
+          tard + suffixTardiness,
+          Math.max(0L, endTime + endDelay - state.vehicleEnd[vehicle]));
+      }
+
+      long tardinessBefore(int j) {
+        return j == 0 ? 0L : tardinessPrefix[j - 1];
+      }
+    }
+  }
+
+  /**
+   * Prepared route of a state or route that is not supported, all costs are
+   * computed by evaluating the modified route.
+   */
+  static final class Unprepared implements PreparedRoute<Parcel> {
+    final RouteEvaluator<GlobalStateObject, Parcel> evaluator;
+    final GlobalStateObject context;
+    final int vehicle;
+    final ImmutableList<Parcel> route;
+    final double cost;
+
+    Unprepared(RouteEvaluator<GlobalStateObject, Parcel> eval,
+        GlobalStateObject ctx, int v, ImmutableList<Parcel> r) {
+      evaluator = eval;
+      context = ctx;
+      vehicle = v;
+      route = r;
+      cost = eval.computeCost(ctx, v, r);
+    }
+
+    @Override
+    public ImmutableList<Parcel> route() {
+      return route;
+    }
+
+    @Override
+    public double cost() {
+      return cost;
+    }
+
+    @Override
+    public double insertionCost(Parcel item, IntList insertionIndices) {
+      return evaluator.computeCost(context, vehicle,
+        Insertions.insert(route, insertionIndices, item));
+    }
+
+    @Override
+    public double removalCost(Parcel item) {
+      return evaluator.computeCost(context, vehicle,
+        Insertions.removeAll(route, ImmutableSet.of(item)));
+    }
+  }
+
+  /**
+   * The flattened form of a {@link GlobalStateObject}, parcels are identified
+   * by their index in the arrays.
+   */
+  static final class FlatState {
+    final GlobalStateObject state;
+    final boolean supported;
+    final long startTime;
+    final Object2IntMap<Parcel> parcelIndices;
+    final DistanceMatrix distances;
+    // parcels
+    final int[] pickupLocation;
+    final int[] deliveryLocation;
+    final long[] pickupBegin;
+    final long[] pickupEnd;
+    final long[] deliveryBegin;
+    final long[] deliveryEnd;
+    final long[] pickupDuration;
+    final long[] deliveryDuration;
+    // index of the vehicle that carries the parcel, or -1
+    final int[] carrier;
+    // vehicles
+    final int[] vehicleLocation;
+    final int[] depotLocation;
+    final double[] vehicleSpeed;
+    final long[] vehicleEnd;
+    final long[] remainingServiceTime;
+    // visited parcels of the route that is evaluated by the current thread
+    final ThreadLocal<Visits> visits;
+
+    FlatState(GlobalStateObject s) {
+      state = s;
+      supported = s.getTimeUnit().equals(TIME_UNIT)
+        && s.getSpeedUnit().equals(SPEED_UNIT)
+        && s.getDistUnit().equals(DISTANCE_UNIT);
+      startTime = s.getTime();
+      distances = DistanceMatrix.of(s);
+
+      parcelIndices = new Object2IntOpenHashMap<>();
+      parcelIndices.defaultReturnValue(-1);
+      for (final Parcel p : s.getAvailableParcels()) {
+        index(p);
+      }
+      final int numVehicles = s.getVehicles().size();
+      for (final VehicleStateObject vso : s.getVehicles()) {
+        for (final Parcel p : vso.getContents()) {
+          index(p);
+        }
+        if (vso.getRoute().isPresent()) {
+          for (final Parcel p : vso.getRoute().get()) {
+            index(p);
+          }
+        }
+      }
+
+      final int numParcels = parcelIndices.size();
+      pickupLocation = new int[numParcels];
+      deliveryLocation = new int[numParcels];
+      pickupBegin = new long[numParcels];
+      pickupEnd = new long[numParcels];
+      deliveryBegin = new long[numParcels];
+      deliveryEnd = new long[numParcels];
+      pickupDuration = new long[numParcels];
+      deliveryDuration = new long[numParcels];
+      carrier = new int[numParcels];
+      for (final Object2IntMap.Entry<Parcel> entry : parcelIndices
+        .object2IntEntrySet()) {
+        final Parcel p = entry.getKey();
+        final int i = entry.getIntValue();
+        pickupLocation[i] = distances.indexOf(p.getPickupLocation());
+        deliveryLocation[i] = distances.indexOf(p.getDeliveryLocation());
+        pickupBegin[i] = p.getPickupTimeWindow().begin();
+        pickupEnd[i] = p.getPickupTimeWindow().end();
+        deliveryBegin[i] = p.getDeliveryTimeWindow().begin();
+        deliveryEnd[i] = p.getDeliveryTimeWindow().end();
+        pickupDuration[i] = p.getPickupDuration();
+        deliveryDuration[i] = p.getDeliveryDuration();
+        carrier[i] = -1;
+      }
+      visits = new ThreadLocal<Visits>() {
+        @Override
+        protected Visits initialValue() {
+          return new Visits(numParcels);
+        }
+      };
+
+      vehicleLocation = new int[numVehicles];
+      depotLocation = new int[numVehicles];
+      vehicleSpeed = new double[numVehicles];
+      vehicleEnd = new long[numVehicles];
+      remainingServiceTime = new long[numVehicles];
+      for (int v = 0; v < numVehicles; v++) {
+        final VehicleStateObject vso = s.getVehicles().get(v);
+        vehicleLocation[v] = distances.indexOf(vso.getLocation());
+        depotLocation[v] =
+          distances.indexOf(vso.getDto().getStartPosition());
+        vehicleSpeed[v] = vso.getDto().getSpeed();
+        vehicleEnd[v] = vso.getDto().getAvailabilityTimeWindow().end();
+        remainingServiceTime[v] = vso.getDestination().isPresent()
+          ? Math.max(0L, vso.getRemainingServiceTime()) : 0L;
+        for (final Parcel p : vso.getContents()) {
+          carrier[parcelIndices.getInt(p)] = v;
+        }
+      }
+    }
+
+    private void index(Parcel p) {
+      if (!parcelIndices.containsKey(p)) {
+        parcelIndices.put(p, parcelIndices.size());
+      }
+    }
+  }
+
+  /**
+   * The parcels that have been visited in a route, indexed by parcel index. A
+   * parcel is visited if its stamp equals the current stamp, such that
+   * starting a new route does not require clearing the array.
+   */
+  static final class Visits {
+    final int[] stamps;
+    int stamp;
+
+    Visits(int numParcels) {
+      stamps = new int[numParcels];
+    }
+
+    Visits start() {
+      stamp++;
+      if (stamp == 0) {
+        // overflow, all old stamps become invalid
+        Arrays.fill(stamps, 0);
+        stamp = 1;
+      }
+      return this;
+    }
+
+    // marks the parcel as visited, returns true if it was visited before
+    boolean visit(int parcel) {
+      if (stamps[parcel] == stamp) {
+        return true;
+      }
+      stamps[parcel] = stamp;
+      return false;
+    }
+  }
+}
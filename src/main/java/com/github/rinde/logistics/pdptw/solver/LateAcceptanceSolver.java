@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.github.rinde.logistics.pdptw.solver.Opt2.AbstractOpt2Solver;
+import com.github.rinde.opt.localsearch.LateAcceptance;
+import com.github.rinde.opt.localsearch.LateAcceptanceOptions;
+import com.github.rinde.opt.localsearch.ProgressListener;
+import com.github.rinde.opt.localsearch.RouteEvaluator;
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Late acceptance hill climbing as a {@link Solver}, see
+ * {@link LateAcceptance}. Like {@link Opt2} the algorithm is a decorator for
+ * another {@link Solver} which constructs the initial schedule, by default
+ * {@link CheapestInsertionHeuristic} is used. Contrary to {@link Opt2} the
+ * search does not stop at the first local optimum, this avoids the need for
+ * random restarts.
+ * @author Rinde van Lon
+ */
+public final class LateAcceptanceSolver {
+
+  private LateAcceptanceSolver() {}
+
+  /**
+   * @return A new builder with the default options, an objective function is
+   *         required.
+   */
+  public static Builder builder() {
+    return Builder.create(null, null, LateAcceptanceOptions.create());
+  }
+
+  /**
+   * Builder for late acceptance solvers.
+   * @author Rinde van Lon
+   */
+  @AutoValue
+  public abstract static class Builder {
+
+    Builder() {}
+
+    @Nullable
+    abstract StochasticSupplier<Solver> solverSup();
+
+    @Nullable
+    abstract ObjectiveFunction objFunc();
+
+    abstract LateAcceptanceOptions options();
+
+    /**
+     * Sets the solver that constructs the initial schedule, by default
+     * {@link CheapestInsertionHeuristic} is used.
+     * @param solverSupplier The supplier of the solver.
+     * @return A new builder instance with the delegate set.
+     */
+    @CheckReturnValue
+    public Builder withDelegate(
+        StochasticSupplier<? extends Solver> solverSupplier) {
+      return create(solverSupplier, objFunc(), options());
+    }
+
+    /**
+     * @param of The objective function that is minimized.
+     * @return A new builder instance with the objective function set.
+     */
+    @CheckReturnValue
+    public Builder withObjectiveFunction(ObjectiveFunction of) {
+      return create(solverSup(), of, options());
+    }
+
+    /**
+     * See {@link LateAcceptanceOptions#withHistoryLength(int)}.
+     * @param length The history length, must be positive.
+     * @return A new builder instance with the history length set.
+     */
+    @CheckReturnValue
+    public Builder withHistoryLength(int length) {
+      return create(solverSup(), objFunc(),
+        options().withHistoryLength(length));
+    }
+
+    /**
+     * See {@link LateAcceptanceOptions#withIterationLimit(long)}.
+     * @param n The maximum number of iterations, must be positive.
+     * @return A new builder instance with the iteration limit set.
+     */
+    @CheckReturnValue
+    public Builder withIterationLimit(long n) {
+      return create(solverSup(), objFunc(), options().withIterationLimit(n));
+    }
+
+    /**
+     * Limits the duration of each search, the time needed by the delegate
+     * solver is not included. See
+     * {@link LateAcceptanceOptions#withTimeLimit(long, TimeUnit)}.
+     * @param ms The maximum duration in milliseconds, must be positive.
+     * @return A new builder instance with the time limit set.
+     */
+    @CheckReturnValue
+    public Builder withTimeLimit(long ms) {
+      return create(solverSup(), objFunc(),
+        options().withTimeLimit(ms, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * @return A supplier of late acceptance solvers, the seed of the supplier
+     *         determines the seed of the delegate and of the search.
+     */
+    @CheckReturnValue
+    public StochasticSupplier<Solver> buildSolverSupplier() {
+      return buildSolverSupplier(null);
+    }
+
+    @CheckReturnValue
+    StochasticSupplier<Solver> buildSolverSupplier(
+        @Nullable final ProgressListener<Parcel> progressListener) {
+      final ObjectiveFunction objFunc = objFunc();
+      checkArgument(objFunc != null,
+        "An objective function must be defined.");
+
+      final StochasticSupplier<Solver> deleg = solverSup();
+      final StochasticSupplier<Solver> delegate = deleg != null
+        ? deleg : CheapestInsertionHeuristic.supplier(objFunc);
+      final LateAcceptanceOptions options = options();
+      return new StochasticSupplier<Solver>() {
+        @Override
+        public Solver get(long seed) {
+          final RandomGenerator rng = new MersenneTwister(seed);
+          return new LateAcceptanceDecorator(rng.nextLong(),
+            delegate.get(rng.nextLong()), objFunc, options, progressListener);
+        }
+
+        @Override
+        public String toString() {
+          return LateAcceptanceSolver.class.getSimpleName() + "(" + objFunc
+            + ")";
+        }
+      };
+    }
+
+    @SuppressWarnings("unchecked")
+    static Builder create(
+        @Nullable StochasticSupplier<? extends Solver> solverSup,
+        @Nullable ObjectiveFunction objFunc,
+        LateAcceptanceOptions options) {
+      return new AutoValue_LateAcceptanceSolver_Builder(
+        (StochasticSupplier<Solver>) solverSup, objFunc, options);
+    }
+  }
+
+  static class LateAcceptanceDecorator implements Solver {
+    final Solver delegate;
+    final RouteEvaluator<GlobalStateObject, Parcel> evaluator;
+    final LateAcceptanceOptions options;
+    final RandomGenerator rng;
+    final Optional<ProgressListener<Parcel>> progressListener;
+
+    LateAcceptanceDecorator(long seed, Solver deleg, ObjectiveFunction objFunc,
+        LateAcceptanceOptions opts, @Nullable ProgressListener<Parcel> pl) {
+      delegate = deleg;
+      evaluator = ParcelRouteEvaluator.create(objFunc);
+      options = opts;
+      rng = new MersenneTwister(seed);
+      progressListener = Optional.fromNullable(pl);
+    }
+
+    @Override
+    public ImmutableList<ImmutableList<Parcel>> solve(GlobalStateObject state)
+        throws InterruptedException {
+      final ImmutableList<ImmutableList<Parcel>> schedule =
+        delegate.solve(state);
+      return LateAcceptance.search(schedule, AbstractOpt2Solver.indices(state),
+        state, evaluator, rng, options, progressListener);
+    }
+  }
+}
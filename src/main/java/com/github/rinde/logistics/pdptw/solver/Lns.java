@@ -0,0 +1,618 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.github.rinde.logistics.pdptw.solver.Opt2.AbstractOpt2Solver;
+import com.github.rinde.opt.localsearch.IncrementalRouteEvaluator;
+import com.github.rinde.opt.localsearch.Insertions;
+import com.github.rinde.opt.localsearch.PreparedRoute;
+import com.github.rinde.opt.localsearch.ProgressListener;
+import com.github.rinde.opt.localsearch.RouteEvaluator;
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.central.rt.RealtimeSolver;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.geom.Point;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Large neighborhood search (LNS), also known as ruin and recreate. Each
+ * iteration removes a number of parcels from the current schedule using one
+ * of the {@link Removal} heuristics and reinserts them using the cheapest
+ * insertion logic of {@link CheapestInsertionHeuristic}. The new schedule
+ * replaces the current schedule if it is not worse. Like {@link Opt2}, the
+ * algorithm is a decorator for another {@link Solver} which constructs the
+ * initial schedule, by default {@link CheapestInsertionHeuristic} is used.
+ * <p>
+ * Only parcels of which both the pickup and the delivery are in the
+ * modifiable part of a route are removed, parcels that are already picked up
+ * and the current destination of a vehicle are never moved. The algorithm is
+ * deterministic for a given seed when no time limit is used.
+ * @author Rinde van Lon
+ */
+public final class Lns {
+  /**
+   * The default maximum number of iterations.
+   */
+  public static final int DEFAULT_ITERATION_LIMIT = 1000;
+
+  // randomization of worst and Shaw removal, a higher value results in a more
+  // deterministic selection.
+  static final double DETERMINISM = 3d;
+
+  private Lns() {}
+
+  /**
+   * @return A new builder with the default options, an objective function is
+   *         required.
+   */
+  public static Builder builder() {
+    return Builder.create(null, null,
+      ImmutableList.copyOf(Removal.values()), 1, 10, DEFAULT_ITERATION_LIMIT,
+      0L, Opt2.DEFAULT_NOTIFICATION_INTERVAL, 0d);
+  }
+
+  /**
+   * The heuristics that select the parcels that are removed.
+   */
+  public enum Removal {
+    /**
+     * Removes parcels uniformly at random.
+     */
+    RANDOM,
+
+    /**
+     * Removes parcels whose removal decreases the cost of their route the
+     * most, i.e. parcels that are badly placed.
+     */
+    WORST,
+
+    /**
+     * Shaw removal: removes parcels that are related to each other, two
+     * parcels are more related when their pickup and delivery locations are
+     * closer and the beginning of their time windows are closer. Related
+     * parcels are likely to be exchanged between routes during the
+     * reinsertion.
+     */
+    SHAW;
+  }
+
+  /**
+   * Builder for LNS solvers.
+   * @author Rinde van Lon
+   */
+  @AutoValue
+  public abstract static class Builder {
+
+    Builder() {}
+
+    @Nullable
+    abstract StochasticSupplier<Solver> solverSup();
+
+    @Nullable
+    abstract ObjectiveFunction objFunc();
+
+    abstract ImmutableList<Removal> removals();
+
+    abstract int minRemoved();
+
+    abstract int maxRemoved();
+
+    abstract int iterationLimit();
+
+    abstract long timeLimit();
+
+    abstract long notificationInterval();
+
+    abstract double minImprovement();
+
+    /**
+     * Sets the solver that constructs the initial schedule, by default
+     * {@link CheapestInsertionHeuristic} is used.
+     * @param solverSupplier The supplier of the solver.
+     * @return A new builder instance with the delegate set.
+     */
+    @CheckReturnValue
+    public Builder withDelegate(
+        StochasticSupplier<? extends Solver> solverSupplier) {
+      return create(solverSupplier, objFunc(), removals(), minRemoved(),
+        maxRemoved(), iterationLimit(), timeLimit(), notificationInterval(),
+        minImprovement());
+    }
+
+    /**
+     * @param of The objective function that is minimized.
+     * @return A new builder instance with the objective function set.
+     */
+    @CheckReturnValue
+    public Builder withObjectiveFunction(ObjectiveFunction of) {
+      return create(solverSup(), of, removals(), minRemoved(), maxRemoved(),
+        iterationLimit(), timeLimit(), notificationInterval(),
+        minImprovement());
+    }
+
+    /**
+     * Sets the removal heuristics, in every iteration one of them is chosen
+     * uniformly at random. By default all {@link Removal} heuristics are used.
+     * @param first A removal heuristic.
+     * @param others Other removal heuristics.
+     * @return A new builder instance with the removal heuristics set.
+     */
+    @CheckReturnValue
+    public Builder withRemovals(Removal first, Removal... others) {
+      final ImmutableList<Removal> list = ImmutableSet.<Removal>builder()
+        .add(first).add(others).build().asList();
+      return create(solverSup(), objFunc(), list, minRemoved(), maxRemoved(),
+        iterationLimit(), timeLimit(), notificationInterval(),
+        minImprovement());
+    }
+
+    /**
+     * Sets the number of parcels that is removed in each iteration, the number
+     * is drawn uniformly from <code>[min, max]</code>. By default between
+     * <code>1</code> and <code>10</code> parcels are removed.
+     * @param min The minimum number of removed parcels, must be positive.
+     * @param max The maximum number of removed parcels, must be at least
+     *          <code>min</code>.
+     * @return A new builder instance with the number of removed parcels set.
+     */
+    @CheckReturnValue
+    public Builder withRemovedParcels(int min, int max) {
+      checkArgument(min > 0 && max >= min,
+        "Expected 0 < min <= max, found min %s and max %s.", min, max);
+      return create(solverSup(), objFunc(), removals(), min, max,
+        iterationLimit(), timeLimit(), notificationInterval(),
+        minImprovement());
+    }
+
+    /**
+     * Sets the maximum number of iterations of each search, the default is
+     * {@link Lns#DEFAULT_ITERATION_LIMIT}.
+     * @param n The maximum number of iterations, must be positive.
+     * @return A new builder instance with the iteration limit set.
+     */
+    @CheckReturnValue
+    public Builder withIterationLimit(int n) {
+      checkArgument(n > 0, "Iteration limit must be positive, found %s.", n);
+      return create(solverSup(), objFunc(), removals(), minRemoved(),
+        maxRemoved(), n, timeLimit(), notificationInterval(),
+        minImprovement());
+    }
+
+    /**
+     * Limits the (wall-clock) duration of each search, the time needed by the
+     * delegate solver is not included. By default the duration is unlimited.
+     * @param ms The maximum duration in milliseconds, must be positive.
+     * @return A new builder instance with the time limit set.
+     */
+    @CheckReturnValue
+    public Builder withTimeLimit(long ms) {
+      checkArgument(ms > 0, "Time limit must be positive, found %s.", ms);
+      return create(solverSup(), objFunc(), removals(), minRemoved(),
+        maxRemoved(), iterationLimit(), ms, notificationInterval(),
+        minImprovement());
+    }
+
+    /**
+     * Throttles the schedule updates that are sent to the simulator by the
+     * real-time solver (see {@link #buildRealtimeSolverSupplier()}), in the
+     * same way as {@link Opt2.Builder#withNotificationThrottling(long, double)}.
+     * The default is an interval of
+     * {@value Opt2#DEFAULT_NOTIFICATION_INTERVAL} ms and no minimum
+     * improvement. This setting has no effect on the solver created by
+     * {@link #buildSolverSupplier()}.
+     * @param ms The minimum interval between two updates in milliseconds, must
+     *          be non-negative.
+     * @param minRelativeImprovement The minimum relative improvement of the
+     *          objective value, must be non-negative.
+     * @return A new builder instance with the throttling set.
+     */
+    @CheckReturnValue
+    public Builder withNotificationThrottling(long ms,
+        double minRelativeImprovement) {
+      checkArgument(ms >= 0, "Interval must be non-negative, found %s.", ms);
+      checkArgument(minRelativeImprovement >= 0,
+        "Minimum relative improvement must be non-negative, found %s.",
+        minRelativeImprovement);
+      return create(solverSup(), objFunc(), removals(), minRemoved(),
+        maxRemoved(), iterationLimit(), timeLimit(), ms,
+        minRelativeImprovement);
+    }
+
+    /**
+     * Disables the throttling of schedule updates, every improvement is
+     * immediately sent to the simulator by the real-time solver. See
+     * {@link #withNotificationThrottling(long, double)}.
+     * @return A new builder instance without throttling.
+     */
+    @CheckReturnValue
+    public Builder withoutNotificationThrottling() {
+      return withNotificationThrottling(0L, 0d);
+    }
+
+    /**
+     * @return A supplier of LNS solvers, the seed of the supplier determines
+     *         the seed of the delegate and of the search.
+     */
+    @CheckReturnValue
+    public StochasticSupplier<Solver> buildSolverSupplier() {
+      return buildSolverSupplier(null);
+    }
+
+    /**
+     * @return A supplier of real-time LNS solvers, improvements are reported
+     *         to the scheduler as configured by
+     *         {@link #withNotificationThrottling(long, double)}.
+     */
+    @CheckReturnValue
+    public StochasticSupplier<RealtimeSolver> buildRealtimeSolverSupplier() {
+      final Builder b = this;
+      return new StochasticSupplier<RealtimeSolver>() {
+        @Override
+        public RealtimeSolver get(final long seed) {
+          return new ReportingRealtimeSolver(
+            new Function<ProgressListener<Parcel>, Solver>() {
+              @Override
+              public Solver apply(
+                  @Nullable ProgressListener<Parcel> listener) {
+                return b.buildSolverSupplier(listener).get(seed);
+              }
+            }, b.notificationInterval(), b.minImprovement());
+        }
+
+        @Override
+        public String toString() {
+          return supplierToString(true, b.objFunc());
+        }
+      };
+    }
+
+    @CheckReturnValue
+    StochasticSupplier<Solver> buildSolverSupplier(
+        @Nullable final ProgressListener<Parcel> progressListener) {
+      final ObjectiveFunction objFunc = objFunc();
+      checkArgument(objFunc != null,
+        "An objective function must be defined.");
+
+      final StochasticSupplier<Solver> deleg = solverSup();
+      final StochasticSupplier<Solver> delegate = deleg != null
+        ? deleg : CheapestInsertionHeuristic.supplier(objFunc);
+      final Builder b = this;
+      return new StochasticSupplier<Solver>() {
+        @Override
+        public Solver get(long seed) {
+          final RandomGenerator rng = new MersenneTwister(seed);
+          return new LnsSolver(rng.nextLong(), delegate.get(rng.nextLong()),
+            objFunc, b, progressListener);
+        }
+
+        @Override
+        public String toString() {
+          return supplierToString(false, objFunc);
+        }
+      };
+    }
+
+    static String supplierToString(boolean rt,
+        @Nullable ObjectiveFunction objFunc) {
+      return Joiner.on("").join(Lns.class.getSimpleName(), rt ? "RT(" : "(",
+        objFunc, ")");
+    }
+
+    @SuppressWarnings("unchecked")
+    static Builder create(
+        @Nullable StochasticSupplier<? extends Solver> solverSup,
+        @Nullable ObjectiveFunction objFunc,
+        ImmutableList<Removal> removals,
+        int minRemoved,
+        int maxRemoved,
+        int iterationLimit,
+        long timeLimit,
+        long notificationInterval,
+        double minImprovement) {
+      return new AutoValue_Lns_Builder(
+        (StochasticSupplier<Solver>) solverSup, objFunc, removals, minRemoved,
+        maxRemoved, iterationLimit, timeLimit, notificationInterval,
+        minImprovement);
+    }
+  }
+
+  static class LnsSolver implements Solver {
+    final Solver delegate;
+    final RouteEvaluator<GlobalStateObject, Parcel> evaluator;
+    final Builder settings;
+    final RandomGenerator rng;
+    final Optional<ProgressListener<Parcel>> progressListener;
+
+    LnsSolver(long seed, Solver deleg, ObjectiveFunction objFunc, Builder b,
+        @Nullable ProgressListener<Parcel> pl) {
+      delegate = deleg;
+      evaluator = ParcelRouteEvaluator.create(objFunc);
+      settings = b;
+      rng = new MersenneTwister(seed);
+      progressListener = Optional.fromNullable(pl);
+    }
+
+    @Override
+    public ImmutableList<ImmutableList<Parcel>> solve(GlobalStateObject state)
+        throws InterruptedException {
+      final boolean hasDeadline = settings.timeLimit() > 0;
+      final long deadline = System.nanoTime()
+        + TimeUnit.MILLISECONDS.toNanos(settings.timeLimit());
+
+      ImmutableList<ImmutableList<Parcel>> current = delegate.solve(state);
+      final IntList startIndices = AbstractOpt2Solver.indices(state);
+      double currentCost = cost(state, current);
+      ImmutableList<ImmutableList<Parcel>> best = current;
+      double bestCost = currentCost;
+
+      for (int i = 0; i < settings.iterationLimit(); i++) {
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+        if (hasDeadline && System.nanoTime() - deadline >= 0) {
+          break;
+        }
+        final List<Parcel> removable = removableParcels(current, startIndices);
+        if (removable.isEmpty()) {
+          break;
+        }
+        final int q = Math.min(removable.size(), settings.minRemoved()
+          + rng.nextInt(settings.maxRemoved() - settings.minRemoved() + 1));
+        final Removal removal =
+          settings.removals().get(rng.nextInt(settings.removals().size()));
+        final List<Parcel> removed =
+          select(removal, state, current, removable, q);
+
+        final ImmutableList<ImmutableList<Parcel>> candidate =
+          CheapestInsertionHeuristic.insert(state,
+            remove(current, ImmutableSet.copyOf(removed)), removed,
+            evaluator);
+        final double candidateCost = cost(state, candidate);
+        if (candidateCost <= currentCost) {
+          current = candidate;
+          currentCost = candidateCost;
+          if (candidateCost < bestCost) {
+            best = candidate;
+            bestCost = candidateCost;
+            if (progressListener.isPresent()) {
+              progressListener.get().notify(best, bestCost);
+            }
+          }
+        }
+      }
+      return best;
+    }
+
+    List<Parcel> select(Removal removal, GlobalStateObject state,
+        ImmutableList<ImmutableList<Parcel>> schedule, List<Parcel> removable,
+        int q) {
+      switch (removal) {
+      case RANDOM:
+        return randomRemoval(removable, q);
+      case WORST:
+        return worstRemoval(state, schedule, removable, q);
+      case SHAW:
+        return shawRemoval(removable, q);
+      default:
+        throw new IllegalArgumentException("Unknown removal: " + removal);
+      }
+    }
+
+    List<Parcel> randomRemoval(List<Parcel> removable, int q) {
+      final List<Parcel> candidates = new ArrayList<>(removable);
+      final List<Parcel> removed = new ArrayList<>();
+      for (int i = 0; i < q; i++) {
+        removed.add(candidates.remove(rng.nextInt(candidates.size())));
+      }
+      return removed;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Parcel> worstRemoval(GlobalStateObject state,
+        ImmutableList<ImmutableList<Parcel>> schedule, List<Parcel> removable,
+        int q) {
+      final Object2IntMap<Parcel> rows = rows(schedule);
+      // the cost (or prepared route) of each route is computed at most once
+      final double[] costs = new double[schedule.size()];
+      Arrays.fill(costs, Double.NaN);
+      final List<PreparedRoute<Parcel>> prepared = new ArrayList<>(
+        Collections.<PreparedRoute<Parcel>>nCopies(schedule.size(), null));
+      final IncrementalRouteEvaluator<GlobalStateObject, Parcel> incremental =
+        evaluator instanceof IncrementalRouteEvaluator
+          ? (IncrementalRouteEvaluator<GlobalStateObject, Parcel>) evaluator
+          : null;
+
+      final List<Scored> candidates = new ArrayList<>();
+      for (final Parcel p : removable) {
+        final int row = rows.getInt(p);
+        final ImmutableList<Parcel> route = schedule.get(row);
+        final double savings;
+        if (incremental != null) {
+          PreparedRoute<Parcel> pr = prepared.get(row);
+          if (pr == null) {
+            pr = incremental.prepare(state, row, route);
+            prepared.set(row, pr);
+          }
+          savings = pr.cost() - pr.removalCost(p);
+        } else {
+          if (Double.isNaN(costs[row])) {
+            costs[row] = evaluator.computeCost(state, row, route);
+          }
+          savings = costs[row] - evaluator.computeCost(state, row,
+            Insertions.removeAll(route, ImmutableSet.of(p)));
+        }
+        // sorted ascending, the parcel with the highest savings is first
+        candidates.add(new Scored(p, -savings));
+      }
+      return randomizedSelection(candidates, q);
+    }
+
+    List<Parcel> shawRemoval(List<Parcel> removable, int q) {
+      final List<Parcel> remaining = new ArrayList<>(removable);
+      final List<Parcel> removed = new ArrayList<>();
+      removed.add(remaining.remove(rng.nextInt(remaining.size())));
+      while (removed.size() < q) {
+        final Parcel reference = removed.get(rng.nextInt(removed.size()));
+        double maxDistance = 0;
+        double maxTime = 0;
+        final double[] distances = new double[remaining.size()];
+        final double[] times = new double[remaining.size()];
+        for (int i = 0; i < remaining.size(); i++) {
+          final Parcel p = remaining.get(i);
+          distances[i] = Point.distance(reference.getPickupLocation(),
+            p.getPickupLocation())
+            + Point.distance(reference.getDeliveryLocation(),
+              p.getDeliveryLocation());
+          times[i] = Math.abs(reference.getPickupTimeWindow().begin()
+            - p.getPickupTimeWindow().begin())
+            + Math.abs(reference.getDeliveryTimeWindow().begin()
+              - p.getDeliveryTimeWindow().begin());
+          maxDistance = Math.max(maxDistance, distances[i]);
+          maxTime = Math.max(maxTime, times[i]);
+        }
+        final List<Scored> candidates = new ArrayList<>();
+        for (int i = 0; i < remaining.size(); i++) {
+          candidates.add(new Scored(remaining.get(i),
+            normalize(distances[i], maxDistance)
+              + normalize(times[i], maxTime)));
+        }
+        final Parcel selected = randomizedSelection(candidates, 1).get(0);
+        remaining.remove(selected);
+        removed.add(selected);
+      }
+      return removed;
+    }
+
+    // selects q parcels with a preference for the lowest scores
+    List<Parcel> randomizedSelection(List<Scored> candidates, int q) {
+      final List<Scored> sorted = new ArrayList<>(candidates);
+      Collections.sort(sorted, Scored.COMPARATOR);
+      final List<Parcel> selected = new ArrayList<>();
+      for (int i = 0; i < q; i++) {
+        final int index = (int) (Math.pow(rng.nextDouble(), DETERMINISM)
+          * sorted.size());
+        selected.add(sorted.remove(index).parcel);
+      }
+      return selected;
+    }
+
+    double cost(GlobalStateObject state,
+        ImmutableList<ImmutableList<Parcel>> schedule) {
+      double sum = 0;
+      for (int i = 0; i < schedule.size(); i++) {
+        sum += evaluator.computeCost(state, i, schedule.get(i));
+      }
+      return sum;
+    }
+  }
+
+  /**
+   * Parcels of which the pickup and the delivery are both in the modifiable
+   * part of a route, in schedule order.
+   * @param schedule The schedule.
+   * @param startIndices The start indices of the modifiable parts.
+   * @return The parcels that can be removed.
+   */
+  static List<Parcel> removableParcels(
+      ImmutableList<ImmutableList<Parcel>> schedule, IntList startIndices) {
+    final List<Parcel> removable = new ArrayList<>();
+    for (int i = 0; i < schedule.size(); i++) {
+      final ImmutableList<Parcel> route = schedule.get(i);
+      final Set<Parcel> fixed =
+        new HashSet<>(route.subList(0, startIndices.getInt(i)));
+      final Set<Parcel> seen = new HashSet<>();
+      for (int j = startIndices.getInt(i); j < route.size(); j++) {
+        final Parcel p = route.get(j);
+        if (!fixed.contains(p) && !seen.add(p)) {
+          // second occurrence
+          removable.add(p);
+        }
+      }
+    }
+    return removable;
+  }
+
+  static ImmutableList<ImmutableList<Parcel>> remove(
+      ImmutableList<ImmutableList<Parcel>> schedule, Set<Parcel> parcels) {
+    final ImmutableList.Builder<ImmutableList<Parcel>> builder =
+      ImmutableList.builder();
+    for (final ImmutableList<Parcel> route : schedule) {
+      builder.add(Insertions.removeAll(route, parcels));
+    }
+    return builder.build();
+  }
+
+  static Object2IntMap<Parcel> rows(
+      ImmutableList<ImmutableList<Parcel>> schedule) {
+    final Object2IntMap<Parcel> rows = new Object2IntOpenHashMap<>();
+    for (int i = 0; i < schedule.size(); i++) {
+      for (final Parcel p : schedule.get(i)) {
+        rows.put(p, i);
+      }
+    }
+    return rows;
+  }
+
+  static double normalize(double value, double max) {
+    return max == 0d ? 0d : value / max;
+  }
+
+  static final class Scored {
+    static final Comparator<Scored> COMPARATOR = new Comparator<Scored>() {
+      @Override
+      public int compare(Scored o1, Scored o2) {
+        return Double.compare(o1.score, o2.score);
+      }
+    };
+
+    final Parcel parcel;
+    final double score;
+
+    Scored(Parcel p, double s) {
+      parcel = p;
+      score = s;
+    }
+  }
+}
@@ -16,10 +16,17 @@
 package com.github.rinde.logistics.pdptw.solver;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static com.google.common.base.Preconditions.checkState;
-import static com.google.common.base.Verify.verifyNotNull;
 
-import java.util.concurrent.CancellationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nullable;
@@ -29,24 +36,27 @@ import org.apache.commons.math3.random.RandomGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.rinde.opt.localsearch.Opt2Options;
 import com.github.rinde.opt.localsearch.ProgressListener;
+import com.github.rinde.opt.localsearch.Proximity;
+import com.github.rinde.opt.localsearch.RouteEvaluator;
 import com.github.rinde.opt.localsearch.Swaps;
+import com.github.rinde.opt.localsearch.ThrottledProgressListener;
 import com.github.rinde.rinsim.central.GlobalStateObject;
 import com.github.rinde.rinsim.central.GlobalStateObject.VehicleStateObject;
 import com.github.rinde.rinsim.central.Solver;
-import com.github.rinde.rinsim.central.Solvers;
 import com.github.rinde.rinsim.central.rt.RealtimeSolver;
-import com.github.rinde.rinsim.central.rt.Scheduler;
 import com.github.rinde.rinsim.core.model.pdp.Parcel;
 import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
 import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.github.rinde.rinsim.util.StochasticSuppliers;
 import com.google.auto.value.AutoValue;
+import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
-import com.google.common.util.concurrent.FutureCallback;
-import com.google.common.util.concurrent.Futures;
-import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
@@ -64,13 +74,21 @@ import it.unimi.dsi.fastutil.ints.IntLists;
  * @author Rinde van Lon
  */
 public final class Opt2 {
+  /**
+   * The default minimum interval between two schedule updates of the
+   * real-time solver in milliseconds, see
+   * {@link Builder#withNotificationThrottling(long, double)}.
+   */
+  public static final long DEFAULT_NOTIFICATION_INTERVAL = 50L;
+
   static final Logger LOGGER =
     LoggerFactory.getLogger(Opt2.class);
 
   private Opt2() {}
 
   public static Builder builder() {
-    return Builder.create(null, null, false);
+    return Builder.create(null, null, false, 1, 0, null, 0L, 0L,
+      DEFAULT_NOTIFICATION_INTERVAL, 0d, 1, 1, false);
   }
 
   @AutoValue
@@ -86,20 +104,245 @@ public final class Opt2 {
 
     abstract boolean deptFirstSearch();
 
+    abstract int parallelism();
+
+    abstract int granularity();
+
+    @Nullable
+    abstract Proximity<Parcel> proximity();
+
+    abstract long timeLimit();
+
+    abstract long evaluationLimit();
+
+    abstract long notificationInterval();
+
+    abstract double minImprovement();
+
+    abstract int multiStarts();
+
+    abstract int multiStartThreads();
+
+    abstract boolean warmStart();
+
     @CheckReturnValue
     public Builder withDepthFirstSearch() {
-      return create(solverSup(), objFunc(), true);
+      return create(solverSup(), objFunc(), true, parallelism(), granularity(),
+        proximity(), timeLimit(), evaluationLimit(), notificationInterval(),
+        minImprovement(), multiStarts(), multiStartThreads(), warmStart());
     }
 
     @CheckReturnValue
     public Builder withDelegate(
         StochasticSupplier<? extends Solver> solverSupplier) {
-      return create(solverSupplier, objFunc(), deptFirstSearch());
+      return create(solverSupplier, objFunc(), deptFirstSearch(),
+        parallelism(), granularity(), proximity(), timeLimit(),
+        evaluationLimit(), notificationInterval(), minImprovement(),
+        multiStarts(), multiStartThreads(), warmStart());
     }
 
     @CheckReturnValue
     public Builder withObjectiveFunction(ObjectiveFunction of) {
-      return create(solverSup(), of, deptFirstSearch());
+      return create(solverSup(), of, deptFirstSearch(), parallelism(),
+        granularity(), proximity(), timeLimit(), evaluationLimit(),
+        notificationInterval(), minImprovement(), multiStarts(),
+        multiStartThreads(), warmStart());
+    }
+
+    /**
+     * Sets the number of threads that is used for evaluating the swaps in
+     * <i>breadth-first</i> search, see
+     * {@link Swaps#bfsOpt2(ImmutableList, IntList, Object, com.github.rinde.opt.localsearch.RouteEvaluator, java.util.concurrent.ForkJoinPool, Optional)}
+     * . The result of the search is independent of the parallelism. This
+     * setting has no effect on <i>depth-first</i> search. By default the
+     * search is sequential (parallelism is <code>1</code>). All solvers with
+     * the same parallelism share a single {@link ForkJoinPool} that lives as
+     * long as the VM, its daemon workers terminate when they are idle.
+     * @param numThreads The number of threads, must be positive.
+     * @return A new builder instance with the parallelism set.
+     */
+    @CheckReturnValue
+    public Builder withParallelism(int numThreads) {
+      checkArgument(numThreads > 0,
+        "Parallelism must be a positive number, found %s.", numThreads);
+      return create(solverSup(), objFunc(), deptFirstSearch(), numThreads,
+        granularity(), proximity(), timeLimit(), evaluationLimit(),
+        notificationInterval(), minImprovement(), multiStarts(),
+        multiStartThreads(), warmStart());
+    }
+
+    /**
+     * Restricts the search to a granular neighborhood: a parcel is only
+     * inserted next to one of its <code>k</code> nearest parcels, see
+     * {@link Opt2Options#withGranularity(int, Proximity)}. The distance
+     * between two parcels is the shortest distance between their pickup and
+     * delivery locations. By default the entire neighborhood is searched.
+     * @param k The number of nearest parcels, must be positive.
+     * @return A new builder instance with the granularity set.
+     */
+    @CheckReturnValue
+    public Builder withGranularity(int k) {
+      return withGranularity(k, ParcelProximity.INSTANCE);
+    }
+
+    /**
+     * Restricts the search to a granular neighborhood: a parcel is only
+     * inserted next to one of its <code>k</code> nearest parcels as defined by
+     * the specified proximity, see
+     * {@link Opt2Options#withGranularity(int, Proximity)}. By default the
+     * entire neighborhood is searched.
+     * @param k The number of nearest parcels, must be positive.
+     * @param prox The proximity that defines the distance between parcels.
+     * @return A new builder instance with the granularity set.
+     */
+    @CheckReturnValue
+    public Builder withGranularity(int k, Proximity<Parcel> prox) {
+      checkArgument(k > 0, "Granularity must be a positive number, found %s.",
+        k);
+      return create(solverSup(), objFunc(), deptFirstSearch(), parallelism(),
+        k, prox, timeLimit(), evaluationLimit(), notificationInterval(),
+        minImprovement(), multiStarts(), multiStartThreads(), warmStart());
+    }
+
+    /**
+     * Limits the (wall-clock) duration of each 2-opt search, when the limit is
+     * reached the best schedule that has been found so far is returned, see
+     * {@link Opt2Options#withTimeLimit(long, TimeUnit)}. The time needed by
+     * the delegate solver is not included. By default the duration is
+     * unlimited.
+     * @param ms The maximum duration in milliseconds, must be positive.
+     * @return A new builder instance with the time limit set.
+     */
+    @CheckReturnValue
+    public Builder withTimeLimit(long ms) {
+      checkArgument(ms > 0, "Time limit must be positive, found %s.", ms);
+      return create(solverSup(), objFunc(), deptFirstSearch(), parallelism(),
+        granularity(), proximity(), ms, evaluationLimit(),
+        notificationInterval(), minImprovement(), multiStarts(),
+        multiStartThreads(), warmStart());
+    }
+
+    /**
+     * Limits the number of swaps that is evaluated in each 2-opt search, when
+     * the limit is reached the best schedule that has been found so far is
+     * returned, see {@link Opt2Options#withEvaluationLimit(long)}. Contrary to
+     * a time limit, a sequential search with an evaluation limit is
+     * reproducible. By default the number of evaluations is unlimited.
+     * @param n The maximum number of evaluations, must be positive.
+     * @return A new builder instance with the evaluation limit set.
+     */
+    @CheckReturnValue
+    public Builder withEvaluationLimit(long n) {
+      checkArgument(n > 0, "Evaluation limit must be positive, found %s.", n);
+      return create(solverSup(), objFunc(), deptFirstSearch(), parallelism(),
+        granularity(), proximity(), timeLimit(), n, notificationInterval(),
+        minImprovement(), multiStarts(), multiStartThreads(), warmStart());
+    }
+
+    /**
+     * Runs multiple independent <i>depth-first</i> searches per solve, all
+     * starting from the schedule of the delegate solver, and returns the best
+     * result. The searches use different random seeds which are derived from
+     * the seed of the solver, they are executed on a fixed pool of
+     * <code>numThreads</code> threads. A time limit (see
+     * {@link #withTimeLimit(long)}) applies to all searches together, searches
+     * that have not yet started when the limit is reached are skipped. Without
+     * time limit the result only depends on the seed (and not on the number of
+     * threads or the timing of the threads). Requires depth-first search (see
+     * {@link #withDepthFirstSearch()}). By default a single search is used.
+     * @param numStarts The number of searches per solve, must be positive.
+     * @param numThreads The number of threads, must be positive.
+     * @return A new builder instance with multi-start set.
+     */
+    @CheckReturnValue
+    public Builder withMultiStart(int numStarts, int numThreads) {
+      checkArgument(numStarts > 0,
+        "Number of starts must be positive, found %s.", numStarts);
+      checkArgument(numThreads > 0,
+        "Number of threads must be positive, found %s.", numThreads);
+      return create(solverSup(), objFunc(), deptFirstSearch(), parallelism(),
+        granularity(), proximity(), timeLimit(), evaluationLimit(),
+        notificationInterval(), minImprovement(), numStarts, numThreads,
+        warmStart());
+    }
+
+    /**
+     * Enables warm starting: instead of constructing a new schedule from
+     * scratch with the delegate solver (see {@link #withDelegate(StochasticSupplier)})
+     * on every solve, the best schedule of the previous solve is repaired
+     * against the new state and the search continues from there. Repairing
+     * removes parcels that are no longer available, keeps the destinations of
+     * the vehicles in front of their routes and inserts the new parcels using
+     * cheapest insertion, see {@link WarmStartSolver}. This is most useful for
+     * the real-time solver (see {@link #buildRealtimeSolverSupplier()}) where
+     * the best schedule so far is also remembered when a search is cancelled
+     * because the problem changed. The delegate solver is only used for the
+     * first solve and whenever the number of vehicles changes. By default warm
+     * starting is disabled.
+     * @return A new builder instance with warm starting enabled.
+     */
+    @CheckReturnValue
+    public Builder withWarmStart() {
+      return create(solverSup(), objFunc(), deptFirstSearch(), parallelism(),
+        granularity(), proximity(), timeLimit(), evaluationLimit(),
+        notificationInterval(), minImprovement(), multiStarts(),
+        multiStartThreads(), true);
+    }
+
+    /**
+     * Throttles the schedule updates that are sent to the simulator by the
+     * real-time solver (see {@link #buildRealtimeSolverSupplier()}): an
+     * improvement is only sent if at least <code>ms</code> milliseconds have
+     * passed since the previous update and if the objective value improved at
+     * least by the specified fraction, see {@link ThrottledProgressListener}.
+     * Improvements are sent on a separate thread, the final schedule of each
+     * search is always sent. The default is an interval of
+     * {@value Opt2#DEFAULT_NOTIFICATION_INTERVAL} ms and no minimum
+     * improvement. This setting has no effect on the solver created by
+     * {@link #buildSolverSupplier()}.
+     * @param ms The minimum interval between two updates in milliseconds, must
+     *          be non-negative.
+     * @param minRelativeImprovement The minimum relative improvement of the
+     *          objective value, must be non-negative.
+     * @return A new builder instance with the throttling set.
+     */
+    @CheckReturnValue
+    public Builder withNotificationThrottling(long ms,
+        double minRelativeImprovement) {
+      checkArgument(ms >= 0, "Interval must be non-negative, found %s.", ms);
+      checkArgument(minRelativeImprovement >= 0,
+        "Minimum relative improvement must be non-negative, found %s.",
+        minRelativeImprovement);
+      return create(solverSup(), objFunc(), deptFirstSearch(), parallelism(),
+        granularity(), proximity(), timeLimit(), evaluationLimit(), ms,
+        minRelativeImprovement, multiStarts(), multiStartThreads(),
+        warmStart());
+    }
+
+    /**
+     * Disables the throttling of schedule updates, every improvement is
+     * immediately sent to the simulator by the real-time solver. See
+     * {@link #withNotificationThrottling(long, double)}.
+     * @return A new builder instance without throttling.
+     */
+    @CheckReturnValue
+    public Builder withoutNotificationThrottling() {
+      return withNotificationThrottling(0L, 0d);
+    }
+
+    Opt2Options<Parcel> options() {
+      Opt2Options<Parcel> options = Opt2Options.create();
+      final Proximity<Parcel> prox = proximity();
+      if (prox != null) {
+        options = options.withGranularity(granularity(), prox);
+      }
+      if (timeLimit() > 0) {
+        options = options.withTimeLimit(timeLimit(), TimeUnit.MILLISECONDS);
+      }
+      if (evaluationLimit() > 0) {
+        options = options.withEvaluationLimit(evaluationLimit());
+      }
+      return options;
     }
 
     @CheckReturnValue
@@ -135,15 +378,42 @@ public final class Opt2 {
         ? deleg : CheapestInsertionHeuristic.supplier(objFunc);
 
       final boolean dfs = deptFirstSearch();
+      final int parallelism = parallelism();
+      final int starts = multiStarts();
+      final int threads = multiStartThreads();
+      checkArgument(dfs || starts == 1,
+        "Multi-start requires depth-first search.");
+      final long timeLimit = timeLimit();
+      final boolean warm = warmStart();
+      final Opt2Options<Parcel> options = options();
       return new StochasticSupplier<Solver>() {
         @Override
         public Solver get(long seed) {
+          if (warm) {
+            final Solver construction = delegate.get(seed);
+            final WarmStartSolver warmStart = new WarmStartSolver(
+              construction, objFunc, progressListener);
+            return warmStart.recordResults(createSolver(seed,
+              StochasticSuppliers.<Solver>constant(warmStart), warmStart));
+          }
+          return createSolver(seed, delegate, progressListener);
+        }
+
+        Solver createSolver(long seed, StochasticSupplier<Solver> construction,
+            @Nullable ProgressListener<Parcel> listener) {
+          if (starts > 1) {
+            final RandomGenerator rng = new MersenneTwister(seed);
+            return new MultiStartDfsOpt2(rng.nextLong(),
+              construction.get(rng.nextLong()), objFunc, starts, threads,
+              timeLimit, options, listener);
+          }
           if (dfs) {
             final RandomGenerator rng = new MersenneTwister(seed);
-            return new DfsOpt2(rng.nextLong(), delegate.get(rng.nextLong()),
-              objFunc, progressListener);
+            return new DfsOpt2(rng.nextLong(),
+              construction.get(rng.nextLong()), objFunc, options, listener);
           }
-          return new BfsOpt2(delegate.get(seed), objFunc, progressListener);
+          return new BfsOpt2(construction.get(seed), objFunc, parallelism,
+            options, listener);
         }
 
         @Override
@@ -167,22 +437,39 @@ public final class Opt2 {
     static Builder create(
         @Nullable StochasticSupplier<? extends Solver> solverSup,
         @Nullable ObjectiveFunction objFunc,
-        boolean dfs) {
+        boolean dfs,
+        int parallelism,
+        int granularity,
+        @Nullable Proximity<Parcel> proximity,
+        long timeLimit,
+        long evaluationLimit,
+        long notificationInterval,
+        double minImprovement,
+        int multiStarts,
+        int multiStartThreads,
+        boolean warmStart) {
       return new AutoValue_Opt2_Builder(
         (StochasticSupplier<Solver>) solverSup,
-        objFunc, dfs);
+        objFunc, dfs, parallelism, granularity, proximity, timeLimit,
+        evaluationLimit, notificationInterval, minImprovement, multiStarts,
+        multiStartThreads, warmStart);
     }
   }
 
   abstract static class AbstractOpt2Solver implements Solver {
     final Solver delegate;
-    final ParcelRouteEvaluator evaluator;
+    final RouteEvaluator<GlobalStateObject, Parcel> evaluator;
     final Optional<ProgressListener<Parcel>> progressListener;
+    // the candidate lists of a granular neighborhood are computed once per
+    // solve, they are reused by the next solve if its schedule has the same
+    // parcels
+    Opt2Options<Parcel> options;
 
     AbstractOpt2Solver(Solver deleg, ObjectiveFunction objFunc,
-        @Nullable ProgressListener<Parcel> pl) {
+        Opt2Options<Parcel> opts, @Nullable ProgressListener<Parcel> pl) {
       delegate = deleg;
-      evaluator = new ParcelRouteEvaluator(objFunc);
+      evaluator = ParcelRouteEvaluator.create(objFunc);
+      options = opts;
       progressListener = Optional.fromNullable(pl);
     }
 
@@ -191,7 +478,7 @@ public final class Opt2 {
         GlobalStateObject state) throws InterruptedException {
       final ImmutableList<ImmutableList<Parcel>> schedule =
         delegate.solve(state);
-
+      options = options.withCandidatesFor(schedule);
       return doSolve(schedule, state);
     }
 
@@ -209,17 +496,26 @@ public final class Opt2 {
   }
 
   static class BfsOpt2 extends AbstractOpt2Solver {
-    BfsOpt2(Solver deleg, ObjectiveFunction objFunc,
-        @Nullable ProgressListener<Parcel> pl) {
-      super(deleg, objFunc, pl);
+    final Optional<ForkJoinPool> pool;
+
+    BfsOpt2(Solver deleg, ObjectiveFunction objFunc, int parallelism,
+        Opt2Options<Parcel> opts, @Nullable ProgressListener<Parcel> pl) {
+      super(deleg, objFunc, opts, pl);
+      pool = parallelism > 1
+        ? Optional.of(ForkJoinPools.get(parallelism))
+        : Optional.<ForkJoinPool>absent();
     }
 
     @Override
     ImmutableList<ImmutableList<Parcel>> doSolve(
         ImmutableList<ImmutableList<Parcel>> schedule,
         GlobalStateObject state) throws InterruptedException {
+      if (pool.isPresent()) {
+        return Swaps.bfsOpt2(schedule, indices(state), state, evaluator,
+          pool.get(), options, progressListener);
+      }
       return Swaps.bfsOpt2(schedule, indices(state), state, evaluator,
-        progressListener);
+        options, progressListener);
     }
   }
 
@@ -227,8 +523,8 @@ public final class Opt2 {
     RandomGenerator rng;
 
     DfsOpt2(long seed, Solver deleg, ObjectiveFunction objFunc,
-        @Nullable ProgressListener<Parcel> pl) {
-      super(deleg, objFunc, pl);
+        Opt2Options<Parcel> opts, @Nullable ProgressListener<Parcel> pl) {
+      super(deleg, objFunc, opts, pl);
       rng = new MersenneTwister(seed);
     }
 
@@ -237,7 +533,135 @@ public final class Opt2 {
         ImmutableList<ImmutableList<Parcel>> schedule, GlobalStateObject state)
             throws InterruptedException {
       return Swaps.dfsOpt2(schedule, indices(state), state, evaluator, rng,
-        progressListener);
+        options, progressListener);
+    }
+  }
+
+  static class MultiStartDfsOpt2 extends AbstractOpt2Solver {
+    final RandomGenerator rng;
+    final int starts;
+    final long timeLimitNanos;
+    final int threads;
+    final ThreadFactory threadFactory;
+
+    MultiStartDfsOpt2(long seed, Solver deleg, ObjectiveFunction objFunc,
+        int numStarts, int numThreads, long timeLimitMs,
+        Opt2Options<Parcel> opts, @Nullable ProgressListener<Parcel> pl) {
+      super(deleg, objFunc, opts, pl);
+      rng = new MersenneTwister(seed);
+      starts = numStarts;
+      timeLimitNanos = TimeUnit.MILLISECONDS.toNanos(timeLimitMs);
+      threads = numThreads;
+      threadFactory = new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("opt2-multi-start-%d")
+        .build();
+    }
+
+    @Override
+    ImmutableList<ImmutableList<Parcel>> doSolve(
+        final ImmutableList<ImmutableList<Parcel>> schedule,
+        final GlobalStateObject state) throws InterruptedException {
+      final IntList indices = indices(state);
+      final long deadline = System.nanoTime() + timeLimitNanos;
+      final Optional<ProgressListener<Parcel>> listener;
+      if (progressListener.isPresent()) {
+        listener = Optional.<ProgressListener<Parcel>>of(
+          new ImprovementFilter(progressListener.get()));
+      } else {
+        listener = Optional.absent();
+      }
+
+      final List<Callable<ImmutableList<ImmutableList<Parcel>>>> descents =
+        new ArrayList<>();
+      for (int i = 0; i < starts; i++) {
+        final long seed = rng.nextLong();
+        descents.add(new Callable<ImmutableList<ImmutableList<Parcel>>>() {
+          @Nullable
+          @Override
+          public ImmutableList<ImmutableList<Parcel>> call()
+              throws InterruptedException {
+            Opt2Options<Parcel> opts = options;
+            if (timeLimitNanos > 0) {
+              final long remaining = deadline - System.nanoTime();
+              if (remaining <= 0) {
+                // skipped
+                return null;
+              }
+              opts = opts.withTimeLimit(remaining, TimeUnit.NANOSECONDS);
+            }
+            return Swaps.dfsOpt2(schedule, indices, state, evaluator,
+              new MersenneTwister(seed), opts, listener);
+          }
+        });
+      }
+
+      // the pool only lives for the duration of this call, this way no threads
+      // are leaked when the solver is discarded
+      final ExecutorService executor =
+        Executors.newFixedThreadPool(Math.min(threads, starts), threadFactory);
+      final List<Future<ImmutableList<ImmutableList<Parcel>>>> futures;
+      try {
+        futures = executor.invokeAll(descents);
+      } finally {
+        executor.shutdownNow();
+      }
+
+      // the results are compared in order of the seeds, on equal costs the
+      // first result wins, this makes the result independent of the timing
+      ImmutableList<ImmutableList<Parcel>> best = schedule;
+      double bestCost = cost(schedule, state);
+      for (final Future<ImmutableList<ImmutableList<Parcel>>> future
+        : futures) {
+        final ImmutableList<ImmutableList<Parcel>> result;
+        try {
+          result = future.get();
+        } catch (final ExecutionException e) {
+          throw Throwables.propagate(e.getCause());
+        }
+        if (result == null) {
+          continue;
+        }
+        final double resultCost = cost(result, state);
+        if (resultCost < bestCost) {
+          best = result;
+          bestCost = resultCost;
+        }
+      }
+      return best;
+    }
+
+    double cost(ImmutableList<ImmutableList<Parcel>> schedule,
+        GlobalStateObject state) {
+      double sum = 0;
+      for (int i = 0; i < schedule.size(); i++) {
+        sum += evaluator.computeCost(state, i, schedule.get(i));
+      }
+      return sum;
+    }
+  }
+
+  /**
+   * Progress listener that is shared by concurrent searches, only the
+   * schedules that improve over all previously reported schedules are passed
+   * to the delegate.
+   */
+  static class ImprovementFilter implements ProgressListener<Parcel> {
+    final ProgressListener<Parcel> delegate;
+    double best;
+
+    ImprovementFilter(ProgressListener<Parcel> deleg) {
+      delegate = deleg;
+      best = Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public synchronized void notify(
+        ImmutableList<ImmutableList<Parcel>> schedule, double objectiveValue) {
+      if (objectiveValue < best) {
+        best = objectiveValue;
+        delegate.notify(schedule, objectiveValue);
+      }
     }
   }
 
@@ -300,83 +724,14 @@ public final class Opt2 {
    *          <i>breadth first search</i> is used.
    */
 
-  static class RealtimeOpt2
-      implements RealtimeSolver, ProgressListener<Parcel> {
-
-    Optional<ListenableFuture<ImmutableList<ImmutableList<Parcel>>>> currentFuture;
-    Optional<Scheduler> scheduler;
-
-    Solver solver;
-    @Nullable
-    GlobalStateObject lastSnapshot;
-
-    RealtimeOpt2(Builder b, long seed) {
-      solver = b.buildSolverSupplier(this).get(seed);
-      currentFuture = Optional.absent();
-      scheduler = Optional.absent();
-      lastSnapshot = null;
-    }
-
-    @Override
-    public void init(Scheduler s) {
-      scheduler = Optional.of(s);
-    }
-
-    @Override
-    public void problemChanged(final GlobalStateObject snapshot) {
-      checkState(scheduler.isPresent(), "Not yet initialized.");
-      cancel();
-      lastSnapshot = snapshot;
-      currentFuture = Optional.of(
-        scheduler.get().getSharedExecutor().submit(
-          Solvers.createSolverCallable(solver, snapshot)));
-
-      Futures.addCallback(currentFuture.get(),
-        new FutureCallback<ImmutableList<ImmutableList<Parcel>>>() {
-          @Override
-          public void onSuccess(
-              @Nullable ImmutableList<ImmutableList<Parcel>> result) {
-            LOGGER.trace("onSuccess: " + result);
-            if (result == null) {
-              scheduler.get().reportException(
-                new IllegalArgumentException("Solver.solve(..) must return a "
-                  + "non-null result. Solver: " + solver));
-            } else {
-              scheduler.get().updateSchedule(snapshot, result);
-              scheduler.get().doneForNow();
-            }
-          }
-
-          @Override
-          public void onFailure(Throwable t) {
-            if (t instanceof CancellationException) {
-              LOGGER.trace("Solver execution got cancelled");
-              return;
-            }
-            scheduler.get().reportException(t);
-          }
-        });
-    }
-
-    @Override
-    public void receiveSnapshot(GlobalStateObject snapshot) {}
-
-    @Override
-    public void cancel() {
-      if (isComputing()) {
-        currentFuture.get().cancel(true);
-      }
-    }
-
-    @Override
-    public boolean isComputing() {
-      return currentFuture.isPresent() && !currentFuture.get().isDone();
-    }
-
-    @Override
-    public void notify(ImmutableList<ImmutableList<Parcel>> schedule,
-        double objectiveValue) {
-      scheduler.get().updateSchedule(verifyNotNull(lastSnapshot), schedule);
+  static class RealtimeOpt2 extends ReportingRealtimeSolver {
+    RealtimeOpt2(final Builder b, final long seed) {
+      super(new Function<ProgressListener<Parcel>, Solver>() {
+        @Override
+        public Solver apply(@Nullable ProgressListener<Parcel> listener) {
+          return b.buildSolverSupplier(listener).get(seed);
+        }
+      }, b.notificationInterval(), b.minImprovement());
     }
   }
 }
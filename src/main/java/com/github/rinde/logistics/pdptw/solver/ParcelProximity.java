@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import com.github.rinde.opt.localsearch.Proximity;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.geom.Point;
+
+/**
+ * {@link Proximity} of parcels based on their pickup and delivery locations:
+ * the distance between two parcels is the shortest Euclidean distance between
+ * any of the locations of the first parcel and any of the locations of the
+ * second parcel.
+ * @author Rinde van Lon
+ */
+enum ParcelProximity implements Proximity<Parcel> {
+  INSTANCE {
+    @Override
+    public double distance(Parcel item1, Parcel item2) {
+      return Math.min(
+        Math.min(
+          Point.distance(item1.getPickupLocation(), item2.getPickupLocation()),
+          Point.distance(item1.getPickupLocation(),
+            item2.getDeliveryLocation())),
+        Math.min(
+          Point.distance(item1.getDeliveryLocation(),
+            item2.getPickupLocation()),
+          Point.distance(item1.getDeliveryLocation(),
+            item2.getDeliveryLocation())));
+    }
+
+    @Override
+    public String toString() {
+      return ParcelProximity.class.getSimpleName();
+    }
+  }
+}
@@ -15,16 +15,21 @@
  */
 package com.github.rinde.logistics.pdptw.solver;
 
+import javax.annotation.Nullable;
+
 import com.github.rinde.opt.localsearch.RouteEvaluator;
 import com.github.rinde.rinsim.central.GlobalStateObject;
 import com.github.rinde.rinsim.central.Solvers;
 import com.github.rinde.rinsim.core.model.pdp.Parcel;
 import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
 import com.google.common.collect.ImmutableList;
 
 class ParcelRouteEvaluator implements
     RouteEvaluator<GlobalStateObject, Parcel> {
   private final ObjectiveFunction objectiveFunction;
+  @Nullable
+  private volatile EvaluationContext lastContext;
 
   ParcelRouteEvaluator(ObjectiveFunction objFunc) {
     objectiveFunction = objFunc;
@@ -34,6 +39,42 @@ class ParcelRouteEvaluator implements
   public double computeCost(GlobalStateObject context, int routeIndex,
       ImmutableList<Parcel> newRoute) {
     return objectiveFunction.computeCost(Solvers.computeStats(
-      context.withSingleVehicle(routeIndex), ImmutableList.of(newRoute)));
+      context(context).singleVehicleState(routeIndex),
+      ImmutableList.of(newRoute)));
+  }
+
+  /**
+   * Returns the evaluation context of the specified state. The context of the
+   * most recently used state is cached, a solve evaluates all routes in the
+   * same state instance and therefore uses a single context. Solvers that use
+   * the {@link Gendreau06ObjectiveFunction} do not use this evaluator, see
+   * {@link #create(ObjectiveFunction)}.
+   * @param state The state.
+   * @return The evaluation context of the state.
+   */
+  EvaluationContext context(GlobalStateObject state) {
+    final EvaluationContext c = lastContext;
+    if (c != null && c.state() == state) {
+      return c;
+    }
+    final EvaluationContext newContext = new EvaluationContext(state);
+    lastContext = newContext;
+    return newContext;
+  }
+
+  /**
+   * Creates the evaluator for the specified objective function, the
+   * {@link Gendreau06ObjectiveFunction} is evaluated by the specialized
+   * {@link Gendreau06RouteEvaluator}.
+   * @param objFunc The objective function.
+   * @return A new evaluator.
+   */
+  static RouteEvaluator<GlobalStateObject, Parcel> create(
+      ObjectiveFunction objFunc) {
+    if (objFunc instanceof Gendreau06ObjectiveFunction) {
+      return new Gendreau06RouteEvaluator(
+        (Gendreau06ObjectiveFunction) objFunc);
+    }
+    return new ParcelRouteEvaluator(objFunc);
   }
 }
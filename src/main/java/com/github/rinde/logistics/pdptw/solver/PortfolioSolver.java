@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.central.Solvers;
+import com.github.rinde.rinsim.central.rt.RealtimeSolver;
+import com.github.rinde.rinsim.central.rt.RtStAdapters;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Joiner;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multiset;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Portfolio of solvers that race each other: on every solve all members of the
+ * portfolio (e.g. {@link CheapestInsertionHeuristic}, {@link Opt2} and
+ * OptaPlanner configurations) are executed in parallel on a bounded pool of
+ * threads, the schedule with the lowest cost according to the
+ * {@link ObjectiveFunction} is returned. When a time limit is set, the members
+ * that have not finished at the deadline are interrupted (as soon as at least
+ * one member has finished). The {@link Statistics} keep track of how often
+ * each member wins, such that a portfolio can be pruned offline.
+ * <p>
+ * On equal costs the member that was added first wins, without time limit the
+ * result therefore does not depend on the timing of the threads.
+ * @author Rinde van Lon
+ */
+public final class PortfolioSolver {
+
+  private PortfolioSolver() {}
+
+  /**
+   * @return A new builder without members, an objective function and at least
+   *         one member are required.
+   */
+  public static Builder builder() {
+    return Builder.create(null, ImmutableList.<StochasticSupplier<Solver>>of(),
+      0, 0L, null);
+  }
+
+  /**
+   * Builder for portfolio solvers.
+   * @author Rinde van Lon
+   */
+  @AutoValue
+  public abstract static class Builder {
+
+    Builder() {}
+
+    @Nullable
+    abstract ObjectiveFunction objFunc();
+
+    abstract ImmutableList<StochasticSupplier<Solver>> members();
+
+    abstract int threads();
+
+    abstract long timeLimit();
+
+    @Nullable
+    abstract Statistics statistics();
+
+    /**
+     * @param of The objective function that is used to select the best
+     *          schedule.
+     * @return A new builder instance with the objective function set.
+     */
+    @CheckReturnValue
+    public Builder withObjectiveFunction(ObjectiveFunction of) {
+      return create(of, members(), threads(), timeLimit(), statistics());
+    }
+
+    /**
+     * Adds a member to the portfolio, the index of the member in the
+     * {@link Statistics} is the number of members that were added before.
+     * @param solverSupplier The supplier of the solver.
+     * @return A new builder instance with the member added.
+     */
+    @CheckReturnValue
+    public Builder addMember(
+        StochasticSupplier<? extends Solver> solverSupplier) {
+      @SuppressWarnings("unchecked")
+      final StochasticSupplier<Solver> sup =
+        (StochasticSupplier<Solver>) solverSupplier;
+      final ImmutableList<StochasticSupplier<Solver>> newMembers =
+        ImmutableList.<StochasticSupplier<Solver>>builder()
+          .addAll(members())
+          .add(sup)
+          .build();
+      return create(objFunc(), newMembers, threads(), timeLimit(),
+        statistics());
+    }
+
+    /**
+     * Sets the number of threads on which the members are executed. By
+     * default the number of threads is the minimum of the number of members and
+     * the number of available processors.
+     * @param numThreads The number of threads, must be positive.
+     * @return A new builder instance with the number of threads set.
+     */
+    @CheckReturnValue
+    public Builder withThreads(int numThreads) {
+      checkArgument(numThreads > 0,
+        "Number of threads must be positive, found %s.", numThreads);
+      return create(objFunc(), members(), numThreads, timeLimit(),
+        statistics());
+    }
+
+    /**
+     * Limits the (wall-clock) duration of each solve. At the deadline the
+     * members that have not yet finished are interrupted, if no member has
+     * finished yet the portfolio waits for the first member to finish. By
+     * default the duration is unlimited and all members run to completion.
+     * @param ms The maximum duration in milliseconds, must be positive.
+     * @return A new builder instance with the time limit set.
+     */
+    @CheckReturnValue
+    public Builder withTimeLimit(long ms) {
+      checkArgument(ms > 0, "Time limit must be positive, found %s.", ms);
+      return create(objFunc(), members(), threads(), ms, statistics());
+    }
+
+    /**
+     * Sets the statistics that are updated by the solvers. By default each
+     * supplier (see {@link #buildSolverSupplier()}) has its own statistics
+     * that are shared by all its solvers, use this method to inspect them.
+     * @param stats The statistics.
+     * @return A new builder instance with the statistics set.
+     */
+    @CheckReturnValue
+    public Builder withStatistics(Statistics stats) {
+      return create(objFunc(), members(), threads(), timeLimit(), stats);
+    }
+
+    /**
+     * @return A supplier of portfolio solvers, the seed of the supplier
+     *         determines the seeds of the members.
+     */
+    @CheckReturnValue
+    public StochasticSupplier<Solver> buildSolverSupplier() {
+      final ObjectiveFunction objFunc = objFunc();
+      checkArgument(objFunc != null,
+        "An objective function must be defined.");
+      final ImmutableList<StochasticSupplier<Solver>> members = members();
+      checkArgument(!members.isEmpty(), "At least one member is required.");
+      final int numThreads = threads() > 0 ? threads()
+        : Math.min(members.size(), Runtime.getRuntime().availableProcessors());
+      final long timeLimit = timeLimit();
+      final Statistics stats =
+        statistics() == null ? Statistics.create() : statistics();
+      return new StochasticSupplier<Solver>() {
+        @Override
+        public Solver get(long seed) {
+          final RandomGenerator rng = new MersenneTwister(seed);
+          final List<Solver> solvers = new ArrayList<>();
+          for (final StochasticSupplier<Solver> member : members) {
+            solvers.add(member.get(rng.nextLong()));
+          }
+          return new RacingSolver(solvers, objFunc, numThreads, timeLimit,
+            stats);
+        }
+
+        @Override
+        public String toString() {
+          return supplierToString(members);
+        }
+      };
+    }
+
+    /**
+     * @return A supplier of real-time portfolio solvers, the portfolio is
+     *         executed on the executor of the scheduler and is cancelled (i.e.
+     *         all members are interrupted) when the problem changes.
+     */
+    @CheckReturnValue
+    public StochasticSupplier<RealtimeSolver> buildRealtimeSolverSupplier() {
+      return RtStAdapters.toRealtime(buildSolverSupplier());
+    }
+
+    static String supplierToString(List<StochasticSupplier<Solver>> members) {
+      return Joiner.on("").join(PortfolioSolver.class.getSimpleName(), "(",
+        Joiner.on(", ").join(members), ")");
+    }
+
+    static Builder create(
+        @Nullable ObjectiveFunction objFunc,
+        ImmutableList<StochasticSupplier<Solver>> members,
+        int threads,
+        long timeLimit,
+        @Nullable Statistics statistics) {
+      return new AutoValue_PortfolioSolver_Builder(objFunc, members, threads,
+        timeLimit, statistics);
+    }
+  }
+
+  /**
+   * Statistics of the members of a portfolio, members are identified by the
+   * order in which they were added to the {@link Builder}. All methods are
+   * thread-safe.
+   * @author Rinde van Lon
+   */
+  public static final class Statistics {
+    private final Multiset<Integer> wins;
+    private final Multiset<Integer> completions;
+    private final Multiset<Integer> interruptions;
+    private final Multiset<Integer> failures;
+
+    Statistics() {
+      wins = ConcurrentHashMultiset.create();
+      completions = ConcurrentHashMultiset.create();
+      interruptions = ConcurrentHashMultiset.create();
+      failures = ConcurrentHashMultiset.create();
+    }
+
+    /**
+     * @param member The index of the member.
+     * @return The number of solves in which the member produced the best
+     *         schedule.
+     */
+    public int getWins(int member) {
+      return wins.count(member);
+    }
+
+    /**
+     * @param member The index of the member.
+     * @return The number of solves in which the member finished.
+     */
+    public int getCompletions(int member) {
+      return completions.count(member);
+    }
+
+    /**
+     * @param member The index of the member.
+     * @return The number of solves in which the member was interrupted
+     *         because it did not finish before the deadline.
+     */
+    public int getInterruptions(int member) {
+      return interruptions.count(member);
+    }
+
+    /**
+     * @param member The index of the member.
+     * @return The number of solves in which the member threw an exception.
+     */
+    public int getFailures(int member) {
+      return failures.count(member);
+    }
+
+    /**
+     * @return The number of solves that produced a schedule.
+     */
+    public int getSolves() {
+      return wins.size();
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(Statistics.class)
+        .add("wins", wins)
+        .add("completions", completions)
+        .add("interruptions", interruptions)
+        .add("failures", failures)
+        .toString();
+    }
+
+    /**
+     * @return New empty statistics.
+     */
+    public static Statistics create() {
+      return new Statistics();
+    }
+  }
+
+  static class RacingSolver implements Solver {
+    final ImmutableList<Solver> members;
+    final ObjectiveFunction objectiveFunction;
+    final long timeLimitNanos;
+    final Statistics statistics;
+    final int threads;
+    final ThreadFactory threadFactory;
+
+    RacingSolver(List<Solver> solvers, ObjectiveFunction objFunc,
+        int numThreads, long timeLimitMs, Statistics stats) {
+      members = ImmutableList.copyOf(solvers);
+      objectiveFunction = objFunc;
+      timeLimitNanos = TimeUnit.MILLISECONDS.toNanos(timeLimitMs);
+      statistics = stats;
+      threads = numThreads;
+      threadFactory = new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("portfolio-%d")
+        .build();
+    }
+
+    @Override
+    public ImmutableList<ImmutableList<Parcel>> solve(
+        final GlobalStateObject state) throws InterruptedException {
+      final long deadline = System.nanoTime() + timeLimitNanos;
+      // the pool only lives for the duration of this call, this way no threads
+      // are leaked when the solver is discarded
+      final ExecutorService executor = Executors
+        .newFixedThreadPool(Math.min(threads, members.size()), threadFactory);
+      final CompletionService<ImmutableList<ImmutableList<Parcel>>> service =
+        new ExecutorCompletionService<>(executor);
+      final Map<Future<ImmutableList<ImmutableList<Parcel>>>, Integer> futures =
+        new LinkedHashMap<>();
+      for (int i = 0; i < members.size(); i++) {
+        final Solver member = members.get(i);
+        futures.put(service.submit(
+          new Callable<ImmutableList<ImmutableList<Parcel>>>() {
+            @Override
+            public ImmutableList<ImmutableList<Parcel>> call()
+                throws InterruptedException {
+              return member.solve(state);
+            }
+          }), i);
+      }
+
+      int best = -1;
+      double bestCost = Double.POSITIVE_INFINITY;
+      ImmutableList<ImmutableList<Parcel>> bestSchedule = null;
+      Throwable failure = null;
+      boolean deadlineReached = false;
+      try {
+        for (int done = 0; done < members.size(); done++) {
+          final Future<ImmutableList<ImmutableList<Parcel>>> future;
+          if (timeLimitNanos > 0 && bestSchedule != null) {
+            future =
+              service.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (future == null) {
+              // deadline, the remaining members are interrupted
+              deadlineReached = true;
+              break;
+            }
+          } else {
+            future = service.take();
+          }
+          final int member = futures.remove(future);
+          try {
+            final ImmutableList<ImmutableList<Parcel>> schedule = future.get();
+            final double cost = objectiveFunction
+              .computeCost(Solvers.computeStats(state, schedule));
+            statistics.completions.add(member);
+            if (cost < bestCost || cost == bestCost && member < best) {
+              best = member;
+              bestCost = cost;
+              bestSchedule = schedule;
+            }
+          } catch (final ExecutionException | RuntimeException e) {
+            statistics.failures.add(member);
+            failure = e instanceof ExecutionException ? e.getCause() : e;
+          }
+        }
+      } finally {
+        for (final Map.Entry<Future<ImmutableList<ImmutableList<Parcel>>>,
+            Integer> entry : futures.entrySet()) {
+          entry.getKey().cancel(true);
+          // when the portfolio itself is interrupted (e.g. because the problem
+          // changed) the members are not to blame
+          if (deadlineReached) {
+            statistics.interruptions.add(entry.getValue());
+          }
+        }
+        executor.shutdownNow();
+      }
+      if (bestSchedule == null) {
+        throw Throwables.propagate(failure);
+      }
+      statistics.wins.add(best);
+      return bestSchedule;
+    }
+
+    @Override
+    public String toString() {
+      return PortfolioSolver.class.getSimpleName() + members;
+    }
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Verify.verifyNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import com.github.rinde.logistics.pdptw.solver.CheapestInsertionHeuristic.VehicleInsertion;
+import com.github.rinde.opt.localsearch.IncrementalRouteEvaluator;
+import com.github.rinde.opt.localsearch.Insertions;
+import com.github.rinde.opt.localsearch.Insertions.InsertionIndexCursor;
+import com.github.rinde.opt.localsearch.PreparedRoute;
+import com.github.rinde.opt.localsearch.RouteEvaluator;
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.GlobalStateObjects;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.github.rinde.rinsim.util.StochasticSuppliers;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * An implementation of a regret-k insertion heuristic. In each step, the
+ * parcel with the largest <i>regret</i> is inserted at its cheapest position.
+ * The regret of a parcel is the difference between the cost of inserting it
+ * in its <code>k</code>-th best vehicle and the cost of inserting it in its
+ * best vehicle, i.e. it indicates how much is lost when the parcel is not
+ * inserted now. Parcels that can be inserted in fewer than <code>k</code>
+ * vehicles have an infinite regret. Ties are resolved in favor of the parcel
+ * with the cheapest insertion and then in favor of the first parcel in
+ * iteration order of
+ * {@link GlobalStateObjects#unassignedParcels(GlobalStateObject)}.
+ * <p>
+ * Similar to the best-first variant of {@link CheapestInsertionHeuristic}, the
+ * cheapest insertion of every (parcel, vehicle) pair is kept in a table and
+ * only the column of the modified vehicle is recomputed after an insertion.
+ * @author Rinde van Lon
+ */
+public class RegretInsertionHeuristic implements Solver {
+  /**
+   * The default value of <code>k</code>.
+   */
+  public static final int DEFAULT_K = 2;
+
+  private final ObjectiveFunction objectiveFunction;
+  private final int regretK;
+
+  /**
+   * Creates a new instance.
+   * @param objFunc The objective function used to calculate the cost of a
+   *          schedule.
+   * @param k The regret is computed using the <code>k</code>-th best vehicle,
+   *          must be at least <code>2</code>.
+   */
+  public RegretInsertionHeuristic(ObjectiveFunction objFunc, int k) {
+    checkArgument(k >= 2, "k must be at least 2, found %s.", k);
+    objectiveFunction = objFunc;
+    regretK = k;
+  }
+
+  @Override
+  public ImmutableList<ImmutableList<Parcel>> solve(GlobalStateObject state)
+      throws InterruptedException {
+    return insert(state,
+      CheapestInsertionHeuristic.createSchedule(state),
+      GlobalStateObjects.unassignedParcels(state),
+      ParcelRouteEvaluator.create(objectiveFunction), regretK);
+  }
+
+  /**
+   * Inserts the specified parcels in order of decreasing regret.
+   * @param state The state that specifies the problem to be solved.
+   * @param initialSchedule The schedule in which the parcels are inserted, it
+   *          should not contain any of the parcels.
+   * @param parcels The parcels to insert.
+   * @param evaluator The evaluator that computes the cost of a route.
+   * @param k The regret is computed using the <code>k</code>-th best vehicle.
+   * @return A list of routes, one for every vehicle in the GlobalStateObject.
+   * @throws InterruptedException When the computation is interrupted.
+   */
+  @SuppressWarnings("unchecked")
+  static ImmutableList<ImmutableList<Parcel>> insert(GlobalStateObject state,
+      ImmutableList<ImmutableList<Parcel>> initialSchedule,
+      Iterable<Parcel> parcels,
+      RouteEvaluator<GlobalStateObject, Parcel> evaluator,
+      int k) throws InterruptedException {
+    ImmutableList<ImmutableList<Parcel>> schedule = initialSchedule;
+    ImmutableList<Double> costs = CheapestInsertionHeuristic
+      .decomposedCost(state, schedule, evaluator);
+    final List<PreparedRoute<Parcel>> preparedRoutes =
+      CheapestInsertionHeuristic.prepare(state, schedule, evaluator);
+    final InsertionIndexCursor cursor =
+      Insertions.insertionIndexCursor(2, 0, 0);
+
+    // table.get(j).get(i) is the cheapest insertion of parcel j in vehicle i
+    final List<Parcel> remaining = new ArrayList<>();
+    final List<List<VehicleInsertion>> table = new ArrayList<>();
+    for (final Parcel p : parcels) {
+      remaining.add(p);
+      final List<VehicleInsertion> row = new ArrayList<>();
+      for (int i = 0; i < schedule.size(); i++) {
+        row.add(CheapestInsertionHeuristic.cheapestInsertion(state, i,
+          schedule.get(i), costs.get(i),
+          preparedRoutes.isEmpty() ? null : preparedRoutes.get(i), evaluator,
+          p, cursor));
+      }
+      table.add(row);
+    }
+
+    final double[] insertionCosts = new double[schedule.size()];
+    while (!remaining.isEmpty()) {
+      int selected = -1;
+      VehicleInsertion selectedInsertion = null;
+      double selectedRegret = Double.NEGATIVE_INFINITY;
+      for (int j = 0; j < remaining.size(); j++) {
+        final VehicleInsertion cheapest =
+          CheapestInsertionHeuristic.cheapest(table.get(j));
+        if (cheapest == null) {
+          continue;
+        }
+        final double regret = regret(table.get(j), k, insertionCosts);
+        if (selectedInsertion == null || regret > selectedRegret
+          || regret == selectedRegret
+            && cheapest.insertionCost < selectedInsertion.insertionCost) {
+          selected = j;
+          selectedInsertion = cheapest;
+          selectedRegret = regret;
+        }
+      }
+      verifyNotNull(selectedInsertion, "No feasible insertion for %s.",
+        remaining);
+      final Parcel p = remaining.remove(selected);
+      table.remove(selected);
+
+      final int routeIndex = selectedInsertion.vehicleIndex;
+      final ImmutableList<Parcel> route = Insertions.insert(
+        schedule.get(routeIndex), verifyNotNull(selectedInsertion.indices), p);
+      schedule =
+        CheapestInsertionHeuristic.modifySchedule(schedule, route, routeIndex);
+      costs = CheapestInsertionHeuristic.modifyCosts(costs,
+        selectedInsertion.routeCost, routeIndex);
+      if (!preparedRoutes.isEmpty()) {
+        preparedRoutes.set(routeIndex,
+          ((IncrementalRouteEvaluator<GlobalStateObject, Parcel>) evaluator)
+            .prepare(state, routeIndex, route));
+      }
+
+      // only the column of the modified vehicle has changed
+      final List<VehicleInsertion> column = CheapestInsertionHeuristic
+        .cheapestInsertions(state, routeIndex, route, costs.get(routeIndex),
+          preparedRoutes.isEmpty() ? null : preparedRoutes.get(routeIndex),
+          evaluator, remaining, Optional.<ForkJoinPool>absent(), cursor);
+      for (int j = 0; j < remaining.size(); j++) {
+        table.get(j).set(routeIndex, column.get(j));
+      }
+    }
+    return schedule;
+  }
+
+  /**
+   * Computes the regret of a parcel.
+   * @param insertions The cheapest insertion in every vehicle.
+   * @param k The regret is computed using the <code>k</code>-th best vehicle.
+   * @param buffer Buffer that is used for sorting, its length must be at least
+   *          the number of insertions.
+   * @return The difference between the <code>k</code>-th cheapest and the
+   *         cheapest insertion cost, or {@link Double#POSITIVE_INFINITY} if
+   *         there are fewer than <code>k</code> feasible insertions.
+   */
+  static double regret(List<VehicleInsertion> insertions, int k,
+      double[] buffer) {
+    int n = 0;
+    for (final VehicleInsertion insertion : insertions) {
+      if (insertion.indices != null) {
+        buffer[n++] = insertion.insertionCost;
+      }
+    }
+    if (n < k) {
+      return Double.POSITIVE_INFINITY;
+    }
+    Arrays.sort(buffer, 0, n);
+    return buffer[k - 1] - buffer[0];
+  }
+
+  /**
+   * @param objFunc The objective function used to calculate the cost of a
+   *          schedule.
+   * @return A {@link StochasticSupplier} that supplies
+   *         {@link RegretInsertionHeuristic} instances that use regret-2.
+   */
+  public static StochasticSupplier<Solver> supplier(
+      ObjectiveFunction objFunc) {
+    return supplier(objFunc, DEFAULT_K);
+  }
+
+  /**
+   * @param objFunc The objective function used to calculate the cost of a
+   *          schedule.
+   * @param k The regret is computed using the <code>k</code>-th best vehicle,
+   *          must be at least <code>2</code>.
+   * @return A {@link StochasticSupplier} that supplies
+   *         {@link RegretInsertionHeuristic} instances.
+   */
+  public static StochasticSupplier<Solver> supplier(
+      final ObjectiveFunction objFunc, final int k) {
+    checkArgument(k >= 2, "k must be at least 2, found %s.", k);
+    return new StochasticSuppliers.AbstractStochasticSupplier<Solver>() {
+      private static final long serialVersionUID = -3052216487513326384L;
+
+      @Override
+      public Solver get(long seed) {
+        return new RegretInsertionHeuristic(objFunc, k);
+      }
+
+      @Override
+      public String toString() {
+        return "Regret" + k + "(" + objFunc + ")";
+      }
+    };
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Verify.verifyNotNull;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.rinde.opt.localsearch.ProgressListener;
+import com.github.rinde.opt.localsearch.ThrottledProgressListener;
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.central.Solvers;
+import com.github.rinde.rinsim.central.rt.RealtimeSolver;
+import com.github.rinde.rinsim.central.rt.Scheduler;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * {@link RealtimeSolver} adapter for improvement heuristics (e.g.
+ * {@link Opt2} and {@link Lns}): the {@link Solver} is executed on the shared
+ * executor of the {@link Scheduler} whenever the problem changes, and the
+ * improvements that the solver reports to its {@link ProgressListener} are
+ * sent to the scheduler. Optionally, the improvements are throttled using a
+ * {@link ThrottledProgressListener} such that the scheduler is not flooded
+ * with schedules, the final schedule of the solver is always sent. Each
+ * schedule is sent together with the snapshot from which it was computed,
+ * improvements of a solve that has been cancelled or superseded by a newer
+ * snapshot are dropped.
+ * @author Rinde van Lon
+ */
+class ReportingRealtimeSolver
+    implements RealtimeSolver, ProgressListener<Parcel> {
+  static final Logger LOGGER =
+    LoggerFactory.getLogger(ReportingRealtimeSolver.class);
+
+  Optional<ListenableFuture<ImmutableList<ImmutableList<Parcel>>>> currentFuture;
+  Optional<Scheduler> scheduler;
+
+  final Solver solver;
+  final long minInterval;
+  final double minRelativeImprovement;
+  final Optional<ScheduledExecutorService> deliveryExecutor;
+  @Nullable
+  volatile Solve currentSolve;
+
+  /**
+   * Creates a new instance that sends every improvement immediately to the
+   * scheduler.
+   * @param solverFactory Creates the solver, the argument of the function is
+   *          the listener that should receive the progress of the solver.
+   */
+  ReportingRealtimeSolver(
+      Function<ProgressListener<Parcel>, Solver> solverFactory) {
+    this(solverFactory, 0L, 0d);
+  }
+
+  /**
+   * Creates a new instance that throttles the improvements that are sent to
+   * the scheduler, see {@link ThrottledProgressListener}. If both thresholds
+   * are <code>0</code> every improvement is sent immediately.
+   * @param solverFactory Creates the solver, the argument of the function is
+   *          the listener that should receive the progress of the solver.
+   * @param interval The minimum interval between two schedule updates in
+   *          milliseconds.
+   * @param relativeImprovement The minimum relative improvement of the
+   *          objective value between two schedule updates.
+   */
+  ReportingRealtimeSolver(
+      Function<ProgressListener<Parcel>, Solver> solverFactory,
+      long interval, double relativeImprovement) {
+    minInterval = interval;
+    minRelativeImprovement = relativeImprovement;
+    if (interval > 0 || relativeImprovement > 0) {
+      // all throttled deliveries of this solver are executed on the same
+      // thread, in order
+      deliveryExecutor = Optional.of(ThrottledProgressListener.newExecutor());
+    } else {
+      deliveryExecutor = Optional.absent();
+    }
+    solver = verifyNotNull(solverFactory.apply(this));
+    currentFuture = Optional.absent();
+    scheduler = Optional.absent();
+    currentSolve = null;
+  }
+
+  @Override
+  public void init(Scheduler s) {
+    scheduler = Optional.of(s);
+  }
+
+  @Override
+  public void problemChanged(final GlobalStateObject snapshot) {
+    checkState(scheduler.isPresent(), "Not yet initialized.");
+    cancel();
+    final Solve solve = new Solve(snapshot);
+    currentSolve = solve;
+    currentFuture = Optional.of(
+      scheduler.get().getSharedExecutor().submit(
+        Solvers.createSolverCallable(solver, snapshot)));
+
+    Futures.addCallback(currentFuture.get(),
+      new FutureCallback<ImmutableList<ImmutableList<Parcel>>>() {
+        @Override
+        public void onSuccess(
+            @Nullable ImmutableList<ImmutableList<Parcel>> result) {
+          LOGGER.trace("onSuccess: " + result);
+          if (result == null) {
+            scheduler.get().reportException(
+              new IllegalArgumentException("Solver.solve(..) must return a "
+                + "non-null result. Solver: " + solver));
+          } else {
+            solve.finish(result);
+          }
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          if (t instanceof CancellationException) {
+            LOGGER.trace("Solver execution got cancelled");
+            return;
+          }
+          scheduler.get().reportException(t);
+        }
+      });
+  }
+
+  @Override
+  public void receiveSnapshot(GlobalStateObject snapshot) {}
+
+  @Override
+  public void cancel() {
+    if (isComputing()) {
+      currentFuture.get().cancel(true);
+    }
+    final Solve solve = currentSolve;
+    currentSolve = null;
+    if (solve != null) {
+      solve.discardPendingImprovements();
+    }
+  }
+
+  @Override
+  public boolean isComputing() {
+    return currentFuture.isPresent() && !currentFuture.get().isDone();
+  }
+
+  // called by the solver
+  @Override
+  public void notify(ImmutableList<ImmutableList<Parcel>> schedule,
+      double objectiveValue) {
+    final Solve solve = currentSolve;
+    // the thread of a cancelled solve is interrupted, its improvements may
+    // belong to an older snapshot
+    if (solve != null && !Thread.currentThread().isInterrupted()) {
+      solve.listener.notify(schedule, objectiveValue);
+    }
+  }
+
+  /**
+   * The improvements of the solve of a single snapshot. An improvement is only
+   * sent to the scheduler while the solve is the current solve.
+   */
+  final class Solve implements ProgressListener<Parcel> {
+    final GlobalStateObject snapshot;
+    final ProgressListener<Parcel> listener;
+    final Optional<ThrottledProgressListener<Parcel>> throttle;
+
+    Solve(GlobalStateObject s) {
+      snapshot = s;
+      if (deliveryExecutor.isPresent()) {
+        throttle = Optional.of(ThrottledProgressListener.create(this,
+          minInterval, TimeUnit.MILLISECONDS, minRelativeImprovement,
+          deliveryExecutor.get()));
+        listener = throttle.get();
+      } else {
+        throttle = Optional.absent();
+        listener = this;
+      }
+    }
+
+    @Override
+    public void notify(ImmutableList<ImmutableList<Parcel>> schedule,
+        double objectiveValue) {
+      if (currentSolve == this) {
+        scheduler.get().updateSchedule(snapshot, schedule);
+      } else {
+        LOGGER.trace("Dropped improvement of outdated snapshot.");
+      }
+    }
+
+    void finish(final ImmutableList<ImmutableList<Parcel>> result) {
+      if (!deliveryExecutor.isPresent()) {
+        sendResult(result);
+        return;
+      }
+      // the result is sent on the delivery thread, after the improvements
+      // that are being delivered
+      deliveryExecutor.get().execute(new Runnable() {
+        @Override
+        public void run() {
+          sendResult(result);
+        }
+      });
+    }
+
+    void sendResult(ImmutableList<ImmutableList<Parcel>> result) {
+      // the result is the best schedule, it supersedes all pending
+      // improvements
+      discardPendingImprovements();
+      scheduler.get().updateSchedule(snapshot, result);
+      scheduler.get().doneForNow();
+    }
+
+    void discardPendingImprovements() {
+      if (throttle.isPresent()) {
+        throttle.get().reset();
+      }
+    }
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.math.RoundingMode;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.GlobalStateObject.VehicleStateObject;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.core.model.pdp.VehicleDTO;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.math.LongMath;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+
+/**
+ * Least recently used cache of schedules that decorates {@link Solver}s: when
+ * a solver is asked to solve a state that is equivalent to a state it (or
+ * another solver sharing the same cache) solved before, the memoized schedule
+ * is returned instead. This is useful when the same state is solved repeatedly,
+ * e.g. by the bidders in an auction or by repeated route planner updates.
+ * <p>
+ * Two states are equivalent when they have the same available parcels, the
+ * same time bucket (the time divided by the time resolution) and when all
+ * vehicles have the same properties (see {@link VehicleDTO}), location,
+ * contents, remaining service time, destination and route. Since all parcels,
+ * vehicles and commitments are equal, the memoized schedule is a valid
+ * schedule for an equivalent state, its cost may differ slightly when the
+ * times differ.
+ * The (exact) canonical form of the state is used as key, its hash code acts
+ * as fingerprint. A cache should only be shared between solvers that are
+ * equivalent, e.g. created by the same supplier (see
+ * {@link #decorate(StochasticSupplier)}). The cache keeps track of the number
+ * of hits, misses and evictions. All methods are thread-safe.
+ * @author Rinde van Lon
+ */
+public final class SolutionCache {
+  /**
+   * The default capacity of a cache.
+   */
+  public static final int DEFAULT_CAPACITY = 100;
+
+  private final int capacity;
+  private final long timeResolution;
+  private final Object2ObjectLinkedOpenHashMap<List<Object>,
+      ImmutableList<ImmutableList<Parcel>>> schedules;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  private SolutionCache(int cap, long timeRes) {
+    capacity = cap;
+    timeResolution = timeRes;
+    schedules = new Object2ObjectLinkedOpenHashMap<>(cap);
+  }
+
+  /**
+   * @return The maximum number of schedules that is stored in this cache.
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * @return The width of the time buckets.
+   */
+  public long timeResolution() {
+    return timeResolution;
+  }
+
+  /**
+   * @return The number of schedules that is currently stored in this cache.
+   */
+  public synchronized int size() {
+    return schedules.size();
+  }
+
+  /**
+   * @return The number of solves that were answered by the cache.
+   */
+  public synchronized long hits() {
+    return hits;
+  }
+
+  /**
+   * @return The number of solves that could not be answered by the cache.
+   */
+  public synchronized long misses() {
+    return misses;
+  }
+
+  /**
+   * @return The number of schedules that were removed from the cache to make
+   *         room for new schedules.
+   */
+  public synchronized long evictions() {
+    return evictions;
+  }
+
+  /**
+   * @return The fraction of solves that were answered by the cache, or
+   *         <code>0</code> if there were no solves yet.
+   */
+  public synchronized double hitRate() {
+    final long lookups = hits + misses;
+    return lookups == 0 ? 0d : (double) hits / lookups;
+  }
+
+  /**
+   * Removes all schedules from the cache, the statistics are kept.
+   */
+  public synchronized void clear() {
+    schedules.clear();
+  }
+
+  /**
+   * Decorates the specified solver with this cache.
+   * @param delegate The solver to decorate.
+   * @return The decorated solver.
+   */
+  public Solver decorate(final Solver delegate) {
+    return new Solver() {
+      @Override
+      public ImmutableList<ImmutableList<Parcel>> solve(
+          GlobalStateObject state) throws InterruptedException {
+        final List<Object> key = key(state);
+        final ImmutableList<ImmutableList<Parcel>> cached = get(key);
+        if (cached != null) {
+          return cached;
+        }
+        final ImmutableList<ImmutableList<Parcel>> schedule =
+          delegate.solve(state);
+        put(key, schedule);
+        return schedule;
+      }
+
+      @Override
+      public String toString() {
+        return SolutionCache.class.getSimpleName() + "(" + delegate + ")";
+      }
+    };
+  }
+
+  /**
+   * Decorates all solvers that are created by the specified supplier with this
+   * cache, the solvers share the cache.
+   * @param delegate The supplier of the solvers to decorate.
+   * @return A new supplier.
+   */
+  public StochasticSupplier<Solver> decorate(
+      final StochasticSupplier<? extends Solver> delegate) {
+    return new StochasticSupplier<Solver>() {
+      @Override
+      public Solver get(long seed) {
+        return decorate(delegate.get(seed));
+      }
+
+      @Override
+      public String toString() {
+        return SolutionCache.class.getSimpleName() + "(" + delegate + ")";
+      }
+    };
+  }
+
+  @Override
+  public synchronized String toString() {
+    return MoreObjects.toStringHelper(SolutionCache.class)
+      .add("capacity", capacity)
+      .add("timeResolution", timeResolution)
+      .add("size", schedules.size())
+      .add("hits", hits)
+      .add("misses", misses)
+      .add("evictions", evictions)
+      .toString();
+  }
+
+  @Nullable
+  synchronized ImmutableList<ImmutableList<Parcel>> get(List<Object> key) {
+    if (schedules.containsKey(key)) {
+      hits++;
+      return schedules.getAndMoveToFirst(key);
+    }
+    misses++;
+    return null;
+  }
+
+  synchronized void put(List<Object> key,
+      ImmutableList<ImmutableList<Parcel>> schedule) {
+    if (capacity == 0) {
+      return;
+    }
+    schedules.putAndMoveToFirst(key, schedule);
+    if (schedules.size() > capacity) {
+      schedules.removeLast();
+      evictions++;
+    }
+  }
+
+  /**
+   * Computes the canonical form of the specified state.
+   * @param state The state.
+   * @return A list that is equal for equivalent states.
+   */
+  List<Object> key(GlobalStateObject state) {
+    final ImmutableList.Builder<Object> builder = ImmutableList.builder();
+    builder.add(timeBucket(state.getTime()), state.getAvailableParcels());
+    for (final VehicleStateObject vso : state.getVehicles()) {
+      builder.add(ImmutableList.of(vso.getDto(), vso.getLocation(),
+        vso.getContents(), vso.getRemainingServiceTime(), vso.getDestination(),
+        vso.getRoute()));
+    }
+    return builder.build();
+  }
+
+  long timeBucket(long time) {
+    return LongMath.divide(time, timeResolution, RoundingMode.FLOOR);
+  }
+
+  /**
+   * Creates a new cache with the {@link #DEFAULT_CAPACITY} that only considers
+   * states equivalent when their times are equal.
+   * @return A new empty cache.
+   */
+  public static SolutionCache create() {
+    return create(DEFAULT_CAPACITY, 1L);
+  }
+
+  /**
+   * Creates a new cache.
+   * @param capacity The maximum number of schedules that is stored in the
+   *          cache, if <code>0</code> no schedules are stored at all.
+   * @param timeResolution The width of the time buckets (in the time unit of
+   *          the states), states of which the times are in the same bucket are
+   *          considered equivalent. Must be positive, with <code>1</code> the
+   *          times must be equal.
+   * @return A new empty cache.
+   */
+  public static SolutionCache create(int capacity, long timeResolution) {
+    checkArgument(capacity >= 0, "Capacity must be non-negative, found %s.",
+      capacity);
+    checkArgument(timeResolution > 0,
+      "Time resolution must be positive, found %s.", timeResolution);
+    return new SolutionCache(capacity, timeResolution);
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.github.rinde.opt.localsearch.ProgressListener;
+import com.github.rinde.opt.localsearch.RouteEvaluator;
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.GlobalStateObject.VehicleStateObject;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.google.common.base.Optional;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.LinkedHashMultiset;
+import com.google.common.collect.Multiset;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Construction {@link Solver} that continues from the best schedule that was
+ * found for a previous state, used by {@link Opt2} when warm starting is
+ * enabled (see {@link Opt2.Builder#withWarmStart()}). The best schedule is
+ * received as {@link ProgressListener} of the improvement heuristic and via
+ * {@link #recordResults(Solver)}. On the first solve, or when the number of
+ * vehicles has changed, the delegate solver constructs the schedule.
+ * @author Rinde van Lon
+ */
+final class WarmStartSolver implements Solver, ProgressListener<Parcel> {
+  final Solver delegate;
+  final RouteEvaluator<GlobalStateObject, Parcel> evaluator;
+  final Optional<ProgressListener<Parcel>> progressListener;
+  volatile Optional<ImmutableList<ImmutableList<Parcel>>> lastSchedule;
+
+  WarmStartSolver(Solver deleg, ObjectiveFunction objFunc,
+      @Nullable ProgressListener<Parcel> pl) {
+    delegate = deleg;
+    evaluator = ParcelRouteEvaluator.create(objFunc);
+    progressListener = Optional.fromNullable(pl);
+    lastSchedule = Optional.absent();
+  }
+
+  @Override
+  public ImmutableList<ImmutableList<Parcel>> solve(GlobalStateObject state)
+      throws InterruptedException {
+    final Optional<ImmutableList<ImmutableList<Parcel>>> last = lastSchedule;
+    if (!last.isPresent()
+      || last.get().size() != state.getVehicles().size()) {
+      return delegate.solve(state);
+    }
+    final ImmutableList<ImmutableList<Parcel>> repaired =
+      repair(state, last.get());
+    return CheapestInsertionHeuristic.insert(state, repaired,
+      unassignedParcels(state, repaired), evaluator);
+  }
+
+  @Override
+  public void notify(ImmutableList<ImmutableList<Parcel>> schedule,
+      double objectiveValue) {
+    lastSchedule = Optional.of(schedule);
+    if (progressListener.isPresent()) {
+      progressListener.get().notify(schedule, objectiveValue);
+    }
+  }
+
+  /**
+   * Decorates the specified solver such that the schedules it returns are
+   * remembered for the next solve.
+   * @param solver The solver to decorate.
+   * @return The decorated solver.
+   */
+  Solver recordResults(final Solver solver) {
+    return new Solver() {
+      @Override
+      public ImmutableList<ImmutableList<Parcel>> solve(
+          GlobalStateObject state) throws InterruptedException {
+        final ImmutableList<ImmutableList<Parcel>> result = solver.solve(state);
+        lastSchedule = Optional.of(result);
+        return result;
+      }
+
+      @Override
+      public String toString() {
+        return solver.toString();
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return WarmStartSolver.class.getSimpleName() + "(" + delegate + ")";
+  }
+
+  /**
+   * Repairs a schedule that was computed for a previous state such that it is
+   * consistent with the specified state: parcels that have been delivered (or
+   * that have been picked up by another vehicle) are removed, only the
+   * delivery of parcels that have been picked up is kept and the destination of
+   * each vehicle is moved to the front of its route. Parcels that are carried
+   * by a vehicle but that are not in its route are appended to the route.
+   * Available parcels that are not in the schedule (e.g. new parcels) are not
+   * added, see {@link #unassignedParcels(GlobalStateObject, ImmutableList)}.
+   * @param state The current state.
+   * @param schedule A schedule for a previous state, the number of routes
+   *          must equal the number of vehicles.
+   * @return The repaired (partial) schedule.
+   */
+  static ImmutableList<ImmutableList<Parcel>> repair(GlobalStateObject state,
+      ImmutableList<ImmutableList<Parcel>> schedule) {
+    checkArgument(schedule.size() == state.getVehicles().size(),
+      "Expected a route for each of the %s vehicles, found %s routes.",
+      state.getVehicles().size(), schedule.size());
+    final Set<Parcel> available = state.getAvailableParcels();
+
+    // the vehicle that is responsible for each parcel, the contents and
+    // destinations of the vehicles are fixed
+    final Object2IntMap<Parcel> owners = new Object2IntOpenHashMap<>();
+    owners.defaultReturnValue(-1);
+    for (int v = 0; v < schedule.size(); v++) {
+      final VehicleStateObject vso = state.getVehicles().get(v);
+      for (final Parcel p : vso.getContents()) {
+        owners.put(p, v);
+      }
+      if (vso.getDestination().isPresent()) {
+        owners.put(vso.getDestination().get(), v);
+      }
+    }
+    for (int v = 0; v < schedule.size(); v++) {
+      for (final Parcel p : schedule.get(v)) {
+        if (available.contains(p) && !owners.containsKey(p)) {
+          owners.put(p, v);
+        }
+      }
+    }
+
+    final ImmutableList.Builder<ImmutableList<Parcel>> builder =
+      ImmutableList.builder();
+    for (int v = 0; v < schedule.size(); v++) {
+      final VehicleStateObject vso = state.getVehicles().get(v);
+      final List<Parcel> previous = new ArrayList<>(schedule.get(v));
+
+      // number of occurrences of each parcel that the route still needs
+      final Multiset<Parcel> needed = LinkedHashMultiset.create();
+      for (final Parcel p : vso.getContents()) {
+        needed.add(p);
+      }
+      for (final Parcel p : previous) {
+        if (available.contains(p) && owners.getInt(p) == v) {
+          needed.setCount(p, 2);
+        }
+      }
+
+      final List<Parcel> route = new ArrayList<>();
+      if (vso.getDestination().isPresent()) {
+        final Parcel dest = vso.getDestination().get();
+        if (available.contains(dest)) {
+          needed.setCount(dest, 2);
+        }
+        // the first occurrence corresponds to the visit in progress
+        route.add(dest);
+        previous.remove(dest);
+        needed.remove(dest);
+      }
+
+      // of each parcel the last needed occurrences are kept, e.g. of a parcel
+      // that has been picked up only the delivery is kept
+      final Multiset<Parcel> remaining = HashMultiset.create(previous);
+      for (final Parcel p : previous) {
+        if (needed.count(p) >= remaining.count(p)) {
+          route.add(p);
+          needed.remove(p);
+        }
+        remaining.remove(p);
+      }
+
+      // missing deliveries are appended, parcels of which both the pickup and
+      // the delivery are missing are left for reinsertion
+      for (final Multiset.Entry<Parcel> entry : needed.entrySet()) {
+        if (entry.getCount() == 1) {
+          route.add(entry.getElement());
+        }
+      }
+      builder.add(ImmutableList.copyOf(route));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Computes the available parcels that are not in the specified schedule.
+   * @param state The state.
+   * @param schedule The schedule.
+   * @return The parcels, in the iteration order of the available parcels.
+   */
+  static Set<Parcel> unassignedParcels(GlobalStateObject state,
+      ImmutableList<ImmutableList<Parcel>> schedule) {
+    final Set<Parcel> unassigned =
+      new LinkedHashSet<>(state.getAvailableParcels());
+    for (final ImmutableList<Parcel> route : schedule) {
+      unassigned.removeAll(route);
+    }
+    return unassigned;
+  }
+}
@@ -27,10 +27,9 @@ import org.optaplanner.core.impl.heuristic.selector.move.factory.MoveIteratorFac
 import org.optaplanner.core.impl.score.director.ScoreDirector;
 
 import com.github.rinde.opt.localsearch.Insertions;
+import com.github.rinde.opt.localsearch.Insertions.InsertionIndexCursor;
 import com.google.common.collect.AbstractIterator;
 
-import it.unimi.dsi.fastutil.ints.IntList;
-
 /**
  *
  * @author Rinde van Lon
@@ -73,11 +72,12 @@ public class InsertionMoveIteratorFactory implements MoveIteratorFactory {
 
     Iterator<ParcelVisit> parcelIterator;
     Iterator<Vehicle> vehicleIterator;
-    Iterator<IntList> insertionIterator;
+    final InsertionIndexCursor insertionCursor;
 
     InsertionIterator(PDPSolution sol) {
       solution = sol;
       parcelIterator = solution.unassignedPickups.iterator();
+      insertionCursor = Insertions.insertionIndexCursor(2, 0, 0);
     }
 
     @Override
@@ -115,15 +115,14 @@ public class InsertionMoveIteratorFactory implements MoveIteratorFactory {
 
         final int startIndex =
           currentVehicle.getDestination().isPresent() ? 1 : 0;
-        insertionIterator = Insertions.insertionsIndexIterator(2,
-          currentRoute.size(), startIndex);
+        insertionCursor.reset(currentRoute.size(), startIndex);
       }
 
-      final IntList insertionPoints = insertionIterator.next();
+      insertionCursor.advance();
       final MovePair move = MovePair.create(current, current.getAssociation(),
-        getPrev(insertionPoints.getInt(0)), getPrev(insertionPoints.getInt(1)));
+        getPrev(insertionCursor.get(0)), getPrev(insertionCursor.get(1)));
 
-      if (!insertionIterator.hasNext()) {
+      if (!insertionCursor.hasNext()) {
         currentVehicle = null;
         if (!vehicleIterator.hasNext()) {
           current = null;
@@ -65,6 +65,7 @@ import org.optaplanner.core.config.solver.termination.TerminationConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.rinde.logistics.pdptw.solver.DistanceMatrix;
 import com.github.rinde.logistics.pdptw.solver.optaplanner.ParcelVisit.VisitType;
 import com.github.rinde.rinsim.central.GlobalStateObject;
 import com.github.rinde.rinsim.central.GlobalStateObject.VehicleStateObject;
@@ -147,6 +148,7 @@ public final class OptaplannerSolvers {
     checkArgument(state.getDistUnit().equals(DISTANCE_UNIT));
 
     final PDPSolution problem = new PDPSolution(state.getTime());
+    final DistanceMatrix distances = DistanceMatrix.of(state);
 
     final List<ParcelVisit> parcelList = new ArrayList<>();
     final Map<Parcel, ParcelVisit> pickups = new LinkedHashMap<>();
@@ -154,8 +156,10 @@ public final class OptaplannerSolvers {
 
     final Set<ParcelVisit> unassignedPickups = new LinkedHashSet<>();
     for (final Parcel p : state.getAvailableParcels()) {
-      final ParcelVisit pickup = new ParcelVisit(p, VisitType.PICKUP);
-      final ParcelVisit delivery = new ParcelVisit(p, VisitType.DELIVER);
+      final ParcelVisit pickup =
+        new ParcelVisit(p, VisitType.PICKUP, distances);
+      final ParcelVisit delivery =
+        new ParcelVisit(p, VisitType.DELIVER, distances);
       pickups.put(p, pickup);
       deliveries.put(p, delivery);
       pickup.setAssociation(delivery);
@@ -168,7 +172,7 @@ public final class OptaplannerSolvers {
     final List<Vehicle> vehicleList = new ArrayList<>();
     for (int i = 0; i < state.getVehicles().size(); i++) {
       final VehicleStateObject vso = state.getVehicles().get(i);
-      final Vehicle vehicle = new Vehicle(vso, i);
+      final Vehicle vehicle = new Vehicle(vso, i, distances);
       vehicleList.add(vehicle);
 
       final List<ParcelVisit> visits = new ArrayList<>();
@@ -180,7 +184,8 @@ public final class OptaplannerSolvers {
           if (vso.getContents().contains(p) || !pickups.containsKey(p)) {
             if (multiset.count(p) == 2) {
               multiset.remove(p);
-              final ParcelVisit pickup = new ParcelVisit(p, VisitType.PICKUP);
+              final ParcelVisit pickup =
+                new ParcelVisit(p, VisitType.PICKUP, distances);
               visits.add(pickup);
               parcelList.add(pickup);
             } else {
@@ -188,7 +193,7 @@ public final class OptaplannerSolvers {
               if (deliveries.containsKey(p)) {
                 delivery = deliveries.remove(p);
               } else {
-                delivery = new ParcelVisit(p, VisitType.DELIVER);
+                delivery = new ParcelVisit(p, VisitType.DELIVER, distances);
                 parcelList.add(delivery);
               }
               visits.add(delivery);
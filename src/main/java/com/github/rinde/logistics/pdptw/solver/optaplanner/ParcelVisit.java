@@ -29,6 +29,7 @@ import org.optaplanner.core.api.domain.variable.AnchorShadowVariable;
 import org.optaplanner.core.api.domain.variable.PlanningVariable;
 import org.optaplanner.core.api.domain.variable.PlanningVariableGraphType;
 
+import com.github.rinde.logistics.pdptw.solver.DistanceMatrix;
 import com.github.rinde.logistics.pdptw.solver.optaplanner.ParcelVisit.VisitStrengthComparator;
 import com.github.rinde.rinsim.core.model.pdp.Parcel;
 import com.github.rinde.rinsim.core.model.pdp.ParcelDTO;
@@ -63,13 +64,14 @@ public class ParcelVisit implements Visit {
   private Parcel parcel;
   private VisitType visitType;
   private Point position;
+  private int locationIndex;
   private TimeWindow timeWindow;
   private long serviceDuration;
   private long latestStartTime;
 
   ParcelVisit() {}
 
-  ParcelVisit(Parcel p, VisitType t) {
+  ParcelVisit(Parcel p, VisitType t, DistanceMatrix distances) {
     parcel = p;
     visitType = t;
     if (visitType == VisitType.DELIVER) {
@@ -82,6 +84,7 @@ public class ParcelVisit implements Visit {
       serviceDuration = Util.msToNs(parcel.getPickupDuration());
     }
     latestStartTime = timeWindow.end() - serviceDuration;
+    locationIndex = distances.indexOf(position);
   }
 
   public Parcel getParcel() {
@@ -136,6 +139,11 @@ public class ParcelVisit implements Visit {
     return position;
   }
 
+  @Override
+  public int getLocationIndex() {
+    return locationIndex;
+  }
+
   public long computeServiceStartTime(long timeOfArrival) {
     return Math.max(timeWindow.begin(), timeOfArrival);
   }
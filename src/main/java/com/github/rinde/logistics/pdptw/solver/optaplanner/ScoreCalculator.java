@@ -32,7 +32,6 @@ import org.optaplanner.core.impl.score.director.incremental.AbstractIncrementalS
 
 import com.github.rinde.logistics.pdptw.solver.optaplanner.ParcelVisit.VisitType;
 import com.github.rinde.rinsim.core.model.pdp.Parcel;
-import com.github.rinde.rinsim.geom.Point;
 import com.google.common.base.Strings;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
@@ -323,13 +322,12 @@ public class ScoreCalculator
 
     final ParcelVisit lastStop = v.getLastVisit();
 
-    final Point fromPos =
-      lastStop == null ? v.getPosition() : lastStop.getPosition();
+    final Visit from = lastStop == null ? v : lastStop;
     long currentTime =
       lastStop == null ? startTime : doneTimes.getLong(lastStop);
 
     // travel to depot soft constraints
-    final long depotTT = v.computeTravelTime(fromPos, v.getDepotLocation());
+    final long depotTT = v.computeDepotTravelTime(from);
     currentTime += depotTT;
     softScore -= depotTT;
     travelTimes.put(v, depotTT);
@@ -354,7 +352,6 @@ public class ScoreCalculator
 
     final Vehicle vehicle = verifyNotNull(pv.getVehicle());
     final Visit prev = verifyNotNull(pv.getPreviousVisit());
-    final Point prevPos = prev.getPosition();
 
     boolean firstAndServicing = false;
     long currentTime;
@@ -378,8 +375,7 @@ public class ScoreCalculator
       doneTimes.put(pv, currentTime);
     } else {
       // compute travel time from current pos to parcel pos
-      final Point newPos = pv.getPosition();
-      final long tt = vehicle.computeTravelTime(prevPos, newPos);
+      final long tt = vehicle.computeTravelTime(prev, pv);
       currentTime += tt;
       softScore -= tt;
       travelTimes.put(pv, tt);
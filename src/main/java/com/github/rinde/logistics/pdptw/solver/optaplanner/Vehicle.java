@@ -22,6 +22,7 @@ import java.util.Objects;
 
 import javax.annotation.Nullable;
 
+import com.github.rinde.logistics.pdptw.solver.DistanceMatrix;
 import com.github.rinde.rinsim.central.GlobalStateObject.VehicleStateObject;
 import com.github.rinde.rinsim.core.model.pdp.Parcel;
 import com.github.rinde.rinsim.geom.Point;
@@ -48,20 +49,30 @@ public class Vehicle implements Visit {
   private final long endTime;
   private final long remainingServiceTime;
   private final int index;
+  @Nullable
+  private final DistanceMatrix distances;
+  private final int locationIndex;
+  private final int depotLocationIndex;
 
   Vehicle() {
     vehicle = null;
     endTime = -1;
     remainingServiceTime = -1;
     index = -1;
+    distances = null;
+    locationIndex = -1;
+    depotLocationIndex = -1;
   }
 
-  Vehicle(VehicleStateObject vso, int ind) {
+  Vehicle(VehicleStateObject vso, int ind, DistanceMatrix dm) {
     vehicle = vso;
     endTime = Util.msToNs(vso.getDto().getAvailabilityTimeWindow()).end();
     remainingServiceTime = vso.getRemainingServiceTime() > 0
       ? Util.msToNs(vso.getRemainingServiceTime()) : 0;
     index = ind;
+    distances = dm;
+    locationIndex = dm.indexOf(vso.getLocation());
+    depotLocationIndex = dm.indexOf(vso.getDto().getStartPosition());
   }
 
   // @PlanningVariable(valueRangeProviderRefs = {"parcelRange", "vehicleRange"
@@ -118,6 +129,11 @@ public class Vehicle implements Visit {
     return vehicle.getContents();
   }
 
+  @Override
+  public int getLocationIndex() {
+    return locationIndex;
+  }
+
   public Point getDepotLocation() {
     return vehicle.getDto().getStartPosition();
   }
@@ -131,9 +147,29 @@ public class Vehicle implements Visit {
   }
 
   public long computeTravelTime(Point from, Point to) {
-    final double speedKMH = vehicle.getDto().getSpeed();
+    return computeTravelTime(Point.distance(from, to));
+  }
+
+  public long computeTravelTime(Visit from, Visit to) {
+    return computeTravelTime(from.getLocationIndex(), from.getPosition(),
+      to.getLocationIndex(), to.getPosition());
+  }
+
+  public long computeDepotTravelTime(Visit from) {
+    return computeTravelTime(from.getLocationIndex(), from.getPosition(),
+      depotLocationIndex, getDepotLocation());
+  }
 
-    final double distKM = Point.distance(from, to);
+  // uses the distance matrix when both locations are in it
+  long computeTravelTime(int fromIndex, Point from, int toIndex, Point to) {
+    if (distances != null && fromIndex >= 0 && toIndex >= 0) {
+      return computeTravelTime(distances.distance(fromIndex, toIndex));
+    }
+    return computeTravelTime(from, to);
+  }
+
+  long computeTravelTime(double distKM) {
+    final double speedKMH = vehicle.getDto().getSpeed();
 
     final double travelTimeH = distKM / speedKMH;
     // convert to nanoseconds
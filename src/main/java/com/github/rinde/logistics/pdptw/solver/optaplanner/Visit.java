@@ -49,6 +49,9 @@ public interface Visit {
 
   Point getPosition();
 
+  // index of the position in the DistanceMatrix, or -1 if unknown
+  int getLocationIndex();
+
   @Nullable
   ParcelVisit getLastVisit();
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Sets.newLinkedHashSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+/**
+ * The k nearest items of every item in a schedule, used for granular
+ * neighborhoods. An item may only be inserted at positions that are next to
+ * one of its k nearest items, or at the beginning or the end of the modifiable
+ * part of a route.
+ * @author Rinde van Lon
+ * @param <T> The route item type.
+ */
+final class CandidateLists<T> {
+  final int numNearest;
+  final ImmutableMap<T, ImmutableSet<T>> nearest;
+
+  CandidateLists(int k, ImmutableMap<T, ImmutableSet<T>> near) {
+    numNearest = k;
+    nearest = near;
+  }
+
+  /**
+   * Computes the allowed insertion positions of <code>item</code> in
+   * <code>route</code>.
+   * @param item The item to insert.
+   * @param route The route in which the item is inserted, this route should not
+   *          contain the item.
+   * @param startIndex The first position that may be modified.
+   * @return The allowed positions in ascending order, the array always contains
+   *         <code>startIndex</code> and <code>route.size()</code>.
+   */
+  int[] positions(T item, List<T> route, int startIndex) {
+    checkArgument(startIndex <= route.size(),
+      "startIndex (%s) must be <= listSize (%s).", startIndex, route.size());
+    final Set<T> near = nearest.get(item);
+    final IntArrayList positions = new IntArrayList();
+    for (int p = startIndex; p <= route.size(); p++) {
+      if (p == startIndex || p == route.size()
+        || near.contains(route.get(p - 1)) || near.contains(route.get(p))) {
+        positions.add(p);
+      }
+    }
+    return positions.toIntArray();
+  }
+
+  /**
+   * @param schedule A schedule.
+   * @return <code>true</code> if these candidate lists are computed for a
+   *         schedule with the same items in the same order of first occurrence
+   *         as the specified schedule.
+   */
+  boolean isFor(List<? extends List<T>> schedule) {
+    return nearest.keySet().asList().equals(items(schedule));
+  }
+
+  /**
+   * Computes the k nearest items of every item in the schedule, ties are
+   * broken by the order of first occurrence in the schedule.
+   * @param schedule The schedule.
+   * @param k The number of nearest items, must be positive.
+   * @param proximity The proximity that defines the distance between items.
+   * @param <T> The route item type.
+   * @return The candidate lists.
+   */
+  static <T> CandidateLists<T> create(List<? extends List<T>> schedule, int k,
+      Proximity<? super T> proximity) {
+    checkArgument(k > 0, "k must be positive, found %s.", k);
+    final List<T> items = items(schedule);
+    final ImmutableMap.Builder<T, ImmutableSet<T>> builder =
+      ImmutableMap.builder();
+    final double[] distances = new double[items.size()];
+    final int[] order = new int[items.size()];
+    for (int i = 0; i < items.size(); i++) {
+      for (int j = 0; j < items.size(); j++) {
+        distances[j] = i == j
+          ? Double.POSITIVE_INFINITY
+          : proximity.distance(items.get(i), items.get(j));
+        order[j] = j;
+      }
+      // stable sort, ties keep the order of first occurrence
+      IntArrays.mergeSort(order, new AbstractIntComparator() {
+        @Override
+        public int compare(int k1, int k2) {
+          return Double.compare(distances[k1], distances[k2]);
+        }
+      });
+      final ImmutableSet.Builder<T> near = ImmutableSet.builder();
+      int count = 0;
+      for (int j = 0; j < order.length && count < k; j++) {
+        if (order[j] != i) {
+          near.add(items.get(order[j]));
+          count++;
+        }
+      }
+      builder.put(items.get(i), near.build());
+    }
+    return new CandidateLists<>(k, builder.build());
+  }
+
+  // the distinct items of the schedule in order of first occurrence
+  static <T> List<T> items(List<? extends List<T>> schedule) {
+    final Set<T> itemSet = newLinkedHashSet();
+    for (final List<T> route : schedule) {
+      itemSet.addAll(route);
+    }
+    return new ArrayList<>(itemSet);
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A {@link RouteEvaluator} that can evaluate small modifications of a route
+ * without evaluating the entire route. Implementations precompute data of a
+ * route once (e.g. arrival times, waiting times and tardiness of each
+ * position), after which the cost of inserting or removing an item can be
+ * computed in (near) constant time. {@link Swaps} and the insertion heuristics
+ * automatically use this when an evaluator implements this interface.
+ *
+ * @author Rinde van Lon
+ * @param <C> The context type.
+ * @param <T> The generic type of a route.
+ */
+public interface IncrementalRouteEvaluator<C, T> extends RouteEvaluator<C, T> {
+
+  /**
+   * Precomputes the data of the specified route that is needed for fast
+   * evaluation of insertions and removals.
+   * @param context The context (schedule).
+   * @param routeIndex The index of the route in the context.
+   * @param route The route.
+   * @return A {@link PreparedRoute}, its costs must be equal to the costs that
+   *         are computed by
+   *         {@link #computeCost(Object, int, ImmutableList)}.
+   */
+  PreparedRoute<T> prepare(C context, int routeIndex, ImmutableList<T> route);
+}
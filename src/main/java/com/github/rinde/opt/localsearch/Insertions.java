@@ -21,6 +21,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -65,11 +66,63 @@ public final class Insertions {
       new IndexToInsertionTransform<T>(list, item));
   }
 
+  /**
+   * Creates an {@link Iterator} over all combinations of
+   * <code>numOfInsertions</code> insertion indices in a list of size
+   * <code>listSize</code>, starting at <code>startIndex</code>. Every call to
+   * {@link Iterator#next()} returns a new list, use
+   * {@link #insertionIndexCursor(int, int, int)} to avoid this.
+   * @param numOfInsertions The number of insertions.
+   * @param listSize The size of the list in which is inserted.
+   * @param startIndex Must be &ge; 0 &amp;&amp; &le; list size.
+   * @return A new iterator.
+   */
   public static Iterator<IntList> insertionsIndexIterator(
       int numOfInsertions, int listSize, int startIndex) {
     return new InsertionIndexGenerator(numOfInsertions, listSize, startIndex);
   }
 
+  /**
+   * Creates a cursor over all combinations of <code>numOfInsertions</code>
+   * insertion indices in a list of size <code>listSize</code>, starting at
+   * <code>startIndex</code>. The cursor produces the same combinations in the
+   * same order as {@link #insertionsIndexIterator(int, int, int)} but does not
+   * allocate any memory while advancing.
+   * @param numOfInsertions The number of insertions.
+   * @param listSize The size of the list in which is inserted.
+   * @param startIndex Must be &ge; 0 &amp;&amp; &le; list size.
+   * @return A new cursor, positioned before the first combination.
+   */
+  public static InsertionIndexCursor insertionIndexCursor(int numOfInsertions,
+      int listSize, int startIndex) {
+    return new InsertionIndexCursor(numOfInsertions, listSize, startIndex);
+  }
+
+  /**
+   * Calls the visitor for every combination of <code>numOfInsertions</code>
+   * insertions of an item in <code>list</code>, starting at
+   * <code>startIndex</code>. The visited combinations are equal to those of
+   * {@link #insertionsIterator(ImmutableList, Object, int, int)}, but neither
+   * the insertion indices nor the resulting lists are constructed.
+   * @param list The original list.
+   * @param startIndex Must be &ge; 0 &amp;&amp; &le; list size.
+   * @param numOfInsertions The number of insertions.
+   * @param visitor The visitor that is called for every combination.
+   * @param <T> The list item type.
+   */
+  public static <T> void visitInsertions(List<T> list, int startIndex,
+      int numOfInsertions, InsertionVisitor<? super T> visitor) {
+    checkArgument(startIndex >= 0 && startIndex <= list.size(),
+      "startIndex must be >= 0 and <= %s (list size), it is %s.",
+      list.size(), startIndex);
+    checkArgument(numOfInsertions > 0, "numOfInsertions must be positive.");
+    final InsertionIndexCursor cursor =
+      new InsertionIndexCursor(numOfInsertions, list.size(), startIndex);
+    while (cursor.advance()) {
+      visitor.visit(list, cursor.indices());
+    }
+  }
+
   /**
    * Creates a list of lists, each list contains a specified number of
    * insertions of <code>item</code> at a different position in the list. Only
@@ -134,6 +187,27 @@ public final class Insertions {
     return builder.build();
   }
 
+  /**
+   * Removes all occurrences of the specified items from the
+   * <code>originalList</code>, this is the inverse of
+   * {@link #insert(List, List, Object)}.
+   * @param originalList The list to remove the items from.
+   * @param items The items to remove.
+   * @param <T> The list item type.
+   * @return A list based on the original list but without any occurrence of
+   *         the specified items.
+   */
+  public static <T> ImmutableList<T> removeAll(List<T> originalList,
+      Set<?> items) {
+    final ImmutableList.Builder<T> builder = ImmutableList.<T>builder();
+    for (final T item : originalList) {
+      if (!items.contains(item)) {
+        builder.add(item);
+      }
+    }
+    return builder.build();
+  }
+
   static class IndexToInsertionTransform<T>
       implements Function<IntList, ImmutableList<T>> {
     final List<T> originalList;
@@ -151,49 +225,138 @@ public final class Insertions {
     }
   }
 
-  static class InsertionIndexGenerator implements Iterator<IntList> {
+  /**
+   * Visitor of insertions, see
+   * {@link Insertions#visitInsertions(List, int, int, InsertionVisitor)}.
+   * @author Rinde van Lon
+   * @param <T> The list item type.
+   */
+  public interface InsertionVisitor<T> {
+    /**
+     * Is called for every combination of insertion indices. Implementations
+     * should not keep a reference to <code>insertionIndices</code>, its
+     * contents change after this method returns.
+     * @param list The original list.
+     * @param insertionIndices The insertion indices in ascending order,
+     *          relative to <code>list</code>.
+     */
+    void visit(List<T> list, IntList insertionIndices);
+  }
+
+  /**
+   * Cursor over all combinations of insertion indices, the combinations are
+   * produced in lexicographic order. The cursor advances in place over a
+   * single reusable array, the cursor can be reused for a different list by
+   * calling {@link #reset(int, int)}.
+   * @author Rinde van Lon
+   */
+  public static final class InsertionIndexCursor {
     private final int[] insertionPositions;
-    private final int originalListSize;
-    private final long length;
-    private int index;
+    private final IntList view;
+    private int originalListSize;
+    private long length;
+    private long index;
 
-    InsertionIndexGenerator(int numOfInsertions, int listSize, int startIndex) {
+    InsertionIndexCursor(int numOfInsertions, int listSize, int startIndex) {
+      insertionPositions = new int[numOfInsertions];
+      view = IntLists.unmodifiable(IntArrayList.wrap(insertionPositions));
+      reset(listSize, startIndex);
+    }
+
+    /**
+     * Resets the cursor such that it is positioned before the first
+     * combination of insertion indices in a list with the specified size.
+     * @param listSize The size of the list in which is inserted.
+     * @param startIndex Must be &ge; 0 &amp;&amp; &le; list size.
+     */
+    public void reset(int listSize, int startIndex) {
       checkArgument(startIndex <= listSize,
         "startIndex (%s) must be <= listSize (%s).",
         startIndex, listSize);
-      insertionPositions = new int[numOfInsertions];
       for (int i = 0; i < insertionPositions.length; i++) {
         insertionPositions[i] = startIndex;
       }
       originalListSize = listSize;
-      length = multichoose(listSize + 1 - startIndex, numOfInsertions);
+      length = multichoose(listSize + 1 - startIndex,
+        insertionPositions.length);
+      index = 0;
     }
 
-    @Override
+    /**
+     * @return <code>true</code> if there is a next combination.
+     */
     public boolean hasNext() {
       return index < length;
     }
 
-    @Override
-    public IntList next() {
+    /**
+     * Moves the cursor to the next combination of insertion indices.
+     * @return <code>true</code> if the cursor moved to a next combination,
+     *         <code>false</code> if all combinations have been visited.
+     */
+    public boolean advance() {
       if (!hasNext()) {
-        throw new NoSuchElementException();
+        return false;
       }
       if (index > 0) {
-        for (int i = 0; i < insertionPositions.length; i++) {
-          if (insertionPositions[i] == originalListSize) {
-            insertionPositions[i - 1]++;
-            for (int j = i; j < insertionPositions.length; j++) {
-              insertionPositions[j] = insertionPositions[i - 1];
+        for (int i = insertionPositions.length - 1; i >= 0; i--) {
+          if (insertionPositions[i] < originalListSize) {
+            insertionPositions[i]++;
+            for (int j = i + 1; j < insertionPositions.length; j++) {
+              insertionPositions[j] = insertionPositions[i];
             }
             break;
-          } else if (i == insertionPositions.length - 1) {
-            insertionPositions[i]++;
           }
         }
       }
       index++;
-      return IntLists.unmodifiable(new IntArrayList(insertionPositions));
+      return true;
+    }
+
+    /**
+     * @param i The index of the insertion.
+     * @return The insertion index at position <code>i</code> of the current
+     *         combination.
+     */
+    public int get(int i) {
+      return insertionPositions[i];
+    }
+
+    /**
+     * @return The number of insertions.
+     */
+    public int size() {
+      return insertionPositions.length;
+    }
+
+    /**
+     * @return An unmodifiable view of the current combination of insertion
+     *         indices. The view is backed by the cursor, its contents change
+     *         when the cursor advances.
+     */
+    public IntList indices() {
+      return view;
+    }
+  }
+
+  static class InsertionIndexGenerator implements Iterator<IntList> {
+    private final InsertionIndexCursor cursor;
+
+    InsertionIndexGenerator(int numOfInsertions, int listSize, int startIndex) {
+      cursor = new InsertionIndexCursor(numOfInsertions, listSize, startIndex);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return cursor.hasNext();
+    }
+
+    @Override
+    public IntList next() {
+      if (!cursor.advance()) {
+        throw new NoSuchElementException();
+      }
+      return IntLists.unmodifiable(new IntArrayList(cursor.indices()));
     }
 
     @Deprecated
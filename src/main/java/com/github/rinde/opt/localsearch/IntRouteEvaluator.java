@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+/**
+ * Variant of {@link RouteEvaluator} that operates on routes of interned item
+ * ids instead of lists of items. Item ids are assigned as defined by
+ * {@link IntSwaps#items(com.google.common.collect.ImmutableList)}.
+ *
+ * @author Rinde van Lon
+ * @param <C> The context type.
+ */
+public interface IntRouteEvaluator<C> {
+
+  /**
+   * Should compute the cost of the new route. Implementations should not keep
+   * a reference to <code>newRoute</code>, its contents may change after this
+   * method returns.
+   * @param context The context (schedule).
+   * @param routeIndex The index of the new route in the context.
+   * @param newRoute Array containing the item ids of the new route, only the
+   *          first <code>length</code> elements are part of the route.
+   * @param length The length of the new route.
+   * @return The cost of the new route.
+   */
+  double computeCost(C context, int routeIndex, int[] newRoute, int length);
+}
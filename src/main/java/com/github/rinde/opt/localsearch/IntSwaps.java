@@ -0,0 +1,624 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Sets.newLinkedHashSet;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Alternative implementation of the 2-opt procedures of {@link Swaps} that
+ * works on primitive routes. All items in a schedule are interned to an
+ * <code>int</code> id once (see {@link #items(ImmutableList)}), after which
+ * the entire search is performed on <code>int[]</code> routes using reusable
+ * scratch buffers. The procedures in this class have the exact same result as
+ * their counterparts in {@link Swaps} (given the same arguments):
+ * <ul>
+ * <li>{@link #bfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, Optional)}
+ * equals
+ * {@link Swaps#bfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, Optional)}
+ * </li>
+ * <li>
+ * {@link #dfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, RandomGenerator, Optional)}
+ * equals
+ * {@link Swaps#dfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, RandomGenerator, Optional)}
+ * </li>
+ * </ul>
+ * When an {@link IntRouteEvaluator} is used no objects are allocated per
+ * evaluated swap, only improving swaps are converted back into lists.
+ * @author Rinde van Lon
+ */
+public final class IntSwaps {
+
+  private IntSwaps() {}
+
+  /**
+   * Breadth-first 2-opt, see
+   * {@link Swaps#bfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, Optional)}
+   * for a description of the parameters.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified.
+   * @param context The context to the schedule.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param listener An optional progress listener.
+   * @param <C> The context type.
+   * @param <T> The route item type.
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   * @throws InterruptedException When execution is interrupted.
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> bfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      IntList startIndices,
+      C context,
+      RouteEvaluator<C, T> evaluator,
+      Optional<? extends ProgressListener<T>> listener)
+          throws InterruptedException {
+    final ImmutableList<T> items = items(schedule);
+    return opt2(schedule, startIndices, context,
+      new ListRouteEvaluator<>(items, evaluator), items, false,
+      Optional.<RandomGenerator>absent(), listener);
+  }
+
+  /**
+   * Breadth-first 2-opt using an {@link IntRouteEvaluator}, see
+   * {@link Swaps#bfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, Optional)}
+   * for a description of the parameters.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified.
+   * @param context The context to the schedule.
+   * @param evaluator {@link IntRouteEvaluator} that can compute the cost of a
+   *          single route, item ids are as defined by
+   *          {@link #items(ImmutableList)}.
+   * @param listener An optional progress listener.
+   * @param <C> The context type.
+   * @param <T> The route item type.
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   * @throws InterruptedException When execution is interrupted.
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> bfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      IntList startIndices,
+      C context,
+      IntRouteEvaluator<C> evaluator,
+      Optional<? extends ProgressListener<T>> listener)
+          throws InterruptedException {
+    return opt2(schedule, startIndices, context, evaluator, items(schedule),
+      false, Optional.<RandomGenerator>absent(), listener);
+  }
+
+  /**
+   * Depth-first 2-opt, see
+   * {@link Swaps#dfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, RandomGenerator, Optional)}
+   * for a description of the parameters.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified.
+   * @param context The context to the schedule.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param rng The random number generator that is used to randomize the
+   *          ordering of the swaps.
+   * @param listener An optional progress listener.
+   * @param <C> The context type.
+   * @param <T> The route item type.
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   * @throws InterruptedException When execution is interrupted.
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> dfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      IntList startIndices,
+      C context,
+      RouteEvaluator<C, T> evaluator,
+      RandomGenerator rng,
+      Optional<? extends ProgressListener<T>> listener)
+          throws InterruptedException {
+    final ImmutableList<T> items = items(schedule);
+    return opt2(schedule, startIndices, context,
+      new ListRouteEvaluator<>(items, evaluator), items, true, Optional.of(rng),
+      listener);
+  }
+
+  /**
+   * Depth-first 2-opt using an {@link IntRouteEvaluator}, see
+   * {@link Swaps#dfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, RandomGenerator, Optional)}
+   * for a description of the parameters.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified.
+   * @param context The context to the schedule.
+   * @param evaluator {@link IntRouteEvaluator} that can compute the cost of a
+   *          single route, item ids are as defined by
+   *          {@link #items(ImmutableList)}.
+   * @param rng The random number generator that is used to randomize the
+   *          ordering of the swaps.
+   * @param listener An optional progress listener.
+   * @param <C> The context type.
+   * @param <T> The route item type.
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   * @throws InterruptedException When execution is interrupted.
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> dfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      IntList startIndices,
+      C context,
+      IntRouteEvaluator<C> evaluator,
+      RandomGenerator rng,
+      Optional<? extends ProgressListener<T>> listener)
+          throws InterruptedException {
+    return opt2(schedule, startIndices, context, evaluator, items(schedule),
+      true, Optional.of(rng), listener);
+  }
+
+  /**
+   * Interns all items of the specified schedule. The id of an item is its
+   * index in the returned list, ids are assigned in order of first occurrence
+   * (row by row, from left to right).
+   * @param schedule The schedule.
+   * @param <T> The route item type.
+   * @return A list containing every distinct item of the schedule exactly once.
+   */
+  public static <T> ImmutableList<T> items(
+      ImmutableList<ImmutableList<T>> schedule) {
+    final Set<T> items = newLinkedHashSet();
+    for (final ImmutableList<T> route : schedule) {
+      items.addAll(route);
+    }
+    return ImmutableList.copyOf(items);
+  }
+
+  static <C, T> ImmutableList<ImmutableList<T>> opt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      IntList startIndices,
+      C context,
+      IntRouteEvaluator<C> evaluator,
+      ImmutableList<T> items,
+      boolean depthFirst,
+      Optional<RandomGenerator> rng,
+      Optional<? extends ProgressListener<T>> listener)
+          throws InterruptedException {
+    checkArgument(schedule.size() == startIndices.size());
+    final Engine<C, T> engine =
+      new Engine<>(schedule, startIndices, context, evaluator, items);
+
+    boolean isImproving = true;
+    while (isImproving) {
+      isImproving = false;
+      engine.enumerate();
+      if (depthFirst) {
+        engine.resetOrder();
+      }
+
+      final double curObjectiveValue = engine.objectiveValue;
+      double bestObjectiveValue = curObjectiveValue;
+      int bestSwap = -1;
+      double bestCostA = 0;
+      double bestCostB = 0;
+      for (int i = 0; i < engine.numSwaps(); i++) {
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+        final int swap = depthFirst ? engine.draw(i, rng.get()) : i;
+        if (engine.evaluate(swap, bestObjectiveValue - curObjectiveValue)) {
+          isImproving = true;
+          bestSwap = swap;
+          bestObjectiveValue = curObjectiveValue + engine.lastDiff;
+          bestCostA = engine.lastCostA;
+          bestCostB = engine.lastCostB;
+
+          if (listener.isPresent()) {
+            listener.get().notify(engine.materialize(swap),
+              bestObjectiveValue);
+          }
+          if (depthFirst) {
+            break;
+          }
+        }
+      }
+      if (isImproving) {
+        engine.apply(bestSwap, bestCostA, bestCostB, bestObjectiveValue);
+      }
+    }
+    return engine.routes();
+  }
+
+  static <T> ImmutableList<T> toList(ImmutableList<T> items, int[] route,
+      int length) {
+    final ImmutableList.Builder<T> builder = ImmutableList.builder();
+    for (int i = 0; i < length; i++) {
+      builder.add(items.get(route[i]));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Writes <code>route</code> without any occurrence of <code>item</code> into
+   * <code>dest</code>.
+   * @return The length of the resulting route.
+   */
+  static int remove(int[] route, int length, int item, int[] dest) {
+    int size = 0;
+    for (int i = 0; i < length; i++) {
+      if (route[i] != item) {
+        dest[size++] = route[i];
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Primitive version of {@link Insertions#insert(java.util.List,
+   * java.util.List, Object)}, writes the result into <code>dest</code>.
+   * @return The length of the resulting route.
+   */
+  static int insert(int[] route, int length, int[] indices, int offset,
+      int numIndices, int item, int[] dest) {
+    int prev = 0;
+    int size = 0;
+    for (int i = 0; i < numIndices; i++) {
+      final int cur = indices[offset + i];
+      System.arraycopy(route, prev, dest, size, cur - prev);
+      size += cur - prev;
+      dest[size++] = item;
+      prev = cur;
+    }
+    System.arraycopy(route, prev, dest, size, length - prev);
+    return size + length - prev;
+  }
+
+  /**
+   * Holds the current schedule in primitive form together with all scratch
+   * buffers that are needed to evaluate swaps.
+   */
+  static final class Engine<C, T> {
+    final C context;
+    final IntRouteEvaluator<C> evaluator;
+    final ImmutableList<T> items;
+
+    final int[][] routes;
+    final int[] lengths;
+    final int[] startIndices;
+    final double[] objectiveValues;
+    double objectiveValue;
+    // list representation of each row, kept in sync with routes
+    final ImmutableList<T>[] rows;
+
+    // the neighborhood, swap i moves swapItem[i] from swapFrom[i] to swapTo[i]
+    // at the indices stored in swapIndices starting at swapOffset[i]
+    final IntArrayList swapItem;
+    final IntArrayList swapFrom;
+    final IntArrayList swapTo;
+    final IntArrayList swapOffset;
+    final IntArrayList swapIndices;
+    // number of occurrences of each item in its row
+    final int[] itemCount;
+    final boolean[] seen;
+    int[] order;
+
+    // scratch buffers
+    final int[] removed;
+    final int[] inserted;
+    int[] positions;
+    int[] insertion;
+    int removedLength;
+    int insertedLength;
+
+    // cost of each item's row without that item, valid within one iteration
+    final double[] removalCost;
+    final int[] removalStamp;
+    int stamp;
+
+    double lastCostA;
+    double lastCostB;
+    double lastDiff;
+
+    @SuppressWarnings("unchecked")
+    Engine(ImmutableList<ImmutableList<T>> schedule, IntList starts, C ctx,
+        IntRouteEvaluator<C> eval, ImmutableList<T> its) {
+      context = ctx;
+      evaluator = eval;
+      items = its;
+
+      final Object2IntMap<T> ids = new Object2IntOpenHashMap<>(items.size());
+      for (int i = 0; i < items.size(); i++) {
+        ids.put(items.get(i), i);
+      }
+
+      final int numRows = schedule.size();
+      routes = new int[numRows][];
+      lengths = new int[numRows];
+      startIndices = starts.toIntArray();
+      objectiveValues = new double[numRows];
+      rows = new ImmutableList[numRows];
+      int totalLength = 0;
+      for (int i = 0; i < numRows; i++) {
+        final ImmutableList<T> row = schedule.get(i);
+        rows[i] = row;
+        routes[i] = new int[row.size()];
+        lengths[i] = row.size();
+        for (int j = 0; j < row.size(); j++) {
+          routes[i][j] = ids.getInt(row.get(j));
+        }
+        totalLength += row.size();
+        objectiveValues[i] =
+          evaluator.computeCost(context, i, routes[i], lengths[i]);
+        objectiveValue += objectiveValues[i];
+      }
+
+      swapItem = new IntArrayList();
+      swapFrom = new IntArrayList();
+      swapTo = new IntArrayList();
+      swapOffset = new IntArrayList();
+      swapIndices = new IntArrayList();
+      itemCount = new int[items.size()];
+      seen = new boolean[items.size()];
+      order = IntArrays.EMPTY_ARRAY;
+
+      // no route can ever be longer than the total number of occurrences
+      removed = new int[totalLength];
+      inserted = new int[totalLength];
+      positions = IntArrays.EMPTY_ARRAY;
+      insertion = IntArrays.EMPTY_ARRAY;
+
+      removalCost = new double[items.size()];
+      removalStamp = new int[items.size()];
+    }
+
+    int numSwaps() {
+      return swapItem.size();
+    }
+
+    /**
+     * Constructs the neighborhood of the current schedule, the ordering is
+     * identical to {@link Swaps#swapIterator(Schedule)}.
+     */
+    void enumerate() {
+      stamp++;
+      swapItem.clear();
+      swapFrom.clear();
+      swapTo.clear();
+      swapOffset.clear();
+      swapIndices.clear();
+      Arrays.fill(seen, false);
+      for (int i = 0; i < routes.length; i++) {
+        for (int j = 0; j < lengths[i]; j++) {
+          final int item = routes[i][j];
+          if (j >= startIndices[i] && !seen[item]) {
+            enumerate(item, i);
+          }
+          seen[item] = true;
+        }
+      }
+    }
+
+    // see Swaps.oneItemSwapIterator(..)
+    void enumerate(int item, int fromRow) {
+      int count = 0;
+      positions = IntArrays.grow(positions, lengths[fromRow]);
+      for (int j = 0; j < lengths[fromRow]; j++) {
+        if (routes[fromRow][j] == item) {
+          positions[count++] = j;
+        }
+      }
+      itemCount[item] = count;
+      insertion = IntArrays.grow(insertion, count);
+
+      final int lower = count == 1 ? fromRow : 0;
+      final int upper = count == 1 ? fromRow + 1 : routes.length;
+      for (int i = lower; i < upper; i++) {
+        final int rowSize =
+          fromRow == i ? lengths[i] - count : lengths[i];
+        final int startIndex = startIndices[i];
+        checkArgument(startIndex <= rowSize,
+          "startIndex (%s) must be <= listSize (%s).", startIndex, rowSize);
+        Arrays.fill(insertion, 0, count, startIndex);
+        do {
+          if (fromRow != i || !equalsPositions(count)) {
+            swapItem.add(item);
+            swapFrom.add(fromRow);
+            swapTo.add(i);
+            swapOffset.add(swapIndices.size());
+            for (int k = 0; k < count; k++) {
+              swapIndices.add(insertion[k]);
+            }
+          }
+        } while (advance(count, rowSize));
+      }
+    }
+
+    boolean equalsPositions(int count) {
+      for (int k = 0; k < count; k++) {
+        if (insertion[k] != positions[k]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    // advances insertion to the next combination, same ordering as
+    // Insertions.InsertionIndexGenerator
+    boolean advance(int count, int rowSize) {
+      for (int k = count - 1; k >= 0; k--) {
+        if (insertion[k] < rowSize) {
+          insertion[k]++;
+          for (int m = k + 1; m < count; m++) {
+            insertion[m] = insertion[k];
+          }
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void resetOrder() {
+      final int n = numSwaps();
+      order = IntArrays.ensureCapacity(order, n);
+      for (int i = 0; i < n; i++) {
+        order[i] = i;
+      }
+    }
+
+    // draws the i-th swap of a random ordering of the neighborhood using a
+    // forward Fisher-Yates shuffle, the random number consumption is identical
+    // to Swaps.RandomSwapIterator
+    int draw(int i, RandomGenerator rng) {
+      IntArrays.swap(order, i, i + rng.nextInt(numSwaps() - i));
+      return order[i];
+    }
+
+    /**
+     * Evaluates the specified swap, see
+     * {@link Swaps#swap(Schedule, Swaps.Swap, double)}. Stores the new costs
+     * in <code>lastCostA</code>, <code>lastCostB</code> and
+     * <code>lastDiff</code>.
+     * @return <code>true</code> if the swap improves over the threshold.
+     */
+    boolean evaluate(int swap, double threshold) {
+      final int item = swapItem.getInt(swap);
+      final int from = swapFrom.getInt(swap);
+      final int to = swapTo.getInt(swap);
+
+      if (from == to) {
+        build(swap);
+        final double newCost =
+          evaluator.computeCost(context, from, inserted, insertedLength);
+        lastCostA = newCost;
+        lastCostB = newCost;
+        lastDiff = newCost - objectiveValues[from];
+      } else {
+        if (removalStamp[item] != stamp) {
+          removedLength = remove(routes[from], lengths[from], item, removed);
+          removalCost[item] =
+            evaluator.computeCost(context, from, removed, removedLength);
+          removalStamp[item] = stamp;
+        }
+        final double diffA = removalCost[item] - objectiveValues[from];
+        insertedLength = insert(routes[to], lengths[to],
+          swapIndices.elements(), swapOffset.getInt(swap), itemCount[item],
+          item, inserted);
+        final double newCostB =
+          evaluator.computeCost(context, to, inserted, insertedLength);
+        final double diffB = newCostB - objectiveValues[to];
+        lastCostA = removalCost[item];
+        lastCostB = newCostB;
+        lastDiff = diffA + diffB;
+      }
+      return lastDiff < threshold;
+    }
+
+    /**
+     * Writes the new route(s) of the specified swap into the scratch buffers.
+     * For a swap within one row the new route is in <code>inserted</code>,
+     * otherwise <code>removed</code> contains the new origin row and
+     * <code>inserted</code> the new destination row.
+     */
+    void build(int swap) {
+      final int item = swapItem.getInt(swap);
+      final int from = swapFrom.getInt(swap);
+      final int to = swapTo.getInt(swap);
+      removedLength = remove(routes[from], lengths[from], item, removed);
+      if (from == to) {
+        insertedLength = insert(removed, removedLength, swapIndices.elements(),
+          swapOffset.getInt(swap), itemCount[item], item, inserted);
+      } else {
+        insertedLength = insert(routes[to], lengths[to],
+          swapIndices.elements(), swapOffset.getInt(swap), itemCount[item],
+          item, inserted);
+      }
+    }
+
+    /**
+     * @return The current schedule with the specified swap applied.
+     */
+    ImmutableList<ImmutableList<T>> materialize(int swap) {
+      build(swap);
+      final int from = swapFrom.getInt(swap);
+      final int to = swapTo.getInt(swap);
+      final ImmutableList.Builder<ImmutableList<T>> builder =
+        ImmutableList.builder();
+      for (int i = 0; i < rows.length; i++) {
+        if (i == to) {
+          builder.add(toList(items, inserted, insertedLength));
+        } else if (i == from) {
+          builder.add(toList(items, removed, removedLength));
+        } else {
+          builder.add(rows[i]);
+        }
+      }
+      return builder.build();
+    }
+
+    void apply(int swap, double costA, double costB, double newObjective) {
+      build(swap);
+      final int from = swapFrom.getInt(swap);
+      final int to = swapTo.getInt(swap);
+      if (from != to) {
+        copyInto(from, removed, removedLength);
+        objectiveValues[from] = costA;
+      }
+      copyInto(to, inserted, insertedLength);
+      objectiveValues[to] = costB;
+      objectiveValue = newObjective;
+    }
+
+    void copyInto(int row, int[] route, int length) {
+      routes[row] = IntArrays.ensureCapacity(routes[row], length);
+      System.arraycopy(route, 0, routes[row], 0, length);
+      lengths[row] = length;
+      rows[row] = toList(items, route, length);
+    }
+
+    ImmutableList<ImmutableList<T>> routes() {
+      return ImmutableList.copyOf(rows);
+    }
+  }
+
+  static class ListRouteEvaluator<C, T> implements IntRouteEvaluator<C> {
+    final ImmutableList<T> items;
+    final RouteEvaluator<C, T> delegate;
+
+    ListRouteEvaluator(ImmutableList<T> its, RouteEvaluator<C, T> deleg) {
+      items = its;
+      delegate = deleg;
+    }
+
+    @Override
+    public double computeCost(C context, int routeIndex, int[] newRoute,
+        int length) {
+      return delegate.computeCost(context, routeIndex,
+        toList(items, newRoute, length));
+    }
+  }
+}
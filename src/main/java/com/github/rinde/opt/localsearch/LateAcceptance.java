@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.github.rinde.opt.localsearch.Swaps.RandomSwapIterator;
+import com.github.rinde.opt.localsearch.Swaps.Swap;
+import com.github.rinde.opt.localsearch.Swaps.SwapEvaluation;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/**
+ * Late acceptance hill climbing (LAHC) over the swap neighborhood of
+ * {@link Swaps}. Contrary to 2-opt, which stops at the first local optimum,
+ * LAHC also accepts deteriorating swaps: a candidate is accepted if it is
+ * better than the current schedule, or if it is better than the current
+ * schedule of <code>historyLength</code> iterations ago. This allows the
+ * search to escape from local optima without restarts.
+ * <p>
+ * Candidates are drawn uniformly at random without replacement from the
+ * neighborhood of the current schedule, see
+ * {@link Swaps#dfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, RandomGenerator, Optional)}
+ * . The search stops when the iteration limit or the time limit is reached,
+ * or when the entire neighborhood of the current schedule is rejected while
+ * the history no longer allows deteriorations. Route costs are cached in a
+ * {@link RouteCostCache} and incremental evaluators are used incrementally.
+ * The algorithm is deterministic for a given random seed when no time limit
+ * is used.
+ * @author Rinde van Lon
+ */
+public final class LateAcceptance {
+
+  private LateAcceptance() {}
+
+  /**
+   * Improves the schedule using late acceptance hill climbing.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified. <code>startIndices[j] = n</code> indicates that
+   *          <code>schedule[j][n]</code> can be modified but
+   *          <code>schedule[j][n-1]</code> not.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a swap.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param rng The random number generator that is used for drawing
+   *          candidates.
+   * @param options The history length and the limits of the search.
+   * @param listener An optional listener that is notified of every new best
+   *          schedule.
+   * @param <C> The context type.
+   * @param <T> The route item type.
+   * @return The best schedule that was found (or the input schedule if no
+   *         improvement could be made).
+   * @throws InterruptedException When execution is interrupted.
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> search(
+      ImmutableList<ImmutableList<T>> schedule,
+      IntList startIndices,
+      C context,
+      RouteEvaluator<C, T> evaluator,
+      RandomGenerator rng,
+      LateAcceptanceOptions options,
+      Optional<? extends ProgressListener<T>> listener)
+          throws InterruptedException {
+    checkArgument(schedule.size() == startIndices.size());
+    Schedule<C, T> current =
+      Schedule.create(context, schedule, startIndices, evaluator);
+    Schedule<C, T> best = current;
+    final RouteCostCache<T> cache = RouteCostCache.create();
+    for (int i = 0; i < current.routes.size(); i++) {
+      cache.put(cache.fingerprint(i, current.routes.get(i)),
+        current.objectiveValues.getDouble(i));
+    }
+
+    final boolean hasDeadline =
+      options.timeLimitNanos() != LateAcceptanceOptions.UNLIMITED;
+    final long deadline =
+      hasDeadline ? System.nanoTime() + options.timeLimitNanos() : 0L;
+    final double[] history = new double[options.historyLength()];
+    Arrays.fill(history, current.objectiveValue);
+
+    Iterator<Swap<T>> candidates = new RandomSwapIterator<>(current, rng);
+    for (long i = 0; i < options.iterationLimit(); i++) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      if (hasDeadline && System.nanoTime() - deadline >= 0) {
+        break;
+      }
+      if (!candidates.hasNext()) {
+        // the entire neighborhood is rejected, continuing only makes sense
+        // if the history still accepts deteriorations
+        if (max(history) <= current.objectiveValue) {
+          break;
+        }
+        candidates = new RandomSwapIterator<>(current, rng);
+        if (!candidates.hasNext()) {
+          break;
+        }
+      }
+      final SwapEvaluation<T> evaluation =
+        Swaps.evaluate(current, candidates.next(), cache);
+      final double candidateValue = current.objectiveValue + evaluation.diff();
+      final int v = (int) (i % history.length);
+      if (evaluation.diff() < 0 || candidateValue < history[v]) {
+        current = Swaps.apply(current, evaluation);
+        candidates = new RandomSwapIterator<>(current, rng);
+        if (current.objectiveValue < best.objectiveValue) {
+          best = current;
+          if (listener.isPresent()) {
+            listener.get().notify(best.immutableRoutes(), best.objectiveValue);
+          }
+        }
+      }
+      history[v] = current.objectiveValue;
+    }
+    return best.immutableRoutes();
+  }
+
+  static double max(double[] values) {
+    double max = Double.NEGATIVE_INFINITY;
+    for (final double value : values) {
+      max = Math.max(max, value);
+    }
+    return max;
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckReturnValue;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * Value object containing the options of {@link LateAcceptance}. Instances
+ * are immutable, the <code>with</code> methods return a new instance.
+ * @author Rinde van Lon
+ */
+@AutoValue
+public abstract class LateAcceptanceOptions {
+  /**
+   * The default history length.
+   */
+  public static final int DEFAULT_HISTORY_LENGTH = 50;
+
+  /**
+   * The default maximum number of iterations.
+   */
+  public static final long DEFAULT_ITERATION_LIMIT = 100000L;
+
+  static final long UNLIMITED = Long.MAX_VALUE;
+
+  LateAcceptanceOptions() {}
+
+  abstract int historyLength();
+
+  abstract long iterationLimit();
+
+  abstract long timeLimitNanos();
+
+  /**
+   * Sets the length of the history of objective values, a candidate is
+   * accepted if it is better than the objective value of the current schedule
+   * <code>historyLength</code> iterations ago. A longer history accepts more
+   * deteriorations and therefore explores more, but converges slower. A
+   * history length of <code>1</code> corresponds to hill climbing. The default
+   * is {@value #DEFAULT_HISTORY_LENGTH}.
+   * @param length The history length, must be positive.
+   * @return A new options instance with the history length set.
+   */
+  @CheckReturnValue
+  public LateAcceptanceOptions withHistoryLength(int length) {
+    checkArgument(length > 0, "History length must be positive, found %s.",
+      length);
+    return create(length, iterationLimit(), timeLimitNanos());
+  }
+
+  /**
+   * Sets the maximum number of iterations, each iteration evaluates one
+   * candidate. The default is {@value #DEFAULT_ITERATION_LIMIT}.
+   * @param n The maximum number of iterations, must be positive.
+   * @return A new options instance with the iteration limit set.
+   */
+  @CheckReturnValue
+  public LateAcceptanceOptions withIterationLimit(long n) {
+    checkArgument(n > 0, "Iteration limit must be positive, found %s.", n);
+    return create(historyLength(), n, timeLimitNanos());
+  }
+
+  /**
+   * Limits the (wall-clock) duration of a search, the deadline is computed at
+   * the start of each search. By default the duration is unlimited.
+   * @param duration The maximum duration, must be positive.
+   * @param unit The unit of the duration.
+   * @return A new options instance with the time limit set.
+   */
+  @CheckReturnValue
+  public LateAcceptanceOptions withTimeLimit(long duration, TimeUnit unit) {
+    checkArgument(duration > 0, "Time limit must be positive, found %s.",
+      duration);
+    return create(historyLength(), iterationLimit(), unit.toNanos(duration));
+  }
+
+  /**
+   * @return The default options.
+   */
+  public static LateAcceptanceOptions create() {
+    return create(DEFAULT_HISTORY_LENGTH, DEFAULT_ITERATION_LIMIT, UNLIMITED);
+  }
+
+  static LateAcceptanceOptions create(int historyLength, long iterationLimit,
+      long timeLimitNanos) {
+    return new AutoValue_LateAcceptanceOptions(historyLength, iterationLimit,
+      timeLimitNanos);
+  }
+}
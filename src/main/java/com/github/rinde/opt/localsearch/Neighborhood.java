@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+/**
+ * The neighborhoods that can be used by
+ * {@link VariableNeighborhoodDescent}. An item that occurs twice in a route
+ * (e.g. the pickup and delivery of a parcel) is always moved as a whole, the
+ * relative order of its occurrences is preserved. An item that occurs only
+ * once in a route (e.g. the delivery of a parcel that is already picked up)
+ * never leaves its route. Items before the start index of a route are never
+ * moved.
+ * @author Rinde van Lon
+ */
+public enum Neighborhood {
+  /**
+   * Moves all occurrences of a single item to new positions in the same or in
+   * another route, this is the neighborhood of {@link Swaps}.
+   */
+  RELOCATE,
+
+  /**
+   * Exchanges two items between two routes, each item takes the positions of
+   * the other item.
+   */
+  EXCHANGE,
+
+  /**
+   * Moves a contiguous chain of items to another route, the chain must contain
+   * all occurrences of its items. The maximum length of a chain is set via
+   * {@link VndOptions#withMaxChainLength(int)}.
+   */
+  RELOCATE_CHAIN,
+
+  /**
+   * Exchanges the tails of two routes (2-opt*), each tail must contain all
+   * occurrences of its items.
+   */
+  TWO_OPT_STAR;
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckReturnValue;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Optional;
+
+/**
+ * Value object containing the options of the 2-opt procedures in
+ * {@link Swaps}. Instances are immutable, the <code>with</code> methods return
+ * a new instance.
+ * @author Rinde van Lon
+ * @param <T> The route item type.
+ */
+@AutoValue
+public abstract class Opt2Options<T> {
+  static final long UNLIMITED = Long.MAX_VALUE;
+
+  Opt2Options() {}
+
+  abstract Optional<RouteCostCache<T>> cache();
+
+  abstract int granularity();
+
+  abstract Optional<Proximity<? super T>> proximity();
+
+  abstract long timeLimitNanos();
+
+  abstract long evaluationLimit();
+
+  abstract Optional<CandidateLists<T>> candidates();
+
+  /**
+   * Sets the cache that is used for route costs, by default a new
+   * {@link RouteCostCache} is created for each call.
+   * @param cache The cache to use, it can be shared between successive calls
+   *          that use the same context and evaluator.
+   * @return A new options instance with the cache set.
+   */
+  @CheckReturnValue
+  public Opt2Options<T> withCache(RouteCostCache<T> cache) {
+    return create(Optional.of(cache), granularity(), proximity(),
+      timeLimitNanos(), evaluationLimit(), candidates());
+  }
+
+  /**
+   * Restricts the neighborhood to a <i>granular neighborhood</i>: an item is
+   * only inserted at positions that are next to one of its <code>k</code>
+   * nearest items (as defined by <code>proximity</code>), or at the beginning
+   * or the end of the modifiable part of a route. This reduces the size of the
+   * neighborhood considerably for large schedules, at the cost of ignoring
+   * swaps that are unlikely to improve the schedule. By default the entire
+   * neighborhood is used.
+   * @param k The number of nearest items, must be positive.
+   * @param proximity The proximity that defines the distance between items.
+   * @return A new options instance with the granularity set.
+   */
+  @CheckReturnValue
+  public Opt2Options<T> withGranularity(int k,
+      Proximity<? super T> proximity) {
+    checkArgument(k > 0, "Granularity must be a positive number, found %s.",
+      k);
+    return create(cache(), k, Optional.<Proximity<? super T>>of(proximity),
+      timeLimitNanos(), evaluationLimit(),
+      Optional.<CandidateLists<T>>absent());
+  }
+
+  /**
+   * Limits the (wall-clock) duration of a search, the deadline is computed at
+   * the start of each search. When the deadline has passed the search stops
+   * and returns the best schedule that has been found so far. By default the
+   * duration is unlimited.
+   * @param duration The maximum duration, must be positive.
+   * @param unit The unit of the duration.
+   * @return A new options instance with the time limit set.
+   */
+  @CheckReturnValue
+  public Opt2Options<T> withTimeLimit(long duration, TimeUnit unit) {
+    checkArgument(duration > 0, "Time limit must be positive, found %s.",
+      duration);
+    return create(cache(), granularity(), proximity(), unit.toNanos(duration),
+      evaluationLimit(), candidates());
+  }
+
+  /**
+   * Limits the number of swaps that are evaluated during a search. When the
+   * limit is reached the search stops and returns the best schedule that has
+   * been found so far. By default the number of evaluations is unlimited.
+   * @param n The maximum number of evaluations, must be positive.
+   * @return A new options instance with the evaluation limit set.
+   */
+  @CheckReturnValue
+  public Opt2Options<T> withEvaluationLimit(long n) {
+    checkArgument(n > 0, "Evaluation limit must be positive, found %s.", n);
+    return create(cache(), granularity(), proximity(), timeLimitNanos(), n,
+      candidates());
+  }
+
+  /**
+   * Computes the candidate lists of the granular neighborhood of the specified
+   * schedule. A search with the returned options uses these candidate lists
+   * instead of computing them, provided that its schedule contains the same
+   * items in the same order of first occurrence (otherwise they are computed
+   * as usual). This avoids computing the candidate lists for every search when
+   * several searches start from the same schedule.
+   * @param schedule The schedule for which the candidate lists are computed.
+   * @return A new options instance with the candidate lists set, or this
+   *         instance if the neighborhood is not granular or if it already has
+   *         the candidate lists of the schedule.
+   */
+  @CheckReturnValue
+  public Opt2Options<T> withCandidatesFor(List<? extends List<T>> schedule) {
+    if (!isGranular() || candidates().isPresent()
+      && candidates().get().isFor(schedule)) {
+      return this;
+    }
+    return create(cache(), granularity(), proximity(), timeLimitNanos(),
+      evaluationLimit(), Optional.of(CandidateLists.create(schedule,
+        granularity(), proximity().get())));
+  }
+
+  /**
+   * @return <code>true</code> if a granular neighborhood is used.
+   */
+  public boolean isGranular() {
+    return proximity().isPresent();
+  }
+
+  /**
+   * @param <T> The route item type.
+   * @return The default options: no shared cache, the entire neighborhood
+   *         and no limits.
+   */
+  public static <T> Opt2Options<T> create() {
+    return create(Optional.<RouteCostCache<T>>absent(), 0,
+      Optional.<Proximity<? super T>>absent(), UNLIMITED, UNLIMITED,
+      Optional.<CandidateLists<T>>absent());
+  }
+
+  static <T> Opt2Options<T> create(Optional<RouteCostCache<T>> cache,
+      int granularity, Optional<Proximity<? super T>> proximity,
+      long timeLimitNanos, long evaluationLimit,
+      Optional<CandidateLists<T>> candidates) {
+    return new AutoValue_Opt2Options<T>(cache, granularity, proximity,
+      timeLimitNanos, evaluationLimit, candidates);
+  }
+}
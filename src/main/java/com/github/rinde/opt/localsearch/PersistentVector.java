@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Fixed size immutable list that supports creating a modified copy in
+ * (effectively) constant time. The elements are stored in the leaves of a tree
+ * with a branching factor of {@value #WIDTH}, {@link #with(int, Object)} only
+ * copies the path from the root to the leaf of the changed element, all other
+ * nodes are shared with the original list. For lists of up to
+ * {@value #WIDTH} elements the tree consists of a single node, for up to
+ * <code>1024</code> elements it consists of two levels.
+ * @author Rinde van Lon
+ * @param <E> The element type.
+ */
+final class PersistentVector<E> extends AbstractList<E>
+    implements RandomAccess {
+  static final int BITS = 5;
+  static final int WIDTH = 1 << BITS;
+  static final int MASK = WIDTH - 1;
+
+  private final int size;
+  private final int shift;
+  private final Object[] root;
+
+  private PersistentVector(int sz, int sh, Object[] r) {
+    size = sz;
+    shift = sh;
+    root = r;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public E get(int index) {
+    checkElementIndex(index, size);
+    Object[] node = root;
+    for (int level = shift; level > 0; level -= BITS) {
+      node = (Object[]) node[index >>> level & MASK];
+    }
+    return (E) node[index & MASK];
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Creates a copy of this list in which the element at the specified index is
+   * replaced, this list is not changed.
+   * @param index The index of the element to replace.
+   * @param element The new element.
+   * @return A new list that shares all unchanged nodes with this list.
+   */
+  PersistentVector<E> with(int index, E element) {
+    checkElementIndex(index, size);
+    return new PersistentVector<>(size, shift,
+      set(root, shift, index, element));
+  }
+
+  private static Object[] set(Object[] node, int level, int index,
+      Object element) {
+    final Object[] copy = node.clone();
+    if (level == 0) {
+      copy[index & MASK] = element;
+    } else {
+      final int child = index >>> level & MASK;
+      copy[child] = set((Object[]) node[child], level - BITS, index, element);
+    }
+    return copy;
+  }
+
+  /**
+   * Creates a new persistent list with the elements of the specified list.
+   * @param list The list to copy.
+   * @param <E> The element type.
+   * @return A new list.
+   */
+  static <E> PersistentVector<E> copyOf(List<? extends E> list) {
+    final int size = list.size();
+    Object[] nodes = list.toArray();
+    int shift = 0;
+    int numNodes = size;
+    // every iteration groups the nodes of one level in parents of at most
+    // WIDTH children, the leaf level consists of the elements themselves
+    while (true) {
+      final int numParents = (numNodes + MASK) >>> BITS;
+      final Object[] parents = new Object[Math.max(numParents, 1)];
+      for (int i = 0; i < numParents; i++) {
+        final int from = i << BITS;
+        final Object[] parent = new Object[Math.min(WIDTH, numNodes - from)];
+        System.arraycopy(nodes, from, parent, 0, parent.length);
+        parents[i] = parent;
+      }
+      if (numParents <= 1) {
+        final Object[] root =
+          numParents == 0 ? new Object[0] : (Object[]) parents[0];
+        return new PersistentVector<>(size, shift, root);
+      }
+      nodes = parents;
+      numNodes = numParents;
+      shift += BITS;
+    }
+  }
+}
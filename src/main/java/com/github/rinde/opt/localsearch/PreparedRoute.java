@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import com.google.common.collect.ImmutableList;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/**
+ * A route for which data has been precomputed by an
+ * {@link IncrementalRouteEvaluator}. Instances are immutable and may be used
+ * by multiple threads concurrently.
+ *
+ * @author Rinde van Lon
+ * @param <T> The generic type of a route.
+ */
+public interface PreparedRoute<T> {
+
+  /**
+   * @return The route.
+   */
+  ImmutableList<T> route();
+
+  /**
+   * @return The cost of the route.
+   */
+  double cost();
+
+  /**
+   * Computes the cost of the route with <code>item</code> inserted at the
+   * specified indices, see
+   * {@link Insertions#insert(java.util.List, java.util.List, Object)}.
+   * @param item The item to insert.
+   * @param insertionIndices The insertion indices in ascending order.
+   * @return The cost of the route after insertion.
+   */
+  double insertionCost(T item, IntList insertionIndices);
+
+  /**
+   * Computes the cost of the route with all occurrences of <code>item</code>
+   * removed.
+   * @param item The item to remove.
+   * @return The cost of the route after removal.
+   */
+  double removalCost(T item);
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+/**
+ * Implementations of this interface define the proximity of two route items,
+ * it is used to construct granular neighborhoods, see
+ * {@link Opt2Options#withGranularity(int, Proximity)}.
+ *
+ * @author Rinde van Lon
+ * @param <T> The route item type.
+ */
+public interface Proximity<T> {
+
+  /**
+   * Should compute the distance between two items, a lower value indicates
+   * that the items are closer to each other.
+   * @param item1 The first item.
+   * @param item2 The second item.
+   * @return The distance between the items.
+   */
+  double distance(T item1, T item2);
+}
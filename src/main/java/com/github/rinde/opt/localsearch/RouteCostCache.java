@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntLists;
+import it.unimi.dsi.fastutil.longs.Long2DoubleLinkedOpenHashMap;
+
+/**
+ * Least recently used cache of route costs as used by the 2-opt procedures in
+ * {@link Swaps}. Routes are not stored in the cache, instead each route is
+ * identified by a 64-bit fingerprint: every item is assigned a unique key and
+ * the fingerprint of a route is a polynomial hash of the keys of its items,
+ * combined with the row of the route. The prefix hashes of a route are
+ * computed once (and kept for as long as the route is referenced), after which
+ * the fingerprint of a candidate route is computed from the original route and
+ * the swap in time proportional to the number of removed and inserted items,
+ * without constructing the candidate route. The route is only constructed when
+ * its cost is not in the cache.
+ * <p>
+ * Since route costs depend on the context, an instance should only be shared
+ * between successive 2-opt calls that use the same context and evaluator (e.g.
+ * multiple calls during a single solve). The cache keeps track of the number of
+ * hits, misses and evictions. All methods are thread-safe, fingerprints are
+ * computed without locking. To allow concurrent lookups (e.g. in parallel
+ * 2-opt) large caches are divided in segments that each have their own lock,
+ * the least recently used cost is evicted per segment. Caches with a capacity
+ * below twice the {@link #SEGMENT_CAPACITY} have a single segment.
+ * @author Rinde van Lon
+ * @param <T> The route item type.
+ */
+public final class RouteCostCache<T> {
+  /**
+   * The default capacity of a cache.
+   */
+  public static final int DEFAULT_CAPACITY = 1000;
+
+  /**
+   * The minimum capacity of a segment, caches are only divided in multiple
+   * segments if each segment can store at least this number of costs.
+   */
+  public static final int SEGMENT_CAPACITY = 64;
+
+  private static final int MAX_SEGMENTS = 16;
+
+  private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+  private static final long ROW_SEED = 0xC2B2AE3D27D4EB4FL;
+  private static final long MIX_1 = 0xBF58476D1CE4E5B9L;
+  private static final long MIX_2 = 0x94D049BB133111EBL;
+  private static final int MIX_SHIFT_1 = 30;
+  private static final int MIX_SHIFT_2 = 27;
+  private static final int MIX_SHIFT_3 = 31;
+  private static final int NEWTON_ITERATIONS = 5;
+  // base of the polynomial hash and its multiplicative inverse (mod 2^64)
+  private static final long BASE = GOLDEN_GAMMA;
+  private static final long INVERSE_BASE = inverse(BASE);
+
+  private final int capacity;
+  private final Segment[] segments;
+  private final int segmentShift;
+  private final ConcurrentMap<T, Long> itemKeys;
+  private final AtomicLong numItemKeys;
+  // identity based, routes are released when they are no longer referenced
+  private final LoadingCache<List<T>, RouteHash<T>> routeHashes;
+
+  private RouteCostCache(int cap) {
+    capacity = cap;
+    int numSegments = 1;
+    while (numSegments < MAX_SEGMENTS
+      && numSegments * 2 * SEGMENT_CAPACITY <= cap) {
+      numSegments *= 2;
+    }
+    segments = new Segment[numSegments];
+    for (int i = 0; i < numSegments; i++) {
+      // distributes the remainder over the first segments
+      segments[i] = new Segment(cap / numSegments
+        + (i < cap % numSegments ? 1 : 0));
+    }
+    // the high bits of the fingerprint select the segment
+    segmentShift = Long.SIZE - Integer.numberOfTrailingZeros(numSegments);
+    itemKeys = new ConcurrentHashMap<>();
+    numItemKeys = new AtomicLong();
+    routeHashes = CacheBuilder.newBuilder()
+      .weakKeys()
+      .build(new CacheLoader<List<T>, RouteHash<T>>() {
+        @Override
+        public RouteHash<T> load(List<T> route) {
+          return new RouteHash<>(route, RouteCostCache.this);
+        }
+      });
+  }
+
+  /**
+   * @return The maximum number of route costs that is stored in this cache.
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * @return The number of route costs that is currently stored in this cache.
+   */
+  public int size() {
+    int size = 0;
+    for (final Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /**
+   * @return The number of lookups that were answered by the cache.
+   */
+  public long hits() {
+    long hits = 0;
+    for (final Segment segment : segments) {
+      hits += segment.hits();
+    }
+    return hits;
+  }
+
+  /**
+   * @return The number of lookups that could not be answered by the cache.
+   */
+  public long misses() {
+    long misses = 0;
+    for (final Segment segment : segments) {
+      misses += segment.misses();
+    }
+    return misses;
+  }
+
+  /**
+   * @return The number of route costs that were removed from the cache to make
+   *         room for new costs.
+   */
+  public long evictions() {
+    long evictions = 0;
+    for (final Segment segment : segments) {
+      evictions += segment.evictions();
+    }
+    return evictions;
+  }
+
+  /**
+   * @return The fraction of lookups that were answered by the cache, or
+   *         <code>0</code> if there were no lookups yet.
+   */
+  public double hitRate() {
+    final long hits = hits();
+    final long lookups = hits + misses();
+    return lookups == 0 ? 0d : (double) hits / lookups;
+  }
+
+  /**
+   * Removes all route costs from the cache, the statistics are kept.
+   */
+  public void clear() {
+    for (final Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(RouteCostCache.class)
+      .add("capacity", capacity)
+      .add("segments", segments.length)
+      .add("size", size())
+      .add("hits", hits())
+      .add("misses", misses())
+      .add("evictions", evictions())
+      .toString();
+  }
+
+  /**
+   * Looks up the cost of the route with the specified fingerprint.
+   * @param fingerprint The fingerprint of the route.
+   * @return The cost or {@link Double#NaN} if the cost is not in the cache.
+   */
+  double get(long fingerprint) {
+    return segment(fingerprint).get(fingerprint);
+  }
+
+  /**
+   * Adds the cost of the route with the specified fingerprint, if the segment
+   * of the fingerprint is full its least recently used cost is evicted.
+   * @param fingerprint The fingerprint of the route.
+   * @param cost The cost of the route, {@link Double#NaN} is never cached.
+   */
+  void put(long fingerprint, double cost) {
+    if (Double.isNaN(cost)) {
+      return;
+    }
+    segment(fingerprint).put(fingerprint, cost);
+  }
+
+  private Segment segment(long fingerprint) {
+    // a shift by 64 is a shift by 0 in Java, hence the special case
+    return segments.length == 1 ? segments[0]
+      : segments[(int) (fingerprint >>> segmentShift)];
+  }
+
+  /**
+   * Computes the fingerprint of the specified route.
+   * @param row The row of the route in the schedule.
+   * @param route The route.
+   * @return The fingerprint.
+   */
+  long fingerprint(int row, List<T> route) {
+    long hash = 0L;
+    long power = 1L;
+    for (final T item : route) {
+      hash += key(item) * power;
+      power *= BASE;
+    }
+    return finish(row, hash);
+  }
+
+  /**
+   * Computes the fingerprint of the route that is the result of removing all
+   * occurrences of <code>removedItem</code> from <code>route</code> and then
+   * inserting <code>insertedItem</code> at <code>insertionIndices</code>,
+   * without constructing this route.
+   * @param row The row of the route in the schedule.
+   * @param route The original route.
+   * @param removedItem The item to remove, or <code>null</code> if nothing is
+   *          removed.
+   * @param insertedItem The item to insert, or <code>null</code> if nothing is
+   *          inserted.
+   * @param insertionIndices The insertion indices relative to the route without
+   *          <code>removedItem</code>, see
+   *          {@link Insertions#insert(List, IntList, Object)}.
+   * @return The fingerprint.
+   */
+  long fingerprint(int row, List<T> route, @Nullable T removedItem,
+      @Nullable T insertedItem, IntList insertionIndices) {
+    checkArgument(insertedItem != null || insertionIndices.isEmpty(),
+      "An item is required when there are insertion indices.");
+    if (removedItem == null && insertionIndices.isEmpty()) {
+      return fingerprint(row, route);
+    }
+    final RouteHash<T> routeHash = routeHashes.getUnchecked(route);
+    final IntList removed = routeHash.positions(removedItem);
+    final int numKept = route.size() - removed.size();
+    final long insertedKey = insertedItem == null ? 0L : key(insertedItem);
+    long hash = 0L;
+    // position in the new route, index in the original route, index in the
+    // original route without the removed items
+    int position = 0;
+    int index = 0;
+    int kept = 0;
+    int removal = 0;
+    int insertion = 0;
+    while (true) {
+      final int nextInsertion = insertion < insertionIndices.size()
+        ? insertionIndices.getInt(insertion) : Integer.MAX_VALUE;
+      final int nextRemoval = removal < removed.size()
+        ? removed.getInt(removal) - removal : Integer.MAX_VALUE;
+      final int next = Math.min(Math.min(nextInsertion, nextRemoval), numKept);
+      // the kept items up to next form a segment of the original route
+      final int length = next - kept;
+      hash += routeHash.segment(index, index + length)
+        * power(position - index);
+      position += length;
+      index += length;
+      kept = next;
+      if (nextInsertion == next) {
+        hash += insertedKey * power(position);
+        position++;
+        insertion++;
+      } else if (nextRemoval == next) {
+        index++;
+        removal++;
+      } else {
+        break;
+      }
+    }
+    checkArgument(insertion == insertionIndices.size(),
+      "Insertion index %s is out of bounds, route size is %s.",
+      insertion < insertionIndices.size()
+        ? insertionIndices.getInt(insertion) : -1,
+      numKept);
+    return finish(row, hash);
+  }
+
+  // assigns a unique key to every item, mix is a bijection hence the keys of
+  // different items are guaranteed to be different.
+  long key(T item) {
+    final Long key = itemKeys.get(item);
+    if (key != null) {
+      return key;
+    }
+    final long newKey = mix(numItemKeys.incrementAndGet() * GOLDEN_GAMMA);
+    final Long previous = itemKeys.putIfAbsent(item, newKey);
+    return previous == null ? newKey : previous;
+  }
+
+  private static long finish(int row, long hash) {
+    return mix(hash + mix(ROW_SEED + row));
+  }
+
+  // BASE to the power of exponent, the exponent may be negative
+  static long power(int exponent) {
+    long base = exponent < 0 ? INVERSE_BASE : BASE;
+    int e = Math.abs(exponent);
+    long result = 1L;
+    while (e > 0) {
+      if ((e & 1) != 0) {
+        result *= base;
+      }
+      base *= base;
+      e >>>= 1;
+    }
+    return result;
+  }
+
+  // multiplicative inverse of an odd number modulo 2^64, using Newton's
+  // method, every iteration doubles the number of correct bits
+  static long inverse(long value) {
+    long x = value;
+    for (int i = 0; i < NEWTON_ITERATIONS; i++) {
+      x *= 2 - value * x;
+    }
+    return x;
+  }
+
+  // finalizer of SplitMix64
+  private static long mix(long value) {
+    long z = value;
+    z = (z ^ z >>> MIX_SHIFT_1) * MIX_1;
+    z = (z ^ z >>> MIX_SHIFT_2) * MIX_2;
+    return z ^ z >>> MIX_SHIFT_3;
+  }
+
+  /**
+   * Creates a new cache with the {@link #DEFAULT_CAPACITY}.
+   * @param <T> The route item type.
+   * @return A new empty cache.
+   */
+  public static <T> RouteCostCache<T> create() {
+    return create(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a new cache with the specified capacity.
+   * @param capacity The maximum number of route costs that is stored in the
+   *          cache, if <code>0</code> no costs are stored at all.
+   * @param <T> The route item type.
+   * @return A new empty cache.
+   */
+  public static <T> RouteCostCache<T> create(int capacity) {
+    checkArgument(capacity >= 0, "Capacity must be non-negative, found %s.",
+      capacity);
+    return new RouteCostCache<>(capacity);
+  }
+
+  /**
+   * Least recently used map of fingerprints to costs with its own lock and
+   * statistics.
+   */
+  static final class Segment {
+    private final int capacity;
+    private final Long2DoubleLinkedOpenHashMap costs;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    Segment(int cap) {
+      capacity = cap;
+      costs = new Long2DoubleLinkedOpenHashMap(cap);
+      costs.defaultReturnValue(Double.NaN);
+    }
+
+    synchronized int size() {
+      return costs.size();
+    }
+
+    synchronized long hits() {
+      return hits;
+    }
+
+    synchronized long misses() {
+      return misses;
+    }
+
+    synchronized long evictions() {
+      return evictions;
+    }
+
+    synchronized void clear() {
+      costs.clear();
+    }
+
+    synchronized double get(long fingerprint) {
+      if (costs.containsKey(fingerprint)) {
+        hits++;
+        return costs.getAndMoveToFirst(fingerprint);
+      }
+      misses++;
+      return Double.NaN;
+    }
+
+    synchronized void put(long fingerprint, double cost) {
+      if (capacity == 0) {
+        return;
+      }
+      costs.putAndMoveToFirst(fingerprint, cost);
+      if (costs.size() > capacity) {
+        costs.removeLastDouble();
+        evictions++;
+      }
+    }
+  }
+
+  /**
+   * The prefix hashes of a route and the positions of its items.
+   * @param <T> The route item type.
+   */
+  static final class RouteHash<T> {
+    // prefix[j] is the hash of the first j items
+    final long[] prefix;
+    final Map<T, IntList> positions;
+
+    RouteHash(List<T> route, RouteCostCache<T> cache) {
+      prefix = new long[route.size() + 1];
+      positions = new HashMap<>();
+      long power = 1L;
+      for (int j = 0; j < route.size(); j++) {
+        final T item = route.get(j);
+        prefix[j + 1] = prefix[j] + cache.key(item) * power;
+        power *= BASE;
+        if (!positions.containsKey(item)) {
+          positions.put(item, new IntArrayList());
+        }
+        positions.get(item).add(j);
+      }
+    }
+
+    // the hash of the items in [from, to) at their positions in the route
+    long segment(int from, int to) {
+      return prefix[to] - prefix[from];
+    }
+
+    IntList positions(@Nullable T item) {
+      final IntList ps = item == null ? null : positions.get(item);
+      return ps == null ? IntLists.EMPTY_LIST : ps;
+    }
+  }
+}
@@ -16,41 +16,155 @@
 package com.github.rinde.opt.localsearch;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Predicates.equalTo;
+import static com.google.common.base.Predicates.not;
+import static com.google.common.collect.Collections2.filter;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
 
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.AbstractDoubleList;
 import it.unimi.dsi.fastutil.doubles.DoubleList;
-import it.unimi.dsi.fastutil.doubles.DoubleLists;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.ints.IntLists;
 
 final class Schedule<C, T> {
   final C context;
-  final ImmutableList<ImmutableList<T>> routes;
+  /**
+   * The rows of the schedule, unchanged rows are shared between a schedule and
+   * the schedules that are derived from it.
+   */
+  final PersistentVector<Row<T>> rows;
+  /**
+   * View of the routes of {@link #rows}.
+   */
+  final List<ImmutableList<T>> routes;
   /**
    * Start indices of the routes which may be changed. If 0, the entire route
    * may be changed, if n all indices starting from n may be changed in the
    * route.
    */
   final IntList startIndices;
+  /**
+   * View of the costs of {@link #rows}.
+   */
   final DoubleList objectiveValues;
   final double objectiveValue;
   final RouteEvaluator<C, T> evaluator;
+  /**
+   * The candidate lists of the granular neighborhood, if absent the entire
+   * neighborhood is used.
+   */
+  final Optional<CandidateLists<T>> candidates;
 
-  private Schedule(C s, ImmutableList<ImmutableList<T>> r,
-      IntList si, DoubleList ovs, double ov,
-      RouteEvaluator<C, T> eval) {
+  private Schedule(C s, PersistentVector<Row<T>> r, IntList si, double ov,
+      RouteEvaluator<C, T> eval, Optional<CandidateLists<T>> cand) {
     checkArgument(r.size() == si.size());
-    checkArgument(r.size() == ovs.size());
     context = s;
-    routes = r;
+    rows = r;
+    routes = new RouteView<>(r);
     startIndices = si;
-    objectiveValues = ovs;
+    objectiveValues = new CostView(r);
     objectiveValue = ov;
     evaluator = eval;
+    candidates = cand;
+  }
+
+  /**
+   * Creates a copy of this schedule that uses the specified candidate lists,
+   * all rows are shared with this schedule.
+   * @param cand The candidate lists.
+   * @return A new schedule.
+   */
+  Schedule<C, T> withCandidates(Optional<CandidateLists<T>> cand) {
+    return new Schedule<>(context, rows, startIndices, objectiveValue,
+      evaluator, cand);
+  }
+
+  /**
+   * Creates a copy of this schedule in which the specified rows are replaced.
+   * Only the changed rows are copied, all other rows (including their prepared
+   * routes) are shared with this schedule.
+   * @param changedRows The indices of the rows to replace.
+   * @param newRoutes The new routes, one for each changed row.
+   * @param newCosts The costs of the new routes.
+   * @param newObjectiveValue The objective value of the new schedule.
+   * @return A new schedule.
+   */
+  Schedule<C, T> with(IntList changedRows, List<ImmutableList<T>> newRoutes,
+      DoubleList newCosts, double newObjectiveValue) {
+    checkArgument(changedRows.size() == newRoutes.size()
+      && changedRows.size() == newCosts.size(),
+      "The number of rows, routes and costs must be equal.");
+    PersistentVector<Row<T>> newRows = rows;
+    for (int i = 0; i < changedRows.size(); i++) {
+      newRows = newRows.with(changedRows.getInt(i),
+        new Row<>(newRoutes.get(i), newCosts.getDouble(i)));
+    }
+    return new Schedule<>(context, newRows, startIndices, newObjectiveValue,
+      evaluator, candidates);
+  }
+
+  /**
+   * @return A copy of the routes, this takes time linear in the number of rows.
+   */
+  ImmutableList<ImmutableList<T>> immutableRoutes() {
+    return ImmutableList.copyOf(routes);
+  }
+
+  boolean isIncremental() {
+    return evaluator instanceof IncrementalRouteEvaluator;
+  }
+
+  /**
+   * Should only be called when {@link #isIncremental()} is
+   * <code>true</code>.
+   * @param row The row index.
+   * @return The prepared route of the specified row.
+   */
+  PreparedRoute<T> preparedRoute(int row) {
+    final Row<T> r = rows.get(row);
+    PreparedRoute<T> route = r.prepared;
+    if (route == null) {
+      route = incrementalEvaluator().prepare(context, row, r.route);
+      r.prepared = route;
+    }
+    return route;
+  }
+
+  /**
+   * Should only be called when {@link #isIncremental()} is
+   * <code>true</code>.
+   * @param row The row index.
+   * @param item The item to remove from the row.
+   * @return The prepared route of the specified row without any occurrence of
+   *         item.
+   */
+  PreparedRoute<T> preparedRemoval(int row, T item) {
+    final Row<T> r = rows.get(row);
+    PreparedRoute<T> route = r.removals.get(item);
+    if (route == null) {
+      route = incrementalEvaluator().prepare(context, row,
+        ImmutableList.copyOf(filter(r.route, not(equalTo(item)))));
+      r.removals.put(item, route);
+    }
+    return route;
+  }
+
+  @SuppressWarnings("unchecked")
+  IncrementalRouteEvaluator<C, T> incrementalEvaluator() {
+    return (IncrementalRouteEvaluator<C, T>) evaluator;
   }
 
   static <C, T> Schedule<C, T> create(C context,
@@ -59,35 +173,62 @@ final class Schedule<C, T> {
       DoubleList objectiveValues,
       double globalObjectiveValue,
       RouteEvaluator<C, T> routeEvaluator) {
+    return create(context, routes, startIndices, objectiveValues,
+      globalObjectiveValue, routeEvaluator,
+      Optional.<CandidateLists<T>>absent());
+  }
 
+  static <C, T> Schedule<C, T> create(C context,
+      ImmutableList<ImmutableList<T>> routes,
+      IntList startIndices,
+      DoubleList objectiveValues,
+      double globalObjectiveValue,
+      RouteEvaluator<C, T> routeEvaluator,
+      Optional<CandidateLists<T>> candidates) {
+    checkArgument(routes.size() == objectiveValues.size());
+    final List<Row<T>> rows = new ArrayList<>(routes.size());
+    for (int i = 0; i < routes.size(); i++) {
+      rows.add(new Row<>(routes.get(i), objectiveValues.getDouble(i)));
+    }
     return new Schedule<C, T>(
       context,
-      routes,
+      PersistentVector.copyOf(rows),
       IntLists.unmodifiable(new IntArrayList(startIndices)),
-      DoubleLists.unmodifiable(new DoubleArrayList(objectiveValues)),
       globalObjectiveValue,
-      routeEvaluator);
+      routeEvaluator,
+      candidates);
   }
 
+  @SuppressWarnings("unchecked")
   static <C, T> Schedule<C, T> create(C context,
       ImmutableList<ImmutableList<T>> routes,
       IntList startIndices,
       RouteEvaluator<C, T> routeEvaluator) {
-    final DoubleList costs = new DoubleArrayList(routes.size());
+    final List<Row<T>> rows = new ArrayList<>(routes.size());
     double sumCost = 0;
     for (int i = 0; i < routes.size(); i++) {
-      final double cost = routeEvaluator.computeCost(context, i, routes.get(i));
-      costs.add(cost);
-      sumCost += cost;
+      final Row<T> row;
+      if (routeEvaluator instanceof IncrementalRouteEvaluator) {
+        final PreparedRoute<T> route =
+          ((IncrementalRouteEvaluator<C, T>) routeEvaluator).prepare(context,
+            i, routes.get(i));
+        row = new Row<>(routes.get(i), route.cost());
+        row.prepared = route;
+      } else {
+        row = new Row<>(routes.get(i),
+          routeEvaluator.computeCost(context, i, routes.get(i)));
+      }
+      rows.add(row);
+      sumCost += row.cost;
     }
 
     return new Schedule<C, T>(
       context,
-      routes,
+      PersistentVector.copyOf(rows),
       IntLists.unmodifiable(new IntArrayList(startIndices)),
-      DoubleLists.unmodifiable(costs),
       sumCost,
-      routeEvaluator);
+      routeEvaluator,
+      Optional.<CandidateLists<T>>absent());
   }
 
   @Override
@@ -98,4 +239,65 @@ final class Schedule<C, T> {
       .add("objectiveValue", objectiveValue).add("evaluator", evaluator)
       .toString();
   }
+
+  /**
+   * A single row of a schedule: the route, its cost and the lazily computed
+   * prepared routes (only used when the evaluator is an
+   * {@link IncrementalRouteEvaluator}). Since the prepared routes only depend
+   * on the route they are shared by all schedules that share the row.
+   * @param <T> The route item type.
+   */
+  static final class Row<T> {
+    final ImmutableList<T> route;
+    final double cost;
+    @Nullable
+    volatile PreparedRoute<T> prepared;
+    /**
+     * Prepared routes without a specific item, the item is the key.
+     */
+    final ConcurrentMap<T, PreparedRoute<T>> removals;
+
+    Row(ImmutableList<T> r, double c) {
+      route = r;
+      cost = c;
+      removals = new ConcurrentHashMap<>();
+    }
+  }
+
+  static final class RouteView<T> extends AbstractList<ImmutableList<T>>
+      implements RandomAccess {
+    final PersistentVector<Row<T>> rows;
+
+    RouteView(PersistentVector<Row<T>> r) {
+      rows = r;
+    }
+
+    @Override
+    public ImmutableList<T> get(int index) {
+      return rows.get(index).route;
+    }
+
+    @Override
+    public int size() {
+      return rows.size();
+    }
+  }
+
+  static final class CostView extends AbstractDoubleList {
+    final PersistentVector<? extends Row<?>> rows;
+
+    CostView(PersistentVector<? extends Row<?>> r) {
+      rows = r;
+    }
+
+    @Override
+    public double getDouble(int index) {
+      return rows.get(index).cost;
+    }
+
+    @Override
+    public int size() {
+      return rows.size();
+    }
+  }
 }
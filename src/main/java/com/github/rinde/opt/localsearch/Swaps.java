@@ -23,14 +23,22 @@ import static com.google.common.collect.Collections2.filter;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Sets.newLinkedHashSet;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 
-import org.apache.commons.math3.random.RandomAdaptor;
 import org.apache.commons.math3.random.RandomGenerator;
 
 import com.github.rinde.opt.localsearch.Insertions.InsertionIndexGenerator;
@@ -38,6 +46,7 @@ import com.google.auto.value.AutoValue;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicates;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Range;
@@ -48,7 +57,7 @@ import it.unimi.dsi.fastutil.doubles.DoubleLists;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.ints.IntLists;
-import it.unimi.dsi.fastutil.objects.Object2DoubleLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 
 /**
  * Class for swap algorithms. Currently supports two variants of 2-opt:
@@ -60,12 +69,16 @@ import it.unimi.dsi.fastutil.objects.Object2DoubleLinkedOpenHashMap;
  * {@link #dfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, RandomGenerator,Optional)}
  * .</li>
  * </ul>
+ * Breadth-first search can also be executed in parallel:
+ * {@link #bfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, ForkJoinPool, Optional)}
+ * . Route costs are cached in a {@link RouteCostCache}, the sequential
+ * variants accept a cache that can be shared between successive calls. All
+ * variants accept {@link Opt2Options} which, among others, allow to restrict
+ * the search to a granular neighborhood.
  * @author Rinde van Lon
  */
 public final class Swaps {
 
-  private static final int CACHE_SIZE = 1000;
-
   private Swaps() {}
 
   /**
@@ -142,6 +155,255 @@ public final class Swaps {
       Optional.of(rng), listener);
   }
 
+  /**
+   * Variant of
+   * {@link #bfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, Optional)}
+   * that uses the specified cache for route costs. The cache can be shared
+   * between successive calls that use the same context and evaluator.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified. <code>startIndices[j] = n</code> indicates that
+   *          <code>schedule[j][n]</code> can be modified but
+   *          <code>schedule[j][n-1]</code> not.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a swap.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param cache The cache to use for route costs.
+   * @param <C> The context type.
+   * @param <T> The route item type (i.e. the locations that are part of a
+   *          route).
+   * @param listener An optional progress listener. If provided,
+   *          {@link ProgressListener#notify(ImmutableList, double)} will be
+   *          called each time an <i>improving</i> schedule is found.
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   * @throws InterruptedException When execution is interrupted.
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> bfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      IntList startIndices,
+      C context,
+      RouteEvaluator<C, T> evaluator,
+      RouteCostCache<T> cache,
+      Optional<? extends ProgressListener<T>> listener)
+          throws InterruptedException {
+    return bfsOpt2(schedule, startIndices, context, evaluator,
+      Opt2Options.<T>create().withCache(cache), listener);
+  }
+
+  /**
+   * Variant of
+   * {@link #dfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, RandomGenerator, Optional)}
+   * that uses the specified cache for route costs. The cache can be shared
+   * between successive calls that use the same context and evaluator.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified. <code>startIndices[j] = n</code> indicates that
+   *          <code>schedule[j][n]</code> can be modified but
+   *          <code>schedule[j][n-1]</code> not.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a swap.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param rng The random number generator that is used to randomize the
+   *          ordering of the swaps.
+   * @param cache The cache to use for route costs.
+   * @param <C> The context type.
+   * @param <T> The route item type (i.e. the locations that are part of a
+   *          route).
+   * @param listener An optional progress listener. If provided,
+   *          {@link ProgressListener#notify(ImmutableList, double)} will be
+   *          called each time an <i>improving</i> schedule is found.
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   * @throws InterruptedException When execution is interrupted.
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> dfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      IntList startIndices,
+      C context,
+      RouteEvaluator<C, T> evaluator,
+      RandomGenerator rng,
+      RouteCostCache<T> cache,
+      Optional<? extends ProgressListener<T>> listener)
+          throws InterruptedException {
+    return dfsOpt2(schedule, startIndices, context, evaluator, rng,
+      Opt2Options.<T>create().withCache(cache), listener);
+  }
+
+  /**
+   * Variant of
+   * {@link #bfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, Optional)}
+   * that uses the specified options.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified. <code>startIndices[j] = n</code> indicates that
+   *          <code>schedule[j][n]</code> can be modified but
+   *          <code>schedule[j][n-1]</code> not.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a swap.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param options The options of the search.
+   * @param <C> The context type.
+   * @param <T> The route item type (i.e. the locations that are part of a
+   *          route).
+   * @param listener An optional progress listener. If provided,
+   *          {@link ProgressListener#notify(ImmutableList, double)} will be
+   *          called each time an <i>improving</i> schedule is found.
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   * @throws InterruptedException When execution is interrupted.
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> bfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      IntList startIndices,
+      C context,
+      RouteEvaluator<C, T> evaluator,
+      Opt2Options<T> options,
+      Optional<? extends ProgressListener<T>> listener)
+          throws InterruptedException {
+    return opt2(schedule, startIndices, context, evaluator, false,
+      Optional.<RandomGenerator>absent(), Optional.<ForkJoinPool>absent(),
+      options, listener);
+  }
+
+  /**
+   * Variant of
+   * {@link #dfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, RandomGenerator, Optional)}
+   * that uses the specified options.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified. <code>startIndices[j] = n</code> indicates that
+   *          <code>schedule[j][n]</code> can be modified but
+   *          <code>schedule[j][n-1]</code> not.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a swap.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param rng The random number generator that is used to randomize the
+   *          ordering of the swaps.
+   * @param options The options of the search.
+   * @param <C> The context type.
+   * @param <T> The route item type (i.e. the locations that are part of a
+   *          route).
+   * @param listener An optional progress listener. If provided,
+   *          {@link ProgressListener#notify(ImmutableList, double)} will be
+   *          called each time an <i>improving</i> schedule is found.
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   * @throws InterruptedException When execution is interrupted.
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> dfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      IntList startIndices,
+      C context,
+      RouteEvaluator<C, T> evaluator,
+      RandomGenerator rng,
+      Opt2Options<T> options,
+      Optional<? extends ProgressListener<T>> listener)
+          throws InterruptedException {
+    return opt2(schedule, startIndices, context, evaluator, true,
+      Optional.of(rng), Optional.<ForkJoinPool>absent(), options, listener);
+  }
+
+  /**
+   * Parallel variant of
+   * {@link #bfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, Optional)}.
+   * In each iteration the swaps of the different items are evaluated
+   * concurrently in the specified {@link ForkJoinPool}, after which the best
+   * improving swap is selected exactly as in the sequential version. As a
+   * result, this method is deterministic and has the same result as the
+   * sequential version. The only difference is that the listener is only
+   * notified of the best improving schedule of each iteration.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified. <code>startIndices[j] = n</code> indicates that
+   *          <code>schedule[j][n]</code> can be modified but
+   *          <code>schedule[j][n-1]</code> not.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a swap.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route, it will be called concurrently and must therefore
+   *          be thread-safe.
+   * @param pool The pool that is used for evaluating the swaps.
+   * @param <C> The context type.
+   * @param <T> The route item type (i.e. the locations that are part of a
+   *          route).
+   * @param listener An optional progress listener. If provided,
+   *          {@link ProgressListener#notify(ImmutableList, double)} will be
+   *          called each time an <i>improving</i> schedule is found.
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   * @throws InterruptedException When execution is interrupted.
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> bfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      IntList startIndices,
+      C context,
+      RouteEvaluator<C, T> evaluator,
+      ForkJoinPool pool,
+      Optional<? extends ProgressListener<T>> listener)
+          throws InterruptedException {
+    return bfsOpt2(schedule, startIndices, context, evaluator, pool,
+      Opt2Options.<T>create(), listener);
+  }
+
+  /**
+   * Variant of
+   * {@link #bfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, ForkJoinPool, Optional)}
+   * that uses the specified options. If the options contain a cache, it is
+   * shared by all threads, otherwise each thread uses its own cache.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified. <code>startIndices[j] = n</code> indicates that
+   *          <code>schedule[j][n]</code> can be modified but
+   *          <code>schedule[j][n-1]</code> not.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a swap.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route, it will be called concurrently and must therefore
+   *          be thread-safe.
+   * @param pool The pool that is used for evaluating the swaps.
+   * @param options The options of the search.
+   * @param <C> The context type.
+   * @param <T> The route item type (i.e. the locations that are part of a
+   *          route).
+   * @param listener An optional progress listener. If provided,
+   *          {@link ProgressListener#notify(ImmutableList, double)} will be
+   *          called each time an <i>improving</i> schedule is found.
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   * @throws InterruptedException When execution is interrupted.
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> bfsOpt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      IntList startIndices,
+      C context,
+      RouteEvaluator<C, T> evaluator,
+      ForkJoinPool pool,
+      Opt2Options<T> options,
+      Optional<? extends ProgressListener<T>> listener)
+          throws InterruptedException {
+    return opt2(schedule, startIndices, context, evaluator, false,
+      Optional.<RandomGenerator>absent(), Optional.of(pool), options,
+      listener);
+  }
+
+  static <C, T> ImmutableList<ImmutableList<T>> opt2(
+      ImmutableList<ImmutableList<T>> schedule,
+      IntList startIndices,
+      C context,
+      RouteEvaluator<C, T> evaluator,
+      boolean depthFirst,
+      Optional<RandomGenerator> rng,
+      Optional<? extends ProgressListener<T>> listener)
+          throws InterruptedException {
+    return opt2(schedule, startIndices, context, evaluator, depthFirst, rng,
+      Optional.<ForkJoinPool>absent(), Opt2Options.<T>create(), listener);
+  }
+
   static <C, T> ImmutableList<ImmutableList<T>> opt2(
       ImmutableList<ImmutableList<T>> schedule,
       IntList startIndices,
@@ -149,40 +411,65 @@ public final class Swaps {
       RouteEvaluator<C, T> evaluator,
       boolean depthFirst,
       Optional<RandomGenerator> rng,
+      Optional<ForkJoinPool> pool,
+      Opt2Options<T> options,
       Optional<? extends ProgressListener<T>> listener)
           throws InterruptedException {
+    checkArgument(!depthFirst || !pool.isPresent(),
+      "Depth-first search can not be executed in parallel.");
 
     checkArgument(schedule.size() == startIndices.size());
 
-    final Schedule<C, T> baseSchedule = Schedule.create(context, schedule,
+    Schedule<C, T> baseSchedule = Schedule.create(context, schedule,
       startIndices, evaluator);
+    if (options.isGranular()) {
+      baseSchedule = baseSchedule.withCandidates(
+        options.withCandidatesFor(schedule).candidates());
+    }
 
-    final Object2DoubleLinkedOpenHashMap<ImmutableList<T>> routeCostCache =
-      new Object2DoubleLinkedOpenHashMap<>(CACHE_SIZE);
-
+    final RouteCostCache<T> routeCostCache = options.cache().isPresent()
+      ? options.cache().get()
+      : RouteCostCache.<T>create();
     for (int i = 0; i < baseSchedule.routes.size(); i++) {
-      routeCostCache.put(baseSchedule.routes.get(i),
+      routeCostCache.put(
+        routeCostCache.fingerprint(i, baseSchedule.routes.get(i)),
         baseSchedule.objectiveValues.getDouble(i));
     }
 
+    final Budget budget = Budget.create(options);
     Schedule<C, T> bestSchedule = baseSchedule;
     boolean isImproving = true;
-    while (isImproving) {
+    while (isImproving && !budget.isExhausted()) {
       isImproving = false;
 
       final Schedule<C, T> curBest = bestSchedule;
-      Iterator<Swap<T>> it = swapIterator(curBest);
-      if (depthFirst) {
-        // randomize ordering of swaps
-        final List<Swap<T>> swaps = newArrayList(it);
-        Collections.shuffle(swaps, new RandomAdaptor(rng.get()));
-        it = swaps.iterator();
+      if (pool.isPresent()) {
+        final Optional<Schedule<C, T>> newSchedule =
+          bestSwap(curBest, pool.get(), options.cache(), budget);
+        if (newSchedule.isPresent()) {
+          isImproving = true;
+          bestSchedule = newSchedule.get();
+          if (listener.isPresent()) {
+            listener.get().notify(bestSchedule.immutableRoutes(),
+              bestSchedule.objectiveValue);
+          }
+        }
+        continue;
       }
 
+      // in depth-first search the swaps are lazily drawn in random order
+      final Iterator<Swap<T>> it = depthFirst
+        ? new RandomSwapIterator<>(curBest, rng.get())
+        : swapIterator(curBest);
+
       while (it.hasNext()) {
         if (Thread.interrupted()) {
           throw new InterruptedException();
         }
+        if (!budget.tryConsume()) {
+          // the best schedule found so far is returned
+          break;
+        }
         final Swap<T> swapOperation = it.next();
         final Optional<Schedule<C, T>> newSchedule = swap(curBest,
           swapOperation,
@@ -194,7 +481,7 @@ public final class Swaps {
           bestSchedule = newSchedule.get();
 
           if (listener.isPresent()) {
-            listener.get().notify(bestSchedule.routes,
+            listener.get().notify(bestSchedule.immutableRoutes(),
               bestSchedule.objectiveValue);
           }
           if (depthFirst) {
@@ -205,10 +492,74 @@ public final class Swaps {
         }
       }
     }
-    return bestSchedule.routes;
+    return bestSchedule.immutableRoutes();
+  }
+
+  /**
+   * Finds the best improving swap using the specified pool, the result is
+   * identical to a sequential breadth-first evaluation of
+   * {@link #swapIterator(Schedule)}.
+   * @param s The schedule.
+   * @param pool The pool to use for evaluating the swaps.
+   * @param cache The cache that is shared by all threads, if absent each
+   *          thread uses its own cache.
+   * @param budget The search budget that is shared by all threads, when it is
+   *          exhausted the best swap that has been evaluated so far is
+   *          selected.
+   * @return The schedule that is the result of the best improving swap, or
+   *         {@link Optional#absent()} if there is no improving swap.
+   * @throws InterruptedException When execution is interrupted.
+   */
+  static <C, T> Optional<Schedule<C, T>> bestSwap(Schedule<C, T> s,
+      ForkJoinPool pool, Optional<RouteCostCache<T>> cache, Budget budget)
+          throws InterruptedException {
+    final ImmutableList<Iterator<Swap<T>>> iterators = itemSwapIterators(s);
+    final AtomicBoolean cancelled = new AtomicBoolean();
+    final ForkJoinTask<List<SwapEvaluation<T>>> task = pool.submit(
+      new ImprovingSwapsTask<>(s, iterators, 0, iterators.size(), cache,
+        budget, cancelled));
+    final List<SwapEvaluation<T>> improvingSwaps;
+    try {
+      improvingSwaps = task.get();
+    } catch (final InterruptedException e) {
+      cancelled.set(true);
+      task.cancel(true);
+      throw e;
+    } catch (final ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+
+    // Every swap that would be selected by the sequential search is also an
+    // improving swap for its item, the selection is therefore done in the
+    // exact same way as in the sequential search.
+    double bestObjectiveValue = s.objectiveValue;
+    @Nullable
+    SwapEvaluation<T> best = null;
+    for (final SwapEvaluation<T> evaluation : improvingSwaps) {
+      if (evaluation.diff() < bestObjectiveValue - s.objectiveValue) {
+        bestObjectiveValue = s.objectiveValue + evaluation.diff();
+        best = evaluation;
+      }
+    }
+    if (best == null) {
+      return Optional.absent();
+    }
+    return Optional.of(apply(s, best));
   }
 
   static <C, T> Iterator<Swap<T>> swapIterator(Schedule<C, T> schedule) {
+    return Iterators.concat(itemSwapIterators(schedule).iterator());
+  }
+
+  /**
+   * Creates a swap iterator for every item that can be swapped, the
+   * concatenation of these iterators forms the entire swap neighborhood of the
+   * schedule.
+   * @param schedule The schedule.
+   * @return A list of iterators, one for every item.
+   */
+  static <C, T> ImmutableList<Iterator<Swap<T>>> itemSwapIterators(
+      Schedule<C, T> schedule) {
     final ImmutableList.Builder<Iterator<Swap<T>>> iteratorBuilder =
       ImmutableList.builder();
     final Set<T> seen = newLinkedHashSet();
@@ -223,7 +574,7 @@ public final class Swaps {
         seen.add(t);
       }
     }
-    return Iterators.concat(iteratorBuilder.build().iterator());
+    return iteratorBuilder.build();
   }
 
   static <C, T> Iterator<Swap<T>> oneItemSwapIterator(Schedule<C, T> schedule,
@@ -245,8 +596,19 @@ public final class Swaps {
       if (fromRow == i) {
         rowSize -= indices.size();
       }
-      Iterator<IntList> it = new InsertionIndexGenerator(
-        indices.size(), rowSize, startIndices.getInt(i));
+      Iterator<IntList> it;
+      if (schedule.candidates.isPresent()) {
+        // granular neighborhood, only the allowed positions are used
+        final int[] positions = schedule.candidates.get().positions(item,
+          fromRow == i ? without(schedule.routes.get(i), item)
+            : schedule.routes.get(i),
+          startIndices.getInt(i));
+        it = Iterators.transform(new InsertionIndexGenerator(indices.size(),
+          positions.length - 1, 0), new PositionTransform(positions));
+      } else {
+        it = new InsertionIndexGenerator(indices.size(), rowSize,
+          startIndices.getInt(i));
+      }
       // filter out swaps that have existing result
       if (fromRow == i) {
         it = Iterators.filter(it, Predicates.not(Predicates.equalTo(indices)));
@@ -257,10 +619,34 @@ public final class Swaps {
     return Iterators.concat(iteratorBuilder.build().iterator());
   }
 
+  /**
+   * Draws a uniformly distributed random number in the range
+   * <code>[0, bound)</code>. For bounds that fit in an <code>int</code> this
+   * is equal to {@link RandomGenerator#nextInt(int)}.
+   * @param rng The random number generator.
+   * @param bound The upper bound (exclusive), must be positive.
+   * @return A random number.
+   */
+  static long nextLong(RandomGenerator rng, long bound) {
+    if (bound <= Integer.MAX_VALUE) {
+      return rng.nextInt((int) bound);
+    }
+    long bits;
+    long value;
+    do {
+      bits = rng.nextLong() >>> 1;
+      value = bits % bound;
+    } while (bits - value + (bound - 1) < 0);
+    return value;
+  }
+
+  static <T> ImmutableList<T> without(List<T> list, T item) {
+    return ImmutableList.copyOf(filter(list, not(equalTo(item))));
+  }
+
   static <C, T> Optional<Schedule<C, T>> swap(Schedule<C, T> s, Swap<T> swap,
       double threshold) {
-    return swap(s, swap, threshold,
-      new Object2DoubleLinkedOpenHashMap<ImmutableList<T>>());
+    return swap(s, swap, threshold, RouteCostCache.<T>create());
   }
 
   /**
@@ -285,9 +671,30 @@ public final class Swaps {
    *         (lower) than the threshold, {@link Optional#absent()} otherwise.
    */
   static <C, T> Optional<Schedule<C, T>> swap(Schedule<C, T> s, Swap<T> swap,
-      double threshold,
-      Object2DoubleLinkedOpenHashMap<ImmutableList<T>> cache) {
+      double threshold, RouteCostCache<T> cache) {
+    final SwapEvaluation<T> evaluation = evaluate(s, swap, cache);
+    if (evaluation.diff() < threshold) {
+      // it improves
+      return Optional.of(apply(s, evaluation));
+    }
+    return Optional.absent();
+  }
 
+  /**
+   * Computes the costs of the route(s) that are the result of the specified
+   * swap, see
+   * {@link #swap(Schedule, Swap, double, RouteCostCache)}. If the evaluator of
+   * the schedule is an {@link IncrementalRouteEvaluator} the costs are computed
+   * using the {@link PreparedRoute}s of the schedule, otherwise the costs are
+   * looked up in the cache and the new routes are only constructed and
+   * evaluated when their costs are not in the cache.
+   * @param s The schedule to perform the swap on.
+   * @param swap The swap.
+   * @param cache The route cost cache.
+   * @return The evaluation of the swap.
+   */
+  static <C, T> SwapEvaluation<T> evaluate(Schedule<C, T> s, Swap<T> swap,
+      RouteCostCache<T> cache) {
     checkArgument(swap.fromRow() >= 0 && swap.fromRow() < s.routes.size(),
       "fromRow must be >= 0 and < %s, it is %s.", s.routes.size(),
       swap.fromRow());
@@ -299,73 +706,84 @@ public final class Swaps {
       // compute cost of original ordering
       // compute cost of new ordering
       final double originalCost = s.objectiveValues.getDouble(swap.fromRow());
-      final ImmutableList<T> newRoute = inListSwap(s.routes.get(swap.fromRow()),
-        swap.toIndices(), swap.item());
-
-      final double newCost = computeCost(s, swap.fromRow(), newRoute, cache);
-      final double diff = newCost - originalCost;
-
-      if (diff < threshold) {
-        // it improves
-        final ImmutableList<ImmutableList<T>> newRoutes = replace(s.routes,
-          asIntList(swap.fromRow()),
-          ImmutableList.of(newRoute));
-        final double newObjectiveValue = s.objectiveValue + diff;
-        final DoubleList newObjectiveValues = replace(
-          s.objectiveValues,
-          asIntList(swap.fromRow()),
-          asDoubleList(newCost));
-        return Optional.of(Schedule.create(s.context, newRoutes, s.startIndices,
-          newObjectiveValues, newObjectiveValue, s.evaluator));
+      final double newCost;
+      checkInListSwap(s.routes.get(swap.fromRow()), swap.toIndices(),
+        swap.item());
+      if (s.isIncremental()) {
+        newCost = s.preparedRemoval(swap.fromRow(), swap.item())
+          .insertionCost(swap.item(), swap.toIndices());
       } else {
-        return Optional.absent();
+        newCost = computeCost(s, swap.fromRow(), swap.item(), swap.item(),
+          swap.toIndices(), cache);
       }
+      final double diff = newCost - originalCost;
+
+      return SwapEvaluation.create(swap, asIntList(swap.fromRow()),
+        asDoubleList(newCost), diff);
+    }
+    // 2. swap between vehicles
+
+    // compute cost of removal from original vehicle
+    final double originalCostA = s.objectiveValues.getDouble(swap.fromRow());
+    final int itemCount = indices(s.routes.get(swap.fromRow()), swap.item())
+      .size();
+    checkArgument(
+      itemCount > 0,
+      "The item (%s) is not in row %s, hence it cannot be swapped to another "
+        + "row.",
+      swap.item(), swap.fromRow());
+    checkArgument(
+      itemCount == swap.toIndices().size(),
+      "The number of occurences in the fromRow (%s) should equal the number "
+        + "of insertion indices (%s).",
+      itemCount, swap.toIndices().size());
+
+    final double newCostA;
+    final double newCostB;
+    if (s.isIncremental()) {
+      newCostA = s.preparedRoute(swap.fromRow()).removalCost(swap.item());
+      newCostB = s.preparedRoute(swap.toRow())
+        .insertionCost(swap.item(), swap.toIndices());
     } else {
-      // 2. swap between vehicles
-
-      // compute cost of removal from original vehicle
-      final double originalCostA = s.objectiveValues.getDouble(swap.fromRow());
-      final ImmutableList<T> newRouteA = ImmutableList.copyOf(filter(
-        s.routes.get(swap.fromRow()), not(equalTo(swap.item()))));
-      final int itemCount = s.routes.get(swap.fromRow()).size()
-        - newRouteA.size();
-      checkArgument(
-        itemCount > 0,
-        "The item (%s) is not in row %s, hence it cannot be swapped to another "
-          + "row.",
-        swap.item(), swap.fromRow());
-      checkArgument(
-        itemCount == swap.toIndices().size(),
-        "The number of occurences in the fromRow (%s) should equal the number "
-          + "of insertion indices (%s).",
-        itemCount, swap.toIndices().size());
-
-      final double newCostA = computeCost(s, swap.fromRow(), newRouteA, cache);
-      final double diffA = newCostA - originalCostA;
-
-      // compute cost of insertion in new vehicle
-      final double originalCostB = s.objectiveValues.getDouble(swap.toRow());
-      final ImmutableList<T> newRouteB = Insertions.insert(
-        s.routes.get(swap.toRow()), swap.toIndices(), swap.item());
-
-      final double newCostB = computeCost(s, swap.toRow(), newRouteB, cache);
-      final double diffB = newCostB - originalCostB;
-
-      final double diff = diffA + diffB;
-      if (diff < threshold) {
-        final IntList rows = asIntList(swap.fromRow(), swap.toRow());
-        final ImmutableList<ImmutableList<T>> newRoutes = replace(s.routes,
-          rows, ImmutableList.of(newRouteA, newRouteB));
-        final double newObjectiveValue = s.objectiveValue + diff;
-        final DoubleList newObjectiveValues = replace(
-          s.objectiveValues, rows, asDoubleList(newCostA, newCostB));
-
-        return Optional.of(Schedule.create(s.context, newRoutes, s.startIndices,
-          newObjectiveValues, newObjectiveValue, s.evaluator));
-      } else {
-        return Optional.absent();
-      }
+      newCostA = computeCost(s, swap.fromRow(), swap.item(), null,
+        IntLists.EMPTY_LIST, cache);
+      newCostB = computeCost(s, swap.toRow(), null, swap.item(),
+        swap.toIndices(), cache);
+    }
+    final double diffA = newCostA - originalCostA;
+
+    // compute cost of insertion in new vehicle
+    final double originalCostB = s.objectiveValues.getDouble(swap.toRow());
+    final double diffB = newCostB - originalCostB;
+
+    final double diff = diffA + diffB;
+    return SwapEvaluation.create(swap, asIntList(swap.fromRow(), swap.toRow()),
+      asDoubleList(newCostA, newCostB), diff);
+  }
+
+  /**
+   * Creates the schedule that is the result of the evaluated swap, only the
+   * changed rows are copied.
+   * @param s The schedule on which the swap was evaluated.
+   * @param evaluation The evaluation of the swap.
+   * @return The new schedule.
+   */
+  static <C, T> Schedule<C, T> apply(Schedule<C, T> s,
+      SwapEvaluation<T> evaluation) {
+    final Swap<T> swap = evaluation.swap();
+    final ImmutableList<ImmutableList<T>> changedRoutes;
+    if (swap.fromRow() == swap.toRow()) {
+      changedRoutes = ImmutableList.of(inListSwap(s.routes.get(swap.fromRow()),
+        swap.toIndices(), swap.item()));
+    } else {
+      changedRoutes = ImmutableList.of(
+        ImmutableList.copyOf(
+          filter(s.routes.get(swap.fromRow()), not(equalTo(swap.item())))),
+        Insertions.insert(s.routes.get(swap.toRow()), swap.toIndices(),
+          swap.item()));
     }
+    return s.with(evaluation.rows(), changedRoutes, evaluation.costs(),
+      s.objectiveValue + evaluation.diff());
   }
 
   static IntList asIntList(final int... values) {
@@ -376,17 +794,42 @@ public final class Swaps {
     return DoubleLists.unmodifiable(new DoubleArrayList(values));
   }
 
+  /**
+   * Computes the cost of the route that is the result of removing all
+   * occurrences of <code>removedItem</code> from the route at <code>row</code>
+   * and inserting <code>insertedItem</code> at <code>insertionIndices</code>.
+   * The new route is only constructed when its cost is not in the cache.
+   * @param s The schedule.
+   * @param row The row of the route.
+   * @param removedItem The item to remove, or <code>null</code>.
+   * @param insertedItem The item to insert, or <code>null</code>.
+   * @param insertionIndices The insertion indices relative to the route without
+   *          <code>removedItem</code>.
+   * @param cache The route cost cache.
+   * @return The cost of the new route.
+   */
   static <C, T> double computeCost(Schedule<C, T> s, int row,
-      ImmutableList<T> newRoute,
-      Object2DoubleLinkedOpenHashMap<ImmutableList<T>> cache) {
-    if (cache.containsKey(newRoute)) {
-      return cache.getAndMoveToFirst(newRoute);
+      @Nullable T removedItem, @Nullable T insertedItem,
+      IntList insertionIndices, RouteCostCache<T> cache) {
+    final ImmutableList<T> route = s.routes.get(row);
+    final long fingerprint = cache.fingerprint(row, route, removedItem,
+      insertedItem, insertionIndices);
+    final double cachedCost = cache.get(fingerprint);
+    if (!Double.isNaN(cachedCost)) {
+      return cachedCost;
     }
-    final double newCost = s.evaluator.computeCost(s.context, row, newRoute);
-    cache.putAndMoveToFirst(newRoute, newCost);
-    if (cache.size() > CACHE_SIZE) {
-      cache.removeLastDouble();
+    final ImmutableList<T> newRoute;
+    if (removedItem != null && insertedItem != null) {
+      checkArgument(removedItem.equals(insertedItem));
+      newRoute = inListSwap(route, insertionIndices, insertedItem);
+    } else if (removedItem != null) {
+      newRoute = ImmutableList.copyOf(filter(route, not(equalTo(removedItem))));
+    } else {
+      newRoute = Insertions.insert(route, insertionIndices,
+        checkNotNull(insertedItem));
     }
+    final double newCost = s.evaluator.computeCost(s.context, row, newRoute);
+    cache.put(fingerprint, newCost);
     return newCost;
   }
 
@@ -424,6 +867,32 @@ public final class Swaps {
     return Insertions.insert(newList, insertionIndices, item);
   }
 
+  /**
+   * Checks the arguments of
+   * {@link #inListSwap(ImmutableList, IntList, Object)} without performing the
+   * swap.
+   * @param originalList The original list that will be swapped.
+   * @param insertionIndices The insertion indices.
+   * @param item The item to swap.
+   */
+  static <T> void checkInListSwap(ImmutableList<T> originalList,
+      IntList insertionIndices, T item) {
+    checkArgument(!originalList.isEmpty(), "The list may not be empty.");
+    final IntList indices = indices(originalList, item);
+    checkArgument(
+      indices.size() == insertionIndices.size(),
+      "The number of occurrences (%s) of item should equal the number of "
+        + "insertionIndices (%s), original list: %s, item %s, "
+        + "insertionIndices %s.",
+      indices.size(), insertionIndices.size(), originalList, item,
+      insertionIndices);
+    checkArgument(
+      !indices.equals(insertionIndices),
+      "Attempt to move the item to exactly the same locations as the input. "
+        + "Indices in original list %s, insertion indices %s.",
+      indices, insertionIndices);
+  }
+
   /**
    * Removes all items from list and returns the indices of the removed items.
    * @param list The list to remove items from.
@@ -502,6 +971,388 @@ public final class Swaps {
     }
   }
 
+  @AutoValue
+  abstract static class SwapEvaluation<T> {
+    abstract Swap<T> swap();
+
+    // the changed rows
+    abstract IntList rows();
+
+    // the new costs of the changed rows
+    abstract DoubleList costs();
+
+    // the difference in cost of the entire schedule
+    abstract double diff();
+
+    static <T> SwapEvaluation<T> create(Swap<T> swap, IntList rows,
+        DoubleList costs, double diff) {
+      return new AutoValue_Swaps_SwapEvaluation<T>(swap, rows, costs, diff);
+    }
+  }
+
+  /**
+   * The budget of a single 2-opt search as specified by
+   * {@link Opt2Options#withTimeLimit(long, java.util.concurrent.TimeUnit)}
+   * and {@link Opt2Options#withEvaluationLimit(long)}. The deadline is
+   * computed when the budget is created. Once exhausted a budget remains
+   * exhausted. All methods are thread-safe.
+   */
+  static final class Budget {
+    final long deadline;
+    final boolean hasDeadline;
+    final long evaluationLimit;
+    final AtomicLong evaluations;
+    volatile boolean exhausted;
+
+    private Budget(long timeLimitNanos, long evalLimit) {
+      hasDeadline = timeLimitNanos != Opt2Options.UNLIMITED;
+      deadline = hasDeadline ? System.nanoTime() + timeLimitNanos : 0L;
+      evaluationLimit = evalLimit;
+      evaluations = new AtomicLong();
+    }
+
+    /**
+     * Consumes one evaluation from the budget.
+     * @return <code>true</code> if the evaluation may be done,
+     *         <code>false</code> if the budget is exhausted.
+     */
+    boolean tryConsume() {
+      if (exhausted) {
+        return false;
+      }
+      if (evaluations.incrementAndGet() > evaluationLimit
+        || hasDeadline && System.nanoTime() - deadline >= 0) {
+        exhausted = true;
+        return false;
+      }
+      return true;
+    }
+
+    boolean isExhausted() {
+      return exhausted;
+    }
+
+    long evaluations() {
+      return Math.min(evaluations.get(), evaluationLimit);
+    }
+
+    static Budget create(Opt2Options<?> options) {
+      return new Budget(options.timeLimitNanos(), options.evaluationLimit());
+    }
+  }
+
+  /**
+   * Evaluates the swaps of a range of items (see
+   * {@link Swaps#itemSwapIterators(Schedule)}), splitting the range in half
+   * until a single item remains. The result is the list of all swaps that
+   * improved upon all previous swaps of the same item, in neighborhood order.
+   */
+  static final class ImprovingSwapsTask<C, T>
+      extends RecursiveTask<List<SwapEvaluation<T>>> {
+    private static final long serialVersionUID = -1915066618467093470L;
+    final Schedule<C, T> schedule;
+    final ImmutableList<Iterator<Swap<T>>> iterators;
+    final int fromIndex;
+    final int toIndex;
+    final Optional<RouteCostCache<T>> sharedCache;
+    final Budget budget;
+    final AtomicBoolean cancelled;
+
+    ImprovingSwapsTask(Schedule<C, T> s, ImmutableList<Iterator<Swap<T>>> its,
+        int from, int to, Optional<RouteCostCache<T>> cache, Budget b,
+        AtomicBoolean c) {
+      schedule = s;
+      iterators = its;
+      fromIndex = from;
+      toIndex = to;
+      sharedCache = cache;
+      budget = b;
+      cancelled = c;
+    }
+
+    @Override
+    protected List<SwapEvaluation<T>> compute() {
+      if (toIndex - fromIndex > 1) {
+        final int mid = (fromIndex + toIndex) >>> 1;
+        final ImprovingSwapsTask<C, T> left = new ImprovingSwapsTask<>(
+          schedule, iterators, fromIndex, mid, sharedCache, budget,
+          cancelled);
+        final ImprovingSwapsTask<C, T> right = new ImprovingSwapsTask<>(
+          schedule, iterators, mid, toIndex, sharedCache, budget,
+          cancelled);
+        left.fork();
+        final List<SwapEvaluation<T>> rightResult = right.compute();
+        final List<SwapEvaluation<T>> result = new ArrayList<>(left.join());
+        result.addAll(rightResult);
+        return result;
+      }
+      final List<SwapEvaluation<T>> result = new ArrayList<>();
+      if (fromIndex == toIndex) {
+        return result;
+      }
+      final RouteCostCache<T> cache = sharedCache.isPresent()
+        ? sharedCache.get()
+        : RouteCostCache.<T>create();
+      double bestObjectiveValue = schedule.objectiveValue;
+      final Iterator<Swap<T>> it = iterators.get(fromIndex);
+      while (it.hasNext()) {
+        if (cancelled.get()) {
+          throw new CancellationException();
+        }
+        if (!budget.tryConsume()) {
+          break;
+        }
+        final SwapEvaluation<T> evaluation =
+          evaluate(schedule, it.next(), cache);
+        if (evaluation.diff() < bestObjectiveValue - schedule.objectiveValue) {
+          bestObjectiveValue = schedule.objectiveValue + evaluation.diff();
+          result.add(evaluation);
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Iterator that produces the swaps of {@link #swapIterator(Schedule)} in a
+   * uniformly random order without constructing the entire neighborhood. The
+   * neighborhood is divided in blocks of swaps (one block for each
+   * combination of item and destination row), each swap is identified by its
+   * position in the concatenation of the blocks (a mixed-radix index). A
+   * random permutation of these positions is drawn lazily using a forward
+   * Fisher-Yates shuffle that only stores the displaced positions. As a result,
+   * the cost of drawing a swap is independent of the size of the
+   * neighborhood, except for the construction of the blocks which is linear
+   * in the number of items and rows.
+   */
+  static final class RandomSwapIterator<C, T> implements Iterator<Swap<T>> {
+    private final RandomGenerator rng;
+    private final List<SwapBlock<T>> blocks;
+    private final long[] blockEnds;
+    private final Long2LongOpenHashMap displaced;
+    private final long size;
+    private long index;
+
+    RandomSwapIterator(Schedule<C, T> schedule, RandomGenerator r) {
+      rng = r;
+      blocks = new ArrayList<>();
+      final Set<T> seen = newLinkedHashSet();
+      for (int i = 0; i < schedule.routes.size(); i++) {
+        final ImmutableList<T> row = schedule.routes.get(i);
+        for (int j = 0; j < row.size(); j++) {
+          final T t = row.get(j);
+          if (j >= schedule.startIndices.getInt(i) && !seen.contains(t)) {
+            addBlocks(schedule, t, i);
+          }
+          seen.add(t);
+        }
+      }
+      blockEnds = new long[blocks.size()];
+      long total = 0;
+      for (int i = 0; i < blocks.size(); i++) {
+        total += blocks.get(i).size;
+        blockEnds[i] = total;
+      }
+      size = total;
+      displaced = new Long2LongOpenHashMap();
+      displaced.defaultReturnValue(-1L);
+    }
+
+    // see oneItemSwapIterator(..)
+    private void addBlocks(Schedule<C, T> schedule, T item, int fromRow) {
+      final IntList indices = indices(schedule.routes.get(fromRow), item);
+      final int k = indices.size();
+      final int lower = k == 1 ? fromRow : 0;
+      final int upper = k == 1 ? fromRow + 1 : schedule.routes.size();
+      for (int i = lower; i < upper; i++) {
+        int rowSize = schedule.routes.get(i).size();
+        if (fromRow == i) {
+          rowSize -= k;
+        }
+        int startIndex = schedule.startIndices.getInt(i);
+        checkArgument(startIndex <= rowSize,
+          "startIndex (%s) must be <= listSize (%s).", startIndex, rowSize);
+        @Nullable
+        int[] positions = null;
+        @Nullable
+        IntList original = indices;
+        if (schedule.candidates.isPresent()) {
+          // granular neighborhood, the insertion indices are indices in the
+          // array of allowed positions
+          positions = schedule.candidates.get().positions(item,
+            fromRow == i ? without(schedule.routes.get(i), item)
+              : schedule.routes.get(i),
+            startIndex);
+          rowSize = positions.length - 1;
+          startIndex = 0;
+          original = fromRow == i ? positionIndices(indices, positions) : null;
+        }
+        long blockSize = Insertions.multichoose(rowSize + 1 - startIndex, k);
+        long excluded = -1;
+        // the swap that has the existing result is filtered out
+        if (fromRow == i && original != null
+          && original.getInt(0) >= startIndex
+          && original.getInt(k - 1) <= rowSize) {
+          excluded = rank(original, rowSize, startIndex);
+          blockSize--;
+        }
+        if (blockSize > 0) {
+          blocks.add(new SwapBlock<>(item, fromRow, i, k, rowSize, startIndex,
+            positions, excluded, blockSize));
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return index < size;
+    }
+
+    @Override
+    public Swap<T> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final long j = index + nextLong(rng, size - index);
+      final long atJ = displaced.get(j);
+      final long atIndex = displaced.remove(index);
+      if (j != index) {
+        displaced.put(j, atIndex == -1 ? index : atIndex);
+      }
+      index++;
+      return swapAt(atJ == -1 ? j : atJ);
+    }
+
+    @Deprecated
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    private Swap<T> swapAt(long position) {
+      int block = Arrays.binarySearch(blockEnds, position);
+      // binary search returns the block that ends at position (exclusive) or
+      // the insertion point, in both cases the next block is the one we need
+      block = block >= 0 ? block + 1 : -block - 1;
+      final SwapBlock<T> b = blocks.get(block);
+      long rank = position - (blockEnds[block] - b.size);
+      if (b.excluded >= 0 && rank >= b.excluded) {
+        rank++;
+      }
+      IntList indices = unrank(rank, b.numInsertions, b.listSize,
+        b.startIndex);
+      if (b.positions != null) {
+        indices = new PositionTransform(b.positions).apply(indices);
+      }
+      return Swap.create(b.item, b.fromRow, b.toRow, indices);
+    }
+
+    // finds the indices of the values in the positions array, returns null if
+    // not all values are allowed positions
+    @Nullable
+    static IntList positionIndices(IntList values, int[] positions) {
+      final IntArrayList result = new IntArrayList(values.size());
+      for (int i = 0; i < values.size(); i++) {
+        final int index = Arrays.binarySearch(positions, values.getInt(i));
+        if (index < 0) {
+          return null;
+        }
+        result.add(index);
+      }
+      return result;
+    }
+
+    /**
+     * Computes the position of the insertion indices in the ordering of
+     * {@link Insertions.InsertionIndexGenerator}, i.e. the lexicographic
+     * ordering of all non-decreasing sequences in
+     * <code>[startIndex, listSize]</code>.
+     */
+    static long rank(IntList indices, int listSize, int startIndex) {
+      final int k = indices.size();
+      long rank = 0;
+      int prev = startIndex;
+      for (int p = 0; p < k; p++) {
+        for (int v = prev; v < indices.getInt(p); v++) {
+          rank += Insertions.multichoose(listSize - v + 1, k - p - 1);
+        }
+        prev = indices.getInt(p);
+      }
+      return rank;
+    }
+
+    /**
+     * Inverse of {@link #rank(IntList, int, int)}, constructs the insertion indices
+     * at the specified position in the ordering of
+     * {@link Insertions.InsertionIndexGenerator}.
+     */
+    static IntList unrank(long rank, int k, int listSize, int startIndex) {
+      final int[] indices = new int[k];
+      long remaining = rank;
+      int v = startIndex;
+      for (int p = 0; p < k; p++) {
+        long count = Insertions.multichoose(listSize - v + 1, k - p - 1);
+        while (remaining >= count) {
+          remaining -= count;
+          v++;
+          count = Insertions.multichoose(listSize - v + 1, k - p - 1);
+        }
+        indices[p] = v;
+      }
+      return IntLists.unmodifiable(new IntArrayList(indices));
+    }
+  }
+
+  static final class SwapBlock<T> {
+    final T item;
+    final int fromRow;
+    final int toRow;
+    final int numInsertions;
+    final int listSize;
+    final int startIndex;
+    // allowed positions in a granular neighborhood, or null
+    @Nullable
+    final int[] positions;
+    // rank of the filtered out swap, or -1
+    final long excluded;
+    final long size;
+
+    SwapBlock(T it, int from, int to, int num, int ls, int si,
+        @Nullable int[] pos, long ex, long sz) {
+      item = it;
+      fromRow = from;
+      toRow = to;
+      numInsertions = num;
+      listSize = ls;
+      startIndex = si;
+      positions = pos;
+      excluded = ex;
+      size = sz;
+    }
+  }
+
+  /**
+   * Maps indices in an array of allowed positions to the positions.
+   */
+  static class PositionTransform implements Function<IntList, IntList> {
+    private final int[] positions;
+
+    PositionTransform(int[] pos) {
+      positions = pos;
+    }
+
+    @Nullable
+    @Override
+    public IntList apply(@Nullable IntList input) {
+      final IntList indices = checkNotNull(input);
+      final int[] result = new int[indices.size()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = positions[indices.getInt(i)];
+      }
+      return IntLists.unmodifiable(IntArrayList.wrap(result));
+    }
+  }
+
   static class IndexToSwapTransform<T> implements Function<IntList, Swap<T>> {
     private final T item;
     private final int fromRow;
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * {@link ProgressListener} decorator that coalesces notifications and delivers
+ * them to the delegate listener on a separate thread. A notification is only
+ * delivered if at least the minimum interval has passed since the previous
+ * delivery and if its objective value is at least the minimum relative
+ * improvement better than the objective value of the previous delivery.
+ * Notifications that are held back because of the interval are delivered as
+ * soon as the interval has passed, unless they are superseded by a newer
+ * notification in the meantime. The most recent notification is always
+ * delivered when {@link #flush()} is called, regardless of the thresholds.
+ * <p>
+ * Deliveries are executed on a {@link ScheduledExecutorService}, by default
+ * each instance has its own single daemon thread that terminates when it is
+ * idle (see {@link #newExecutor()}). When a custom executor is used it should
+ * be single threaded, otherwise deliveries may arrive out of order. No lock is
+ * held while the delegate is called. All methods are thread-safe.
+ * @author Rinde van Lon
+ * @param <T> The route item type.
+ */
+public final class ThrottledProgressListener<T> implements ProgressListener<T> {
+  // the time an idle delivery thread waits before it terminates
+  private static final long KEEP_ALIVE_SECONDS = 1L;
+
+  private final ProgressListener<T> delegate;
+  private final long minIntervalNanos;
+  private final double minRelativeImprovement;
+  private final ScheduledExecutorService executor;
+
+  // all fields below are guarded by this
+  @Nullable
+  private Notification<T> pending;
+  private boolean dispatched;
+  private long lastDispatchNanos;
+  private double lastDispatchValue;
+  private boolean timerScheduled;
+  private long generation;
+
+  private ThrottledProgressListener(ProgressListener<T> deleg,
+      long intervalNanos, double improvement, ScheduledExecutorService exec) {
+    delegate = deleg;
+    minIntervalNanos = intervalNanos;
+    minRelativeImprovement = improvement;
+    executor = exec;
+  }
+
+  @Override
+  public synchronized void notify(ImmutableList<ImmutableList<T>> schedule,
+      double objectiveValue) {
+    pending = new Notification<>(schedule, objectiveValue);
+    if (!isSufficientImprovement(objectiveValue)) {
+      // held back until the next flush or a better notification
+      return;
+    }
+    final long now = System.nanoTime();
+    final long wait =
+      dispatched ? minIntervalNanos - (now - lastDispatchNanos) : 0L;
+    if (wait <= 0) {
+      dispatch(now);
+    } else if (!timerScheduled) {
+      timerScheduled = true;
+      final long gen = generation;
+      executor.schedule(new Runnable() {
+        @Override
+        public void run() {
+          onTimer(gen);
+        }
+      }, wait, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Delivers the most recent notification that has not yet been delivered (if
+   * any), regardless of the minimum interval and minimum relative improvement.
+   * The delivery itself is asynchronous.
+   */
+  public synchronized void flush() {
+    if (pending != null) {
+      dispatch(System.nanoTime());
+    }
+  }
+
+  /**
+   * Discards all notifications that have not yet been delivered and resets the
+   * thresholds, the next notification is treated as if it is the first one.
+   * When this method returns none of the notifications that were received
+   * before this call is delivered anymore, except for a delivery that was
+   * already in progress. Such a delivery may still complete after this method
+   * returns, a delegate that must not receive outdated notifications should
+   * therefore check their validity itself. This is typically called when the
+   * search is restarted on a new problem.
+   */
+  public synchronized void reset() {
+    generation++;
+    pending = null;
+    dispatched = false;
+    timerScheduled = false;
+  }
+
+  synchronized void onTimer(long gen) {
+    if (gen != generation) {
+      return;
+    }
+    timerScheduled = false;
+    if (pending != null && isSufficientImprovement(pending.objectiveValue)) {
+      dispatch(System.nanoTime());
+    }
+  }
+
+  // must be called while holding the lock on this
+  private void dispatch(long now) {
+    final Notification<T> notification = pending;
+    final long gen = generation;
+    pending = null;
+    dispatched = true;
+    lastDispatchNanos = now;
+    lastDispatchValue = notification.objectiveValue;
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        deliver(gen, notification);
+      }
+    });
+  }
+
+  void deliver(long gen, Notification<T> notification) {
+    synchronized (this) {
+      if (gen != generation) {
+        return;
+      }
+    }
+    // the delegate is called without holding the lock, this way a delegate
+    // that blocks can not block notify(..) or reset()
+    delegate.notify(notification.schedule, notification.objectiveValue);
+  }
+
+  // must be called while holding the lock on this
+  private boolean isSufficientImprovement(double objectiveValue) {
+    return !dispatched || lastDispatchValue - objectiveValue >= Math
+      .abs(lastDispatchValue) * minRelativeImprovement;
+  }
+
+  /**
+   * Decorates the specified listener, deliveries are executed on a new
+   * executor, see {@link #newExecutor()}.
+   * @param delegate The listener to which notifications are delivered.
+   * @param minInterval The minimum interval between two deliveries, must be
+   *          non-negative.
+   * @param unit The time unit of the interval.
+   * @param minRelativeImprovement The minimum improvement of the objective
+   *          value relative to the previously delivered objective value, must
+   *          be non-negative. For example, <code>0.01</code> requires an
+   *          improvement of at least one percent.
+   * @param <T> The route item type.
+   * @return A new listener.
+   */
+  public static <T> ThrottledProgressListener<T> create(
+      ProgressListener<T> delegate, long minInterval, TimeUnit unit,
+      double minRelativeImprovement) {
+    return create(delegate, minInterval, unit, minRelativeImprovement,
+      newExecutor());
+  }
+
+  /**
+   * Creates an executor that is suitable for deliveries: it has a single
+   * daemon thread that is started on demand and that terminates when it has
+   * been idle for a second. The executor therefore does not need to be shut
+   * down, it can be shared by several listeners of the same owner.
+   * @return A new executor.
+   */
+  public static ScheduledExecutorService newExecutor() {
+    final ScheduledThreadPoolExecutor exec = new ScheduledThreadPoolExecutor(1,
+      new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("progress-listener-%d")
+        .build());
+    exec.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    exec.allowCoreThreadTimeOut(true);
+    return exec;
+  }
+
+  /**
+   * Decorates the specified listener, deliveries are executed on the specified
+   * executor.
+   * @param delegate The listener to which notifications are delivered.
+   * @param minInterval The minimum interval between two deliveries, must be
+   *          non-negative.
+   * @param unit The time unit of the interval.
+   * @param minRelativeImprovement The minimum improvement of the objective
+   *          value relative to the previously delivered objective value, must
+   *          be non-negative.
+   * @param executor The executor on which deliveries are executed, should be
+   *          single threaded.
+   * @param <T> The route item type.
+   * @return A new listener.
+   */
+  public static <T> ThrottledProgressListener<T> create(
+      ProgressListener<T> delegate, long minInterval, TimeUnit unit,
+      double minRelativeImprovement, ScheduledExecutorService executor) {
+    checkArgument(minInterval >= 0,
+      "Minimum interval must be non-negative, found %s.", minInterval);
+    checkArgument(minRelativeImprovement >= 0,
+      "Minimum relative improvement must be non-negative, found %s.",
+      minRelativeImprovement);
+    return new ThrottledProgressListener<>(delegate,
+      unit.toNanos(minInterval), minRelativeImprovement, executor);
+  }
+
+  static final class Notification<T> {
+    final ImmutableList<ImmutableList<T>> schedule;
+    final double objectiveValue;
+
+    Notification(ImmutableList<ImmutableList<T>> s, double value) {
+      schedule = s;
+      objectiveValue = value;
+    }
+  }
+}
@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.github.rinde.opt.localsearch.Swaps.asDoubleList;
+import static com.github.rinde.opt.localsearch.Swaps.asIntList;
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.github.rinde.opt.localsearch.Swaps.Swap;
+import com.github.rinde.opt.localsearch.Swaps.SwapEvaluation;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Variable neighborhood descent (VND) for schedules. Where the 2-opt
+ * procedures of {@link Swaps} only move a single item at a time, VND
+ * alternates between several {@link Neighborhood}s. It performs a best
+ * improvement step in the first neighborhood, if there is no improving move
+ * it continues with the next neighborhood. After every improvement it restarts
+ * at the first neighborhood. The search stops when none of the neighborhoods
+ * can improve the schedule (i.e. the schedule is a local optimum with respect
+ * to all neighborhoods) or when all neighborhoods have used their share of the
+ * time limit, see {@link VndOptions}.
+ * <p>
+ * Without a time limit this algorithm is deterministic on the input. When
+ * only {@link Neighborhood#RELOCATE} is used, the result is identical to the
+ * result of
+ * {@link Swaps#bfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, Optional)}
+ * .
+ * @author Rinde van Lon
+ */
+public final class VariableNeighborhoodDescent {
+
+  private VariableNeighborhoodDescent() {}
+
+  /**
+   * Improves the schedule using variable neighborhood descent.
+   * @param schedule The schedule to improve.
+   * @param startIndices Indices indicating which part of the schedule can be
+   *          modified. <code>startIndices[j] = n</code> indicates that
+   *          <code>schedule[j][n]</code> can be modified but
+   *          <code>schedule[j][n-1]</code> not.
+   * @param context The context to the schedule, used by the evaluator to
+   *          compute the cost of a route.
+   * @param evaluator {@link RouteEvaluator} that can compute the cost of a
+   *          single route.
+   * @param options The neighborhoods and their time shares.
+   * @param listener An optional listener that is notified of every
+   *          improvement.
+   * @param <C> The context type.
+   * @param <T> The route item type.
+   * @return An improved schedule (or the input schedule if no improvement could
+   *         be made).
+   * @throws InterruptedException When execution is interrupted.
+   */
+  public static <C, T> ImmutableList<ImmutableList<T>> search(
+      ImmutableList<ImmutableList<T>> schedule,
+      IntList startIndices,
+      C context,
+      RouteEvaluator<C, T> evaluator,
+      VndOptions options,
+      Optional<? extends ProgressListener<T>> listener)
+          throws InterruptedException {
+    checkArgument(schedule.size() == startIndices.size());
+    Schedule<C, T> best =
+      Schedule.create(context, schedule, startIndices, evaluator);
+    final RouteCostCache<T> cache = RouteCostCache.create();
+    for (int i = 0; i < best.routes.size(); i++) {
+      cache.put(cache.fingerprint(i, best.routes.get(i)),
+        best.objectiveValues.getDouble(i));
+    }
+
+    final ImmutableList<Neighborhood> neighborhoods = options.neighborhoods();
+    final boolean limited = options.timeLimitNanos() != VndOptions.UNLIMITED;
+    final long[] remaining = new long[neighborhoods.size()];
+    for (int k = 0; k < remaining.length; k++) {
+      remaining[k] = limited
+        ? (long) (options.timeShares().get(k) * options.timeLimitNanos())
+        : Long.MAX_VALUE;
+    }
+
+    int k = 0;
+    while (k < neighborhoods.size()) {
+      if (remaining[k] <= 0) {
+        k++;
+        continue;
+      }
+      final long start = System.nanoTime();
+      final Step<C, T> step = new Step<>(best, cache, options.maxChainLength(),
+        limited, start + remaining[k]);
+      final Optional<Schedule<C, T>> improved =
+        step.bestMove(neighborhoods.get(k));
+      if (limited) {
+        remaining[k] -= System.nanoTime() - start;
+      }
+      if (improved.isPresent()) {
+        best = improved.get();
+        if (listener.isPresent()) {
+          listener.get().notify(best.immutableRoutes(), best.objectiveValue);
+        }
+        k = 0;
+      } else {
+        k++;
+      }
+    }
+    return best.immutableRoutes();
+  }
+
+  /**
+   * A single best improvement step in one neighborhood.
+   * @param <C> The context type.
+   * @param <T> The route item type.
+   */
+  static final class Step<C, T> {
+    final Schedule<C, T> schedule;
+    final RouteCostCache<T> cache;
+    final int maxChainLength;
+    final boolean hasDeadline;
+    final long deadline;
+    double bestDiff;
+    @Nullable
+    SwapEvaluation<T> bestSwap;
+    @Nullable
+    IntList bestRows;
+    @Nullable
+    ImmutableList<ImmutableList<T>> bestRoutes;
+    double bestCostA;
+    double bestCostB;
+
+    Step(Schedule<C, T> s, RouteCostCache<T> c, int maxChain, boolean hasDl,
+        long dl) {
+      schedule = s;
+      cache = c;
+      maxChainLength = maxChain;
+      hasDeadline = hasDl;
+      deadline = dl;
+    }
+
+    /**
+     * Searches the best improving move in the specified neighborhood. When the
+     * deadline passes, the best move found so far is used.
+     * @param neighborhood The neighborhood.
+     * @return The improved schedule, or {@link Optional#absent()} if no
+     *         improving move was found.
+     * @throws InterruptedException When execution is interrupted.
+     */
+    Optional<Schedule<C, T>> bestMove(Neighborhood neighborhood)
+        throws InterruptedException {
+      switch (neighborhood) {
+      case RELOCATE:
+        relocate();
+        break;
+      case EXCHANGE:
+        exchange();
+        break;
+      case RELOCATE_CHAIN:
+        relocateChain();
+        break;
+      case TWO_OPT_STAR:
+        twoOptStar();
+        break;
+      default:
+        throw new IllegalArgumentException(
+          "Unknown neighborhood: " + neighborhood);
+      }
+      if (bestSwap != null) {
+        return Optional.of(Swaps.apply(schedule, bestSwap));
+      }
+      if (bestRoutes != null && bestRows != null) {
+        return Optional.of(schedule.with(bestRows, bestRoutes,
+          asDoubleList(bestCostA, bestCostB),
+          schedule.objectiveValue + bestDiff));
+      }
+      return Optional.absent();
+    }
+
+    void relocate() throws InterruptedException {
+      final Iterator<Swap<T>> it = Swaps.swapIterator(schedule);
+      while (it.hasNext() && proceed()) {
+        final SwapEvaluation<T> evaluation =
+          Swaps.evaluate(schedule, it.next(), cache);
+        if (evaluation.diff() < bestDiff) {
+          bestDiff = evaluation.diff();
+          bestSwap = evaluation;
+        }
+      }
+    }
+
+    void exchange() throws InterruptedException {
+      final int numRows = schedule.routes.size();
+      for (int a = 0; a < numRows; a++) {
+        final List<T> itemsA = movableItems(a);
+        for (int b = a + 1; b < numRows; b++) {
+          final List<T> itemsB = movableItems(b);
+          for (final T itemA : itemsA) {
+            for (final T itemB : itemsB) {
+              if (!proceed()) {
+                return;
+              }
+              consider(a, replace(schedule.routes.get(a), itemA, itemB),
+                b, replace(schedule.routes.get(b), itemB, itemA));
+            }
+          }
+        }
+      }
+    }
+
+    void relocateChain() throws InterruptedException {
+      final int numRows = schedule.routes.size();
+      for (int a = 0; a < numRows; a++) {
+        final ImmutableList<T> route = schedule.routes.get(a);
+        final Object2IntMap<T> counts = counts(route);
+        for (int i = schedule.startIndices.getInt(a); i < route.size(); i++) {
+          final Object2IntMap<T> chainCounts = new Object2IntOpenHashMap<>();
+          int open = 0;
+          final int maxEnd = Math.min(route.size(), i + maxChainLength);
+          for (int end = i + 1; end <= maxEnd; end++) {
+            final T item = route.get(end - 1);
+            if (counts.getInt(item) != 2) {
+              // items that occur once never leave their route
+              break;
+            }
+            final int count = chainCounts.getInt(item) + 1;
+            chainCounts.put(item, count);
+            open += count == 1 ? 1 : -1;
+            if (open == 0 && !relocateChain(a, route, i, end)) {
+              return;
+            }
+          }
+        }
+      }
+    }
+
+    // moves route[from, to) to every position of every other route
+    boolean relocateChain(int row, ImmutableList<T> route, int from, int to)
+        throws InterruptedException {
+      final List<T> chain = route.subList(from, to);
+      final ImmutableList<T> newRoute = ImmutableList.<T>builder()
+        .addAll(route.subList(0, from))
+        .addAll(route.subList(to, route.size()))
+        .build();
+      for (int b = 0; b < schedule.routes.size(); b++) {
+        if (b == row) {
+          continue;
+        }
+        final ImmutableList<T> target = schedule.routes.get(b);
+        for (int p = schedule.startIndices.getInt(b); p <= target.size();
+            p++) {
+          if (!proceed()) {
+            return false;
+          }
+          consider(row, newRoute, b, ImmutableList.<T>builder()
+            .addAll(target.subList(0, p))
+            .addAll(chain)
+            .addAll(target.subList(p, target.size()))
+            .build());
+        }
+      }
+      return true;
+    }
+
+    void twoOptStar() throws InterruptedException {
+      final int numRows = schedule.routes.size();
+      final List<IntList> splits = new ArrayList<>();
+      for (int a = 0; a < numRows; a++) {
+        splits.add(tailSplits(a));
+      }
+      for (int a = 0; a < numRows; a++) {
+        final ImmutableList<T> routeA = schedule.routes.get(a);
+        for (int b = a + 1; b < numRows; b++) {
+          final ImmutableList<T> routeB = schedule.routes.get(b);
+          for (int x = 0; x < splits.get(a).size(); x++) {
+            final int i = splits.get(a).getInt(x);
+            for (int y = 0; y < splits.get(b).size(); y++) {
+              final int j = splits.get(b).getInt(y);
+              if (i == routeA.size() && j == routeB.size()) {
+                continue;
+              }
+              if (!proceed()) {
+                return;
+              }
+              consider(a, ImmutableList.<T>builder()
+                .addAll(routeA.subList(0, i))
+                .addAll(routeB.subList(j, routeB.size()))
+                .build(),
+                b, ImmutableList.<T>builder()
+                  .addAll(routeB.subList(0, j))
+                  .addAll(routeA.subList(i, routeA.size()))
+                  .build());
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Computes the indices at which the route of the specified row can be split
+     * such that the tail contains all occurrences of its items and only items
+     * that occur twice.
+     * @param row The row.
+     * @return The split indices in descending order, including the route size
+     *         (the empty tail).
+     */
+    IntList tailSplits(int row) {
+      final ImmutableList<T> route = schedule.routes.get(row);
+      final Object2IntMap<T> counts = counts(route);
+      final Object2IntMap<T> tailCounts = new Object2IntOpenHashMap<>();
+      final IntList splits = new IntArrayList();
+      splits.add(route.size());
+      int open = 0;
+      for (int i = route.size() - 1; i >= schedule.startIndices.getInt(row);
+          i--) {
+        final T item = route.get(i);
+        if (counts.getInt(item) != 2) {
+          break;
+        }
+        final int count = tailCounts.getInt(item) + 1;
+        tailCounts.put(item, count);
+        open += count == 1 ? 1 : -1;
+        if (open == 0) {
+          splits.add(i);
+        }
+      }
+      return splits;
+    }
+
+    /**
+     * @param row The row.
+     * @return The items that occur twice in the route of the specified row,
+     *         both occurrences in the modifiable part, in order of their first
+     *         occurrence.
+     */
+    List<T> movableItems(int row) {
+      final ImmutableList<T> route = schedule.routes.get(row);
+      final Object2IntMap<T> counts = counts(route);
+      final List<T> items = new ArrayList<>();
+      for (int i = 0; i < route.size(); i++) {
+        final T item = route.get(i);
+        if (counts.getInt(item) == 2) {
+          if (i >= schedule.startIndices.getInt(row)) {
+            items.add(item);
+          }
+          // the second occurrence is ignored
+          counts.put(item, -1);
+        }
+      }
+      return items;
+    }
+
+    // evaluates the move that results in the two specified routes
+    void consider(int rowA, ImmutableList<T> routeA, int rowB,
+        ImmutableList<T> routeB) {
+      final double costA = cost(rowA, routeA);
+      final double costB = cost(rowB, routeB);
+      final double diff = costA - schedule.objectiveValues.getDouble(rowA)
+        + costB - schedule.objectiveValues.getDouble(rowB);
+      if (diff < bestDiff) {
+        bestDiff = diff;
+        bestSwap = null;
+        bestRows = asIntList(rowA, rowB);
+        bestRoutes = ImmutableList.of(routeA, routeB);
+        bestCostA = costA;
+        bestCostB = costB;
+      }
+    }
+
+    double cost(int row, ImmutableList<T> route) {
+      final long fingerprint = cache.fingerprint(row, route);
+      final double cachedCost = cache.get(fingerprint);
+      if (!Double.isNaN(cachedCost)) {
+        return cachedCost;
+      }
+      final double cost =
+        schedule.evaluator.computeCost(schedule.context, row, route);
+      cache.put(fingerprint, cost);
+      return cost;
+    }
+
+    boolean proceed() throws InterruptedException {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      return !hasDeadline || System.nanoTime() - deadline < 0;
+    }
+
+    static <E> Object2IntMap<E> counts(List<E> route) {
+      final Object2IntMap<E> counts = new Object2IntOpenHashMap<>();
+      for (final E item : route) {
+        counts.put(item, counts.getInt(item) + 1);
+      }
+      return counts;
+    }
+
+    static <E> ImmutableList<E> replace(List<E> route, E item, E by) {
+      final ImmutableList.Builder<E> builder = ImmutableList.builder();
+      for (final E t : route) {
+        builder.add(t.equals(item) ? by : t);
+      }
+      return builder.build();
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckReturnValue;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Value object containing the options of
+ * {@link VariableNeighborhoodDescent}. Instances are immutable, the
+ * <code>with</code> methods return a new instance.
+ * @author Rinde van Lon
+ */
+@AutoValue
+public abstract class VndOptions {
+  static final long UNLIMITED = Long.MAX_VALUE;
+  static final int DEFAULT_MAX_CHAIN_LENGTH = 4;
+
+  VndOptions() {}
+
+  abstract ImmutableList<Neighborhood> neighborhoods();
+
+  abstract ImmutableList<Double> timeShares();
+
+  abstract long timeLimitNanos();
+
+  abstract int maxChainLength();
+
+  /**
+   * Sets the neighborhoods and the order in which they are searched. After an
+   * improvement the search restarts at the first neighborhood, the search
+   * continues with the next neighborhood when a neighborhood can not improve
+   * the schedule. All neighborhoods receive an equal time share. By default
+   * all {@link Neighborhood}s are used in declaration order.
+   * @param first The first neighborhood.
+   * @param others The other neighborhoods, in order.
+   * @return A new options instance with the neighborhoods set.
+   */
+  @CheckReturnValue
+  public VndOptions withNeighborhoods(Neighborhood first,
+      Neighborhood... others) {
+    final ImmutableList<Neighborhood> list =
+      ImmutableList.<Neighborhood>builder().add(first).add(others).build();
+    checkArgument(ImmutableSet.copyOf(list).size() == list.size(),
+      "A neighborhood can be used only once, found %s.", list);
+    return create(list, equalShares(list.size()), timeLimitNanos(),
+      maxChainLength());
+  }
+
+  /**
+   * Sets the relative share of the time limit that each neighborhood may use
+   * in total, in the same order as the neighborhoods. A neighborhood that has
+   * used its share is no longer searched. The shares are normalized, e.g.
+   * <code>(2, 1, 1)</code> gives the first neighborhood half of the time
+   * limit. Has no effect without a time limit. By default all neighborhoods
+   * receive an equal share.
+   * @param shares The shares, one positive share for every neighborhood.
+   * @return A new options instance with the time shares set.
+   */
+  @CheckReturnValue
+  public VndOptions withTimeShares(double... shares) {
+    checkArgument(shares.length == neighborhoods().size(),
+      "A share is required for each of the %s neighborhoods, found %s.",
+      neighborhoods().size(), shares.length);
+    double sum = 0;
+    for (final double share : shares) {
+      checkArgument(share > 0, "Shares must be positive, found %s.",
+        Arrays.toString(shares));
+      sum += share;
+    }
+    final ImmutableList.Builder<Double> normalized = ImmutableList.builder();
+    for (final double share : shares) {
+      normalized.add(share / sum);
+    }
+    return create(neighborhoods(), normalized.build(), timeLimitNanos(),
+      maxChainLength());
+  }
+
+  /**
+   * Limits the (wall-clock) duration of a search, the limit is divided over
+   * the neighborhoods according to their time shares. When a neighborhood
+   * has used its share, the best schedule it has found so far is used. By
+   * default the duration is unlimited.
+   * @param duration The maximum duration, must be positive.
+   * @param unit The unit of the duration.
+   * @return A new options instance with the time limit set.
+   */
+  @CheckReturnValue
+  public VndOptions withTimeLimit(long duration, TimeUnit unit) {
+    checkArgument(duration > 0, "Time limit must be positive, found %s.",
+      duration);
+    return create(neighborhoods(), timeShares(), unit.toNanos(duration),
+      maxChainLength());
+  }
+
+  /**
+   * Sets the maximum number of items in a chain of
+   * {@link Neighborhood#RELOCATE_CHAIN}, the default is
+   * {@value #DEFAULT_MAX_CHAIN_LENGTH}.
+   * @param length The maximum length, must be at least <code>2</code> since
+   *          a chain contains all occurrences of its items.
+   * @return A new options instance with the maximum chain length set.
+   */
+  @CheckReturnValue
+  public VndOptions withMaxChainLength(int length) {
+    checkArgument(length >= 2, "Chain length must be at least 2, found %s.",
+      length);
+    return create(neighborhoods(), timeShares(), timeLimitNanos(), length);
+  }
+
+  /**
+   * @return The default options: all neighborhoods in declaration order, no
+   *         time limit.
+   */
+  public static VndOptions create() {
+    final ImmutableList<Neighborhood> all =
+      ImmutableList.copyOf(Neighborhood.values());
+    return create(all, equalShares(all.size()), UNLIMITED,
+      DEFAULT_MAX_CHAIN_LENGTH);
+  }
+
+  static VndOptions create(ImmutableList<Neighborhood> neighborhoods,
+      ImmutableList<Double> timeShares, long timeLimitNanos,
+      int maxChainLength) {
+    return new AutoValue_VndOptions(neighborhoods, timeShares, timeLimitNanos,
+      maxChainLength);
+  }
+
+  static ImmutableList<Double> equalShares(int n) {
+    final ImmutableList.Builder<Double> shares = ImmutableList.builder();
+    for (int i = 0; i < n; i++) {
+      shares.add(1d / n);
+    }
+    return shares.build();
+  }
+}
@@ -18,6 +18,7 @@ package com.github.rinde.logistics.pdptw.solver;
 import static com.github.rinde.logistics.pdptw.solver.CheapestInsertionHeuristic.modifyCosts;
 import static com.github.rinde.logistics.pdptw.solver.CheapestInsertionHeuristic.modifySchedule;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 
@@ -65,6 +66,65 @@ public class CheapestInsertionHeuristicTest {
     }
   }
 
+  /**
+   * The parallel version should give exactly the same result as the
+   * sequential version.
+   */
+  @Test
+  public void parallelConsistency() {
+    final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
+    final ExperimentResults er = Experiment.builder()
+      .addScenario(
+        Gendreau06Parser.parse(new File(
+          "files/scenarios/gendreau06/req_rapide_1_240_24")))
+      .addConfiguration(
+        Central.solverConfiguration(SolverValidator
+          .wrap(CheapestInsertionHeuristic.supplier(objFunc, 4))))
+      .usePostProcessor(PostProcessors.statisticsPostProcessor(objFunc))
+      .perform();
+    assertEquals(979.898336,
+      objFunc.computeCost(
+        (StatisticsDTO) er.getResults().asList().get(0).getResultObject()),
+      0.0001);
+  }
+
+  /**
+   * The best-first variant should produce valid schedules which are
+   * independent of the parallelism.
+   */
+  @Test
+  public void bestFirstConsistency() {
+    final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
+    final ExperimentResults er = Experiment.builder()
+      .addScenario(
+        Gendreau06Parser.parse(new File(
+          "files/scenarios/gendreau06/req_rapide_1_240_24")))
+      .addConfiguration(
+        Central.solverConfiguration(SolverValidator
+          .wrap(CheapestInsertionHeuristic.bestFirstSupplier(objFunc))))
+      .addConfiguration(
+        Central.solverConfiguration(SolverValidator
+          .wrap(CheapestInsertionHeuristic.bestFirstSupplier(objFunc, 4))))
+      .usePostProcessor(PostProcessors.statisticsPostProcessor(objFunc))
+      .perform();
+    assertEquals(2, er.getResults().size());
+    final StatisticsDTO sequential =
+      (StatisticsDTO) er.getResults().asList().get(0).getResultObject();
+    final StatisticsDTO parallel =
+      (StatisticsDTO) er.getResults().asList().get(1).getResultObject();
+    assertTrue(objFunc.isValidResult(sequential));
+    assertEquals(sequential, parallel);
+  }
+
+  /**
+   * Parallelism must be positive.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidParallelism() {
+    CheapestInsertionHeuristic.supplier(
+      Gendreau06ObjectiveFunction.instance(), 0);
+  }
+
   @SuppressWarnings("unchecked")
   @Test
   public void modifyScheduleTest() {
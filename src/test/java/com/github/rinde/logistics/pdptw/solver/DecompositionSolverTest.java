@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.github.rinde.logistics.pdptw.solver.Opt2Test.OBJ_FUNC;
+import static com.github.rinde.logistics.pdptw.solver.Opt2Test.run;
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Test of {@link DecompositionSolver}.
+ * @author Rinde van Lon
+ */
+public class DecompositionSolverTest {
+
+  /**
+   * Decomposition into several clusters should give valid results, with and
+   * without boundary repair.
+   */
+  @Test
+  public void testClusters() {
+    final DecompositionSolver.Builder builder = DecompositionSolver.builder()
+      .withDelegate(DecompositionSolver.cheapestInsertion())
+      .withObjectiveFunction(OBJ_FUNC)
+      .withClusterSize(3)
+      .withThreads(2);
+    run(builder.buildSolverSupplier());
+    run(builder.withoutBoundaryRepair().buildSolverSupplier());
+    run(builder.withDelegate(DecompositionSolver.opt2())
+      .buildSolverSupplier());
+  }
+
+  /**
+   * A fleet that fits in a single cluster is solved by the delegate, cheapest
+   * insertion in a single cluster equals {@link CheapestInsertionHeuristic}.
+   */
+  @Test
+  public void testSingleCluster() {
+    assertThat(run(DecompositionSolver.builder()
+      .withDelegate(DecompositionSolver.cheapestInsertion())
+      .withObjectiveFunction(OBJ_FUNC)
+      .withClusterSize(100)
+      .buildSolverSupplier()))
+        .isEqualTo(run(CheapestInsertionHeuristic.supplier(OBJ_FUNC)));
+  }
+
+  /**
+   * The cluster size must be positive.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidClusterSize() {
+    DecompositionSolver.builder().withClusterSize(0);
+  }
+
+  /**
+   * A delegate is required.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoDelegate() {
+    DecompositionSolver.builder()
+      .withObjectiveFunction(OBJ_FUNC)
+      .buildSolverSupplier();
+  }
+}
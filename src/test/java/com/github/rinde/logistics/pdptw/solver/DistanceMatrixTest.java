@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.GlobalStateObjectBuilder;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.geom.Point;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Test of {@link DistanceMatrix}.
+ * @author Rinde van Lon
+ */
+public class DistanceMatrixTest {
+  static final Parcel A =
+    Parcel.builder(new Point(0, 0), new Point(2, 0)).toString("A").build();
+  static final Parcel B =
+    Parcel.builder(new Point(3, 1), new Point(2, 0)).toString("B").build();
+  static final Parcel C =
+    Parcel.builder(new Point(5, 7), new Point(1, 4)).toString("C").build();
+
+  /**
+   * Dense and lazily computed matrices should contain all locations of the
+   * state and should be equal to {@link Point#distance(Point, Point)}.
+   */
+  @Test
+  public void testDistances() {
+    final GlobalStateObject state = state();
+    final DistanceMatrix dense = DistanceMatrix.create(state,
+      DistanceMatrix.DEFAULT_MAX_DENSE_SIZE);
+    final DistanceMatrix lazy = DistanceMatrix.create(state, 0);
+
+    assertThat(dense.size()).isEqualTo(lazy.size());
+    for (final Parcel p : ImmutableList.of(A, B, C)) {
+      assertThat(dense.indexOf(p.getPickupLocation())).isAtLeast(0);
+      assertThat(dense.indexOf(p.getDeliveryLocation())).isAtLeast(0);
+    }
+    for (int i = 0; i < dense.size(); i++) {
+      assertThat(dense.indexOf(dense.location(i))).isEqualTo(i);
+      for (int j = 0; j < dense.size(); j++) {
+        final double expected =
+          Point.distance(dense.location(i), dense.location(j));
+        assertThat(dense.distance(i, j)).isEqualTo(expected);
+        assertThat(lazy.distance(i, j)).isEqualTo(expected);
+      }
+    }
+
+    final Point unknown = new Point(100, 100);
+    assertThat(dense.indexOf(unknown)).isEqualTo(-1);
+    assertThat(dense.distance(A.getPickupLocation(), unknown))
+      .isEqualTo(Point.distance(A.getPickupLocation(), unknown));
+  }
+
+  /**
+   * The matrix of a state should be shared, also when other states are used
+   * in between.
+   */
+  @Test
+  public void testShared() {
+    final GlobalStateObject state = state();
+    final DistanceMatrix matrix = DistanceMatrix.of(state);
+    assertThat(DistanceMatrix.of(state)).isSameAs(matrix);
+    final GlobalStateObject other = state();
+    final DistanceMatrix otherMatrix = DistanceMatrix.of(other);
+    assertThat(otherMatrix).isNotSameAs(matrix);
+    assertThat(DistanceMatrix.of(state)).isSameAs(matrix);
+    assertThat(DistanceMatrix.of(other)).isSameAs(otherMatrix);
+  }
+
+  static GlobalStateObject state() {
+    return GlobalStateObjectBuilder.globalBuilder()
+      .addAvailableParcels(A, B)
+      .addVehicle(GlobalStateObjectBuilder.vehicleBuilder()
+        .setRoute(ImmutableList.of(A, C, A, C))
+        .build())
+      .buildUnsafe();
+  }
+}
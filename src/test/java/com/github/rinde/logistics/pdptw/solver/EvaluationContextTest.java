@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.github.rinde.logistics.pdptw.solver.Opt2Test.OBJ_FUNC;
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.GlobalStateObjectBuilder;
+import com.github.rinde.rinsim.central.Solvers;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.geom.Point;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Test of {@link EvaluationContext}.
+ * @author Rinde van Lon
+ */
+public class EvaluationContextTest {
+  static final Parcel A =
+    Parcel.builder(new Point(0, 0), new Point(2, 0)).toString("A").build();
+  static final Parcel B =
+    Parcel.builder(new Point(3, 1), new Point(2, 0)).toString("B").build();
+  static final Parcel C =
+    Parcel.builder(new Point(5, 7), new Point(1, 4)).toString("C").build();
+
+  /**
+   * The single vehicle state should be constructed once and should be equal
+   * to {@link GlobalStateObject#withSingleVehicle(int)}.
+   */
+  @Test
+  public void testSingleVehicleState() {
+    final GlobalStateObject state = state();
+    final EvaluationContext context = new EvaluationContext(state);
+    final GlobalStateObject single = context.singleVehicleState(0);
+    assertThat(single).isEqualTo(state.withSingleVehicle(0));
+    assertThat(context.singleVehicleState(0)).isSameAs(single);
+  }
+
+  /**
+   * The evaluator should reuse the context of the same state and should
+   * compute the same costs as before.
+   */
+  @Test
+  public void testEvaluator() {
+    final GlobalStateObject state = state();
+    final ParcelRouteEvaluator evaluator = new ParcelRouteEvaluator(OBJ_FUNC);
+    final EvaluationContext context = evaluator.context(state);
+    assertThat(evaluator.context(state)).isSameAs(context);
+    assertThat(evaluator.context(state())).isNotSameAs(context);
+
+    final ImmutableList<Parcel> route = ImmutableList.of(A, C, B, A, C, B);
+    assertThat(evaluator.computeCost(state, 0, route))
+      .isEqualTo(OBJ_FUNC.computeCost(Solvers.computeStats(
+        state.withSingleVehicle(0), ImmutableList.of(route))));
+  }
+
+  static GlobalStateObject state() {
+    return GlobalStateObjectBuilder.globalBuilder()
+      .addAvailableParcels(A, B)
+      .addVehicle(GlobalStateObjectBuilder.vehicleBuilder()
+        .setRoute(ImmutableList.of(A, C, A, C))
+        .build())
+      .buildUnsafe();
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import com.github.rinde.opt.localsearch.Insertions;
+import com.github.rinde.opt.localsearch.PreparedRoute;
+import com.github.rinde.opt.localsearch.RouteEvaluator;
+import com.github.rinde.rinsim.central.Central;
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.experiment.Experiment;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06Parser;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.github.rinde.rinsim.util.StochasticSuppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/**
+ * Test of {@link Gendreau06RouteEvaluator}.
+ * @author Rinde van Lon
+ */
+public class Gendreau06RouteEvaluatorTest {
+  static final double TOLERANCE = .001;
+
+  /**
+   * The factory should only return the fast evaluator for the Gendreau06
+   * objective function.
+   */
+  @Test
+  public void testCreate() {
+    assertThat(ParcelRouteEvaluator.create(
+      Gendreau06ObjectiveFunction.instance()))
+        .isInstanceOf(Gendreau06RouteEvaluator.class);
+  }
+
+  /**
+   * The costs of the fast evaluator should equal the costs computed by
+   * {@link ParcelRouteEvaluator} for all states that occur during a
+   * simulation.
+   */
+  @Test
+  public void testEquivalence() {
+    final Gendreau06ObjectiveFunction objFunc =
+      Gendreau06ObjectiveFunction.instance();
+    Experiment.builder()
+      .addScenario(
+        Gendreau06Parser.parse(new File(
+          "files/scenarios/gendreau06/req_rapide_1_240_24")))
+      .addConfiguration(Central.solverConfiguration(comparingSupplier(objFunc)))
+      .perform();
+  }
+
+  /**
+   * The costs of prepared routes (insertions and removals) should equal the
+   * costs that are computed by evaluating the modified routes, for the first
+   * parcels of every route in all states that occur during a simulation.
+   */
+  @Test
+  public void testIncremental() {
+    final Gendreau06ObjectiveFunction objFunc =
+      Gendreau06ObjectiveFunction.instance();
+    Experiment.builder()
+      .addScenario(
+        Gendreau06Parser.parse(new File(
+          "files/scenarios/gendreau06/req_rapide_1_240_24")))
+      .addConfiguration(Central.solverConfiguration(
+        StochasticSuppliers.constant(new IncrementalComparingSolver(
+          new CheapestInsertionHeuristic(objFunc), objFunc))))
+      .perform();
+  }
+
+  static StochasticSupplier<Solver> comparingSupplier(
+      final Gendreau06ObjectiveFunction objFunc) {
+    return new StochasticSuppliers.AbstractStochasticSupplier<Solver>() {
+      private static final long serialVersionUID = 5806541367591416475L;
+
+      @Override
+      public Solver get(long seed) {
+        return new ComparingSolver(
+          new CheapestInsertionHeuristic(objFunc), objFunc);
+      }
+    };
+  }
+
+  // compares both evaluators on all routes that are computed by the delegate
+  static class ComparingSolver implements Solver {
+    final Solver delegate;
+    final RouteEvaluator<GlobalStateObject, Parcel> expected;
+    final RouteEvaluator<GlobalStateObject, Parcel> actual;
+
+    ComparingSolver(Solver deleg, Gendreau06ObjectiveFunction objFunc) {
+      delegate = deleg;
+      expected = new ParcelRouteEvaluator(objFunc);
+      actual = new Gendreau06RouteEvaluator(objFunc);
+    }
+
+    @Override
+    public ImmutableList<ImmutableList<Parcel>> solve(GlobalStateObject state)
+        throws InterruptedException {
+      final ImmutableList<ImmutableList<Parcel>> schedule =
+        delegate.solve(state);
+      for (int i = 0; i < schedule.size(); i++) {
+        assertThat(actual.computeCost(state, i, schedule.get(i)))
+          .isWithin(TOLERANCE)
+          .of(expected.computeCost(state, i, schedule.get(i)));
+      }
+      return schedule;
+    }
+  }
+
+  // compares incremental costs with complete evaluations of the modified
+  // routes of the schedules that are computed by the delegate
+  static class IncrementalComparingSolver implements Solver {
+    static final int PARCELS_PER_ROUTE = 3;
+    final Solver delegate;
+    final Gendreau06RouteEvaluator evaluator;
+
+    IncrementalComparingSolver(Solver deleg,
+        Gendreau06ObjectiveFunction objFunc) {
+      delegate = deleg;
+      evaluator = new Gendreau06RouteEvaluator(objFunc);
+    }
+
+    @Override
+    public ImmutableList<ImmutableList<Parcel>> solve(GlobalStateObject state)
+        throws InterruptedException {
+      final ImmutableList<ImmutableList<Parcel>> schedule =
+        delegate.solve(state);
+      for (int i = 0; i < schedule.size(); i++) {
+        final ImmutableList<Parcel> route = schedule.get(i);
+        final PreparedRoute<Parcel> prepared =
+          evaluator.prepare(state, i, route);
+        assertThat(prepared)
+          .isInstanceOf(Gendreau06RouteEvaluator.Prepared.class);
+        assertThat(prepared.cost())
+          .isEqualTo(evaluator.computeCost(state, i, route));
+
+        final ImmutableList<Parcel> parcels =
+          ImmutableSet.copyOf(route).asList();
+        for (final Parcel p : parcels.subList(0,
+          Math.min(PARCELS_PER_ROUTE, parcels.size()))) {
+          final ImmutableList<Parcel> without =
+            Insertions.removeAll(route, ImmutableSet.of(p));
+          assertThat(prepared.removalCost(p)).isWithin(TOLERANCE)
+            .of(evaluator.computeCost(state, i, without));
+
+          final PreparedRoute<Parcel> preparedWithout =
+            evaluator.prepare(state, i, without);
+          final Iterator<IntList> it = Insertions.insertionsIndexIterator(
+            route.size() - without.size(), without.size(), 0);
+          while (it.hasNext()) {
+            final IntList indices = it.next();
+            assertThat(preparedWithout.insertionCost(p, indices))
+              .isWithin(TOLERANCE)
+              .of(evaluator.computeCost(state, i,
+                Insertions.insert(without, indices, p)));
+          }
+        }
+      }
+      return schedule;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import com.github.rinde.rinsim.central.Central;
+import com.github.rinde.rinsim.central.SolverValidator;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.experiment.Experiment;
+import com.github.rinde.rinsim.experiment.Experiment.SimulationResult;
+import com.github.rinde.rinsim.experiment.ExperimentResults;
+import com.github.rinde.rinsim.experiment.PostProcessors;
+import com.github.rinde.rinsim.geom.Point;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.pdptw.common.StatisticsDTO;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06Parser;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * Test of {@link Lns}.
+ * @author Rinde van Lon
+ */
+public class LnsTest {
+  static final Parcel A =
+    Parcel.builder(new Point(0, 0), new Point(2, 0)).toString("A").build();
+  static final Parcel B =
+    Parcel.builder(new Point(0, 1), new Point(2, 1)).toString("B").build();
+  static final Parcel C =
+    Parcel.builder(new Point(0, 2), new Point(2, 2)).toString("C").build();
+
+  /**
+   * Only parcels that are entirely in the modifiable part of a route can be
+   * removed.
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testRemovableParcels() {
+    final ImmutableList<ImmutableList<Parcel>> schedule = ImmutableList.of(
+      ImmutableList.of(A, B, B, A), ImmutableList.of(C));
+    assertThat(Lns.removableParcels(schedule, IntArrayList.wrap(new int[] {
+      0, 0}))).containsExactly(B, A).inOrder();
+    assertThat(Lns.removableParcels(schedule, IntArrayList.wrap(new int[] {
+      1, 0}))).containsExactly(B);
+    assertThat(Lns.remove(schedule, ImmutableSet.of(B, C)))
+      .containsExactly(ImmutableList.of(A, A), ImmutableList.<Parcel>of())
+      .inOrder();
+  }
+
+  /**
+   * Tests that LNS produces valid schedules and is deterministic for a given
+   * seed.
+   */
+  @Test
+  public void testDeterminism() {
+    final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
+    final ExperimentResults results = Experiment.builder()
+      .withThreads(2)
+      .repeatSeed(2)
+      .addConfiguration(Central.solverConfiguration(SolverValidator.wrap(
+        Lns.builder()
+          .withObjectiveFunction(objFunc)
+          .withIterationLimit(25)
+          .buildSolverSupplier())))
+      .addScenarios(Gendreau06Parser.parser()
+        .addFile(new File("files/scenarios/gendreau06/req_rapide_1_240_24"))
+        .offline()
+        .setNumParcels(15)
+        .parse())
+      .usePostProcessor(PostProcessors.statisticsPostProcessor(objFunc))
+      .perform();
+
+    StatisticsDTO expected = null;
+    for (final SimulationResult sr : results.getResults()) {
+      final StatisticsDTO stats = (StatisticsDTO) sr.getResultObject();
+      assertThat(objFunc.isValidResult(stats)).isTrue();
+      if (expected == null) {
+        expected = stats;
+      } else {
+        assertThat(stats).isEqualTo(expected);
+      }
+    }
+  }
+
+  /**
+   * The real-time solver is throttled by default, like {@link Opt2}.
+   */
+  @Test
+  public void testNotificationThrottling() {
+    assertThat(Lns.builder().notificationInterval())
+      .isEqualTo(Opt2.DEFAULT_NOTIFICATION_INTERVAL);
+    final Lns.Builder b = Lns.builder().withNotificationThrottling(10L, .01);
+    assertThat(b.notificationInterval()).isEqualTo(10L);
+    assertThat(b.minImprovement()).isEqualTo(.01);
+    assertThat(b.withoutNotificationThrottling().notificationInterval())
+      .isEqualTo(0L);
+  }
+
+  /**
+   * A negative notification interval is not allowed.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeNotificationInterval() {
+    Lns.builder().withNotificationThrottling(-1L, 0d);
+  }
+}
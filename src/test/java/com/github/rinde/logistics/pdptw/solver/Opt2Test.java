@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import com.github.rinde.rinsim.central.Central;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.central.SolverValidator;
+import com.github.rinde.rinsim.experiment.Experiment;
+import com.github.rinde.rinsim.experiment.Experiment.SimulationResult;
+import com.github.rinde.rinsim.experiment.ExperimentResults;
+import com.github.rinde.rinsim.experiment.PostProcessors;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.pdptw.common.StatisticsDTO;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06Parser;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+
+/**
+ * Test of {@link Opt2}.
+ * @author Rinde van Lon
+ */
+public class Opt2Test {
+  static final ObjectiveFunction OBJ_FUNC =
+    Gendreau06ObjectiveFunction.instance();
+
+  /**
+   * The result of multi-start depth-first search should not depend on the
+   * number of threads.
+   */
+  @Test
+  public void testMultiStartDeterminism() {
+    final Opt2.Builder b = Opt2.builder()
+      .withObjectiveFunction(OBJ_FUNC)
+      .withDepthFirstSearch();
+    final StatisticsDTO sequential =
+      run(b.withMultiStart(4, 1).buildSolverSupplier());
+    final StatisticsDTO parallel =
+      run(b.withMultiStart(4, 3).buildSolverSupplier());
+    assertThat(parallel).isEqualTo(sequential);
+
+    // a single start is equal to the default depth-first search
+    assertThat(run(b.withMultiStart(1, 2).buildSolverSupplier()))
+      .isEqualTo(run(b.buildSolverSupplier()));
+  }
+
+  /**
+   * Multi-start is not supported for breadth-first search.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testMultiStartBreadthFirst() {
+    Opt2.builder()
+      .withObjectiveFunction(OBJ_FUNC)
+      .withMultiStart(2, 2)
+      .buildSolverSupplier();
+  }
+
+  /**
+   * Warm starting should produce valid schedules for a dynamic scenario.
+   */
+  @Test
+  public void testWarmStart() {
+    final ExperimentResults results = Experiment.builder()
+      .addConfiguration(Central.solverConfiguration(
+        SolverValidator.wrap(Opt2.builder()
+          .withObjectiveFunction(OBJ_FUNC)
+          .withDepthFirstSearch()
+          .withWarmStart()
+          .buildSolverSupplier())))
+      .addScenario(Gendreau06Parser.parse(
+        new File("files/scenarios/gendreau06/req_rapide_1_240_24")))
+      .withRandomSeed(123)
+      .usePostProcessor(PostProcessors.statisticsPostProcessor(OBJ_FUNC))
+      .perform();
+    final StatisticsDTO stats = (StatisticsDTO) results.getResults()
+      .iterator().next().getResultObject();
+    assertThat(OBJ_FUNC.isValidResult(stats)).isTrue();
+  }
+
+  static StatisticsDTO run(StochasticSupplier<Solver> solver) {
+    final ExperimentResults results = Experiment.builder()
+      .addConfiguration(
+        Central.solverConfiguration(SolverValidator.wrap(solver)))
+      .addScenarios(Gendreau06Parser.parser()
+        .addFile(new File("files/scenarios/gendreau06/req_rapide_1_240_24"))
+        .offline()
+        .setNumParcels(15)
+        .parse())
+      .withRandomSeed(123)
+      .usePostProcessor(PostProcessors.statisticsPostProcessor(OBJ_FUNC))
+      .perform();
+    final SimulationResult sr = results.getResults().iterator().next();
+    final StatisticsDTO stats = (StatisticsDTO) sr.getResultObject();
+    assertThat(OBJ_FUNC.isValidResult(stats)).isTrue();
+    return stats;
+  }
+}
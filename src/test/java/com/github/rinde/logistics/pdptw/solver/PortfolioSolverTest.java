@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.github.rinde.logistics.pdptw.solver.Opt2Test.OBJ_FUNC;
+import static com.github.rinde.logistics.pdptw.solver.Opt2Test.run;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Test;
+
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.pdptw.common.StatisticsDTO;
+import com.github.rinde.rinsim.util.StochasticSupplier;
+import com.github.rinde.rinsim.util.StochasticSuppliers;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Test of {@link PortfolioSolver}.
+ * @author Rinde van Lon
+ */
+public class PortfolioSolverTest {
+
+  /**
+   * The portfolio should select the best schedule of its members.
+   */
+  @Test
+  public void testBestMember() {
+    final StochasticSupplier<Solver> opt2 = Opt2.builder()
+      .withObjectiveFunction(OBJ_FUNC)
+      .buildSolverSupplier();
+    final PortfolioSolver.Statistics stats =
+      PortfolioSolver.Statistics.create();
+    final StatisticsDTO result = run(PortfolioSolver.builder()
+      .withObjectiveFunction(OBJ_FUNC)
+      .addMember(CheapestInsertionHeuristic.supplier(OBJ_FUNC))
+      .addMember(opt2)
+      .withStatistics(stats)
+      .buildSolverSupplier());
+
+    // 2-opt is never worse than the cheapest insertion it starts from
+    assertThat(result).isEqualTo(run(opt2));
+    assertThat(stats.getSolves()).isGreaterThan(0);
+    assertThat(stats.getWins(0) + stats.getWins(1))
+      .isEqualTo(stats.getSolves());
+    assertThat(stats.getCompletions(0)).isEqualTo(stats.getSolves());
+    assertThat(stats.getCompletions(1)).isEqualTo(stats.getSolves());
+    assertThat(stats.getInterruptions(1)).isEqualTo(0);
+  }
+
+  /**
+   * Failing members should be ignored as long as another member succeeds.
+   */
+  @Test
+  public void testFailingMember() {
+    final PortfolioSolver.Statistics stats =
+      PortfolioSolver.Statistics.create();
+    run(PortfolioSolver.builder()
+      .withObjectiveFunction(OBJ_FUNC)
+      .addMember(StochasticSuppliers.constant(new Solver() {
+        @Override
+        public ImmutableList<ImmutableList<Parcel>> solve(
+            GlobalStateObject state) {
+          throw new IllegalStateException();
+        }
+      }))
+      .addMember(CheapestInsertionHeuristic.supplier(OBJ_FUNC))
+      .withThreads(1)
+      .withTimeLimit(1000L)
+      .withStatistics(stats)
+      .buildSolverSupplier());
+    assertThat(stats.getFailures(0)).isEqualTo(stats.getSolves());
+    assertThat(stats.getWins(1)).isEqualTo(stats.getSolves());
+  }
+
+  /**
+   * When the portfolio itself is interrupted (e.g. because the problem
+   * changed) its members should not be counted as interrupted.
+   */
+  @Test
+  public void testInterruptedPortfolio() {
+    final PortfolioSolver.Statistics stats =
+      PortfolioSolver.Statistics.create();
+    final Solver portfolio = new PortfolioSolver.RacingSolver(
+      ImmutableList.<Solver>of(new Solver() {
+        @Override
+        public ImmutableList<ImmutableList<Parcel>> solve(
+            GlobalStateObject state) throws InterruptedException {
+          Thread.sleep(Long.MAX_VALUE);
+          return ImmutableList.of();
+        }
+      }), OBJ_FUNC, 1, 1000L, stats);
+
+    boolean interrupted = false;
+    Thread.currentThread().interrupt();
+    try {
+      portfolio.solve(mock(GlobalStateObject.class));
+    } catch (final InterruptedException e) {
+      interrupted = true;
+    }
+    assertThat(interrupted).isTrue();
+    assertThat(stats.getInterruptions(0)).isEqualTo(0);
+    assertThat(stats.getSolves()).isEqualTo(0);
+  }
+
+  /**
+   * At least one member is required.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoMembers() {
+    PortfolioSolver.builder()
+      .withObjectiveFunction(OBJ_FUNC)
+      .buildSolverSupplier();
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.rinde.logistics.pdptw.solver.CheapestInsertionHeuristic.VehicleInsertion;
+import com.github.rinde.rinsim.central.Central;
+import com.github.rinde.rinsim.central.SolverValidator;
+import com.github.rinde.rinsim.experiment.Experiment;
+import com.github.rinde.rinsim.experiment.ExperimentResults;
+import com.github.rinde.rinsim.experiment.PostProcessors;
+import com.github.rinde.rinsim.pdptw.common.ObjectiveFunction;
+import com.github.rinde.rinsim.pdptw.common.StatisticsDTO;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06ObjectiveFunction;
+import com.github.rinde.rinsim.scenario.gendreau06.Gendreau06Parser;
+import com.google.common.collect.ImmutableList;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * Test of {@link RegretInsertionHeuristic}.
+ * @author Rinde van Lon
+ */
+public class RegretInsertionHeuristicTest {
+
+  /**
+   * Tests the regret computation.
+   */
+  @Test
+  public void testRegret() {
+    final List<VehicleInsertion> insertions = ImmutableList.of(
+      insertion(0, 5d), insertion(1, Double.POSITIVE_INFINITY),
+      insertion(2, 2d), insertion(3, 9d));
+    final double[] buffer = new double[insertions.size()];
+    assertThat(RegretInsertionHeuristic.regret(insertions, 2, buffer))
+      .isEqualTo(3d);
+    assertThat(RegretInsertionHeuristic.regret(insertions, 3, buffer))
+      .isEqualTo(7d);
+    // only three feasible insertions
+    assertThat(RegretInsertionHeuristic.regret(insertions, 4, buffer))
+      .isEqualTo(Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Tests that the heuristic produces valid and reproducible schedules.
+   */
+  @Test
+  public void testConsistency() {
+    final ObjectiveFunction objFunc = Gendreau06ObjectiveFunction.instance();
+    final ExperimentResults er = Experiment.builder()
+      .addScenario(
+        Gendreau06Parser.parse(new File(
+          "files/scenarios/gendreau06/req_rapide_1_240_24")))
+      .addConfiguration(
+        Central.solverConfiguration(SolverValidator
+          .wrap(RegretInsertionHeuristic.supplier(objFunc))))
+      .repeat(2)
+      .withThreads(2)
+      .usePostProcessor(PostProcessors.statisticsPostProcessor(objFunc))
+      .perform();
+    final List<Experiment.SimulationResult> results =
+      er.getResults().asList();
+    final StatisticsDTO first =
+      (StatisticsDTO) results.get(0).getResultObject();
+    assertThat(objFunc.isValidResult(first)).isTrue();
+    assertThat(results.get(1).getResultObject()).isEqualTo(first);
+  }
+
+  /**
+   * k must be at least 2.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidK() {
+    RegretInsertionHeuristic.supplier(Gendreau06ObjectiveFunction.instance(),
+      1);
+  }
+
+  static VehicleInsertion insertion(int vehicle, double cost) {
+    final VehicleInsertion insertion = new VehicleInsertion(vehicle);
+    if (!Double.isInfinite(cost)) {
+      insertion.insertionCost = cost;
+      insertion.indices = IntArrayList.wrap(new int[] {0, 0});
+    }
+    return insertion;
+  }
+}
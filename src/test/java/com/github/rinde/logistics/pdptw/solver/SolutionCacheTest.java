@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.GlobalStateObjectBuilder;
+import com.github.rinde.rinsim.central.Solver;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.geom.Point;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Test of {@link SolutionCache}.
+ * @author Rinde van Lon
+ */
+public class SolutionCacheTest {
+  static final Parcel A =
+    Parcel.builder(new Point(0, 0), new Point(2, 0)).toString("A").build();
+  static final Parcel B =
+    Parcel.builder(new Point(3, 1), new Point(2, 0)).toString("B").build();
+  static final Parcel C =
+    Parcel.builder(new Point(5, 7), new Point(1, 4)).toString("C").build();
+
+  /**
+   * Equivalent states should be answered by the cache.
+   * @throws InterruptedException Should not happen.
+   */
+  @Test
+  public void testHitsAndMisses() throws InterruptedException {
+    final SolutionCache cache = SolutionCache.create(1, 1L);
+    final CountingSolver delegate = new CountingSolver();
+    final Solver solver = cache.decorate(delegate);
+
+    final ImmutableList<ImmutableList<Parcel>> first =
+      solver.solve(state(A, A));
+    assertThat(solver.solve(state(A, A))).isSameAs(first);
+    assertThat(delegate.solves).isEqualTo(1);
+
+    // a different route is a different state
+    solver.solve(state(A, C, A, C));
+    assertThat(delegate.solves).isEqualTo(2);
+    // the first state has been evicted
+    solver.solve(state(A, A));
+    assertThat(delegate.solves).isEqualTo(3);
+
+    assertThat(cache.hits()).isEqualTo(1L);
+    assertThat(cache.misses()).isEqualTo(3L);
+    assertThat(cache.evictions()).isEqualTo(2L);
+    assertThat(cache.hitRate()).isEqualTo(.25);
+    assertThat(cache.size()).isEqualTo(1);
+
+    cache.clear();
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  /**
+   * A vehicle that is still servicing a parcel is in a different state than a
+   * vehicle that has finished servicing it.
+   */
+  @Test
+  public void testRemainingServiceTime() {
+    final SolutionCache cache = SolutionCache.create();
+    assertThat(cache.key(state(0L, A, A)))
+      .isEqualTo(cache.key(state(0L, A, A)));
+    assertThat(cache.key(state(0L, A, A)))
+      .isNotEqualTo(cache.key(state(1L, A, A)));
+  }
+
+  /**
+   * Tests the time buckets.
+   */
+  @Test
+  public void testTimeBucket() {
+    final SolutionCache cache = SolutionCache.create(10, 1000L);
+    assertThat(cache.timeBucket(0L)).isEqualTo(0L);
+    assertThat(cache.timeBucket(999L)).isEqualTo(0L);
+    assertThat(cache.timeBucket(1000L)).isEqualTo(1L);
+    assertThat(SolutionCache.create().timeBucket(999L)).isEqualTo(999L);
+  }
+
+  /**
+   * The time resolution must be positive.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidTimeResolution() {
+    SolutionCache.create(10, 0L);
+  }
+
+  static GlobalStateObject state(Parcel... route) {
+    return state(0L, route);
+  }
+
+  static GlobalStateObject state(long remainingServiceTime, Parcel... route) {
+    return GlobalStateObjectBuilder.globalBuilder()
+      .addAvailableParcels(A, B)
+      .addVehicle(GlobalStateObjectBuilder.vehicleBuilder()
+        .setRemainingServiceTime(remainingServiceTime)
+        .setRoute(ImmutableList.copyOf(route))
+        .build())
+      .buildUnsafe();
+  }
+
+  static class CountingSolver implements Solver {
+    int solves;
+
+    @Override
+    public ImmutableList<ImmutableList<Parcel>> solve(GlobalStateObject state) {
+      solves++;
+      return ImmutableList.of(ImmutableList.of(A, B, A, B));
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.logistics.pdptw.solver;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+import com.github.rinde.rinsim.central.GlobalStateObject;
+import com.github.rinde.rinsim.central.GlobalStateObjectBuilder;
+import com.github.rinde.rinsim.core.model.pdp.Parcel;
+import com.github.rinde.rinsim.geom.Point;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Test of {@link WarmStartSolver}.
+ * @author Rinde van Lon
+ */
+public class WarmStartSolverTest {
+  static final Parcel A =
+    Parcel.builder(new Point(0, 0), new Point(2, 0)).toString("A").build();
+  static final Parcel B =
+    Parcel.builder(new Point(3, 1), new Point(2, 0)).toString("B").build();
+  static final Parcel C =
+    Parcel.builder(new Point(5, 7), new Point(1, 4)).toString("C").build();
+  static final Parcel D =
+    Parcel.builder(new Point(4, 4), new Point(6, 1)).toString("D").build();
+
+  /**
+   * Tests that a schedule of a previous state is repaired correctly.
+   */
+  @Test
+  public void testRepair() {
+    // C has been delivered, D is new and the first vehicle is on its way to
+    // pickup B
+    final GlobalStateObject state = GlobalStateObjectBuilder.globalBuilder()
+      .addAvailableParcels(A, B, D)
+      .addVehicle(GlobalStateObjectBuilder.vehicleBuilder()
+        .setRoute(ImmutableList.<Parcel>of(B))
+        .setDestination(B)
+        .build())
+      .addVehicle(GlobalStateObjectBuilder.vehicleBuilder()
+        .setRoute(ImmutableList.<Parcel>of())
+        .build())
+      .buildUnsafe();
+
+    final ImmutableList<ImmutableList<Parcel>> repaired =
+      WarmStartSolver.repair(state, ImmutableList.of(
+        ImmutableList.of(A, C, A, B, B, C),
+        ImmutableList.of(B, B)));
+
+    assertThat(repaired).containsExactly(
+      ImmutableList.of(B, A, A, B),
+      ImmutableList.of()).inOrder();
+    assertThat(WarmStartSolver.unassignedParcels(state, repaired))
+      .containsExactly(D);
+  }
+
+  /**
+   * The number of routes must equal the number of vehicles.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testRepairInvalidSchedule() {
+    final GlobalStateObject state = GlobalStateObjectBuilder.globalBuilder()
+      .addAvailableParcels(A, B)
+      .addVehicle(GlobalStateObjectBuilder.vehicleBuilder()
+        .setRoute(ImmutableList.of(A, C, A, C))
+        .build())
+      .buildUnsafe();
+    WarmStartSolver.repair(state, ImmutableList.<ImmutableList<Parcel>>of());
+  }
+}
@@ -18,18 +18,23 @@ package com.github.rinde.opt.localsearch;
 import static com.github.rinde.opt.localsearch.Insertions.insert;
 import static com.github.rinde.opt.localsearch.Insertions.insertions;
 import static com.github.rinde.opt.localsearch.Insertions.insertionsIterator;
+import static com.github.rinde.opt.localsearch.Insertions.removeAll;
 import static com.google.common.collect.Sets.newHashSet;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
 import org.junit.Test;
 
+import com.github.rinde.opt.localsearch.Insertions.InsertionIndexCursor;
 import com.github.rinde.opt.localsearch.Insertions.InsertionIndexGenerator;
+import com.github.rinde.opt.localsearch.Insertions.InsertionVisitor;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
@@ -288,6 +293,67 @@ public class InsertionsTest {
     insert(InsertionsTest.list(A, B, C), ImmutableList.<Integer>of(), D);
   }
 
+  /**
+   * Removal should remove all occurrences and should undo an insertion.
+   */
+  @Test
+  public void removeAllTest() {
+    assertEquals(InsertionsTest.list(A, B),
+      removeAll(InsertionsTest.list(A, C, B, C), ImmutableSet.of(C)));
+    assertEquals(InsertionsTest.list(B),
+      removeAll(InsertionsTest.list(A, B, A, C), ImmutableSet.of(A, C)));
+    assertEquals(InsertionsTest.list(A, B, C),
+      removeAll(InsertionsTest.list(A, B, C), ImmutableSet.of(D)));
+    assertEquals(InsertionsTest.list(),
+      removeAll(InsertionsTest.list(C, C), ImmutableSet.of(C)));
+    assertEquals(InsertionsTest.list(A, B, C), removeAll(
+      insert(InsertionsTest.list(A, B, C), InsertionsTest.list(0, 3), D),
+      ImmutableSet.of(D)));
+  }
+
+  /**
+   * The cursor should produce the same combinations as the iterator, also
+   * after a reset.
+   */
+  @Test
+  public void insertionIndexCursorTest() {
+    final InsertionIndexCursor cursor = Insertions.insertionIndexCursor(2, 0,
+      0);
+    for (int size = 0; size < 5; size++) {
+      for (int start = 0; start <= size; start++) {
+        cursor.reset(size, start);
+        final Iterator<IntList> it =
+          Insertions.insertionsIndexIterator(2, size, start);
+        final IntList view = cursor.indices();
+        while (it.hasNext()) {
+          assertTrue(cursor.hasNext());
+          assertTrue(cursor.advance());
+          assertEquals(it.next(), view);
+          assertEquals(view.getInt(0), cursor.get(0));
+          assertEquals(2, cursor.size());
+        }
+        assertFalse(cursor.hasNext());
+        assertFalse(cursor.advance());
+      }
+    }
+  }
+
+  /**
+   * The visitor should visit the same insertions as the iterator.
+   */
+  @Test
+  public void visitInsertionsTest() {
+    final ImmutableList<String> list = list(A, B, C);
+    final List<ImmutableList<String>> visited = new ArrayList<>();
+    Insertions.visitInsertions(list, 1, 2, new InsertionVisitor<String>() {
+      @Override
+      public void visit(List<String> l, IntList insertionIndices) {
+        visited.add(insert(l, insertionIndices, Z));
+      }
+    });
+    assertEquals(insertions(list, Z, 1, 2), visited);
+  }
+
   // @Test
   // public void scheduleIteratorTest() {
   // final Schedule<SortDirection, String> s = Schedule.create(
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.github.rinde.opt.localsearch.InsertionsTest.list;
+import static com.github.rinde.opt.localsearch.Swaps.asIntList;
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.github.rinde.opt.localsearch.SwapsTest.SortDirection;
+import com.github.rinde.opt.localsearch.SwapsTest.StringListEvaluator;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/**
+ * Test of {@link IntSwaps}.
+ * @author Rinde van Lon
+ */
+public class IntSwapsTest {
+
+  /**
+   * Tests that items are interned in order of first occurrence.
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testItems() {
+    assertThat(IntSwaps.items(list(list("B", "A", "B"), list("C", "A"))))
+      .containsExactly("B", "A", "C").inOrder();
+    assertThat(IntSwaps.items(list(list(), list()))).isEmpty();
+  }
+
+  /**
+   * Tests the primitive insert and remove methods.
+   */
+  @Test
+  public void testInsertRemove() {
+    final int[] dest = new int[6];
+    assertThat(IntSwaps.remove(new int[] {1, 2, 1, 3}, 4, 1, dest))
+      .isEqualTo(2);
+    assertThat(dest[0]).isEqualTo(2);
+    assertThat(dest[1]).isEqualTo(3);
+
+    assertThat(IntSwaps.insert(new int[] {2, 3}, 2, new int[] {0, 2}, 0, 2, 1,
+      dest)).isEqualTo(4);
+    assertThat(asIntList(dest[0], dest[1], dest[2], dest[3]))
+      .isEqualTo(asIntList(1, 2, 3, 1));
+  }
+
+  /**
+   * Breadth-first search should give exactly the same results as
+   * {@link Swaps#bfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, Optional)}.
+   * @throws InterruptedException Should not happen.
+   */
+  @Test
+  public void testBfsEquivalence() throws InterruptedException {
+    final RandomGenerator rng = new MersenneTwister(123L);
+    for (int i = 0; i < 10; i++) {
+      final ImmutableList<ImmutableList<String>> schedule =
+        randomSchedule(rng, 3, 6);
+      final IntList startIndices = startIndices(schedule, rng);
+      for (final SortDirection dir : SortDirection.values()) {
+        final ProgressListenerHistory<String> expectedHistory =
+          new ProgressListenerHistory<>();
+        final ProgressListenerHistory<String> actualHistory =
+          new ProgressListenerHistory<>();
+        final ImmutableList<ImmutableList<String>> expected =
+          Swaps.bfsOpt2(schedule, startIndices, dir,
+            new StringListEvaluator(), Optional.of(expectedHistory));
+        final ImmutableList<ImmutableList<String>> actual =
+          IntSwaps.bfsOpt2(schedule, startIndices, dir,
+            new StringListEvaluator(), Optional.of(actualHistory));
+
+        assertThat(actual).isEqualTo(expected);
+        assertThat(actualHistory.getSchedules())
+          .isEqualTo(expectedHistory.getSchedules());
+        assertThat(actualHistory.getObjectiveValues())
+          .isEqualTo(expectedHistory.getObjectiveValues());
+      }
+    }
+  }
+
+  /**
+   * Depth-first search should give exactly the same results as
+   * {@link Swaps#dfsOpt2(ImmutableList, IntList, Object, RouteEvaluator, RandomGenerator, Optional)}
+   * when using the same seed.
+   * @throws InterruptedException Should not happen.
+   */
+  @Test
+  public void testDfsEquivalence() throws InterruptedException {
+    final RandomGenerator rng = new MersenneTwister(456L);
+    for (int i = 0; i < 10; i++) {
+      final ImmutableList<ImmutableList<String>> schedule =
+        randomSchedule(rng, 3, 6);
+      final IntList startIndices = startIndices(schedule, rng);
+      final long seed = rng.nextLong();
+      final ProgressListenerHistory<String> expectedHistory =
+        new ProgressListenerHistory<>();
+      final ProgressListenerHistory<String> actualHistory =
+        new ProgressListenerHistory<>();
+      final ImmutableList<ImmutableList<String>> expected =
+        Swaps.dfsOpt2(schedule, startIndices, SortDirection.ASCENDING,
+          new StringListEvaluator(), new MersenneTwister(seed),
+          Optional.of(expectedHistory));
+      final ImmutableList<ImmutableList<String>> actual =
+        IntSwaps.dfsOpt2(schedule, startIndices, SortDirection.ASCENDING,
+          new StringListEvaluator(), new MersenneTwister(seed),
+          Optional.of(actualHistory));
+
+      assertThat(actual).isEqualTo(expected);
+      assertThat(actualHistory.getSchedules())
+        .isEqualTo(expectedHistory.getSchedules());
+    }
+  }
+
+  /**
+   * Creates a random schedule, each item occurs once or twice in exactly one
+   * row.
+   * @param rng The random number generator to use.
+   * @param numRows The number of rows.
+   * @param numItems The number of distinct items.
+   * @return A new schedule.
+   */
+  static ImmutableList<ImmutableList<String>> randomSchedule(
+      RandomGenerator rng, int numRows, int numItems) {
+    final List<List<String>> rows = new ArrayList<>();
+    for (int i = 0; i < numRows; i++) {
+      rows.add(new ArrayList<String>());
+    }
+    for (int i = 0; i < numItems; i++) {
+      final String item = Character.toString((char) ('A' + i));
+      final List<String> row = rows.get(rng.nextInt(numRows));
+      row.add(rng.nextInt(row.size() + 1), item);
+      if (rng.nextBoolean()) {
+        row.add(rng.nextInt(row.size() + 1), item);
+      }
+    }
+    final ImmutableList.Builder<ImmutableList<String>> builder =
+      ImmutableList.builder();
+    for (final List<String> row : rows) {
+      builder.add(ImmutableList.copyOf(row));
+    }
+    return builder.build();
+  }
+
+  static IntList startIndices(ImmutableList<ImmutableList<String>> schedule,
+      RandomGenerator rng) {
+    final IntList startIndices = new IntArrayList();
+    for (final ImmutableList<String> row : schedule) {
+      startIndices.add(row.isEmpty() ? 0 : rng.nextInt(2));
+    }
+    return startIndices;
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.github.rinde.opt.localsearch.SwapsTest.cost;
+import static com.google.common.truth.Truth.assertThat;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.github.rinde.opt.localsearch.SwapsTest.SortDirection;
+import com.github.rinde.opt.localsearch.SwapsTest.StringListEvaluator;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/**
+ * Test of {@link LateAcceptance}.
+ * @author Rinde van Lon
+ */
+public class LateAcceptanceTest {
+
+  /**
+   * Tests that the search is reproducible, never returns a worse schedule and
+   * respects the constraints on the items.
+   * @throws InterruptedException Should not happen.
+   */
+  @Test
+  public void testSearch() throws InterruptedException {
+    final RandomGenerator rng = new MersenneTwister(123L);
+    for (int i = 0; i < 10; i++) {
+      final ImmutableList<ImmutableList<String>> schedule =
+        IntSwapsTest.randomSchedule(rng, 3, 8);
+      final IntList startIndices = IntSwapsTest.startIndices(schedule, rng);
+      final long seed = rng.nextLong();
+      final LateAcceptanceOptions options =
+        LateAcceptanceOptions.create().withIterationLimit(2000);
+      final ProgressListenerHistory<String> history =
+        new ProgressListenerHistory<>();
+
+      final ImmutableList<ImmutableList<String>> result =
+        LateAcceptance.search(schedule, startIndices, SortDirection.ASCENDING,
+          new StringListEvaluator(), new MersenneTwister(seed), options,
+          Optional.of(history));
+      assertThat(cost(result)).isAtMost(cost(schedule));
+      VariableNeighborhoodDescentTest.checkConstraints(schedule, startIndices,
+        result);
+      // only new best schedules are reported
+      for (int j = 1; j < history.getObjectiveValues().size(); j++) {
+        assertThat(history.getObjectiveValues().getDouble(j))
+          .isLessThan(history.getObjectiveValues().getDouble(j - 1));
+      }
+
+      assertThat(LateAcceptance.search(schedule, startIndices,
+        SortDirection.ASCENDING, new StringListEvaluator(),
+        new MersenneTwister(seed), options,
+        Optional.<ProgressListener<String>>absent())).isEqualTo(result);
+    }
+  }
+
+  /**
+   * With a history length of one the search is hill climbing, the result is a
+   * local optimum.
+   * @throws InterruptedException Should not happen.
+   */
+  @Test
+  public void testHillClimbing() throws InterruptedException {
+    final RandomGenerator rng = new MersenneTwister(456L);
+    for (int i = 0; i < 10; i++) {
+      final ImmutableList<ImmutableList<String>> schedule =
+        IntSwapsTest.randomSchedule(rng, 3, 6);
+      final IntList startIndices = IntSwapsTest.startIndices(schedule, rng);
+      final ImmutableList<ImmutableList<String>> result =
+        LateAcceptance.search(schedule, startIndices, SortDirection.ASCENDING,
+          new StringListEvaluator(), rng,
+          LateAcceptanceOptions.create().withHistoryLength(1),
+          Optional.<ProgressListener<String>>absent());
+      assertThat(Swaps.bfsOpt2(result, startIndices, SortDirection.ASCENDING,
+        new StringListEvaluator(), Optional.<ProgressListener<String>>absent()))
+          .isEqualTo(result);
+    }
+  }
+
+  /**
+   * A non-positive history length is not allowed.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidHistoryLength() {
+    LateAcceptanceOptions.create().withHistoryLength(0);
+  }
+}
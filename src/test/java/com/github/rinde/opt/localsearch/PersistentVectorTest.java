@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+/**
+ * Test of {@link PersistentVector}.
+ * @author Rinde van Lon
+ */
+public class PersistentVectorTest {
+
+  /**
+   * Tests copying and replacing for sizes around the node boundaries.
+   */
+  @Test
+  public void testWith() {
+    final RandomGenerator rng = new MersenneTwister(123L);
+    for (final int size : new int[] {0, 1, 31, 32, 33, 1024, 1025, 40000}) {
+      final List<Integer> expected = new ArrayList<>();
+      for (int i = 0; i < size; i++) {
+        expected.add(i);
+      }
+      PersistentVector<Integer> vector = PersistentVector.copyOf(expected);
+      assertThat(vector).isEqualTo(expected);
+
+      for (int i = 0; i < 100 && size > 0; i++) {
+        final int index = rng.nextInt(size);
+        final List<Integer> before = new ArrayList<>(vector);
+        final PersistentVector<Integer> changed = vector.with(index, -i);
+        expected.set(index, -i);
+        assertThat(changed).isEqualTo(expected);
+        // the original is not changed
+        assertThat(vector).isEqualTo(before);
+        vector = changed;
+      }
+    }
+  }
+
+  /**
+   * Out of bounds indices are not allowed.
+   */
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testWithOutOfBounds() {
+    final List<String> list = new ArrayList<>();
+    list.add("A");
+    PersistentVector.copyOf(list).with(1, "B");
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.github.rinde.opt.localsearch.InsertionsTest.list;
+import static com.github.rinde.opt.localsearch.Swaps.asIntList;
+import static com.github.rinde.opt.localsearch.SwapsTest.A;
+import static com.github.rinde.opt.localsearch.SwapsTest.B;
+import static com.github.rinde.opt.localsearch.SwapsTest.C;
+import static com.github.rinde.opt.localsearch.SwapsTest.D;
+import static com.google.common.truth.Truth.assertThat;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.github.rinde.opt.localsearch.SwapsTest.SortDirection;
+import com.github.rinde.opt.localsearch.SwapsTest.StringListEvaluator;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/**
+ * Test of {@link RouteCostCache}.
+ * @author Rinde van Lon
+ */
+public class RouteCostCacheTest {
+
+  /**
+   * The fingerprint of a swap should equal the fingerprint of the resulting
+   * route, and should differ between rows.
+   */
+  @Test
+  public void testFingerprint() {
+    final RouteCostCache<String> cache = RouteCostCache.create();
+    final ImmutableList<String> route = list(A, B, A, C);
+
+    assertThat(cache.fingerprint(0, route, A, A, asIntList(0, 2)))
+      .isEqualTo(cache.fingerprint(0, list(A, B, C, A)));
+    assertThat(cache.fingerprint(0, route, A, null, asIntList()))
+      .isEqualTo(cache.fingerprint(0, list(B, C)));
+    assertThat(cache.fingerprint(0, route, null, D, asIntList(1, 4)))
+      .isEqualTo(cache.fingerprint(0, list(A, D, B, A, C, D)));
+    assertThat(cache.fingerprint(0, route, null, D, asIntList(2, 2)))
+      .isEqualTo(cache.fingerprint(0, list(A, B, D, D, A, C)));
+
+    assertThat(cache.fingerprint(0, route))
+      .isNotEqualTo(cache.fingerprint(1, route));
+    assertThat(cache.fingerprint(0, ImmutableList.<String>of()))
+      .isNotEqualTo(cache.fingerprint(1, ImmutableList.<String>of()));
+    assertThat(cache.fingerprint(0, list(A, B)))
+      .isNotEqualTo(cache.fingerprint(0, list(B, A)));
+  }
+
+  /**
+   * Tests the statistics and the eviction policy.
+   */
+  @Test
+  public void testStatistics() {
+    final RouteCostCache<String> cache = RouteCostCache.create(2);
+    assertThat(Double.isNaN(cache.get(1L))).isTrue();
+    cache.put(1L, 10d);
+    cache.put(2L, 20d);
+    assertThat(cache.get(1L)).isEqualTo(10d);
+    cache.put(3L, 30d);
+    assertThat(Double.isNaN(cache.get(2L))).isTrue();
+    assertThat(cache.get(3L)).isEqualTo(30d);
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.hits()).isEqualTo(2L);
+    assertThat(cache.misses()).isEqualTo(2L);
+    assertThat(cache.evictions()).isEqualTo(1L);
+    assertThat(cache.hitRate()).isEqualTo(.5);
+
+    cache.clear();
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(cache.hits()).isEqualTo(2L);
+
+    final RouteCostCache<String> disabled = RouteCostCache.create(0);
+    disabled.put(1L, 10d);
+    assertThat(Double.isNaN(disabled.get(1L))).isTrue();
+    assertThat(disabled.size()).isEqualTo(0);
+  }
+
+  /**
+   * Large caches are segmented, the capacity and statistics should hold for
+   * the cache as a whole.
+   */
+  @Test
+  public void testSegments() {
+    final RouteCostCache<String> cache = RouteCostCache.create(1000);
+    final RandomGenerator rng = new MersenneTwister(123L);
+    final int puts = 5000;
+    long last = 0L;
+    for (int i = 0; i < puts; i++) {
+      last = rng.nextLong();
+      cache.put(last, i);
+    }
+    assertThat(cache.get(last)).isEqualTo(puts - 1d);
+    assertThat(cache.size()).isAtMost(cache.capacity());
+    assertThat(cache.size()).isAtLeast(cache.capacity() / 2);
+    assertThat(cache.evictions()).isEqualTo((long) puts - cache.size());
+    assertThat(cache.hits()).isEqualTo(1L);
+    assertThat(cache.misses()).isEqualTo(0L);
+  }
+
+  /**
+   * A negative capacity is not allowed.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeCapacity() {
+    RouteCostCache.create(-1);
+  }
+
+  /**
+   * Sharing a cache between successive calls should not change the results.
+   * @throws InterruptedException Should not happen.
+   */
+  @Test
+  public void testSharedCache() throws InterruptedException {
+    final RandomGenerator rng = new MersenneTwister(789L);
+    for (int i = 0; i < 10; i++) {
+      final ImmutableList<ImmutableList<String>> schedule =
+        IntSwapsTest.randomSchedule(rng, 3, 6);
+      final IntList startIndices = IntSwapsTest.startIndices(schedule, rng);
+      final RouteCostCache<String> cache = RouteCostCache.create(50);
+
+      final ImmutableList<ImmutableList<String>> expected = Swaps.bfsOpt2(
+        schedule, startIndices, SortDirection.ASCENDING,
+        new StringListEvaluator(), Optional.<ProgressListener<String>>absent());
+      for (int j = 0; j < 2; j++) {
+        assertThat(Swaps.bfsOpt2(schedule, startIndices,
+          SortDirection.ASCENDING, new StringListEvaluator(), cache,
+          Optional.<ProgressListener<String>>absent())).isEqualTo(expected);
+      }
+      final long seed = rng.nextLong();
+      assertThat(Swaps.dfsOpt2(schedule, startIndices,
+        SortDirection.ASCENDING, new StringListEvaluator(),
+        new MersenneTwister(seed), cache,
+        Optional.<ProgressListener<String>>absent()))
+          .isEqualTo(Swaps.dfsOpt2(schedule, startIndices,
+            SortDirection.ASCENDING, new StringListEvaluator(),
+            new MersenneTwister(seed),
+            Optional.<ProgressListener<String>>absent()));
+      assertThat(cache.size()).isAtMost(50);
+      assertThat(cache.hits()).isGreaterThan(0L);
+    }
+  }
+}
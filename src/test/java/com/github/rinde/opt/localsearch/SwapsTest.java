@@ -22,6 +22,7 @@ import static com.github.rinde.opt.localsearch.Swaps.inListSwap;
 import static com.github.rinde.opt.localsearch.Swaps.removeAll;
 import static com.github.rinde.opt.localsearch.Swaps.replace;
 import static com.github.rinde.opt.localsearch.Swaps.swap;
+import static com.github.rinde.opt.localsearch.Swaps.swapIterator;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.truth.Truth.assertThat;
 import static java.util.Collections.reverseOrder;
@@ -32,7 +33,11 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -43,6 +48,8 @@ import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.truth.Truth;
 
+import it.unimi.dsi.fastutil.ints.IntList;
+
 /**
  * Test of {@link Swaps}.
  * @author Rinde van Lon
@@ -89,7 +96,7 @@ public class SwapsTest {
     while (it.hasNext()) {
       final Swap<String> swapOperation = it.next();
       final ImmutableList<ImmutableList<String>> routes = Swaps.swap(s,
-        swapOperation, 100).get().routes;
+        swapOperation, 100).get().immutableRoutes();
     }
   }
 
@@ -124,6 +131,76 @@ public class SwapsTest {
     }
   }
 
+  /**
+   * Incremental version of {@link StringListEvaluator}, the prepared routes
+   * compute the costs by applying the modification and evaluating the entire
+   * route.
+   * @author Rinde van Lon
+   */
+  static class IncrementalStringListEvaluator extends StringListEvaluator
+      implements IncrementalRouteEvaluator<SortDirection, String> {
+    @Override
+    public PreparedRoute<String> prepare(final SortDirection context,
+        final int routeIndex, final ImmutableList<String> route) {
+      final double cost = computeCost(context, routeIndex, route);
+      return new PreparedRoute<String>() {
+        @Override
+        public ImmutableList<String> route() {
+          return route;
+        }
+
+        @Override
+        public double cost() {
+          return cost;
+        }
+
+        @Override
+        public double insertionCost(String item, IntList insertionIndices) {
+          return computeCost(context, routeIndex,
+            Insertions.insert(route, insertionIndices, item));
+        }
+
+        @Override
+        public double removalCost(String item) {
+          final List<String> newRoute = newArrayList(route);
+          removeAll(newRoute, item);
+          return computeCost(context, routeIndex,
+            ImmutableList.copyOf(newRoute));
+        }
+      };
+    }
+  }
+
+  /**
+   * Tests that swapping using an incremental evaluator gives the same result.
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void incrementalSwapTest() {
+    final Schedule<SortDirection, String> s = Schedule.create(
+      SortDirection.ASCENDING,
+      list(list(G, D, D, G), list(A, C, B, F, E, F, A, B)), asIntList(0, 0),
+      new StringListEvaluator());
+    final Schedule<SortDirection, String> inc = Schedule.create(
+      SortDirection.ASCENDING,
+      list(list(G, D, D, G), list(A, C, B, F, E, F, A, B)), asIntList(0, 0),
+      new IncrementalStringListEvaluator());
+    assertTrue(inc.isIncremental());
+    assertEquals(s.objectiveValues, inc.objectiveValues);
+
+    final Iterator<Swap<String>> it = Swaps.swapIterator(s);
+    while (it.hasNext()) {
+      final Swap<String> swapOperation = it.next();
+      final Schedule<SortDirection, String> expected =
+        swap(s, swapOperation, 100).get();
+      final Schedule<SortDirection, String> actual =
+        swap(inc, swapOperation, 100).get();
+      assertEquals(expected.routes, actual.routes);
+      assertEquals(expected.objectiveValues, actual.objectiveValues);
+      assertEquals(expected.objectiveValue, actual.objectiveValue, 0d);
+    }
+  }
+
   /**
    * Tests for swapping of one item at a time.
    */
@@ -403,4 +480,319 @@ public class SwapsTest {
       Truth.assert_().fail("%s", e);
     }
   }
+
+  /**
+   * Tests that 2-opt with an incremental evaluator has the same result.
+   * @throws InterruptedException Should not happen.
+   */
+  @Test
+  public void testIncrementalOpt2() throws InterruptedException {
+    final RandomGenerator rng = new MersenneTwister(321L);
+    for (int i = 0; i < 10; i++) {
+      final ImmutableList<ImmutableList<String>> sched =
+        IntSwapsTest.randomSchedule(rng, 3, 6);
+      final IntList startIndices = IntSwapsTest.startIndices(sched, rng);
+      final long seed = rng.nextLong();
+
+      assertThat(Swaps.bfsOpt2(sched, startIndices, SortDirection.DESCENDING,
+        new IncrementalStringListEvaluator(),
+        Optional.<ProgressListener<String>>absent()))
+          .isEqualTo(Swaps.bfsOpt2(sched, startIndices,
+            SortDirection.DESCENDING, new StringListEvaluator(),
+            Optional.<ProgressListener<String>>absent()));
+
+      assertThat(Swaps.dfsOpt2(sched, startIndices, SortDirection.DESCENDING,
+        new IncrementalStringListEvaluator(), new MersenneTwister(seed),
+        Optional.<ProgressListener<String>>absent()))
+          .isEqualTo(Swaps.dfsOpt2(sched, startIndices,
+            SortDirection.DESCENDING, new StringListEvaluator(),
+            new MersenneTwister(seed),
+            Optional.<ProgressListener<String>>absent()));
+    }
+  }
+
+  /**
+   * The random swap iterator should produce every swap of the neighborhood
+   * exactly once.
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testRandomSwapIterator() {
+    final RandomGenerator rng = new MersenneTwister(654L);
+    for (int i = 0; i < 20; i++) {
+      final ImmutableList<ImmutableList<String>> sched =
+        IntSwapsTest.randomSchedule(rng, 3, 6);
+      final Schedule<SortDirection, String> s = Schedule.create(
+        SortDirection.ASCENDING, sched,
+        IntSwapsTest.startIndices(sched, rng), new StringListEvaluator());
+      final List<Swap<String>> expected = newArrayList(Swaps.swapIterator(s));
+      final List<Swap<String>> actual =
+        newArrayList(new Swaps.RandomSwapIterator<>(s, rng));
+      assertThat(actual).containsExactlyElementsIn(expected);
+      assertThat(actual).containsNoDuplicates();
+    }
+
+    final Schedule<SortDirection, String> s = Schedule.create(
+      SortDirection.ASCENDING, list(list(A, B, A, C), list(D)),
+      asIntList(1, 0), new StringListEvaluator());
+    final List<Swap<String>> ordered = newArrayList(Swaps.swapIterator(s));
+    final List<Swap<String>> first = newArrayList(
+      new Swaps.RandomSwapIterator<>(s, new MersenneTwister(1L)));
+    assertThat(first).containsExactlyElementsIn(ordered);
+    assertThat(first).isNotEqualTo(ordered);
+    assertThat(first).isEqualTo(newArrayList(
+      new Swaps.RandomSwapIterator<>(s, new MersenneTwister(1L))));
+  }
+
+  /**
+   * Tests the granular neighborhood.
+   * @throws InterruptedException Should not happen.
+   */
+  @Test
+  public void testGranularOpt2() throws InterruptedException {
+    final RandomGenerator rng = new MersenneTwister(987L);
+    for (int i = 0; i < 10; i++) {
+      final ImmutableList<ImmutableList<String>> sched =
+        IntSwapsTest.randomSchedule(rng, 3, 8);
+      final IntList startIndices = IntSwapsTest.startIndices(sched, rng);
+      final Schedule<SortDirection, String> full = Schedule.create(
+        SortDirection.ASCENDING, sched, startIndices,
+        new StringListEvaluator());
+      final Schedule<SortDirection, String> granular =
+        full.withCandidates(Optional.of(
+          CandidateLists.create(sched, 2, new StringProximity())));
+
+      final List<Swap<String>> fullSwaps = newArrayList(swapIterator(full));
+      final List<Swap<String>> granularSwaps =
+        newArrayList(swapIterator(granular));
+      assertThat(fullSwaps).containsAllIn(granularSwaps).inOrder();
+      assertThat(newArrayList(new Swaps.RandomSwapIterator<>(granular, rng)))
+        .containsExactlyElementsIn(granularSwaps);
+
+      // with all items as candidates the neighborhood is not restricted
+      assertThat(newArrayList(swapIterator(full.withCandidates(Optional.of(
+        CandidateLists.create(sched, 8, new StringProximity()))))))
+          .isEqualTo(fullSwaps);
+      assertThat(Swaps.bfsOpt2(sched, startIndices, SortDirection.ASCENDING,
+        new StringListEvaluator(), Opt2Options.<String>create()
+          .withGranularity(8, new StringProximity()),
+        Optional.<ProgressListener<String>>absent()))
+          .isEqualTo(Swaps.bfsOpt2(sched, startIndices,
+            SortDirection.ASCENDING, new StringListEvaluator(),
+            Optional.<ProgressListener<String>>absent()));
+    }
+  }
+
+  /**
+   * Candidate lists are only reused for schedules with the same items in the
+   * same order, reusing them does not change the result.
+   * @throws InterruptedException Should not happen.
+   */
+  @Test
+  public void testCandidatesFor() throws InterruptedException {
+    final Opt2Options<String> options = Opt2Options.<String>create()
+      .withGranularity(1, new StringProximity());
+    assertThat(Opt2Options.<String>create().withCandidatesFor(list(list(A))))
+      .isEqualTo(Opt2Options.<String>create());
+
+    final ImmutableList<ImmutableList<String>> sched =
+      list(list(A, C, E), list(D, B));
+    final Opt2Options<String> prepared = options.withCandidatesFor(sched);
+    assertThat(prepared.candidates().isPresent()).isTrue();
+    assertThat(prepared.withCandidatesFor(list(list(A, C), list(E, D, B))))
+      .isSameAs(prepared);
+    assertThat(prepared.withCandidatesFor(list(list(A, C), list(D, B))))
+      .isNotSameAs(prepared);
+    assertThat(prepared.withCandidatesFor(list(list(D, B), list(A, C, E))))
+      .isNotSameAs(prepared);
+    assertThat(prepared.withTimeLimit(1L, TimeUnit.HOURS).candidates())
+      .isEqualTo(prepared.candidates());
+    assertThat(prepared.withGranularity(2, new StringProximity())
+      .candidates().isPresent()).isFalse();
+
+    final IntList startIndices = asIntList(0, 0);
+    assertThat(Swaps.bfsOpt2(sched, startIndices, SortDirection.ASCENDING,
+      new StringListEvaluator(), prepared,
+      Optional.<ProgressListener<String>>absent()))
+        .isEqualTo(Swaps.bfsOpt2(sched, startIndices, SortDirection.ASCENDING,
+          new StringListEvaluator(), options,
+          Optional.<ProgressListener<String>>absent()));
+  }
+
+  /**
+   * Tests the allowed positions of a granular neighborhood.
+   */
+  @Test
+  public void testCandidatePositions() {
+    final CandidateLists<String> candidates = CandidateLists.create(
+      list(list(A, C, E, G), list(B, D)), 1, new StringProximity());
+    assertThat(candidates.nearest.get(A)).containsExactly(B);
+    assertThat(candidates.nearest.get(D)).containsExactly(C);
+
+    // D is next to C (index 1 and 2), and the boundaries are always allowed
+    assertThat(asIntList(candidates.positions(D, list(A, C, E, G), 0)))
+      .isEqualTo(asIntList(0, 1, 2, 4));
+    assertThat(asIntList(candidates.positions(D, list(A, C, E, G), 3)))
+      .isEqualTo(asIntList(3, 4));
+    assertThat(
+      asIntList(candidates.positions(D, ImmutableList.<String>of(), 0)))
+        .isEqualTo(asIntList(0));
+  }
+
+  /**
+   * Applying a swap should only copy the changed rows, all other rows and
+   * their prepared routes are shared.
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testStructuralSharing() {
+    final Schedule<SortDirection, String> s = Schedule.create(
+      SortDirection.ASCENDING, list(list(B, A), list(C), list(D, E)),
+      asIntList(0, 0, 0), new IncrementalStringListEvaluator());
+    final PreparedRoute<String> prepared = s.preparedRoute(2);
+    final Schedule<SortDirection, String> swapped =
+      swap(s, Swap.<String>create(A, 0, 1, asIntList(0)), 100).get();
+
+    assertThat(swapped.routes)
+      .containsExactly(list(B), list(A, C), list(D, E)).inOrder();
+    assertThat(swapped.rows.get(2)).isSameAs(s.rows.get(2));
+    assertThat(swapped.preparedRoute(2)).isSameAs(prepared);
+    assertThat(swapped.rows.get(0)).isNotSameAs(s.rows.get(0));
+    assertThat(swapped.startIndices).isSameAs(s.startIndices);
+    assertThat(s.routes)
+      .containsExactly(list(B, A), list(C), list(D, E)).inOrder();
+  }
+
+  /**
+   * Tests that the search stops when the evaluation limit is reached and that
+   * more evaluations never lead to a worse schedule.
+   * @throws InterruptedException Should not happen.
+   */
+  @Test
+  public void testEvaluationLimit() throws InterruptedException {
+    final RandomGenerator rng = new MersenneTwister(654L);
+    final ForkJoinPool pool = new ForkJoinPool(2);
+    for (int i = 0; i < 10; i++) {
+      final ImmutableList<ImmutableList<String>> sched =
+        IntSwapsTest.randomSchedule(rng, 3, 8);
+      final IntList startIndices = IntSwapsTest.startIndices(sched, rng);
+      final ImmutableList<ImmutableList<String>> unlimited = Swaps.bfsOpt2(
+        sched, startIndices, SortDirection.ASCENDING,
+        new StringListEvaluator(), Optional.<ProgressListener<String>>absent());
+
+      double previousCost = cost(sched);
+      for (final long limit : new long[] {1L, 10L, 100L, 1000L, 100000L}) {
+        final Opt2Options<String> options =
+          Opt2Options.<String>create().withEvaluationLimit(limit);
+        final ImmutableList<ImmutableList<String>> result = Swaps.bfsOpt2(
+          sched, startIndices, SortDirection.ASCENDING,
+          new StringListEvaluator(), options,
+          Optional.<ProgressListener<String>>absent());
+        assertThat(cost(result)).isAtMost(previousCost);
+        previousCost = cost(result);
+
+        assertThat(cost(Swaps.bfsOpt2(sched, startIndices,
+          SortDirection.ASCENDING, new StringListEvaluator(), pool, options,
+          Optional.<ProgressListener<String>>absent()))).isAtMost(cost(sched));
+        assertThat(cost(Swaps.dfsOpt2(sched, startIndices,
+          SortDirection.ASCENDING, new StringListEvaluator(),
+          new MersenneTwister(limit), options,
+          Optional.<ProgressListener<String>>absent()))).isAtMost(cost(sched));
+      }
+      assertThat(Swaps.bfsOpt2(sched, startIndices, SortDirection.ASCENDING,
+        new StringListEvaluator(),
+        Opt2Options.<String>create().withEvaluationLimit(Long.MAX_VALUE - 1),
+        Optional.<ProgressListener<String>>absent())).isEqualTo(unlimited);
+    }
+    pool.shutdown();
+  }
+
+  /**
+   * Tests that a search with an expired deadline returns the input schedule.
+   * @throws InterruptedException Should not happen.
+   */
+  @Test
+  public void testTimeLimit() throws InterruptedException {
+    final ImmutableList<ImmutableList<String>> sched =
+      IntSwapsTest.randomSchedule(new MersenneTwister(321L), 2, 8);
+    final Opt2Options<String> options =
+      Opt2Options.<String>create().withTimeLimit(1L, TimeUnit.NANOSECONDS);
+    Thread.sleep(1L);
+    assertThat(Swaps.bfsOpt2(sched, asIntList(0, 0), SortDirection.ASCENDING,
+      new StringListEvaluator(), options,
+      Optional.<ProgressListener<String>>absent())).isEqualTo(sched);
+
+    final Opt2Options<String> generous =
+      Opt2Options.<String>create().withTimeLimit(1L, TimeUnit.HOURS);
+    assertThat(Swaps.bfsOpt2(sched, asIntList(0, 0), SortDirection.ASCENDING,
+      new StringListEvaluator(), generous,
+      Optional.<ProgressListener<String>>absent()))
+        .isEqualTo(Swaps.bfsOpt2(sched, asIntList(0, 0),
+          SortDirection.ASCENDING, new StringListEvaluator(),
+          Optional.<ProgressListener<String>>absent()));
+  }
+
+  /**
+   * A non-positive limit is not allowed.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidEvaluationLimit() {
+    Opt2Options.<String>create().withEvaluationLimit(0);
+  }
+
+  static double cost(ImmutableList<ImmutableList<String>> schedule) {
+    final StringListEvaluator evaluator = new StringListEvaluator();
+    double cost = 0;
+    for (int i = 0; i < schedule.size(); i++) {
+      cost += evaluator.computeCost(SortDirection.ASCENDING, i,
+        schedule.get(i));
+    }
+    return cost;
+  }
+
+  static class StringProximity implements Proximity<String> {
+    @Override
+    public double distance(String item1, String item2) {
+      return Math.abs(item1.charAt(0) - item2.charAt(0));
+    }
+  }
+
+  /**
+   * Tests that parallel breadth-first search has the same result as the
+   * sequential version.
+   * @throws InterruptedException Should not happen.
+   */
+  @Test
+  public void testParallelBfsOpt2() throws InterruptedException {
+    final RandomGenerator rng = new MersenneTwister(789L);
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    for (int i = 0; i < 10; i++) {
+      final ImmutableList<ImmutableList<String>> sched =
+        IntSwapsTest.randomSchedule(rng, 4, 7);
+      final IntList startIndices = IntSwapsTest.startIndices(sched, rng);
+
+      final ProgressListenerHistory<String> seqHistory =
+        new ProgressListenerHistory<>();
+      final ImmutableList<ImmutableList<String>> sequential =
+        Swaps.bfsOpt2(sched, startIndices, SortDirection.ASCENDING,
+          new StringListEvaluator(), Optional.of(seqHistory));
+
+      final ProgressListenerHistory<String> parHistory =
+        new ProgressListenerHistory<>();
+      final ImmutableList<ImmutableList<String>> parallel =
+        Swaps.bfsOpt2(sched, startIndices, SortDirection.ASCENDING,
+          new StringListEvaluator(), pool, Optional.of(parHistory));
+
+      assertThat(parallel).isEqualTo(sequential);
+      if (seqHistory.getObjectiveValues().isEmpty()) {
+        assertThat(parHistory.getObjectiveValues()).isEmpty();
+      } else {
+        assertThat(parHistory.getObjectiveValues().getDouble(
+          parHistory.getObjectiveValues().size() - 1))
+            .isEqualTo(seqHistory.getObjectiveValues().getDouble(
+              seqHistory.getObjectiveValues().size() - 1));
+      }
+    }
+    pool.shutdown();
+  }
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Test of {@link ThrottledProgressListener}.
+ * @author Rinde van Lon
+ */
+public class ThrottledProgressListenerTest {
+  static final ImmutableList<ImmutableList<String>> SCHEDULE =
+    ImmutableList.of(ImmutableList.of("A", "A"));
+
+  ScheduledExecutorService executor;
+  ProgressListenerHistory<String> history;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newSingleThreadScheduledExecutor();
+    history = new ProgressListenerHistory<>();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Notifications within the interval are coalesced, flush delivers the most
+   * recent one.
+   * @throws Exception Should not happen.
+   */
+  @Test
+  public void testInterval() throws Exception {
+    final ThrottledProgressListener<String> listener =
+      ThrottledProgressListener.create(history, 1, TimeUnit.HOURS, 0d,
+        executor);
+    for (int i = 0; i < 10; i++) {
+      listener.notify(SCHEDULE, 10 - i);
+    }
+    awaitDeliveries();
+    assertThat(history.getObjectiveValues()).containsExactly(10d);
+
+    listener.flush();
+    listener.flush();
+    awaitDeliveries();
+    assertThat(history.getObjectiveValues()).containsExactly(10d, 1d)
+      .inOrder();
+  }
+
+  /**
+   * Notifications that do not improve enough are held back until flush.
+   * @throws Exception Should not happen.
+   */
+  @Test
+  public void testMinRelativeImprovement() throws Exception {
+    final ThrottledProgressListener<String> listener =
+      ThrottledProgressListener.create(history, 0, TimeUnit.MILLISECONDS, .1,
+        executor);
+    listener.notify(SCHEDULE, 100d);
+    listener.notify(SCHEDULE, 95d);
+    listener.notify(SCHEDULE, 91d);
+    listener.notify(SCHEDULE, 90d);
+    listener.notify(SCHEDULE, 89d);
+    awaitDeliveries();
+    assertThat(history.getObjectiveValues()).containsExactly(100d, 90d)
+      .inOrder();
+
+    listener.flush();
+    awaitDeliveries();
+    assertThat(history.getObjectiveValues()).containsExactly(100d, 90d, 89d)
+      .inOrder();
+  }
+
+  /**
+   * After a reset pending notifications are discarded and the next
+   * notification is delivered immediately.
+   * @throws Exception Should not happen.
+   */
+  @Test
+  public void testReset() throws Exception {
+    final ThrottledProgressListener<String> listener =
+      ThrottledProgressListener.create(history, 1, TimeUnit.HOURS, 0d,
+        executor);
+    listener.notify(SCHEDULE, 10d);
+    awaitDeliveries();
+    listener.notify(SCHEDULE, 5d);
+    listener.reset();
+    listener.flush();
+    listener.notify(SCHEDULE, 20d);
+    awaitDeliveries();
+    assertThat(history.getObjectiveValues()).containsExactly(10d, 20d)
+      .inOrder();
+  }
+
+  /**
+   * Notifications that are dispatched but not yet delivered when reset is
+   * called are never delivered.
+   * @throws Exception Should not happen.
+   */
+  @Test
+  public void testResetUndelivered() throws Exception {
+    final ThrottledProgressListener<String> listener =
+      ThrottledProgressListener.create(history, 0, TimeUnit.MILLISECONDS, 0d,
+        executor);
+    // blocks the executor such that the delivery is queued
+    final CountDownLatch latch = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          latch.await();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    listener.notify(SCHEDULE, 10d);
+    listener.reset();
+    latch.countDown();
+    awaitDeliveries();
+    assertThat(history.getObjectiveValues()).isEmpty();
+  }
+
+  /**
+   * The delegate is called without holding a lock, a delegate that blocks does
+   * not block reset and notify.
+   * @throws Exception Should not happen.
+   */
+  @Test(timeout = 10000L)
+  public void testBlockingDelegate() throws Exception {
+    final CountDownLatch delivering = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ThrottledProgressListener<String> listener =
+      ThrottledProgressListener.create(new ProgressListener<String>() {
+        @Override
+        public void notify(ImmutableList<ImmutableList<String>> schedule,
+            double objectiveValue) {
+          history.notify(schedule, objectiveValue);
+          delivering.countDown();
+          try {
+            release.await();
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }, 0, TimeUnit.MILLISECONDS, 0d, executor);
+    listener.notify(SCHEDULE, 10d);
+    delivering.await();
+    listener.reset();
+    listener.notify(SCHEDULE, 20d);
+    release.countDown();
+    awaitDeliveries();
+    assertThat(history.getObjectiveValues()).containsExactly(10d, 20d)
+      .inOrder();
+  }
+
+  /**
+   * A negative interval is not allowed.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeInterval() {
+    ThrottledProgressListener.create(history, -1, TimeUnit.MILLISECONDS, 0d);
+  }
+
+  // the executor is single threaded, hence all deliveries that were submitted
+  // before have been executed when this task completes
+  void awaitDeliveries() throws InterruptedException, ExecutionException {
+    executor.submit(new Runnable() {
+      @Override
+      public void run() {}
+    }).get();
+  }
+}
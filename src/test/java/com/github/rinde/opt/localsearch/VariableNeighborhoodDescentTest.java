@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2013-2016 Rinde van Lon, iMinds-DistriNet, KU Leuven
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rinde.opt.localsearch;
+
+import static com.github.rinde.opt.localsearch.InsertionsTest.list;
+import static com.github.rinde.opt.localsearch.Swaps.asIntList;
+import static com.github.rinde.opt.localsearch.SwapsTest.A;
+import static com.github.rinde.opt.localsearch.SwapsTest.B;
+import static com.github.rinde.opt.localsearch.SwapsTest.C;
+import static com.github.rinde.opt.localsearch.SwapsTest.D;
+import static com.github.rinde.opt.localsearch.SwapsTest.cost;
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.Collections.frequency;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.junit.Test;
+
+import com.github.rinde.opt.localsearch.SwapsTest.SortDirection;
+import com.github.rinde.opt.localsearch.SwapsTest.StringListEvaluator;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/**
+ * Test of {@link VariableNeighborhoodDescent}.
+ * @author Rinde van Lon
+ */
+public class VariableNeighborhoodDescentTest {
+
+  /**
+   * With only the relocate neighborhood the result should equal breadth-first
+   * 2-opt.
+   * @throws InterruptedException Should not happen.
+   */
+  @Test
+  public void testRelocateEqualsBfsOpt2() throws InterruptedException {
+    final RandomGenerator rng = new MersenneTwister(123L);
+    for (int i = 0; i < 10; i++) {
+      final ImmutableList<ImmutableList<String>> schedule =
+        IntSwapsTest.randomSchedule(rng, 3, 6);
+      final IntList startIndices = IntSwapsTest.startIndices(schedule, rng);
+      assertThat(VariableNeighborhoodDescent.search(schedule, startIndices,
+        SortDirection.ASCENDING, new StringListEvaluator(),
+        VndOptions.create().withNeighborhoods(Neighborhood.RELOCATE),
+        Optional.<ProgressListener<String>>absent()))
+          .isEqualTo(Swaps.bfsOpt2(schedule, startIndices,
+            SortDirection.ASCENDING, new StringListEvaluator(),
+            Optional.<ProgressListener<String>>absent()));
+    }
+  }
+
+  /**
+   * Tests that all neighborhoods respect the constraints on the items and that
+   * the result is a local optimum.
+   * @throws InterruptedException Should not happen.
+   */
+  @Test
+  public void testAllNeighborhoods() throws InterruptedException {
+    final RandomGenerator rng = new MersenneTwister(456L);
+    for (int i = 0; i < 20; i++) {
+      final ImmutableList<ImmutableList<String>> schedule =
+        IntSwapsTest.randomSchedule(rng, 3, 8);
+      final IntList startIndices = IntSwapsTest.startIndices(schedule, rng);
+      final ProgressListenerHistory<String> history =
+        new ProgressListenerHistory<>();
+      final ImmutableList<ImmutableList<String>> result =
+        VariableNeighborhoodDescent.search(schedule, startIndices,
+          SortDirection.ASCENDING, new StringListEvaluator(),
+          VndOptions.create().withMaxChainLength(3), Optional.of(history));
+
+      assertThat(cost(result)).isAtMost(cost(schedule));
+      final int numImprovements = history.getSchedules().size();
+      if (numImprovements > 0) {
+        assertThat(history.getSchedules().get(numImprovements - 1))
+          .isEqualTo(result);
+      }
+      checkConstraints(schedule, startIndices, result);
+
+      // a second search should not find any improvement
+      assertThat(VariableNeighborhoodDescent.search(result, startIndices,
+        SortDirection.ASCENDING, new StringListEvaluator(),
+        VndOptions.create().withMaxChainLength(3),
+        Optional.<ProgressListener<String>>absent())).isEqualTo(result);
+    }
+  }
+
+  /**
+   * Tests a 2-opt* move.
+   * @throws InterruptedException Should not happen.
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testTwoOptStar() throws InterruptedException {
+    assertThat(VariableNeighborhoodDescent.search(
+      list(list(A, A, D, D), list(C, C, B, B)), asIntList(0, 0),
+      SortDirection.ASCENDING, new StringListEvaluator(),
+      VndOptions.create().withNeighborhoods(Neighborhood.TWO_OPT_STAR),
+      Optional.<ProgressListener<String>>absent()))
+        .isEqualTo(list(list(A, A, B, B), list(C, C, D, D)));
+
+    // the fixed part and items that occur once are never moved
+    final ImmutableList<ImmutableList<String>> fixed =
+      list(list(A, A, D, D), list(C, C, B));
+    assertThat(VariableNeighborhoodDescent.search(fixed, asIntList(3, 0),
+      SortDirection.ASCENDING, new StringListEvaluator(),
+      VndOptions.create().withNeighborhoods(Neighborhood.TWO_OPT_STAR),
+      Optional.<ProgressListener<String>>absent())).isEqualTo(fixed);
+  }
+
+  /**
+   * Tests that a search with a very small time limit still gives a valid
+   * schedule.
+   * @throws InterruptedException Should not happen.
+   */
+  @Test
+  public void testTimeLimit() throws InterruptedException {
+    final RandomGenerator rng = new MersenneTwister(789L);
+    final ImmutableList<ImmutableList<String>> schedule =
+      IntSwapsTest.randomSchedule(rng, 3, 8);
+    final IntList startIndices = IntSwapsTest.startIndices(schedule, rng);
+    final ImmutableList<ImmutableList<String>> result =
+      VariableNeighborhoodDescent.search(schedule, startIndices,
+        SortDirection.ASCENDING, new StringListEvaluator(),
+        VndOptions.create().withTimeLimit(1L, TimeUnit.MICROSECONDS)
+          .withTimeShares(4, 1, 1, 1),
+        Optional.<ProgressListener<String>>absent());
+    assertThat(cost(result)).isAtMost(cost(schedule));
+    checkConstraints(schedule, startIndices, result);
+  }
+
+  /**
+   * The number of shares must equal the number of neighborhoods.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidTimeShares() {
+    VndOptions.create().withNeighborhoods(Neighborhood.EXCHANGE)
+      .withTimeShares(1, 1);
+  }
+
+  /**
+   * A neighborhood can not be used twice.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testDuplicateNeighborhood() {
+    VndOptions.create().withNeighborhoods(Neighborhood.EXCHANGE,
+      Neighborhood.EXCHANGE);
+  }
+
+  static void checkConstraints(ImmutableList<ImmutableList<String>> original,
+      IntList startIndices, ImmutableList<ImmutableList<String>> result) {
+    assertThat(result).hasSize(original.size());
+    for (int i = 0; i < original.size(); i++) {
+      final ImmutableList<String> before = original.get(i);
+      final int start = startIndices.getInt(i);
+      assertThat(result.get(i).subList(0, start))
+        .isEqualTo(before.subList(0, start));
+      for (final String item : before) {
+        final int count = frequency(before, item);
+        if (count == 1 || before.indexOf(item) < start) {
+          assertThat(frequency(result.get(i), item)).isEqualTo(count);
+        } else {
+          int rows = 0;
+          for (final ImmutableList<String> route : result) {
+            if (route.contains(item)) {
+              assertThat(frequency(route, item)).isEqualTo(2);
+              rows++;
+            }
+          }
+          assertThat(rows).isEqualTo(1);
+        }
+      }
+    }
+  }
+}